@@ -12,6 +12,9 @@
  * - General alert (A)
  * - Optional GPS integration
  * - Optional fall detection
+ * - Optional connectionless alerts in the advertisement
+ * - Optional heart rate measurements (MAX30102 pulse sensor)
+ * - Optional raw accelerometer stream for fall detection in the app
  * 
  * Created by Emerband Team
  */
@@ -24,6 +27,9 @@
 //#define ENABLE_FALL_DETECTION
 //#define ENABLE_DISPLAY
 //#define ENABLE_POWER_SAVING
+//#define ENABLE_ADVERTISED_ALERTS
+//#define ENABLE_HEART_RATE
+//#define ENABLE_IMU_STREAM
 
 // Optional includes based on features
 #ifdef ENABLE_GPS
@@ -31,7 +37,7 @@
   #include <SoftwareSerial.h>
 #endif
 
-#ifdef ENABLE_FALL_DETECTION
+#if defined(ENABLE_FALL_DETECTION) || defined(ENABLE_IMU_STREAM)
   #include <Arduino_LSM9DS1.h>
 #endif
 
@@ -44,9 +50,15 @@
   #include <ArduinoPower.h>
 #endif
 
+#ifdef ENABLE_HEART_RATE
+  #include <MAX30105.h>
+  #include <heartRate.h>
+#endif
+
 // BLE UUIDs
 #define BLE_UUID_EMERBAND_SERVICE "0000180D-0000-1000-8000-00805f9b34fb" // Using Heart Rate service UUID
 #define BLE_UUID_ALERT_CHAR "00002A37-0000-1000-8000-00805f9b34fb" // Using Heart Rate Measurement characteristic UUID
+#define BLE_UUID_IMU_CHAR "e3b1a001-7c4e-4e6b-9d2f-6a1c0b5e8f21"   // Raw accelerometer stream (ENABLE_IMU_STREAM)
 
 // Button pin definitions
 const int EMERGENCY_BTN_PIN = 2;   // Emergency button (E)
@@ -60,6 +72,32 @@ const byte FAKE_CALL_SIGNAL = 'F';
 const byte CYBER_CELL_SIGNAL = 'C';
 const byte ALERT_SIGNAL = 'A';
 
+// Frame layout version (byte 10 of the GPS frame), must match WatchFrameDecoder
+const byte FRAME_VERSION = 3;
+
+// Bits of the flags byte (byte 9): GPS fix included, bytes 10 and up are defined
+const byte FLAG_GPS_VALID = 0x01;
+const byte FLAG_VERSIONED = 0x80;
+
+// Sequence number of the last frame sent (bytes 11-12); lets the app drop repeats
+uint16_t frameSequence = 0;
+
+// Random id of this boot (bytes 13-14); tells the app the sequence started again
+uint16_t bootId = 0;
+
+#ifdef ENABLE_ADVERTISED_ALERTS
+  // Manufacturer data while an alert is advertised: magic byte, then the
+  // frame (bytes 0-14 of the GPS frame layout), must match AdvertisedAlertReceiver
+  const uint16_t ADVERT_COMPANY_ID = 0xFFFF;  // Reserved for testing; use an assigned ID in production
+  const byte ADVERT_MAGIC = 0xEB;
+  const int ADVERT_FRAME_LENGTH = 15;
+  const unsigned long ALERT_ADVERTISE_MS = 30000;  // How long an alert stays in the advertisement
+  
+  byte advertData[1 + ADVERT_FRAME_LENGTH];
+  unsigned long alertAdvertisedAt = 0;
+  boolean alertAdvertising = false;
+#endif
+
 // Button states
 int lastEmergencyButtonState = HIGH;
 int lastFakeCallButtonState = HIGH;
@@ -78,11 +116,48 @@ BLEService emerbandService(BLE_UUID_EMERBAND_SERVICE);
   
   // Characteristic with space for GPS data (20 bytes)
   BLECharacteristic alertCharacteristic(BLE_UUID_ALERT_CHAR, BLERead | BLENotify, 20);
+#elif defined(ENABLE_HEART_RATE)
+  // Signal (1 byte) or a heart rate measurement (up to 10 bytes)
+  BLECharacteristic alertCharacteristic(BLE_UUID_ALERT_CHAR, BLERead | BLENotify, 20);
 #else
   // Basic characteristic for signal only (1 byte)
   BLECharacteristic alertCharacteristic(BLE_UUID_ALERT_CHAR, BLERead | BLENotify, 1);
 #endif
 
+#ifdef ENABLE_HEART_RATE
+  // Heart Rate Measurement (0x2A37) sent on the alert characteristic; the app
+  // tells it from alert frames by the flags byte, see HeartRateParser
+  MAX30105 pulseSensor;
+  const long IR_CONTACT_THRESHOLD = 50000;     // IR level with skin on the sensor
+  const unsigned long HEART_RATE_REPORT_MS = 1000;  // One measurement per second
+  const int MAX_RR_PER_REPORT = 4;
+  
+  unsigned long lastBeatAt = 0;
+  int beatsPerMinute = 0;
+  uint16_t rrIntervals[MAX_RR_PER_REPORT];  // 1/1024 s since the last report
+  int rrCount = 0;
+  unsigned long lastHeartRateReport = 0;
+#endif
+
+#ifdef ENABLE_IMU_STREAM
+  // Accelerometer samples batched into one notification, must match ImuStreamDecoder:
+  // [0] format, [1] sample period (ms), [2] sample count, [3..4] index of the
+  // first sample (uint16 LE), then x, y, z per sample as int16 LE in milli-g
+  const byte IMU_FORMAT = 1;
+  const byte IMU_PERIOD_MS = 20;           // 50 Hz
+  const int IMU_SAMPLES_PER_PACKET = 25;   // One notification every 500 ms
+  const int IMU_HEADER_LENGTH = 5;
+  const int IMU_PACKET_LENGTH = IMU_HEADER_LENGTH + 6 * IMU_SAMPLES_PER_PACKET;  // Needs an MTU of 158 or more
+  
+  BLECharacteristic imuCharacteristic(BLE_UUID_IMU_CHAR, BLERead | BLENotify, IMU_PACKET_LENGTH);
+  byte imuPacket[IMU_PACKET_LENGTH];
+  int imuCount = 0;
+  uint16_t imuPacketIndex = 0;   // Index of the first sample in imuPacket
+  uint16_t imuSampleIndex = 0;   // Index of the next sample
+  unsigned long nextImuSampleAt = 0;
+  float imuX = 0, imuY = 0, imuZ = 1;
+#endif
+
 #ifdef ENABLE_FALL_DETECTION
   // Accelerometer thresholds
   const float IMPACT_THRESHOLD = 3.0;  // G-forces
@@ -116,6 +191,10 @@ void setup() {
   pinMode(ALERT_BTN_PIN, INPUT_PULLUP);
   pinMode(LED_BUILTIN, OUTPUT);
   
+  // A floating analog pin is noisy enough to tell one boot from the next
+  randomSeed(analogRead(A0));
+  bootId = random(1, 0x10000);
+  
   // Initialize BLE
   if (!BLE.begin()) {
     Serial.println("BLE initialization failed!");
@@ -134,6 +213,9 @@ void setup() {
   
   // Add characteristic to the service
   emerbandService.addCharacteristic(alertCharacteristic);
+  #ifdef ENABLE_IMU_STREAM
+    emerbandService.addCharacteristic(imuCharacteristic);
+  #endif
   
   // Add the service to the BLE stack
   BLE.addService(emerbandService);
@@ -149,7 +231,7 @@ void setup() {
     Serial.println("GPS initialized");
   #endif
   
-  #ifdef ENABLE_FALL_DETECTION
+  #if defined(ENABLE_FALL_DETECTION) || defined(ENABLE_IMU_STREAM)
     if (!IMU.begin()) {
       Serial.println("Failed to initialize IMU!");
     } else {
@@ -157,6 +239,16 @@ void setup() {
     }
   #endif
   
+  #ifdef ENABLE_HEART_RATE
+    if (!pulseSensor.begin(Wire, I2C_SPEED_FAST)) {
+      Serial.println("Pulse sensor not found!");
+    } else {
+      pulseSensor.setup();
+      pulseSensor.setPulseAmplitudeRed(0x0A);
+      Serial.println("Heart rate initialized");
+    }
+  #endif
+  
   #ifdef ENABLE_DISPLAY
     if(!display.begin(SSD1306_SWITCHCAPVCC, SCREEN_ADDRESS)) {
       Serial.println(F("SSD1306 allocation failed"));
@@ -218,10 +310,31 @@ void loop() {
       checkButtons();
       
       #ifdef ENABLE_FALL_DETECTION
+        #ifdef ENABLE_IMU_STREAM
+          // While the app takes the stream it detects falls itself
+          if (!imuCharacteristic.subscribed())
+        #endif
         checkForFall();
       #endif
       
-      delay(50); // Short delay to prevent bouncing
+      #ifdef ENABLE_ADVERTISED_ALERTS
+        checkAlertAdvertising();
+      #endif
+      
+      #if defined(ENABLE_HEART_RATE) || defined(ENABLE_IMU_STREAM)
+        // Beat detection and the stream need frequent samples, so poll the sensors through the debounce delay
+        for (int i = 0; i < 5; i++) {
+          #ifdef ENABLE_HEART_RATE
+            checkHeartRate();
+          #endif
+          #ifdef ENABLE_IMU_STREAM
+            checkImuStream();
+          #endif
+          delay(10);
+        }
+      #else
+        delay(50); // Short delay to prevent bouncing
+      #endif
     }
     
     // Turn off LED when disconnected
@@ -233,6 +346,14 @@ void loop() {
     
     Serial.println("Disconnected from central");
   }
+  #ifdef ENABLE_ADVERTISED_ALERTS
+    else {
+      // Alerts do not need a connection; phones in range pick them up from the advertisement
+      checkButtons();
+      delay(50);
+    }
+    checkAlertAdvertising();
+  #endif
   
   // Power management
   #ifdef ENABLE_POWER_SAVING
@@ -293,8 +414,17 @@ void checkButtons() {
 void sendAlert(byte signal) {
   #ifdef ENABLE_GPS
     // Create data packet with GPS data if available
+    // Layout: [0] signal, [1..4] lat float LE, [5..8] lng float LE, [9] flags, [10] version,
+    // [11..12] sequence uint16 LE, [13..14] boot id uint16 LE
     byte dataPacket[20];
+    memset(dataPacket, 0, sizeof(dataPacket));
     dataPacket[0] = signal;
+    dataPacket[10] = FRAME_VERSION;
+    frameSequence++;
+    dataPacket[11] = frameSequence & 0xFF;
+    dataPacket[12] = frameSequence >> 8;
+    dataPacket[13] = bootId & 0xFF;
+    dataPacket[14] = bootId >> 8;
     
     // Add GPS data if available
     if (gps.location.isValid()) {
@@ -307,7 +437,7 @@ void sendAlert(byte signal) {
       memcpy(&dataPacket[5], &lng, 4);
       
       // Set a flag indicating GPS data is included
-      dataPacket[9] = 1;
+      dataPacket[9] = FLAG_VERSIONED | FLAG_GPS_VALID;
       
       // Send the data packet
       if (alertCharacteristic.writeValue(dataPacket, 20)) {
@@ -318,7 +448,7 @@ void sendAlert(byte signal) {
       
     } else {
       // No GPS data available
-      dataPacket[9] = 0;
+      dataPacket[9] = FLAG_VERSIONED;
       
       // Send the data packet with only the signal
       if (alertCharacteristic.writeValue(dataPacket, 20)) {
@@ -327,6 +457,10 @@ void sendAlert(byte signal) {
         blinkLED(3, 100);
       }
     }
+    
+    #ifdef ENABLE_ADVERTISED_ALERTS
+      advertiseAlert(dataPacket);
+    #endif
   #else
     // Simple signal without GPS
     if (alertCharacteristic.writeValue(&signal, 1)) {
@@ -334,9 +468,165 @@ void sendAlert(byte signal) {
     } else {
       blinkLED(3, 100);
     }
+    
+    #ifdef ENABLE_ADVERTISED_ALERTS
+      // The advertisement always carries the sequence number and boot id, so phones can drop repeats
+      byte frame[ADVERT_FRAME_LENGTH];
+      memset(frame, 0, sizeof(frame));
+      frame[0] = signal;
+      frame[9] = FLAG_VERSIONED;
+      frame[10] = FRAME_VERSION;
+      frameSequence++;
+      frame[11] = frameSequence & 0xFF;
+      frame[12] = frameSequence >> 8;
+      frame[13] = bootId & 0xFF;
+      frame[14] = bootId >> 8;
+      advertiseAlert(frame);
+    #endif
   #endif
 }
 
+#ifdef ENABLE_ADVERTISED_ALERTS
+// Put an alert frame into the advertisement for ALERT_ADVERTISE_MS
+void advertiseAlert(const byte* frame) {
+  advertData[0] = ADVERT_MAGIC;
+  memcpy(&advertData[1], frame, ADVERT_FRAME_LENGTH);
+  
+  BLE.stopAdvertise();
+  BLE.setManufacturerData(ADVERT_COMPANY_ID, advertData, sizeof(advertData));
+  BLE.advertise();
+  
+  alertAdvertisedAt = millis();
+  alertAdvertising = true;
+}
+
+// Take an expired alert out of the advertisement
+void checkAlertAdvertising() {
+  if (alertAdvertising && millis() - alertAdvertisedAt >= ALERT_ADVERTISE_MS) {
+    // Without the magic byte the phones' scan filters no longer match
+    byte idle[1] = {0};
+    BLE.stopAdvertise();
+    BLE.setManufacturerData(ADVERT_COMPANY_ID, idle, sizeof(idle));
+    BLE.advertise();
+    alertAdvertising = false;
+  }
+}
+#endif
+
+#ifdef ENABLE_HEART_RATE
+// Sample the pulse sensor and send a measurement every HEART_RATE_REPORT_MS
+void checkHeartRate() {
+  long ir = pulseSensor.getIR();
+  boolean contact = ir > IR_CONTACT_THRESHOLD;
+  
+  if (contact && checkForBeat(ir)) {
+    unsigned long now = millis();
+    unsigned long interval = now - lastBeatAt;
+    lastBeatAt = now;
+    
+    // Only plausible beat intervals (30-240 bpm)
+    if (interval > 250 && interval < 2000) {
+      beatsPerMinute = 60000 / interval;
+      if (rrCount < MAX_RR_PER_REPORT) {
+        rrIntervals[rrCount++] = interval * 1024 / 1000;
+      }
+    }
+  }
+  
+  if (millis() - lastHeartRateReport >= HEART_RATE_REPORT_MS && beatsPerMinute > 0) {
+    sendHeartRate(contact);
+    lastHeartRateReport = millis();
+  }
+}
+
+// Layout: [0] flags, [1] bpm uint8, [2..] RR intervals uint16 LE in 1/1024 s
+void sendHeartRate(boolean contact) {
+  byte packet[2 + 2 * MAX_RR_PER_REPORT];
+  byte flags = 0x04;  // Sensor contact supported
+  if (contact) {
+    flags |= 0x02;    // Sensor contact detected
+  }
+  if (rrCount > 0) {
+    flags |= 0x10;    // RR intervals present
+  }
+  
+  packet[0] = flags;
+  packet[1] = min(beatsPerMinute, 255);
+  int length = 2;
+  for (int i = 0; i < rrCount; i++) {
+    packet[length++] = rrIntervals[i] & 0xFF;
+    packet[length++] = rrIntervals[i] >> 8;
+  }
+  rrCount = 0;
+  
+  alertCharacteristic.writeValue(packet, length);
+}
+#endif
+
+#ifdef ENABLE_IMU_STREAM
+// Take an accelerometer sample every IMU_PERIOD_MS while the app is subscribed,
+// and send the batch once it is full
+void checkImuStream() {
+  unsigned long now = millis();
+  if (!imuCharacteristic.subscribed()) {
+    imuCount = 0;
+    nextImuSampleAt = now;
+    return;
+  }
+  if ((long) (now - nextImuSampleAt) < 0) {
+    return;
+  }
+  
+  // Sample times missed (e.g. while blinking the LED) are skipped; the gap in
+  // the index tells the app they are lost, so the batch must end here
+  unsigned long missed = (now - nextImuSampleAt) / IMU_PERIOD_MS;
+  if (missed > 0) {
+    sendImuPacket();
+    imuSampleIndex += missed;
+    nextImuSampleAt += missed * IMU_PERIOD_MS;
+  }
+  nextImuSampleAt += IMU_PERIOD_MS;
+  
+  // The sensor runs faster than the stream; take its latest reading
+  if (IMU.accelerationAvailable()) {
+    IMU.readAcceleration(imuX, imuY, imuZ);
+  }
+  
+  if (imuCount == 0) {
+    imuPacketIndex = imuSampleIndex;
+  }
+  int offset = IMU_HEADER_LENGTH + 6 * imuCount;
+  writeMilliG(offset, imuX);
+  writeMilliG(offset + 2, imuY);
+  writeMilliG(offset + 4, imuZ);
+  imuCount++;
+  imuSampleIndex++;
+  
+  if (imuCount == IMU_SAMPLES_PER_PACKET) {
+    sendImuPacket();
+  }
+}
+
+void writeMilliG(int offset, float g) {
+  int16_t value = constrain(lround(g * 1000), -32768, 32767);
+  imuPacket[offset] = value & 0xFF;
+  imuPacket[offset + 1] = (value >> 8) & 0xFF;
+}
+
+void sendImuPacket() {
+  if (imuCount == 0) {
+    return;
+  }
+  imuPacket[0] = IMU_FORMAT;
+  imuPacket[1] = IMU_PERIOD_MS;
+  imuPacket[2] = imuCount;
+  imuPacket[3] = imuPacketIndex & 0xFF;
+  imuPacket[4] = imuPacketIndex >> 8;
+  imuCharacteristic.writeValue(imuPacket, IMU_HEADER_LENGTH + 6 * imuCount);
+  imuCount = 0;
+}
+#endif
+
 // Blink LED for visual feedback
 void blinkLED(int times, int duration) {
   for (int i = 0; i < times; i++) {
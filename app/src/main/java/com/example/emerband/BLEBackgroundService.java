@@ -7,29 +7,19 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
 import android.bluetooth.le.ScanFilter;
-import android.bluetooth.le.ScanResult;
-import android.bluetooth.le.ScanSettings;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.location.Location;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.ParcelUuid;
-import android.os.PowerManager;
-import android.telephony.SmsManager;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -38,13 +28,44 @@ import androidx.core.app.NotificationCompat;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.example.emerband.alert.AlertReport;
+import com.example.emerband.alert.ContactAlertSender;
+import com.example.emerband.alert.PlatformSegmentCounter;
+import com.example.emerband.alert.SmsDeliveryTracker;
+import com.example.emerband.alert.SmsPacker;
+import com.example.emerband.alert.UserContextCache;
+import com.example.emerband.ble.AdvertisedAlertReceiver;
+import com.example.emerband.ble.AdvertisedAlertScanner;
+import com.example.emerband.ble.BleWatchTransport;
+import com.example.emerband.ble.LinkQualityMonitor;
+import com.example.emerband.ble.ScanPolicy;
+import com.example.emerband.ble.WatchFrame;
+import com.example.emerband.ble.WatchSession;
+import com.example.emerband.ble.WatchSessionRegistry;
+import com.example.emerband.dispatch.SignalDispatcher;
+import com.example.emerband.dispatch.SignalEvent;
+import com.example.emerband.health.FallVerdict;
+import com.example.emerband.health.PhoneFallDetector;
+import com.example.emerband.location.LocationCache;
+import com.example.emerband.metrics.AlertLatencyTracker;
 import com.example.emerband.offline.OfflineModeManager;
+import com.example.emerband.trace.NotificationTraceRecorder;
 import com.example.emerband.utils.ConnectivityUtils;
 import com.example.emerband.utils.ResourceManager;
+import com.example.emerband.utils.WakeLockTracker;
 
 public class BLEBackgroundService extends Service {
     
@@ -53,12 +74,37 @@ public class BLEBackgroundService extends Service {
     // Notification channel and ID
     private static final String CHANNEL_ID = "BleServiceChannel";
     private static final int NOTIFICATION_ID = 1001;
+    private static final int LINK_WARNING_NOTIFICATION_OFFSET = 100;
     
     // BLE scanning parameters
-    private static final long SCAN_PERIOD = 10000; // 10 seconds
-    private static final String TARGET_DEVICE_NAME = "EmergencyWatch";
+    public static final String ACTION_SCAN_RESULT = "com.example.emerband.action.SCAN_RESULT";
+    private static final int SCAN_PENDING_INTENT_REQUEST_CODE = 1;
+    
+    // Advertised names of supported wearables; add a name here to support another device type
+    private static final Set<String> TARGET_DEVICE_NAMES = Collections.singleton("EmergencyWatch");
     private static final String TARGET_SERVICE_UUID = "0000180D-0000-1000-8000-00805f9b34fb"; // Heart Rate Service UUID as example
     
+    // Wearables listened to at once; raise to pair a pendant or guardian band alongside the watch
+    private static final int MAX_WATCHES = 1;
+    
+    // Scan duty cycle while searching for a watch; RESPONSIVE finds it sooner at more battery cost
+    private static final ScanPolicy SCAN_POLICY = ScanPolicy.BALANCED;
+    
+    // Also scan for alerts the watch advertises without a connection (firmware built with ENABLE_ADVERTISED_ALERTS)
+    private static final boolean RECEIVE_ADVERTISED_ALERTS = false;
+    
+    // Upper bound on how long handling one signal keeps the CPU awake
+    private static final long SIGNAL_WAKE_LOCK_TIMEOUT_MS = 60000;
+    
+    // Worker threads for non-emergency signal handling (emergencies have their own lane)
+    private static final int DISPATCH_WORKER_COUNT = 2;
+    
+    // Record raw watch notifications for offline replay; a diagnostic build switch, off in releases
+    private static final boolean RECORD_TRACES = false;
+    
+    // Directory under getFilesDir() for notification traces
+    private static final String TRACE_DIRECTORY = "traces";
+    
     // Emergency codes from watch
     private static final char EMERGENCY_CODE = 'E';  // Emergency signal
     private static final char FALL_CODE = 'F';      // Fall detected
@@ -68,92 +114,59 @@ public class BLEBackgroundService extends Service {
     // Code for cancellation (if needed in the future)
     private static final char CANCEL_CODE = 'X';    // New cancel code (not used currently)
     
-    // SharedPreferences constants
-    private static final String PREFS_NAME = "EmerbandPrefs";
-    private static final String KEY_USER_NAME = "userName";
-    
     // Bluetooth related objects
     private BluetoothManager bluetoothManager;
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothLeScanner bluetoothLeScanner;
-    private BluetoothGatt bluetoothGatt;
+    
+    // Radio layer (scanning and GATT) used by the watch sessions
+    private BleWatchTransport watchTransport;
+    
+    // Concurrent sessions with every connected wearable, sharing one scan
+    private WatchSessionRegistry sessionRegistry;
+    
+    // Connectionless alerts from watch advertisements (null unless enabled)
+    private AdvertisedAlertReceiver advertisedAlertReceiver;
+    private AdvertisedAlertScanner advertisedAlertScanner;
     
     // Handler for delayed tasks and timeouts
     private Handler handler;
     
-    // Wake lock to keep CPU running while service is active
-    private PowerManager.WakeLock wakeLock;
+    // Event-scoped wake locks (the CPU is only kept awake while a signal is being handled)
+    private WakeLockTracker wakeLockTracker;
+    
+    // Wake lock taken for each queued signal, released once it has been handled
+    private final Map<SignalEvent, WakeLockTracker.Token> dispatchWakeLocks = new ConcurrentHashMap<>();
     
     // OfflineModeManager instance
     private OfflineModeManager offlineModeManager;
     
-    // Scan callback
-    private ScanCallback leScanCallback = new ScanCallback() {
+    // Moves signal handling off the BLE threads, emergencies first; shared by all watches
+    private SignalDispatcher signalDispatcher;
+    
+    // Phone accelerometer, to tell a fall from a fake call request when the watch sends 'F'
+    private PhoneFallDetector phoneFallDetector;
+    
+    // Bluetooth adapter on/off receiver
+    private final BroadcastReceiver adapterStateReceiver = new BroadcastReceiver() {
         @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            super.onScanResult(callbackType, result);
-            BluetoothDevice device = result.getDevice();
-            
-            String deviceName = null;
-            try {
-                if (ActivityCompat.checkSelfPermission(BLEBackgroundService.this, 
-                        Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-                    deviceName = device.getName();
-                }
-            } catch (SecurityException e) {
-                Log.e(TAG, "Bluetooth permission not granted", e);
+        public void onReceive(Context context, Intent intent) {
+            if (!BluetoothAdapter.ACTION_STATE_CHANGED.equals(intent.getAction()) || sessionRegistry == null) {
                 return;
             }
             
-            Log.d(TAG, "Found device: " + (deviceName != null ? deviceName : "Unknown"));
-            
-            if (deviceName != null && deviceName.equals(TARGET_DEVICE_NAME)) {
-                // Stop scanning when we find our target device
-                stopScanning();
-                connectToDevice(device);
-            }
-        }
-        
-        @Override
-        public void onScanFailed(int errorCode) {
-            super.onScanFailed(errorCode);
-            Log.e(TAG, "Scan failed with error: " + errorCode);
-        }
-    };
-    
-    // GATT callback
-    private BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
-        @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            if (newState == BluetoothProfile.STATE_CONNECTED) {
-                Log.i(TAG, "Connected to GATT server.");
-                // Discover services after successful connection
-                gatt.discoverServices();
-            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                Log.i(TAG, "Disconnected from GATT server.");
-                // Start scanning again when disconnected
-                startScanning();
-            }
-        }
-        
-        @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                Log.i(TAG, "Services discovered.");
-                // Enable notification for relevant characteristics
-                enableNotifications(gatt);
-            } else {
-                Log.w(TAG, "onServicesDiscovered received: " + status);
-            }
-        }
-        
-        @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            byte[] data = characteristic.getValue();
-            if (data != null && data.length > 0) {
-                char value = (char) data[0];
-                Log.d(TAG, "Received value: " + value);
-                processReceivedValue(value);
+            int adapterState = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
+            if (adapterState == BluetoothAdapter.STATE_ON) {
+                Log.i(TAG, "Bluetooth turned on");
+                sessionRegistry.onAdapterOn();
+                if (advertisedAlertScanner != null) {
+                    advertisedAlertScanner.start();
+                }
+            } else if (adapterState == BluetoothAdapter.STATE_OFF) {
+                Log.i(TAG, "Bluetooth turned off");
+                sessionRegistry.onAdapterOff();
+                if (advertisedAlertScanner != null) {
+                    advertisedAlertScanner.onAdapterOff();
+                }
             }
         }
     };
@@ -165,24 +178,52 @@ public class BLEBackgroundService extends Service {
         
         handler = new Handler(Looper.getMainLooper());
         
-        // Initialize Bluetooth adapter and scanner
+        // Initialize OfflineModeManager
+        offlineModeManager = OfflineModeManager.getInstance(this);
+        
+        // Size alert SMS the way this device's SMS stack will split them
+        SmsPacker.setDefaultCounter(new PlatformSegmentCounter());
+        
+        // Pick up alert SMS retries that were pending when the process stopped
+        SmsDeliveryTracker.getInstance(this).resumePending();
+        
+        // Capture raw notifications for offline replay, if enabled
+        if (RECORD_TRACES) {
+            startTraceRecording();
+        }
+        
+        // Start the signal dispatch stage
+        signalDispatcher = new SignalDispatcher(this::processReceivedValue, DISPATCH_WORKER_COUNT);
+        
+        // Initialize Bluetooth adapter and the watch sessions, starting from the known watches (if any)
         bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
         if (bluetoothManager != null) {
             bluetoothAdapter = bluetoothManager.getAdapter();
             if (bluetoothAdapter != null) {
-                bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+                watchTransport = new BleWatchTransport(this, bluetoothAdapter, createScanFilters(),
+                        createScanPendingIntent());
+                watchTransport.setScanPolicy(SCAN_POLICY);
+                sessionRegistry = new WatchSessionRegistry(this, watchTransport, handler, TARGET_DEVICE_NAMES,
+                        MAX_WATCHES, this::onWatchFrame);
+                sessionRegistry.setLinkQualityListener(this::onLinkQualityChanged);
+                
+                // Also react to alerts advertised without a connection, if enabled
+                if (RECEIVE_ADVERTISED_ALERTS) {
+                    advertisedAlertReceiver = new AdvertisedAlertReceiver(this::submitFrame);
+                    advertisedAlertScanner = new AdvertisedAlertScanner(bluetoothAdapter, advertisedAlertReceiver);
+                }
             }
         }
         
-        // Initialize OfflineModeManager
-        offlineModeManager = OfflineModeManager.getInstance(this);
+        // Follow Bluetooth being switched on and off
+        registerReceiver(adapterStateReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
         
-        // Create a wake lock to keep the CPU running
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (powerManager != null) {
-            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Emerband:BLEWakeLock");
-            wakeLock.acquire();
-        }
+        // Wake locks are taken per event instead of for the service lifetime
+        wakeLockTracker = WakeLockTracker.getInstance(this);
+        
+        // Batched accelerometer sampling for fall checks
+        phoneFallDetector = new PhoneFallDetector(this);
+        phoneFallDetector.start();
     }
     
     @Override
@@ -195,8 +236,25 @@ public class BLEBackgroundService extends Service {
         // Register connectivity receiver for offline mode
         offlineModeManager.registerConnectivityReceiver();
         
-        // Start scanning for BLE devices
-        startScanning();
+        // Keep a recent location fix ready for alerts (no-op if already running or not permitted)
+        LocationCache.getInstance(this).start();
+        
+        if (sessionRegistry != null) {
+            // Connect to the known watches, or scan for one
+            sessionRegistry.start();
+            if (!bluetoothAdapter.isEnabled()) {
+                sessionRegistry.onAdapterOff();
+            } else if (advertisedAlertScanner != null) {
+                advertisedAlertScanner.start();
+            }
+            
+            // Deliver results from the background (PendingIntent) scan
+            if (intent != null && ACTION_SCAN_RESULT.equals(intent.getAction())) {
+                watchTransport.onPendingIntentResults(intent);
+            }
+        } else {
+            Log.e(TAG, "Bluetooth not initialized");
+        }
         
         // If the service gets killed, restart it
         return START_STICKY;
@@ -215,24 +273,49 @@ public class BLEBackgroundService extends Service {
         // Unregister connectivity receiver
         offlineModeManager.unregisterConnectivityReceiver();
         
-        // Stop scanning
-        stopScanning();
-        
-        // Disconnect GATT
-        if (bluetoothGatt != null) {
-            bluetoothGatt.disconnect();
-            bluetoothGatt.close();
-            bluetoothGatt = null;
+        // Stop scanning, reconnecting and disconnect every watch
+        unregisterReceiver(adapterStateReceiver);
+        if (sessionRegistry != null) {
+            Log.d(TAG, "Watch sessions:\n" + sessionRegistry.getStatsSummary());
+            sessionRegistry.shutdown();
         }
-        
-        // Release wake lock
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
+        if (advertisedAlertScanner != null) {
+            advertisedAlertScanner.stop();
+            Log.d(TAG, "Advertised alerts: " + advertisedAlertReceiver.getSummary());
         }
         
+        // Stop sampling the accelerometer
+        Log.d(TAG, "Phone fall detection: " + phoneFallDetector.getSummary());
+        phoneFallDetector.stop();
+        LocationCache.getInstance(this).stop();
+        
+        // Close the notification trace, if recording
+        NotificationTraceRecorder.getInstance().stop();
+        
+        // Stop dispatching signals; emergencies already queued are still handled
+        signalDispatcher.shutdown();
+        Log.d(TAG, "Signal queue delays:\n" + signalDispatcher.getStatsSummary());
+        Log.d(TAG, "Wake locks:\n" + wakeLockTracker.getSummary());
+        Log.d(TAG, "Alert latency:\n" + AlertLatencyTracker.getInstance().getSummary());
+        
         super.onDestroy();
     }
     
+    /**
+     * Start recording raw watch notifications to a new file under files/traces
+     */
+    private void startTraceRecording() {
+        String name = "notifications-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".bin";
+        File traceFile = new File(new File(getFilesDir(), TRACE_DIRECTORY), name);
+        try {
+            NotificationTraceRecorder.getInstance().start(traceFile);
+            Log.i(TAG, "Recording notification trace to " + traceFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot record notification trace", e);
+        }
+    }
+    
     /**
      * Create a notification for the foreground service
      */
@@ -269,22 +352,52 @@ public class BLEBackgroundService extends Service {
     }
     
     /**
-     * Start scanning for BLE devices
+     * Warn the user while a watch link is weak, before it drops (main thread)
      */
-    private void startScanning() {
-        if (bluetoothAdapter == null || bluetoothLeScanner == null) {
-            Log.e(TAG, "Bluetooth not initialized");
+    private void onLinkQualityChanged(WatchSession session, LinkQualityMonitor.Quality quality, int smoothedRssi) {
+        NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager == null) {
             return;
         }
-        
-        // Create scan filters to only look for our target device
+        // One warning per session, after the emergency notification ids
+        int notificationId = NOTIFICATION_ID + LINK_WARNING_NOTIFICATION_OFFSET + session.getId();
+        if (quality != LinkQualityMonitor.Quality.POOR) {
+            notificationManager.cancel(notificationId);
+            return;
+        }
+
+        Intent notificationIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                this,
+                0,
+                notificationIntent,
+                PendingIntent.FLAG_IMMUTABLE);
+
+        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Watch signal weak")
+                .setContentText("Keep your watch closer to the phone so alerts get through ("
+                        + smoothedRssi + " dBm)")
+                .setSmallIcon(android.R.drawable.stat_sys_warning)
+                .setContentIntent(pendingIntent)
+                .setOnlyAlertOnce(true)
+                .build();
+        notificationManager.notify(notificationId, notification);
+    }
+    
+    /**
+     * Create scan filters to only look for our target devices
+     */
+    private List<ScanFilter> createScanFilters() {
         List<ScanFilter> filters = new ArrayList<>();
         
-        // Add filter for device name
-        ScanFilter nameFilter = new ScanFilter.Builder()
-                .setDeviceName(TARGET_DEVICE_NAME)
-                .build();
-        filters.add(nameFilter);
+        // Add a filter for each device name
+        for (String deviceName : TARGET_DEVICE_NAMES) {
+            ScanFilter nameFilter = new ScanFilter.Builder()
+                    .setDeviceName(deviceName)
+                    .build();
+            filters.add(nameFilter);
+        }
         
         // Add filter for service UUID if needed
         try {
@@ -297,121 +410,138 @@ public class BLEBackgroundService extends Service {
             Log.e(TAG, "Invalid UUID format", e);
         }
         
-        // Configure scan settings for balanced power usage
-        ScanSettings settings = new ScanSettings.Builder()
-                .setScanMode(ScanSettings.SCAN_MODE_LOW_POWER) // Use LOW_POWER for better battery life
-                .build();
-        
-        // Start the scan with our filters and settings
-        try {
-            bluetoothLeScanner.startScan(filters, settings, leScanCallback);
-            Log.d(TAG, "Started BLE scan");
-            
-            // Stop scanning after SCAN_PERIOD to conserve battery
-            handler.postDelayed(this::stopScanning, SCAN_PERIOD);
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting BLE scan", e);
-        }
+        return filters;
     }
     
     /**
-     * Stop the ongoing BLE scan
+     * Create the PendingIntent the OS fires on a filter match during low-power scan windows
+     * @return PendingIntent, or null below Android 8.0 where scans only support callbacks
      */
-    private void stopScanning() {
-        if (bluetoothAdapter != null && bluetoothLeScanner != null) {
-            try {
-                bluetoothLeScanner.stopScan(leScanCallback);
-                Log.d(TAG, "Stopped BLE scan");
-            } catch (Exception e) {
-                Log.e(TAG, "Error stopping BLE scan", e);
-            }
+    @Nullable
+    private PendingIntent createScanPendingIntent() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return null;
+        }
+        
+        Intent scanIntent = new Intent(this, BLEBackgroundService.class);
+        scanIntent.setAction(ACTION_SCAN_RESULT);
+        
+        // Must be mutable so the system can attach the scan results
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            flags |= PendingIntent.FLAG_MUTABLE;
         }
+        return PendingIntent.getForegroundService(this, SCAN_PENDING_INTENT_REQUEST_CODE, scanIntent, flags);
     }
     
     /**
-     * Connect to a BLE device
+     * Hand a decoded frame from any watch to the dispatcher (runs on that watch's session thread)
      */
-    private void connectToDevice(BluetoothDevice device) {
-        Log.d(TAG, "Connecting to device: " + device.getName());
-        
-        // Close any existing connection
-        if (bluetoothGatt != null) {
-            bluetoothGatt.disconnect();
-            bluetoothGatt.close();
-        }
-        
-        // Connect to the device
-        bluetoothGatt = device.connectGatt(this, true, gattCallback);
+    private void onWatchFrame(WatchSession session, WatchFrame frame, long receivedAtNanos) {
+        submitFrame(session.getAddress(), frame, receivedAtNanos);
     }
     
     /**
-     * Enable notifications for relevant characteristics
+     * Hand a decoded frame, from a connection or an advertisement, to the dispatcher.
+     * The same alert arriving both ways is dropped by the dispatcher's idempotency windows.
      */
-    private void enableNotifications(BluetoothGatt gatt) {
-        // Typically, you would look for specific services and characteristics here
-        // For demonstration, we'll just log the available services
-        for (BluetoothGattService service : gatt.getServices()) {
-            Log.d(TAG, "Found service: " + service.getUuid());
-            
-            // For each service, find the notification characteristic
-            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
-                // Set up notification for all characteristics that support it
-                // In a real app, you would check for specific characteristics
-                if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0) {
-                    // Enable notification
-                    boolean success = gatt.setCharacteristicNotification(characteristic, true);
-                    Log.d(TAG, "Set notification for " + characteristic.getUuid() + ": " + success);
-                }
-            }
+    private void submitFrame(String address, WatchFrame frame, long receivedAtNanos) {
+        Log.d(TAG, "Received value: " + frame.getSignal() + " from " + address);
+        // Released by processReceivedValue once the handler has finished
+        SignalEvent event = SignalEvent.from(address, frame, receivedAtNanos);
+        dispatchWakeLocks.put(event, wakeLockTracker.acquire(WakeLockTracker.REASON_SIGNAL_DISPATCH,
+                SIGNAL_WAKE_LOCK_TIMEOUT_MS));
+        if (!signalDispatcher.submit(event)) {
+            Log.d(TAG, "Ignoring repeated " + frame.getSignal());
+            wakeLockTracker.release(dispatchWakeLocks.remove(event));
         }
     }
     
     /**
-     * Process received value from the BLE device
+     * Process a signal from the BLE device (runs on a dispatcher thread)
      */
-    private void processReceivedValue(char value) {
-        // Main processing of received values based on the code
-        switch (value) {
-            case EMERGENCY_CODE:
-                handleEmergency();
-                break;
-            case FALL_CODE:
-                // For Fall Detection - Note: The 'F' signal is now used for both Fake Call and Fall Detection
-                // We'll check for additional context to differentiate between the two
-                if (isAdditionalContextForFallDetection()) {
-                    handleFallDetection();
-                } else {
-                    // If no additional context indicating fall detection, treat as fake call
-                    handleFakeCall();
-                }
-                break;
-            case CYBER_CELL_CODE:
-                handleCyberCellAlert();
-                break;
-            case ALERT_CODE:
-                handleGeneralAlert();
-                break;
-            case CANCEL_CODE:
-                handleCancelAlert();
-                break;
-            default:
-                Log.d(TAG, "Unknown code received: " + value);
-                break;
+    private void processReceivedValue(SignalEvent event) {
+        char value = event.getSignal();
+        
+        // Stages further down (location, SMS, call) are timed against this notification
+        AlertLatencyTracker latencyTracker = AlertLatencyTracker.getInstance();
+        latencyTracker.begin(value, event.getReceivedAtNanos());
+        
+        try {
+            // Main processing of received values based on the code
+            switch (value) {
+                case EMERGENCY_CODE:
+                    handleEmergency(event);
+                    break;
+                case FALL_CODE:
+                    // For Fall Detection - Note: The 'F' signal is now used for both Fake Call and Fall Detection
+                    // The accelerometer data around the signal tells the two apart
+                    handleFallOrFakeCall(event);
+                    break;
+                case CYBER_CELL_CODE:
+                    handleCyberCellAlert();
+                    break;
+                case ALERT_CODE:
+                    handleGeneralAlert();
+                    break;
+                case CANCEL_CODE:
+                    handleCancelAlert();
+                    break;
+                default:
+                    Log.d(TAG, "Unknown code received: " + value);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error handling signal " + value, e);
+            throw e;
+        } finally {
+            latencyTracker.end();
+            wakeLockTracker.release(dispatchWakeLocks.remove(event));
         }
     }
     
     /**
-     * Check for additional context to determine if this is a fall detection
-     * This is a placeholder - in a real implementation, you would check for additional
-     * data from the BLE device to differentiate between fake call and fall detection
+     * Check the accelerometer data in the seconds before an 'F' signal for a fall: the
+     * watch's own stream if it sends one, otherwise the phone's accelerometer. The phone's
+     * verdict arrives on its sensor thread once the sensor FIFO is flushed, so this
+     * dispatcher thread does not wait for it.
+     * Without accelerometer data the signal is treated as a fake call request, as before.
      */
-    private boolean isAdditionalContextForFallDetection() {
-        // In a real implementation, this would analyze additional data
-        // For example, the BLE device could send "F:FALL" for fall detection
-        // and "F:CALL" for fake call
+    private void handleFallOrFakeCall(SignalEvent event) {
+        WatchSession session = sessionRegistry != null
+                ? sessionRegistry.findSession(event.getSourceAddress())
+                : null;
+        FallVerdict verdict = session != null
+                ? session.classifyFall(event.getReceivedAtNanos())
+                : FallVerdict.NO_DATA;
+        if (verdict != FallVerdict.NO_DATA) {
+            Log.d(TAG, "Watch fall check: " + verdict);
+            onFallVerdict(event, verdict);
+            return;
+        }
         
-        // For now, assuming all 'F' signals are for fake calls
-        return false;
+        // Keep the CPU awake until the phone's verdict has been acted on
+        WakeLockTracker.Token wakeLock = wakeLockTracker.acquire(WakeLockTracker.REASON_SIGNAL_DISPATCH,
+                SIGNAL_WAKE_LOCK_TIMEOUT_MS);
+        phoneFallDetector.classify(event.getReceivedAtNanos(), phoneVerdict -> {
+            try {
+                Log.d(TAG, "Phone fall check: " + phoneVerdict);
+                onFallVerdict(event, phoneVerdict);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error handling signal " + event.getSignal(), e);
+            } finally {
+                wakeLockTracker.release(wakeLock);
+            }
+        });
+    }
+    
+    private void onFallVerdict(SignalEvent event, FallVerdict verdict) {
+        if (verdict == FallVerdict.FALL) {
+            handleFallDetection(event);
+        } else {
+            // If no additional context indicating fall detection, treat as fake call
+            handleFakeCall();
+        }
     }
     
     /**
@@ -429,11 +559,11 @@ public class BLEBackgroundService extends Service {
     /**
      * Handle emergency signal ('E')
      */
-    private void handleEmergency() {
+    private void handleEmergency(SignalEvent event) {
         Log.d(TAG, "EMERGENCY signal received!");
         
-        // Get GPS data from characteristic (if available)
-        String gpsData = getGPSData();
+        // GPS coordinates arrive in the same frame as the signal (if the watch has a fix)
+        Location watchLocation = createWatchLocation(event);
         
         // Additional data for emergency context
         String additionalData = "";
@@ -443,31 +573,37 @@ public class BLEBackgroundService extends Service {
         
         // Use offline mode manager to handle the emergency
         // This will automatically handle online/offline scenarios
-        offlineModeManager.handleEmergencyEvent(additionalData);
+        offlineModeManager.handleEmergencyEvent(additionalData, watchLocation);
     }
     
     /**
-     * Get GPS data from the connected device
+     * Build a Location from the coordinates carried in a watch frame
+     * @return Location, or null if the frame carries no valid GPS fix
      */
-    private String getGPSData() {
-        if (bluetoothGatt != null) {
-            // Use the utility class to read GPS data from the GATT connection
-            return BLEGattUtils.readGPSData(bluetoothGatt);
+    @Nullable
+    private static Location createWatchLocation(SignalEvent event) {
+        if (!event.hasLocation()) {
+            return null;
         }
-        return null;
+        
+        Location location = new Location("watch");
+        location.setLatitude(event.getLatitude());
+        location.setLongitude(event.getLongitude());
+        location.setTime(System.currentTimeMillis());
+        return location;
     }
     
     /**
      * Handle fall detection signal ('F')
      */
-    private void handleFallDetection() {
+    private void handleFallDetection(SignalEvent event) {
         Log.d(TAG, "FALL DETECTION signal received!");
         
         // Show notification
         showEmergencyNotification("Fall Detected", "A fall has been detected! Are you OK?");
         
-        // Get GPS data
-        String gpsData = getGPSData();
+        // GPS coordinates from the same frame (if available)
+        Location watchLocation = createWatchLocation(event);
         
         // Check connectivity and handle appropriately
         if (ConnectivityUtils.isInternetAvailable(this)) {
@@ -475,7 +611,7 @@ public class BLEBackgroundService extends Service {
             sendEmergencySMS("ALERT: A fall has been detected. I may need assistance.");
         } else {
             // Store as offline emergency event
-            offlineModeManager.handleEmergencyEvent("Fall detection");
+            offlineModeManager.handleEmergencyEvent("Fall detection", watchLocation);
             showToast("Fall alert stored offline. Will be sent when connectivity returns.");
         }
         
@@ -580,24 +716,21 @@ public class BLEBackgroundService extends Service {
      * Send emergency SMS to emergency contacts
      */
     private void sendEmergencySMS(String message) {
-        // TODO: Implement getting emergency contacts from preferences
-        // For now, we'll just log that we would send an SMS
-        
-        // Get user name from SharedPreferences
-        SharedPreferences settings = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        String userName = settings.getString(KEY_USER_NAME, "User");
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "SMS permission not granted");
+            return;
+        }
         
         // Add user name to message
+        String userName = UserContextCache.getInstance(this).getUserName();
         String fullMessage = message + " - Sent by " + userName;
         
-        Log.d(TAG, "Would send SMS: " + fullMessage);
-        
-        // Uncomment below code to actually send SMS
-        // Note: SMS_SEND permission is required
-        /*
-        SmsManager smsManager = SmsManager.getDefault();
-        smsManager.sendTextMessage(phoneNumber, null, fullMessage, null, null);
-        */
+        // SMS to every stored emergency contact, in parallel
+        AlertReport report = ContactAlertSender.getInstance(this).send(fullMessage, true, false);
+        if (!report.isAnySent()) {
+            Log.e(TAG, "Fall alert SMS not sent: " + report);
+        }
     }
     
     /**
@@ -1,8 +1,5 @@
 package com.example.emerband;
 
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattService;
 import android.util.Log;
 
 import java.nio.charset.StandardCharsets;
@@ -12,52 +9,45 @@ import java.util.UUID;
  * Utility class for handling BLE GATT services and characteristics
  */
 public class BLEGattUtils {
-    
+
     private static final String TAG = "BLEGattUtils";
-    
+
+    // Watch alert service and characteristic (must match EmerbandWatch.ino)
+    public static final UUID WATCH_SERVICE_UUID = UUID.fromString("0000180D-0000-1000-8000-00805f9b34fb");
+    public static final UUID WATCH_ALERT_CHARACTERISTIC_UUID = UUID.fromString("00002A37-0000-1000-8000-00805f9b34fb");
+    // Optional raw accelerometer stream in the same service (ENABLE_IMU_STREAM)
+    public static final UUID WATCH_IMU_CHARACTERISTIC_UUID = UUID.fromString("e3b1a001-7c4e-4e6b-9d2f-6a1c0b5e8f21");
+
     // Example UUIDs for GPS service and characteristic
     // In a real application, these would match the Arduino device implementation
     public static final UUID GPS_SERVICE_UUID = UUID.fromString("00001819-0000-1000-8000-00805f9b34fb");
     public static final UUID GPS_CHARACTERISTIC_UUID = UUID.fromString("00002A67-0000-1000-8000-00805f9b34fb");
-    
+
     /**
-     * Reads GPS data from the specified characteristic if available
-     * 
-     * @param gatt The BluetoothGatt connection
-     * @return String containing GPS data in format "latitude,longitude" or null if not available
+     * Receives GPS data read from the watch
      */
-    public static String readGPSData(BluetoothGatt gatt) {
-        if (gatt == null) {
-            Log.e(TAG, "GATT connection is null");
-            return null;
-        }
-        
-        // Get the GPS service
-        BluetoothGattService gpsService = gatt.getService(GPS_SERVICE_UUID);
-        if (gpsService == null) {
-            Log.e(TAG, "GPS service not found");
-            return null;
-        }
-        
-        // Get the GPS characteristic
-        BluetoothGattCharacteristic gpsCharacteristic = 
-                gpsService.getCharacteristic(GPS_CHARACTERISTIC_UUID);
-        if (gpsCharacteristic == null) {
-            Log.e(TAG, "GPS characteristic not found");
-            return null;
-        }
-        
-        // Read the value
-        byte[] data = gpsCharacteristic.getValue();
+    public interface GPSDataCallback {
+        /**
+         * @param gpsData GPS data in format "latitude,longitude", or null if not available
+         */
+        void onGPSData(String gpsData);
+    }
+
+    /**
+     * Parses GPS data read from the GPS characteristic
+     *
+     * @param data Raw characteristic value
+     * @return String containing GPS data in format "latitude,longitude" or null if empty
+     */
+    public static String parseGPSData(byte[] data) {
         if (data == null || data.length == 0) {
             Log.e(TAG, "GPS data is empty");
             return null;
         }
-        
+
         // Convert bytes to string
         String gpsString = new String(data, StandardCharsets.UTF_8);
         Log.d(TAG, "Read GPS data: " + gpsString);
-        
         return gpsString;
     }
-} 
\ No newline at end of file
+}
@@ -6,6 +6,8 @@ import android.content.Intent
 import android.content.SharedPreferences
 import android.content.pm.PackageManager
 import android.net.Uri
+import android.os.Handler
+import android.os.Looper
 import android.telephony.SmsManager
 import android.util.Log
 import android.widget.Toast
@@ -154,9 +156,11 @@ object CyberCellHandler {
     }
     
     /**
-     * Show toast message
+     * Show toast message on the main thread (handlers may run on dispatcher threads)
      */
     private fun showToast(context: Context, message: String) {
-        Toast.makeText(context, message, Toast.LENGTH_LONG).show()
+        Handler(Looper.getMainLooper()).post {
+            Toast.makeText(context, message, Toast.LENGTH_LONG).show()
+        }
     }
 } 
\ No newline at end of file
@@ -10,6 +10,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.textfield.TextInputEditText;
 import com.example.emerband.adapters.ContactAdapter;
+import com.example.emerband.alert.SmsDeliveryTracker;
 import com.example.emerband.database.DatabaseHelper;
 import com.example.emerband.models.Contact;
 import java.util.List;
@@ -37,6 +38,9 @@ public class EmergencyContactsActivity extends AppCompatActivity {
         List<Contact> contacts = databaseHelper.getAllContacts();
         adapter = new ContactAdapter(contacts, this::deleteContact);
         recyclerView.setAdapter(adapter);
+        
+        // Show per contact whether the latest alert got through, live
+        SmsDeliveryTracker.getInstance(this).observeLatestAlert().observe(this, adapter::updateDeliveryStatus);
 
         // Setup FAB
         FloatingActionButton fabAdd = findViewById(R.id.fabAdd);
@@ -2,18 +2,20 @@ package com.example.emerband
 
 import android.Manifest
 import android.content.Context
-import android.content.Intent
-import android.content.SharedPreferences
 import android.content.pm.PackageManager
-import android.net.Uri
-import android.telephony.SmsManager
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
 import android.util.Log
 import android.widget.Toast
 import androidx.core.app.ActivityCompat
 import androidx.core.content.ContextCompat
-import java.text.SimpleDateFormat
-import java.util.Date
-import java.util.Locale
+import com.example.emerband.alert.AlertMessageRenderer
+import com.example.emerband.alert.AlertReport
+import com.example.emerband.alert.ContactAlertSender
+import com.example.emerband.alert.UserContextCache
+import com.example.emerband.location.LocationFix
+import com.example.emerband.metrics.AlertLatencyTracker
 
 /**
  * Utility class to handle emergency signals received from BLE devices
@@ -22,13 +24,6 @@ import java.util.Locale
 object EmergencyHandler {
 
     private const val TAG = "EmergencyHandler"
-    private const val PREFS_NAME = "EmerbandPrefs"
-    private const val KEY_USER_NAME = "userName"
-
-    // Emergency contact numbers (hardcoded for now)
-    // TODO: Allow users to configure emergency contacts via UI
-    private val PRIMARY_EMERGENCY_CONTACT = "+1234567890"
-    private val SECONDARY_EMERGENCY_CONTACT = "+0987654321"
 
     /**
      * Handle emergency signal with GPS data from BLE device
@@ -50,44 +45,91 @@ object EmergencyHandler {
             return handleEmergencyWithoutGPS(context)
         }
         
-        // Get user name from SharedPreferences
-        val userName = getUserName(context)
+        // Prepare emergency message from the cached user name and the compiled template
+        val userName = UserContextCache.getInstance(context).userName
+        val message = AlertMessageRenderer.forCurrentThread()
+            .renderEmergency(userName, coordinates.first, coordinates.second, System.currentTimeMillis())
+        // TODO: Support reverse geocoding to convert coordinates into a human-readable address
+        AlertLatencyTracker.getInstance().mark(AlertLatencyTracker.Stage.MESSAGE_BUILT)
         
-        // Generate timestamp
-        val timestamp = getCurrentTimestamp()
+        // SMS to every emergency contact and the call to the first one, all at once
+        return alertContacts(context, message)
+    }
+    
+    /**
+     * Handle an emergency with the best fix known right now, labelled with its
+     * accuracy and age; the first phase of a two-phase alert
+     * 
+     * @param fix Best fix available, or null to send without a location
+     * @return true if at least one SMS or the call went out
+     */
+    @JvmStatic
+    fun handleEmergencyWithFix(context: Context, fix: LocationFix?): Boolean {
+        if (fix == null) {
+            return handleEmergencyWithoutGPS(context)
+        }
         
-        // Prepare emergency message
-        val message = constructEmergencyMessage(userName, coordinates.first, coordinates.second, timestamp)
+        val userName = UserContextCache.getInstance(context).userName
+        val message = AlertMessageRenderer.forCurrentThread().renderEmergency(
+            userName, fix.latitude, fix.longitude, if (fix.hasAccuracy()) fix.accuracyMeters else 0f,
+            fix.getAgeMillis(SystemClock.elapsedRealtimeNanos()), System.currentTimeMillis())
+        AlertLatencyTracker.getInstance().mark(AlertLatencyTracker.Stage.MESSAGE_BUILT)
         
-        // Send SMS to emergency contacts
-        val smsSent = sendEmergencySMS(context, message)
+        return alertContacts(context, message)
+    }
+    
+    /**
+     * Send one SMS with a better location than the alert carried; no call
+     * 
+     * @param fix The better fix
+     * @return true if at least one SMS went out
+     */
+    @JvmStatic
+    fun sendLocationUpdate(context: Context, fix: LocationFix): Boolean {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS) !=
+                PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "SMS permission not granted, location update not sent")
+            return false
+        }
         
-        // Initiate emergency call
-        val callInitiated = initiateEmergencyCall(context)
+        val userName = UserContextCache.getInstance(context).userName
+        val message = AlertMessageRenderer.forCurrentThread().renderLocationUpdate(
+            userName, fix.latitude, fix.longitude, if (fix.hasAccuracy()) fix.accuracyMeters else 0f,
+            fix.getAgeMillis(SystemClock.elapsedRealtimeNanos()), fix.timeMillis)
         
-        return smsSent || callInitiated
+        val report = ContactAlertSender.getInstance(context).send(message, true, false)
+        Log.d(TAG, "Location update sent: $report")
+        return report.isAnySent
     }
     
     /**
      * Handle emergency without GPS data as fallback
      */
     private fun handleEmergencyWithoutGPS(context: Context): Boolean {
-        val userName = getUserName(context)
-        val timestamp = getCurrentTimestamp()
+        val userName = UserContextCache.getInstance(context).userName
+        val message = AlertMessageRenderer.forCurrentThread()
+            .renderEmergencyWithoutLocation(userName, System.currentTimeMillis())
+        AlertLatencyTracker.getInstance().mark(AlertLatencyTracker.Stage.MESSAGE_BUILT)
         
-        val message = """
-            🚨 Emergency Alert 🚨
-            Name: $userName
-            Location: Unknown
-            Time: $timestamp
-            
-            This person needs immediate assistance!
-        """.trimIndent()
-        
-        val smsSent = sendEmergencySMS(context, message)
-        val callInitiated = initiateEmergencyCall(context)
+        return alertContacts(context, message)
+    }
+    
+    /**
+     * Handle an emergency stored while offline, now that connectivity is back
+     * 
+     * @param latitude Latitude at the time of the alert, or null if unknown
+     * @param longitude Longitude at the time of the alert, or null if unknown
+     * @param triggeredAtMillis When the alert was raised
+     * @return true if at least one SMS or the call went out
+     */
+    @JvmStatic
+    fun handleDelayedEmergency(context: Context, latitude: Double?, longitude: Double?, triggeredAtMillis: Long): Boolean {
+        val userName = UserContextCache.getInstance(context).userName
+        val hasLocation = latitude != null && longitude != null
+        val message = AlertMessageRenderer.forCurrentThread().renderDelayedEmergency(
+            userName, hasLocation, latitude ?: 0.0, longitude ?: 0.0, triggeredAtMillis)
         
-        return smsSent || callInitiated
+        return alertContacts(context, message)
     }
     
     /**
@@ -127,120 +169,55 @@ object EmergencyHandler {
     }
     
     /**
-     * Get user name from SharedPreferences
-     */
-    private fun getUserName(context: Context): String {
-        val settings = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-        return settings.getString(KEY_USER_NAME, "Unknown User") ?: "Unknown User"
-    }
-    
-    /**
-     * Get current timestamp in readable format
-     */
-    private fun getCurrentTimestamp(): String {
-        val sdf = SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
-        return sdf.format(Date())
-    }
-    
-    /**
-     * Construct emergency SMS message
-     */
-    private fun constructEmergencyMessage(
-        userName: String,
-        latitude: Double,
-        longitude: Double,
-        timestamp: String
-    ): String {
-        return """
-            🚨 Emergency Alert 🚨
-            Name: $userName
-            Location: Latitude $latitude, Longitude $longitude
-            Time: $timestamp
-            
-            This person needs immediate assistance!
-            
-            Map link: https://maps.google.com/maps?q=$latitude,$longitude
-        """.trimIndent()
-        
-        // TODO: Support reverse geocoding to convert coordinates into a human-readable address
-    }
-    
-    /**
-     * Send emergency SMS to contacts
+     * Send the SMS to the stored emergency contacts and call the first one, in parallel
+     * 
+     * @return true if at least one SMS or the call went out
      */
-    private fun sendEmergencySMS(context: Context, message: String): Boolean {
-        // Check permission
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS) != 
-                PackageManager.PERMISSION_GRANTED) {
+    private fun alertContacts(context: Context, message: String): Boolean {
+        // Check permissions; whatever is allowed still goes out
+        val canSendSms = ActivityCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS) ==
+                PackageManager.PERMISSION_GRANTED
+        if (!canSendSms) {
             Log.e(TAG, "SMS permission not granted")
             showToast(context, "Cannot send emergency SMS: Permission not granted")
-            return false
-        }
-        
-        try {
-            val smsManager = context.getSystemService(SmsManager::class.java)
-            
-            // Split message if it's too long
-            val parts = smsManager.divideMessage(message)
-            
-            // Send to primary contact
-            smsManager.sendMultipartTextMessage(
-                PRIMARY_EMERGENCY_CONTACT,
-                null,
-                parts,
-                null,
-                null
-            )
-            
-            // Send to secondary contact
-            smsManager.sendMultipartTextMessage(
-                SECONDARY_EMERGENCY_CONTACT,
-                null,
-                parts,
-                null,
-                null
-            )
-            
-            Log.d(TAG, "Emergency SMS sent successfully")
-            return true
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to send emergency SMS", e)
-            showToast(context, "Failed to send emergency SMS: ${e.message}")
-            return false
         }
-    }
-    
-    /**
-     * Initiate emergency call
-     */
-    private fun initiateEmergencyCall(context: Context): Boolean {
-        // Check call phone permission
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.CALL_PHONE) != 
-                PackageManager.PERMISSION_GRANTED) {
+        val canCall = ActivityCompat.checkSelfPermission(context, Manifest.permission.CALL_PHONE) ==
+                PackageManager.PERMISSION_GRANTED
+        if (!canCall) {
             Log.e(TAG, "Call phone permission not granted")
             showToast(context, "Cannot make emergency call: Permission not granted")
+        }
+        if (!canSendSms && !canCall) {
             return false
         }
         
-        try {
-            val callIntent = Intent(Intent.ACTION_CALL)
-            callIntent.data = Uri.parse("tel:$PRIMARY_EMERGENCY_CONTACT")
-            callIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK)
-            context.startActivity(callIntent)
-            
-            Log.d(TAG, "Emergency call initiated")
-            return true
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to initiate emergency call", e)
-            showToast(context, "Failed to initiate emergency call: ${e.message}")
+        val report = ContactAlertSender.getInstance(context).send(message, canSendSms, canCall)
+        if (report.outcomes.isEmpty()) {
+            Log.e(TAG, "No emergency contacts configured")
+            showToast(context, "No emergency contacts found. Please add contacts in settings.")
             return false
         }
+        
+        val failures = report.failures
+        if (failures.isNotEmpty()) {
+            val names = failures.joinToString(", ") { it.name ?: it.phone }
+            showToast(context, "Emergency alert failed for: $names")
+        }
+        if (report.getCount(AlertReport.Kind.SMS, AlertReport.Status.SENT) > 0) {
+            Log.d(TAG, "Emergency SMS sent successfully")
+        }
+        if (report.getCount(AlertReport.Kind.CALL, AlertReport.Status.SENT) > 0) {
+            Log.d(TAG, "Emergency call initiated")
+        }
+        return report.isAnySent
     }
     
     /**
-     * Show toast message
+     * Show toast message on the main thread (handlers may run on dispatcher threads)
      */
     private fun showToast(context: Context, message: String) {
-        Toast.makeText(context, message, Toast.LENGTH_LONG).show()
+        Handler(Looper.getMainLooper()).post {
+            Toast.makeText(context, message, Toast.LENGTH_LONG).show()
+        }
     }
 } 
\ No newline at end of file
@@ -4,6 +4,7 @@ import android.content.SharedPreferences;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import com.example.emerband.utils.ResourceManager;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 
 public class LocationSettingsActivity extends AppCompatActivity {
@@ -11,6 +12,7 @@ public class LocationSettingsActivity extends AppCompatActivity {
     private static final String KEY_HIGH_ACCURACY = "high_accuracy_mode";
 
     private SwitchMaterial switchHighAccuracy;
+    private SwitchMaterial switchLocationFollowUp;
     private SharedPreferences prefs;
 
     @Override
@@ -34,6 +36,14 @@ public class LocationSettingsActivity extends AppCompatActivity {
         switchHighAccuracy.setOnCheckedChangeListener((buttonView, isChecked) -> {
             prefs.edit().putBoolean(KEY_HIGH_ACCURACY, isChecked).apply();
         });
+
+        // Setup follow-up location switch
+        switchLocationFollowUp = findViewById(R.id.switchLocationFollowUp);
+        switchLocationFollowUp.setChecked(ResourceManager.getLocationFollowUpWindowMillis(this) > 0);
+        switchLocationFollowUp.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            ResourceManager.setLocationFollowUpWindowMillis(this,
+                    isChecked ? ResourceManager.DEFAULT_LOCATION_FOLLOW_UP_WINDOW_MS : 0);
+        });
     }
 
     @Override
@@ -10,6 +10,7 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.media.MediaPlayer;
 import android.util.Log;
 import android.view.Menu;
@@ -29,6 +30,11 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 import com.google.android.material.snackbar.Snackbar;
+import com.example.emerband.alert.LocationFollowUp;
+import com.example.emerband.location.LocationCache;
+import com.example.emerband.location.LocationFix;
+import com.example.emerband.location.LocationQuality;
+import com.example.emerband.utils.DiagnosticsReport;
 import com.example.emerband.utils.EmergencyUtils;
 import com.example.emerband.utils.TestingUtils;
 import androidx.appcompat.widget.Toolbar;
@@ -87,6 +93,7 @@ public class MainActivity extends AppCompatActivity {
     private Button btnTestAlert;
     private Button btnTestOffline;
     private Button btnTestEmergency;
+    private Button btnDiagnostics;
     private Toolbar toolbar;
 
     // Additional UI Elements
@@ -173,6 +180,7 @@ public class MainActivity extends AppCompatActivity {
             btnTestFakeCall = findViewById(R.id.btnTestFakeCall);
             btnTestAlert = findViewById(R.id.btnTestAlert);
             btnTestOffline = findViewById(R.id.btnTestOffline);
+            btnDiagnostics = findViewById(R.id.btnDiagnostics);
 
             // Remove FAB initialization since we removed it from layout
         } catch (Exception e) {
@@ -237,28 +245,32 @@ public class MainActivity extends AppCompatActivity {
     
     private void handleEmergency() {
         try {
-            // Get current location
-            EmergencyUtils.getCurrentLocation(this, location -> {
-                try {
-                    // Create Google Maps link with location
-                    String locationStr = "http://maps.google.com/?q=" + 
-                                      location.getLatitude() + "," + 
-                                      location.getLongitude();
-                    
-                    // Send emergency message with location
-                    EmergencyUtils.sendEmergencyMessage(this, locationStr);
-                    
-                    // Make emergency call
-                    EmergencyUtils.makeEmergencyCall(this);
-                    
-                    // Show confirmation toast
-                    Toast.makeText(this, "Emergency protocols activated", Toast.LENGTH_LONG).show();
-                } catch (Exception e) {
-                    Toast.makeText(this, "Error executing emergency protocols: " + e.getMessage(), 
-                                 Toast.LENGTH_LONG).show();
-                    Log.e(TAG, "Error in emergency protocol execution", e);
-                }
-            });
+            long triggeredAtNanos = System.nanoTime();
+            
+            // Send at once with the best location already known; a better fix follows in a second SMS
+            LocationFix fix = LocationCache.getInstance(this).getBestAvailable(null);
+            String locationStr = "";
+            if (fix != null) {
+                // Create Google Maps link with location and how accurate it is
+                StringBuilder link = new StringBuilder("http://maps.google.com/?q=")
+                        .append(fix.getLatitude()).append(',').append(fix.getLongitude());
+                LocationQuality.appendLabel(link, fix.hasAccuracy() ? fix.getAccuracyMeters() : 0,
+                        fix.getAgeMillis(SystemClock.elapsedRealtimeNanos()));
+                locationStr = link.toString();
+            }
+            
+            // Send emergency message with location; returns at once, the SMS go out in the background
+            EmergencyUtils.sendEmergencyMessage(this, locationStr);
+            
+            // Make emergency call while the SMS are being sent
+            EmergencyUtils.makeEmergencyCall(this);
+            
+            // Show confirmation toast
+            Toast.makeText(this, "Emergency protocols activated", Toast.LENGTH_LONG).show();
+            
+            Context appContext = getApplicationContext();
+            LocationFollowUp.getInstance(this).start(fix, triggeredAtNanos,
+                    better -> EmergencyHandler.sendLocationUpdate(appContext, better));
         } catch (Exception e) {
             Toast.makeText(this, "Error handling emergency: " + e.getMessage(), Toast.LENGTH_LONG).show();
             Log.e(TAG, "Error handling emergency", e);
@@ -529,6 +541,16 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        // Diagnostics Button
+        btnDiagnostics.setOnClickListener(v -> {
+            try {
+                showDiagnostics();
+            } catch (Exception e) {
+                Toast.makeText(this, "Error showing diagnostics: " + e.getMessage(), 
+                    Toast.LENGTH_SHORT).show();
+            }
+        });
+
         // Emergency FAB
         fabEmergency.setOnClickListener(v -> {
             try {
@@ -540,6 +562,23 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    private void showDiagnostics() {
+        new AlertDialog.Builder(this)
+            .setTitle("Diagnostics")
+            .setMessage(DiagnosticsReport.build(this))
+            .setPositiveButton("Close", null)
+            .setNeutralButton("Share", (dialog, which) -> shareDiagnostics())
+            .show();
+    }
+
+    private void shareDiagnostics() {
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("text/plain");
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, "Emerband diagnostics");
+        shareIntent.putExtra(Intent.EXTRA_TEXT, DiagnosticsReport.buildExport(this));
+        startActivity(Intent.createChooser(shareIntent, "Share diagnostics"));
+    }
+
     private void testLocation() {
         try {
             if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
@@ -10,13 +10,17 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.emerband.R;
+import com.example.emerband.data.SmsRecipientStatus;
 import com.example.emerband.models.Contact;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ContactViewHolder> {
     private List<Contact> contacts;
     private OnDeleteClickListener onDeleteClickListener;
+    private final Map<String, SmsRecipientStatus> deliveryByPhone = new HashMap<>();
 
     public interface OnDeleteClickListener {
         void onDeleteClick(Contact contact);
@@ -40,6 +44,7 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ContactV
         Contact contact = contacts.get(position);
         holder.nameTextView.setText(contact.getName());
         holder.numberTextView.setText(contact.getPhone());
+        bindDelivery(holder.deliveryTextView, deliveryByPhone.get(contact.getPhone()));
         
         holder.deleteButton.setOnClickListener(v -> {
             int adapterPosition = holder.getAdapterPosition();
@@ -59,15 +64,49 @@ public class ContactAdapter extends RecyclerView.Adapter<ContactAdapter.ContactV
         notifyDataSetChanged();
     }
 
+    /**
+     * Show the delivery state of the latest alert per contact
+     */
+    public void updateDeliveryStatus(List<SmsRecipientStatus> statuses) {
+        deliveryByPhone.clear();
+        if (statuses != null) {
+            for (SmsRecipientStatus status : statuses) {
+                deliveryByPhone.put(status.getPhone(), status);
+            }
+        }
+        notifyDataSetChanged();
+    }
+
+    private static void bindDelivery(TextView view, SmsRecipientStatus status) {
+        if (status == null) {
+            view.setVisibility(View.GONE);
+            return;
+        }
+        if (status.isDelivered()) {
+            view.setText(R.string.delivery_delivered);
+        } else if (status.isAbandoned()) {
+            view.setText(R.string.delivery_failed);
+        } else if (status.getRetryingParts() > 0) {
+            view.setText(view.getContext().getString(R.string.delivery_retrying, status.getAttempts() + 1));
+        } else if (status.isSent()) {
+            view.setText(R.string.delivery_sent);
+        } else {
+            view.setText(R.string.delivery_sending);
+        }
+        view.setVisibility(View.VISIBLE);
+    }
+
     static class ContactViewHolder extends RecyclerView.ViewHolder {
         TextView nameTextView;
         TextView numberTextView;
+        TextView deliveryTextView;
         ImageButton deleteButton;
 
         ContactViewHolder(View itemView) {
             super(itemView);
             nameTextView = itemView.findViewById(R.id.contact_name);
             numberTextView = itemView.findViewById(R.id.contact_number);
+            deliveryTextView = itemView.findViewById(R.id.contact_delivery);
             deleteButton = itemView.findViewById(R.id.delete_button);
         }
     }
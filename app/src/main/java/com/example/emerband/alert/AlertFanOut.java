@@ -0,0 +1,153 @@
+package com.example.emerband.alert;
+
+import com.example.emerband.models.Contact;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends one alert to many recipients at once.
+ *
+ * The call and every SMS are started together on the executor, so the
+ * dispatch takes as long as the slowest single send instead of the sum of
+ * all of them. Sends still running at the deadline are reported as timed
+ * out and the dispatch returns anyway. Each recipient gets an outcome with
+ * its latency in the {@link AlertReport}.
+ *
+ * The sends themselves go through a {@link Channel}. Thread-safe; the
+ * executor needs a thread per send for the full effect.
+ */
+public final class AlertFanOut {
+
+    /**
+     * Carries out single sends; called on executor threads, concurrently
+     */
+    public interface Channel {
+        /**
+         * Hand an SMS to the telephony stack
+         * @param alertId Id of the dispatch, shared by all its recipients
+         * @throws RuntimeException if the SMS could not be sent
+         */
+        void sendSms(long alertId, Contact recipient, String message);
+
+        /**
+         * Start a phone call
+         * @throws RuntimeException if the call could not be started
+         */
+        void startCall(String phone);
+    }
+
+    private final Channel channel;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param channel Performs the sends
+     * @param executor Runs the sends in parallel
+     * @param timeoutMillis Deadline for the whole dispatch
+     */
+    public AlertFanOut(Channel channel, ExecutorService executor, long timeoutMillis) {
+        this.channel = channel;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Send the message to every recipient and start the call, all at once;
+     * blocks until all are done or the deadline passes
+     * @param alertId Id of this dispatch, passed on to the channel
+     * @param smsRecipients Recipients of the SMS; blank and repeated numbers are skipped
+     * @param message SMS text
+     * @param callee Contact to call, or null for no call
+     * @return Outcome per recipient
+     */
+    public AlertReport dispatch(long alertId, List<Contact> smsRecipients, String message, Contact callee) {
+        long startedAt = System.nanoTime();
+
+        List<AlertReport.Kind> kinds = new ArrayList<>();
+        List<Contact> contacts = new ArrayList<>();
+        List<Callable<AlertReport.Outcome>> tasks = new ArrayList<>();
+
+        // The call first, so it gets a thread even when there are more sends than threads
+        if (callee != null && !isBlank(callee.getPhone())) {
+            kinds.add(AlertReport.Kind.CALL);
+            contacts.add(callee);
+            tasks.add(() -> send(alertId, AlertReport.Kind.CALL, callee, message, startedAt));
+        }
+        Set<String> numbers = new HashSet<>();
+        for (Contact contact : smsRecipients) {
+            String phone = contact.getPhone();
+            if (isBlank(phone) || !numbers.add(phone.trim())) {
+                continue;
+            }
+            kinds.add(AlertReport.Kind.SMS);
+            contacts.add(contact);
+            tasks.add(() -> send(alertId, AlertReport.Kind.SMS, contact, message, startedAt));
+        }
+
+        List<Future<AlertReport.Outcome>> futures = null;
+        try {
+            futures = executor.invokeAll(tasks, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // The sends were cancelled; whatever already went out is not known
+            Thread.currentThread().interrupt();
+        }
+
+        long deadlineNanos = System.nanoTime() - startedAt;
+        List<AlertReport.Outcome> outcomes = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            AlertReport.Outcome outcome = futures != null ? getDone(futures.get(i)) : null;
+            if (outcome == null) {
+                Contact contact = contacts.get(i);
+                outcome = new AlertReport.Outcome(kinds.get(i), contact.getName(), contact.getPhone(),
+                        AlertReport.Status.TIMED_OUT, deadlineNanos, null);
+            }
+            outcomes.add(outcome);
+        }
+        return new AlertReport(alertId, outcomes, startedAt, System.nanoTime() - startedAt);
+    }
+
+    private AlertReport.Outcome send(long alertId, AlertReport.Kind kind, Contact contact, String message,
+                                     long startedAt) {
+        AlertReport.Status status = AlertReport.Status.SENT;
+        String error = null;
+        try {
+            if (kind == AlertReport.Kind.CALL) {
+                channel.startCall(contact.getPhone());
+            } else {
+                channel.sendSms(alertId, contact, message);
+            }
+        } catch (RuntimeException e) {
+            status = AlertReport.Status.FAILED;
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        return new AlertReport.Outcome(kind, contact.getName(), contact.getPhone(), status,
+                System.nanoTime() - startedAt, error);
+    }
+
+    /**
+     * Get the outcome of a finished send, or null if it was cancelled at the deadline
+     */
+    private static AlertReport.Outcome getDone(Future<AlertReport.Outcome> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (CancellationException | ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    private static boolean isBlank(String phone) {
+        return phone == null || phone.trim().isEmpty();
+    }
+}
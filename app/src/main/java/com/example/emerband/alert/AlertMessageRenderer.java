@@ -0,0 +1,349 @@
+package com.example.emerband.alert;
+
+import com.example.emerband.location.LocationQuality;
+
+/**
+ * Renders the alert SMS texts from templates compiled once per process.
+ *
+ * Each message comes in several wordings, richest first: the emoji
+ * heading (UCS-2), the same text in the GSM alphabet, and a compact text
+ * with the name, location and time up front. All are rendered and an
+ * {@link SmsPacker} keeps the one sent in the fewest segments with the
+ * critical fields in the first one. Names outside the GSM alphabet are
+ * folded into it when that keeps them readable (see {@link GsmAlphabet#fold}).
+ *
+ * Locations can carry a quality label (see {@link LocationQuality}).
+ *
+ * Each thread gets its own renderer ({@link #forCurrentThread()}) with
+ * reused buffers and timestamp formatter. Coordinates are written with up
+ * to six decimals (about 0.1 m), trailing zeros dropped.
+ */
+public final class AlertMessageRenderer implements MessageTemplate.FieldSource {
+
+    // Template fields, in the order given to compile()
+    private static final String[] FIELD_NAMES = {"name", "lat", "lon", "time", "quality"};
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_LATITUDE = 1;
+    private static final int FIELD_LONGITUDE = 2;
+    private static final int FIELD_TIME = 3;
+    private static final int FIELD_QUALITY = 4;
+
+    // Rotating light emoji
+    private static final String SIREN = "\uD83D\uDEA8";
+
+    private static final String MAP_LINK = "https://maps.google.com/maps?q={lat},{lon}";
+
+    /**
+     * One wording: the critical head, the rest, and which form of the name it uses
+     */
+    private static final class Layout {
+        final MessageTemplate head;
+        final MessageTemplate tail;
+        final boolean foldedName;
+
+        Layout(String head, String tail, boolean foldedName) {
+            this.head = MessageTemplate.compile(head, FIELD_NAMES);
+            this.tail = MessageTemplate.compile(tail, FIELD_NAMES);
+            this.foldedName = foldedName;
+        }
+    }
+
+    private static final Layout[] EMERGENCY = {
+            new Layout(SIREN + " Emergency Alert " + SIREN + "\n"
+                    + "Name: {name}\n"
+                    + "Location: Latitude {lat}, Longitude {lon}{quality}\n"
+                    + "Time: {time}\n",
+                    "\n"
+                            + "This person needs immediate assistance!\n"
+                            + "\n"
+                            + "Map link: " + MAP_LINK, false),
+            new Layout("SOS Emergency Alert SOS\n"
+                    + "Name: {name}\n"
+                    + "Location: Latitude {lat}, Longitude {lon}{quality}\n"
+                    + "Time: {time}\n",
+                    "\n"
+                            + "This person needs immediate assistance!\n"
+                            + "\n"
+                            + "Map link: " + MAP_LINK, true),
+            new Layout("SOS! {name} needs immediate help.\n"
+                    + "Location: {lat},{lon}{quality}\n"
+                    + "Time: {time}\n",
+                    MAP_LINK, true),
+            new Layout("SOS! {name} needs immediate help.\n"
+                    + "Location: {lat},{lon}{quality}\n"
+                    + "Time: {time}\n",
+                    MAP_LINK, false),
+    };
+
+    private static final Layout[] LOCATION_UPDATE = {
+            new Layout(SIREN + " Location update " + SIREN + "\n"
+                    + "Name: {name}\n"
+                    + "Location: Latitude {lat}, Longitude {lon}{quality}\n"
+                    + "Time: {time}\n",
+                    "\n"
+                            + "More precise than the first alert.\n"
+                            + "\n"
+                            + "Map link: " + MAP_LINK, false),
+            new Layout("SOS Location update SOS\n"
+                    + "Name: {name}\n"
+                    + "Location: Latitude {lat}, Longitude {lon}{quality}\n"
+                    + "Time: {time}\n",
+                    "\n"
+                            + "More precise than the first alert.\n"
+                            + "\n"
+                            + "Map link: " + MAP_LINK, true),
+            new Layout("SOS update: {name} is at {lat},{lon}{quality}\n"
+                    + "Time: {time}\n",
+                    MAP_LINK, true),
+            new Layout("SOS update: {name} is at {lat},{lon}{quality}\n"
+                    + "Time: {time}\n",
+                    MAP_LINK, false),
+    };
+
+    private static final Layout[] EMERGENCY_NO_LOCATION = {
+            new Layout(SIREN + " Emergency Alert " + SIREN + "\n"
+                    + "Name: {name}\n"
+                    + "Location: Unknown\n"
+                    + "Time: {time}\n",
+                    "\n"
+                            + "This person needs immediate assistance!", false),
+            new Layout("SOS Emergency Alert SOS\n"
+                    + "Name: {name}\n"
+                    + "Location: Unknown\n"
+                    + "Time: {time}\n",
+                    "\n"
+                            + "This person needs immediate assistance!", true),
+            new Layout("SOS! {name} needs immediate help.\n"
+                    + "Location unknown\n"
+                    + "Time: {time}",
+                    "", false),
+    };
+
+    private static final Layout[] DELAYED_EMERGENCY = {
+            new Layout(SIREN + " DELAYED EMERGENCY ALERT " + SIREN + "\n"
+                    + "Name: {name}\n"
+                    + "Alert triggered at: {time}\n"
+                    + "Location: Latitude {lat}, Longitude {lon}\n",
+                    "This alert was delayed due to connectivity issues.\n"
+                            + "\n"
+                            + "Map link: " + MAP_LINK, false),
+            new Layout("SOS DELAYED EMERGENCY ALERT SOS\n"
+                    + "Name: {name}\n"
+                    + "Alert triggered at: {time}\n"
+                    + "Location: Latitude {lat}, Longitude {lon}\n",
+                    "This alert was delayed due to connectivity issues.\n"
+                            + "\n"
+                            + "Map link: " + MAP_LINK, true),
+            new Layout("SOS (delayed) {name} needed immediate help.\n"
+                    + "Time: {time}\n"
+                    + "Location: {lat},{lon}\n",
+                    MAP_LINK, true),
+            new Layout("SOS (delayed) {name} needed immediate help.\n"
+                    + "Time: {time}\n"
+                    + "Location: {lat},{lon}\n",
+                    MAP_LINK, false),
+    };
+
+    private static final Layout[] DELAYED_EMERGENCY_NO_LOCATION = {
+            new Layout(SIREN + " DELAYED EMERGENCY ALERT " + SIREN + "\n"
+                    + "Name: {name}\n"
+                    + "Alert triggered at: {time}\n"
+                    + "Location: unavailable at time of alert\n",
+                    "This alert was delayed due to connectivity issues.", false),
+            new Layout("SOS DELAYED EMERGENCY ALERT SOS\n"
+                    + "Name: {name}\n"
+                    + "Alert triggered at: {time}\n"
+                    + "Location: unavailable at time of alert\n",
+                    "This alert was delayed due to connectivity issues.", true),
+            new Layout("SOS (delayed) {name} needed immediate help.\n"
+                    + "Time: {time}\n"
+                    + "Location unknown",
+                    "", false),
+    };
+
+    private static final int MAX_LAYOUTS = 4;
+    private static final int INITIAL_CAPACITY = 320;
+    private static final long MICRO_DEGREES = 1000000;
+
+    private static final ThreadLocal<AlertMessageRenderer> RENDERERS = new ThreadLocal<AlertMessageRenderer>() {
+        @Override
+        protected AlertMessageRenderer initialValue() {
+            return new AlertMessageRenderer();
+        }
+    };
+
+    private final StringBuilder[] buffers = new StringBuilder[MAX_LAYOUTS];
+    private final TimestampFormatter timestampFormatter = new TimestampFormatter();
+    private final SmsPacker packer = new SmsPacker();
+
+    // Last name folded into the GSM alphabet (names rarely change)
+    private String foldSource;
+    private String foldResult;
+
+    // Values of the message being rendered
+    private String name;
+    private double latitude;
+    private double longitude;
+    private long timeMillis;
+    private float accuracyMeters;
+    private long fixAgeMillis;
+
+    // Size of the last message returned
+    private SmsLength lastLength;
+
+    private AlertMessageRenderer() {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new StringBuilder(INITIAL_CAPACITY);
+        }
+    }
+
+    /**
+     * Get the renderer of the calling thread
+     */
+    public static AlertMessageRenderer forCurrentThread() {
+        return RENDERERS.get();
+    }
+
+    /**
+     * Emergency message with the location and a map link
+     */
+    public String renderEmergency(String userName, double latitude, double longitude, long timeMillis) {
+        return renderEmergency(userName, latitude, longitude, 0, 0, timeMillis);
+    }
+
+    /**
+     * Emergency message with the location, how accurate and how old it is, and a map link
+     * @param accuracyMeters Accuracy of the fix, or 0 if unknown
+     * @param fixAgeMillis Age of the fix when the alert is sent
+     */
+    public String renderEmergency(String userName, double latitude, double longitude, float accuracyMeters,
+                                  long fixAgeMillis, long timeMillis) {
+        return pack(EMERGENCY, userName, latitude, longitude, accuracyMeters, fixAgeMillis, timeMillis).toString();
+    }
+
+    /**
+     * Follow-up with a better location than the one in the alert
+     * @param accuracyMeters Accuracy of the fix, or 0 if unknown
+     * @param fixAgeMillis Age of the fix when the follow-up is sent
+     * @param timeMillis When the fix was taken
+     */
+    public String renderLocationUpdate(String userName, double latitude, double longitude, float accuracyMeters,
+                                       long fixAgeMillis, long timeMillis) {
+        return pack(LOCATION_UPDATE, userName, latitude, longitude, accuracyMeters, fixAgeMillis, timeMillis)
+                .toString();
+    }
+
+    /**
+     * Emergency message when the location is not known
+     */
+    public String renderEmergencyWithoutLocation(String userName, long timeMillis) {
+        return pack(EMERGENCY_NO_LOCATION, userName, 0, 0, 0, 0, timeMillis).toString();
+    }
+
+    /**
+     * Emergency message sent late, after connectivity returned
+     * @param hasLocation Whether latitude and longitude are known
+     * @param triggeredAtMillis When the alert was raised
+     */
+    public String renderDelayedEmergency(String userName, boolean hasLocation, double latitude, double longitude,
+                                         long triggeredAtMillis) {
+        Layout[] layouts = hasLocation ? DELAYED_EMERGENCY : DELAYED_EMERGENCY_NO_LOCATION;
+        return pack(layouts, userName, latitude, longitude, 0, 0, triggeredAtMillis).toString();
+    }
+
+    /**
+     * Get the encoding and segment count of the last message rendered on this thread
+     */
+    public SmsLength getLastLength() {
+        return lastLength;
+    }
+
+    /**
+     * Render every wording into the reused buffers and return the one taking
+     * the fewest segments; valid until the next render on this thread
+     */
+    CharSequence pack(Layout[] layouts, String userName, double latitude, double longitude, float accuracyMeters,
+                      long fixAgeMillis, long timeMillis) {
+        String folded = foldName(userName);
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyMeters = accuracyMeters;
+        this.fixAgeMillis = fixAgeMillis;
+        this.timeMillis = timeMillis;
+
+        packer.reset();
+        int best = 0;
+        for (int i = 0; i < layouts.length; i++) {
+            Layout layout = layouts[i];
+            if (layout.foldedName && folded == null) {
+                // The name has no GSM form
+                continue;
+            }
+            name = layout.foldedName ? folded : userName;
+            StringBuilder buffer = buffers[i];
+            buffer.setLength(0);
+            layout.head.render(buffer, this);
+            int criticalLength = buffer.length();
+            layout.tail.render(buffer, this);
+            if (packer.offer(buffer, criticalLength)) {
+                best = i;
+            }
+        }
+        name = null;
+        lastLength = packer.getBestLength();
+        return buffers[best];
+    }
+
+    private String foldName(String userName) {
+        if (!userName.equals(foldSource)) {
+            foldSource = userName;
+            foldResult = GsmAlphabet.fold(userName);
+        }
+        return foldResult;
+    }
+
+    @Override
+    public void appendField(int field, StringBuilder out) {
+        switch (field) {
+            case FIELD_NAME:
+                out.append(name);
+                break;
+            case FIELD_LATITUDE:
+                appendCoordinate(out, latitude);
+                break;
+            case FIELD_LONGITUDE:
+                appendCoordinate(out, longitude);
+                break;
+            case FIELD_TIME:
+                timestampFormatter.appendTo(out, timeMillis);
+                break;
+            case FIELD_QUALITY:
+                LocationQuality.appendLabel(out, accuracyMeters, fixAgeMillis);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    /**
+     * Append a coordinate with up to six decimals, e.g. "12.9716" or "-0.5"
+     */
+    static void appendCoordinate(StringBuilder out, double degrees) {
+        long micro = Math.round(Math.abs(degrees) * MICRO_DEGREES);
+        if (degrees < 0 && micro != 0) {
+            out.append('-');
+        }
+        out.append(micro / MICRO_DEGREES).append('.');
+        long fraction = micro % MICRO_DEGREES;
+        if (fraction == 0) {
+            out.append('0');
+            return;
+        }
+        long digit = MICRO_DEGREES / 10;
+        while (fraction != 0) {
+            out.append((char) ('0' + fraction / digit));
+            fraction %= digit;
+            digit /= 10;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.emerband.alert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of one alert fan-out: what happened to each SMS and the call,
+ * and how long each took from the start of the dispatch.
+ */
+public final class AlertReport {
+
+    /**
+     * What was sent to a recipient
+     */
+    public enum Kind {
+        SMS,
+        CALL
+    }
+
+    /**
+     * How a send ended
+     */
+    public enum Status {
+        // Handed to the telephony stack (an SMS is not delivered yet)
+        SENT,
+        FAILED,
+        // Still running at the dispatch deadline
+        TIMED_OUT
+    }
+
+    /**
+     * Outcome for one recipient and kind
+     */
+    public static final class Outcome {
+        private final Kind kind;
+        private final String name;
+        private final String phone;
+        private final Status status;
+        private final long latencyNanos;
+        private final String error;
+
+        Outcome(Kind kind, String name, String phone, Status status, long latencyNanos, String error) {
+            this.kind = kind;
+            this.name = name;
+            this.phone = phone;
+            this.status = status;
+            this.latencyNanos = latencyNanos;
+            this.error = error;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPhone() {
+            return phone;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Get the time from the start of the dispatch to the end of this send
+         * (the deadline if it timed out)
+         */
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * Get the failure reason, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + " (" + phone + "): " + status
+                    + " in " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + "ms"
+                    + (error != null ? " - " + error : "");
+        }
+    }
+
+    private final long alertId;
+    private final List<Outcome> outcomes;
+    private final long startedAtNanos;
+    private final long totalNanos;
+
+    AlertReport(long alertId, List<Outcome> outcomes, long startedAtNanos, long totalNanos) {
+        this.alertId = alertId;
+        this.outcomes = Collections.unmodifiableList(new ArrayList<>(outcomes));
+        this.startedAtNanos = startedAtNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Get the id of the dispatch, which also groups its SMS delivery state
+     */
+    public long getAlertId() {
+        return alertId;
+    }
+
+    public List<Outcome> getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * Get System.nanoTime() when the dispatch started
+     */
+    public long getStartedAtNanos() {
+        return startedAtNanos;
+    }
+
+    /**
+     * Get the wall time of the whole dispatch
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public int getCount(Kind kind, Status status) {
+        int count = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome.kind == kind && outcome.status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether at least one SMS or the call went out
+     */
+    public boolean isAnySent() {
+        for (Outcome outcome : outcomes) {
+            if (outcome.status == Status.SENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the latency of the fastest successful send of a kind, or -1 if none succeeded
+     */
+    public long getFirstSentNanos(Kind kind) {
+        long first = -1;
+        for (Outcome outcome : outcomes) {
+            if (outcome.kind == kind && outcome.status == Status.SENT
+                    && (first < 0 || outcome.latencyNanos < first)) {
+                first = outcome.latencyNanos;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Get the recipients whose SMS or call did not go out
+     */
+    public List<Outcome> getFailures() {
+        List<Outcome> failures = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            if (outcome.status != Status.SENT) {
+                failures.add(outcome);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Human-readable report, one line per recipient
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("sms=").append(getCount(Kind.SMS, Status.SENT)).append(" sent/")
+                .append(getCount(Kind.SMS, Status.FAILED)).append(" failed/")
+                .append(getCount(Kind.SMS, Status.TIMED_OUT)).append(" timed out")
+                .append(" call=").append(getCount(Kind.CALL, Status.SENT) > 0 ? "started" : "none")
+                .append(" total=").append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append("ms");
+        for (Outcome outcome : outcomes) {
+            sb.append("\n  ").append(outcome);
+        }
+        return sb.toString();
+    }
+}
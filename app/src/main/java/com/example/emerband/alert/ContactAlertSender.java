@@ -0,0 +1,259 @@
+package com.example.emerband.alert;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.emerband.database.DatabaseHelper;
+import com.example.emerband.metrics.AlertLatencyTracker;
+import com.example.emerband.models.Contact;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends alerts to the emergency contacts stored in {@link DatabaseHelper}.
+ *
+ * Every contact gets the SMS and the first contact (the primary one) gets
+ * the call, all started at the same time by an {@link AlertFanOut}. The
+ * SMS go through {@link SmsDeliveryTracker}, which follows each one until
+ * it is delivered. The outcome per contact and the SMS size (encoding and
+ * segments) are logged, and the totals and the last report are kept for
+ * the diagnostics report.
+ *
+ * {@link #send} blocks until the dispatch is done and is meant for
+ * background threads; {@link #sendAsync} returns at once, for the main
+ * thread.
+ */
+public class ContactAlertSender {
+    private static final String TAG = "ContactAlertSender";
+
+    // Sends run in parallel up to this many; further contacts wait for a thread
+    private static final int MAX_PARALLEL_SENDS = 8;
+
+    // Upper bound on one dispatch; the telephony calls normally return in milliseconds
+    private static final long DISPATCH_TIMEOUT_MS = 10000;
+
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    // Asynchronous dispatches run side by side up to this many
+    private static final int MAX_PARALLEL_DISPATCHES = 2;
+
+    /**
+     * Receives the outcome of an asynchronous dispatch
+     */
+    public interface ReportListener {
+        /**
+         * Called once, on a background thread
+         */
+        void onReport(AlertReport report);
+    }
+
+    private static ContactAlertSender instance;
+
+    private final Context context;
+    private final AlertFanOut fanOut;
+    private final ExecutorService dispatchExecutor;
+
+    // Totals over all dispatches
+    private final AtomicLong dispatches = new AtomicLong();
+    private final AtomicLong smsSent = new AtomicLong();
+    private final AtomicLong smsFailed = new AtomicLong();
+    private final AtomicLong callsStarted = new AtomicLong();
+    private final AtomicLong maxTotalNanos = new AtomicLong();
+    private final AtomicLong lastAlertId = new AtomicLong();
+    private final AtomicLong maxSegments = new AtomicLong();
+    private volatile AlertReport lastReport;
+    private volatile SmsLength lastLength;
+
+    private ContactAlertSender(Context context) {
+        this.context = context.getApplicationContext();
+
+        ThreadPoolExecutor executor = createExecutor(MAX_PARALLEL_SENDS, "AlertSend-");
+        this.fanOut = new AlertFanOut(new TelephonyChannel(this.context), executor, DISPATCH_TIMEOUT_MS);
+        // Waits for the sends of an asynchronous dispatch, so the sends keep all their threads
+        this.dispatchExecutor = createExecutor(MAX_PARALLEL_DISPATCHES, "AlertDispatch-");
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads, String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new SendThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Get the singleton instance of ContactAlertSender
+     */
+    public static synchronized ContactAlertSender getInstance(Context context) {
+        if (instance == null) {
+            instance = new ContactAlertSender(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Send an alert to the stored contacts; blocks until every send is done
+     * or the deadline passes. SMS and call stages are recorded against the
+     * signal traced on the calling thread.
+     * @param message SMS text
+     * @param sendSms Whether to send the SMS (false without the SMS permission)
+     * @param call Whether to call the first contact (false without the call permission)
+     * @return Outcome per contact; no outcomes if there are no contacts
+     */
+    public AlertReport send(String message, boolean sendSms, boolean call) {
+        List<Contact> contacts = loadContacts();
+        Contact callee = call && !contacts.isEmpty() ? contacts.get(0) : null;
+        List<Contact> smsRecipients = sendSms ? contacts : Collections.<Contact>emptyList();
+
+        SmsLength length = SmsPacker.getDefaultCounter().measure(message);
+        AlertReport report = fanOut.dispatch(nextAlertId(), smsRecipients, message, callee);
+        record(report, length);
+        Log.d(TAG, "Alert sent to " + contacts.size() + " contact(s) as " + length + " in "
+                + TimeUnit.NANOSECONDS.toMillis(report.getTotalNanos()) + "ms: " + report);
+
+        AlertLatencyTracker latencyTracker = AlertLatencyTracker.getInstance();
+        long firstSmsNanos = report.getFirstSentNanos(AlertReport.Kind.SMS);
+        if (firstSmsNanos >= 0) {
+            latencyTracker.mark(AlertLatencyTracker.Stage.SMS_SENT, report.getStartedAtNanos() + firstSmsNanos);
+        }
+        long callNanos = report.getFirstSentNanos(AlertReport.Kind.CALL);
+        if (callNanos >= 0) {
+            latencyTracker.mark(AlertLatencyTracker.Stage.CALL_STARTED, report.getStartedAtNanos() + callNanos);
+        }
+        return report;
+    }
+
+    /**
+     * Send an alert to the stored contacts without waiting for it; the call
+     * and the SMS are started together as with {@link #send}
+     * @param message SMS text
+     * @param sendSms Whether to send the SMS (false without the SMS permission)
+     * @param call Whether to call the first contact (false without the call permission)
+     * @param listener Receives the outcome per contact, or null
+     * @return The outcome, once the dispatch is done
+     */
+    public Future<AlertReport> sendAsync(String message, boolean sendSms, boolean call, ReportListener listener) {
+        return dispatchExecutor.submit(() -> {
+            AlertReport report = send(message, sendSms, call);
+            if (listener != null) {
+                listener.onReport(report);
+            }
+            return report;
+        });
+    }
+
+    /**
+     * Human-readable totals and the last dispatch
+     */
+    public String getSummary() {
+        AlertReport report = lastReport;
+        SmsLength length = lastLength;
+        return "dispatches=" + dispatches.get()
+                + " smsSent=" + smsSent.get()
+                + " smsFailed=" + smsFailed.get()
+                + " calls=" + callsStarted.get()
+                + " maxTotal=" + TimeUnit.NANOSECONDS.toMillis(maxTotalNanos.get()) + "ms"
+                + " maxSegments=" + maxSegments.get()
+                + (length != null ? "\nlast sms: " + length : "")
+                + (report != null ? "\nlast: " + report : "");
+    }
+
+    /**
+     * Get a new alert id; the current time, kept increasing
+     */
+    private long nextAlertId() {
+        long now = System.currentTimeMillis();
+        long last;
+        long next;
+        do {
+            last = lastAlertId.get();
+            next = Math.max(now, last + 1);
+        } while (!lastAlertId.compareAndSet(last, next));
+        return next;
+    }
+
+    private List<Contact> loadContacts() {
+        try {
+            return new DatabaseHelper(context).getAllContacts();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error reading emergency contacts", e);
+            return new ArrayList<>();
+        }
+    }
+
+    private void record(AlertReport report, SmsLength length) {
+        dispatches.incrementAndGet();
+        smsSent.addAndGet(report.getCount(AlertReport.Kind.SMS, AlertReport.Status.SENT));
+        smsFailed.addAndGet(report.getCount(AlertReport.Kind.SMS, AlertReport.Status.FAILED)
+                + report.getCount(AlertReport.Kind.SMS, AlertReport.Status.TIMED_OUT));
+        callsStarted.addAndGet(report.getCount(AlertReport.Kind.CALL, AlertReport.Status.SENT));
+        long total = report.getTotalNanos();
+        long max;
+        while (total > (max = maxTotalNanos.get()) && !maxTotalNanos.compareAndSet(max, total)) {
+            // Retry until the max is updated or another dispatch took longer
+        }
+        long segments = length.getSegments();
+        while (segments > (max = maxSegments.get()) && !maxSegments.compareAndSet(max, segments)) {
+            // Same for the longest message
+        }
+        lastReport = report;
+        lastLength = length;
+    }
+
+    /**
+     * Sends through the delivery tracker and the dialer
+     */
+    private static final class TelephonyChannel implements AlertFanOut.Channel {
+        private final Context context;
+
+        TelephonyChannel(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void sendSms(long alertId, Contact recipient, String message) {
+            SmsDeliveryTracker.getInstance(context).send(alertId, recipient, message);
+        }
+
+        @Override
+        public void startCall(String phone) {
+            Intent callIntent = new Intent(Intent.ACTION_CALL);
+            callIntent.setData(Uri.parse("tel:" + phone));
+            callIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            context.startActivity(callIntent);
+        }
+    }
+
+    private static final class SendThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        SendThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + count.incrementAndGet());
+            // Sends run on behalf of an emergency
+            thread.setPriority(Thread.MAX_PRIORITY);
+            return thread;
+        }
+    }
+}
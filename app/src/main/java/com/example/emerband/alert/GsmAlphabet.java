@@ -0,0 +1,159 @@
+package com.example.emerband.alert;
+
+import java.text.Normalizer;
+
+/**
+ * The GSM 7-bit default alphabet and its extension table (3GPP TS 23.038),
+ * for counting SMS segments and folding text into the alphabet.
+ *
+ * A text made only of these characters is sent at 160 septets per SMS
+ * (153 per part when split), extension characters taking two septets.
+ * Any other character switches the whole message to UCS-2 at 70 chars
+ * per SMS (67 per part). National language shift tables are not counted
+ * here; the platform counter applies the ones the carrier enabled.
+ */
+public final class GsmAlphabet implements SegmentCounter {
+
+    public static final int GSM_SINGLE_SEGMENT = 160;
+    public static final int GSM_MULTIPART_SEGMENT = 153;
+    public static final int UCS2_SINGLE_SEGMENT = 70;
+    public static final int UCS2_MULTIPART_SEGMENT = 67;
+
+    // Default alphabet characters outside ASCII
+    private static final String BASIC_NON_ASCII =
+            "\u00A3\u00A5\u00E8\u00E9\u00F9\u00EC\u00F2\u00C7\u00D8\u00F8\u00C5\u00E5"
+                    + "\u0394\u03A6\u0393\u039B\u03A9\u03A0\u03A8\u03A3\u0398\u039E"
+                    + "\u00C6\u00E6\u00DF\u00C9\u00A4\u00A1\u00C4\u00D6\u00D1\u00DC\u00A7"
+                    + "\u00BF\u00E4\u00F6\u00F1\u00FC\u00E0";
+
+    // Extension table characters (escape + one septet each)
+    private static final String EXTENSION = "\f^{}\\[~]|\u20AC";
+
+    // Rotating light emoji used in the alert headings
+    private static final int SIREN = 0x1F6A8;
+
+    private static final boolean[] BASIC_ASCII = new boolean[128];
+
+    static {
+        for (char c = ' '; c < 127; c++) {
+            BASIC_ASCII[c] = true;
+        }
+        for (int i = 0; i < EXTENSION.length(); i++) {
+            char c = EXTENSION.charAt(i);
+            if (c < 128) {
+                BASIC_ASCII[c] = false;
+            }
+        }
+        BASIC_ASCII['`'] = false;
+        BASIC_ASCII['\n'] = true;
+        BASIC_ASCII['\r'] = true;
+    }
+
+    /**
+     * Get the septets a character takes: 1 or 2, or 0 if it is not in the alphabet
+     */
+    public static int septets(char c) {
+        if (c < 128 ? BASIC_ASCII[c] : BASIC_NON_ASCII.indexOf(c) >= 0) {
+            return 1;
+        }
+        return EXTENSION.indexOf(c) >= 0 ? 2 : 0;
+    }
+
+    /**
+     * Whether a text can be sent in GSM 7-bit
+     */
+    public static boolean isEncodable(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (septets(text.charAt(i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SmsLength measure(CharSequence text) {
+        int septetCount = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int size = septets(text.charAt(i));
+            if (size == 0) {
+                int chars = text.length();
+                int segments = chars <= UCS2_SINGLE_SEGMENT ? 1 : divideRoundUp(chars, UCS2_MULTIPART_SEGMENT);
+                return new SmsLength(true, chars, segments,
+                        segments == 1 ? UCS2_SINGLE_SEGMENT : UCS2_MULTIPART_SEGMENT);
+            }
+            septetCount += size;
+        }
+        int segments = septetCount <= GSM_SINGLE_SEGMENT ? 1 : divideRoundUp(septetCount, GSM_MULTIPART_SEGMENT);
+        return new SmsLength(false, septetCount, segments,
+                segments == 1 ? GSM_SINGLE_SEGMENT : GSM_MULTIPART_SEGMENT);
+    }
+
+    /**
+     * Rewrite a text into the alphabet where the meaning survives: the siren
+     * emoji becomes "!!", typographic quotes and dashes become plain ones and
+     * letters lose the accents the alphabet lacks (a Turkish S-cedilla becomes "S").
+     * @return The folded text, or null if some character has no equivalent
+     */
+    public static String fold(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+            if (codePoint < 0x10000 && septets((char) codePoint) > 0) {
+                out.append((char) codePoint);
+            } else if (!foldCharacter(codePoint, out)) {
+                return null;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean foldCharacter(int codePoint, StringBuilder out) {
+        switch (codePoint) {
+            case SIREN:
+                out.append("!!");
+                return true;
+            case 0x2018: // Single quotes
+            case 0x2019:
+                out.append('\'');
+                return true;
+            case 0x201C: // Double quotes
+            case 0x201D:
+                out.append('"');
+                return true;
+            case 0x2013: // Dashes
+            case 0x2014:
+                out.append('-');
+                return true;
+            case 0x2026: // Ellipsis
+                out.append("...");
+                return true;
+            case 0x00A0: // No-break space
+                out.append(' ');
+                return true;
+            default:
+                break;
+        }
+        if (codePoint >= 0x10000) {
+            return false;
+        }
+        // Keep the base letter, drop the combining marks
+        String decomposed = Normalizer.normalize(String.valueOf((char) codePoint), Normalizer.Form.NFD);
+        int kept = 0;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (septets(c) > 0) {
+                out.append(c);
+                kept++;
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return kept > 0;
+    }
+
+    private static int divideRoundUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.emerband.alert;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.emerband.location.LocationFix;
+import com.example.emerband.location.LocationQuality;
+import com.example.emerband.location.LocationRace;
+import com.example.emerband.metrics.LatencyHistogram;
+import com.example.emerband.utils.ResourceManager;
+import com.example.emerband.utils.WakeLockTracker;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second phase of an alert: a better location, sent in one follow-up SMS.
+ *
+ * The alert itself goes out at once with the best fix already known and
+ * its quality label, so it never waits for GPS. Then, unless that fix was
+ * already good, a {@link LocationRace} runs for the follow-up window
+ * ({@link ResourceManager#getLocationFollowUpWindowMillis}) for a fix
+ * better than the one sent (see {@link LocationRace#refine}); if its fix is
+ * significantly better ({@link LocationQuality#isSignificantlyBetter}),
+ * the {@link Sender} sends it. At most one follow-up per alert.
+ *
+ * Time to the first alert and time to a good fix are recorded separately,
+ * both from the trigger. Follow-ups are sent on one background thread.
+ */
+public class LocationFollowUp {
+    private static final String TAG = "LocationFollowUp";
+
+    // Keeps the CPU awake a little past the window for the follow-up to be sent
+    private static final long WAKE_LOCK_SLACK_MS = 15000;
+
+    /**
+     * Sends the follow-up
+     */
+    public interface Sender {
+        /**
+         * Called on a background thread
+         * @param fix The better fix
+         */
+        void sendUpdate(LocationFix fix);
+    }
+
+    private static LocationFollowUp instance;
+
+    private final Context context;
+    private final ExecutorService executor;
+    private final LatencyHistogram firstAlertLatency = new LatencyHistogram();
+    private final LatencyHistogram goodFixLatency = new LatencyHistogram();
+
+    // Totals since start
+    private final AtomicLong alerts = new AtomicLong();
+    private final AtomicLong goodAtFirst = new AtomicLong();
+    private final AtomicLong followUpsSent = new AtomicLong();
+    private final AtomicLong noImprovement = new AtomicLong();
+
+    private LocationFollowUp(Context context) {
+        this.context = context.getApplicationContext();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "LocationFollowUp"));
+    }
+
+    /**
+     * Get the singleton instance of LocationFollowUp
+     */
+    public static synchronized LocationFollowUp getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocationFollowUp(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Call right after the first alert went out
+     * @param sentFix Fix the alert carried, or null if it had none
+     * @param triggeredAtNanos System.nanoTime() when the alert was triggered
+     * @param sender Sends the follow-up if a better fix is found
+     */
+    public void start(LocationFix sentFix, long triggeredAtNanos, Sender sender) {
+        alerts.incrementAndGet();
+        firstAlertLatency.recordNanos(System.nanoTime() - triggeredAtNanos);
+
+        if (sentFix != null && sentFix.getEffectiveAccuracyMeters(SystemClock.elapsedRealtimeNanos())
+                <= LocationRace.GOOD_ENOUGH_METERS) {
+            goodAtFirst.incrementAndGet();
+            goodFixLatency.recordNanos(System.nanoTime() - triggeredAtNanos);
+            return;
+        }
+        long windowMillis = ResourceManager.getLocationFollowUpWindowMillis(context);
+        if (windowMillis <= 0) {
+            return;
+        }
+
+        WakeLockTracker wakeLockTracker = WakeLockTracker.getInstance(context);
+        WakeLockTracker.Token wakeLock = wakeLockTracker.acquire(WakeLockTracker.REASON_LOCATION,
+                windowMillis + WAKE_LOCK_SLACK_MS);
+        LocationRace.getInstance(context).refine(sentFix, windowMillis, fix -> {
+            if (!LocationQuality.isSignificantlyBetter(fix, sentFix, SystemClock.elapsedRealtimeNanos())) {
+                noImprovement.incrementAndGet();
+                wakeLockTracker.release(wakeLock);
+                return;
+            }
+            goodFixLatency.recordNanos(System.nanoTime() - triggeredAtNanos);
+            executor.execute(() -> {
+                try {
+                    sender.sendUpdate(fix);
+                    followUpsSent.incrementAndGet();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error sending location update", e);
+                } finally {
+                    wakeLockTracker.release(wakeLock);
+                }
+            });
+        });
+    }
+
+    /**
+     * Human-readable counters and latencies
+     */
+    public String getSummary() {
+        return "alerts=" + alerts.get()
+                + " goodAtFirst=" + goodAtFirst.get()
+                + " followUps=" + followUpsSent.get()
+                + " noImprovement=" + noImprovement.get()
+                + "\nfirst alert: " + describe(firstAlertLatency)
+                + "\ngood fix: " + describe(goodFixLatency);
+    }
+
+    private static String describe(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "n=0";
+        }
+        return "n=" + histogram.getCount()
+                + " p50=" + TimeUnit.MICROSECONDS.toMillis(histogram.getPercentileMicros(50))
+                + " p90=" + TimeUnit.MICROSECONDS.toMillis(histogram.getPercentileMicros(90))
+                + " max=" + TimeUnit.MICROSECONDS.toMillis(histogram.getMaxMicros()) + "ms";
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.emerband.alert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message layout compiled once into literal text and numbered fields.
+ *
+ * Layouts name their fields in braces, e.g. "Name: {name}". Compiling
+ * splits the layout into the literal runs between fields and the field
+ * numbers (the index of the name in the list passed to
+ * {@link #compile(String, String...)}). Rendering then only appends: each
+ * literal run as is and each field through a {@link FieldSource}, so
+ * nothing is parsed or allocated per message.
+ *
+ * Immutable and thread-safe.
+ */
+public final class MessageTemplate {
+
+    /**
+     * Appends the value of a field
+     */
+    public interface FieldSource {
+        /**
+         * @param field Index of the field name given to {@link #compile(String, String...)}
+         */
+        void appendField(int field, StringBuilder out);
+    }
+
+    // literals[i] comes before fields[i]; the last literal ends the message
+    private final String[] literals;
+    private final int[] fields;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, int[] fields) {
+        this.literals = literals;
+        this.fields = fields;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compile a layout
+     * @param layout Text with fields in braces
+     * @param fieldNames Names of the fields the layout may use
+     * @throws IllegalArgumentException if the layout uses an unknown field or has an open brace
+     */
+    public static MessageTemplate compile(String layout, String... fieldNames) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> fields = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = layout.indexOf('{', start)) >= 0) {
+            int close = layout.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed field at " + open + " in template");
+            }
+            String name = layout.substring(open + 1, close);
+            int field = indexOf(fieldNames, name);
+            if (field < 0) {
+                throw new IllegalArgumentException("Unknown field {" + name + "} in template");
+            }
+            literals.add(layout.substring(start, open));
+            fields.add(field);
+            start = close + 1;
+        }
+        literals.add(layout.substring(start));
+
+        int[] fieldArray = new int[fields.size()];
+        for (int i = 0; i < fieldArray.length; i++) {
+            fieldArray[i] = fields.get(i);
+        }
+        return new MessageTemplate(literals.toArray(new String[0]), fieldArray);
+    }
+
+    /**
+     * Append the message to a buffer
+     */
+    public void render(StringBuilder out, FieldSource source) {
+        for (int i = 0; i < fields.length; i++) {
+            out.append(literals[i]);
+            source.appendField(fields[i], out);
+        }
+        out.append(literals[fields.length]);
+    }
+
+    /**
+     * Get the length of the literal text, a lower bound on the message length
+     */
+    public int getLiteralLength() {
+        return literalLength;
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.emerband.alert;
+
+import android.telephony.SmsMessage;
+
+/**
+ * Counts segments the way the platform will split the message, including
+ * the national language shift tables the carrier enabled on this device.
+ */
+public class PlatformSegmentCounter implements SegmentCounter {
+
+    @Override
+    public SmsLength measure(CharSequence text) {
+        // {segments, code units used, code units left in the last segment, code unit size}
+        int[] length = SmsMessage.calculateLength(text, false);
+        int segments = Math.max(1, length[0]);
+        boolean unicode = length[3] == SmsMessage.ENCODING_16BIT;
+        return new SmsLength(unicode, length[1], segments, (length[1] + length[2]) / segments);
+    }
+}
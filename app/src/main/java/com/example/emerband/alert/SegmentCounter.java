@@ -0,0 +1,8 @@
+package com.example.emerband.alert;
+
+/**
+ * Measures how a text would be encoded and split into SMS segments
+ */
+public interface SegmentCounter {
+    SmsLength measure(CharSequence text);
+}
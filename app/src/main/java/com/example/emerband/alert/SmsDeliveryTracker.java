@@ -0,0 +1,364 @@
+package com.example.emerband.alert;
+
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.telephony.SmsManager;
+import android.telephony.SmsMessage;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+
+import com.example.emerband.data.AppDatabase;
+import com.example.emerband.data.SmsPart;
+import com.example.emerband.data.SmsPartDao;
+import com.example.emerband.data.SmsRecipientStatus;
+import com.example.emerband.models.Contact;
+import com.example.emerband.utils.WakeLockTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends alert SMS with sent and delivery tracking per part and recipient.
+ *
+ * Every part of every message gets its own row in {@link SmsPartDao} and
+ * its own sent and delivery PendingIntents, which come back through
+ * {@link SmsStatusReceiver}. A part that was not sent, was reported
+ * undeliverable or got no sent result in time is resent on its own after
+ * a backoff (see {@link SmsRetryPolicy}); parts that got through are never
+ * sent again. Rows survive a restart and {@link #resumePending()} picks up
+ * the retries that were due.
+ *
+ * Database work and retries run on one background thread.
+ */
+public class SmsDeliveryTracker {
+    private static final String TAG = "SmsDeliveryTracker";
+
+    static final String ACTION_SMS_SENT = "com.example.emerband.action.SMS_SENT";
+    static final String ACTION_SMS_DELIVERED = "com.example.emerband.action.SMS_DELIVERED";
+    static final String EXTRA_PART_ID = "partId";
+    static final String EXTRA_ATTEMPT = "attempt";
+
+    // Result code for a part that got no sent result in time
+    private static final int RESULT_SENT_TIMEOUT = -100;
+
+    // Rows older than this are removed when tracking resumes
+    private static final long RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+
+    // Keeps the CPU awake past a retry's due time
+    private static final long RETRY_WAKE_LOCK_SLACK_MS = 10000;
+
+    private static SmsDeliveryTracker instance;
+
+    private final Context context;
+    private final SmsPartDao dao;
+    private final ScheduledExecutorService executor;
+
+    // Totals since start
+    private final AtomicLong partsQueued = new AtomicLong();
+    private final AtomicLong partsSent = new AtomicLong();
+    private final AtomicLong partsDelivered = new AtomicLong();
+    private final AtomicLong partsFailed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong partsAbandoned = new AtomicLong();
+
+    private SmsDeliveryTracker(Context context) {
+        this.context = context.getApplicationContext();
+        this.dao = AppDatabase.getInstance(this.context).smsPartDao();
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                runnable -> new Thread(runnable, "SmsDelivery"));
+    }
+
+    /**
+     * Get the singleton instance of SmsDeliveryTracker
+     */
+    public static synchronized SmsDeliveryTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new SmsDeliveryTracker(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Send a message to one recipient with tracking. Must not be called on
+     * the main thread (the parts are stored before sending).
+     * @param alertId Groups the recipients of one alert
+     * @param recipient Contact to send to
+     * @param message SMS text
+     * @throws RuntimeException if the message could not be handed to the radio;
+     *         the parts are retried anyway
+     */
+    public void send(long alertId, Contact recipient, String message) {
+        SmsManager smsManager = getSmsManager();
+        ArrayList<String> texts = smsManager.divideMessage(message);
+        long now = System.currentTimeMillis();
+
+        List<SmsPart> parts = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            SmsPart part = new SmsPart(alertId, recipient.getPhone(), recipient.getName(), i, texts.size(), texts.get(i));
+            part.setAttempts(1);
+            part.setUpdatedAt(now);
+            parts.add(part);
+        }
+        long[] ids = dao.insertAll(parts);
+
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+        ArrayList<PendingIntent> deliveryIntents = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            parts.get(i).setId(ids[i]);
+            sentIntents.add(createStatusIntent(ACTION_SMS_SENT, ids[i], 1));
+            deliveryIntents.add(createStatusIntent(ACTION_SMS_DELIVERED, ids[i], 1));
+        }
+        partsQueued.addAndGet(parts.size());
+
+        try {
+            if (texts.size() == 1) {
+                smsManager.sendTextMessage(recipient.getPhone(), null, texts.get(0),
+                        sentIntents.get(0), deliveryIntents.get(0));
+            } else {
+                smsManager.sendMultipartTextMessage(recipient.getPhone(), null, texts,
+                        sentIntents, deliveryIntents);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error sending SMS to " + recipient.getName(), e);
+            executor.execute(() -> {
+                for (SmsPart part : parts) {
+                    onSendFailed(part, Activity.RESULT_CANCELED);
+                }
+            });
+            throw e;
+        }
+
+        for (SmsPart part : parts) {
+            scheduleSentTimeout(part.getId(), 1);
+        }
+    }
+
+    /**
+     * Observe the delivery state per recipient of the latest alert, for the UI
+     */
+    public LiveData<List<SmsRecipientStatus>> observeLatestAlert() {
+        return dao.observeLatestRecipients();
+    }
+
+    /**
+     * Reschedule the retries stored before a restart and drop old rows
+     */
+    public void resumePending() {
+        executor.execute(() -> {
+            try {
+                long now = System.currentTimeMillis();
+                int deleted = dao.deleteOlderThan(now - RETENTION_MS);
+                List<SmsPart> parts = dao.getOutstandingParts();
+                Log.d(TAG, "Resuming " + parts.size() + " SMS part(s), removed " + deleted + " old");
+                for (SmsPart part : parts) {
+                    if (part.getState() == SmsPart.STATE_FAILED) {
+                        scheduleRetry(part.getId(), Math.max(0, part.getNextAttemptAt() - now));
+                    } else {
+                        // The sent result may have been lost with the process
+                        long waited = now - part.getUpdatedAt();
+                        scheduleSentTimeout(part.getId(), part.getAttempts(),
+                                Math.max(0, SmsRetryPolicy.SENT_TIMEOUT_MS - waited));
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error resuming SMS delivery tracking", e);
+            }
+        });
+    }
+
+    /**
+     * Human-readable totals since start
+     */
+    public String getSummary() {
+        return "parts=" + partsQueued.get()
+                + " sent=" + partsSent.get()
+                + " delivered=" + partsDelivered.get()
+                + " failed=" + partsFailed.get()
+                + " retries=" + retries.get()
+                + " abandoned=" + partsAbandoned.get();
+    }
+
+    // ===== Results from SmsStatusReceiver =====
+
+    /**
+     * Handle a sent or delivery result; finishes the broadcast when stored
+     */
+    void onStatus(Intent intent, int resultCode, BroadcastReceiver.PendingResult pendingResult) {
+        executor.execute(() -> {
+            try {
+                long partId = intent.getLongExtra(EXTRA_PART_ID, -1);
+                int attempt = intent.getIntExtra(EXTRA_ATTEMPT, 0);
+                SmsPart part = dao.getPart(partId);
+                if (part == null) {
+                    return;
+                }
+                if (ACTION_SMS_SENT.equals(intent.getAction())) {
+                    onSentResult(part, attempt, resultCode);
+                } else if (ACTION_SMS_DELIVERED.equals(intent.getAction())) {
+                    onDeliveryReport(part, attempt, readDeliveryStatus(intent));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error handling SMS status", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+
+    private void onSentResult(SmsPart part, int attempt, int resultCode) {
+        if (resultCode == Activity.RESULT_OK) {
+            // A late success from an earlier attempt still counts
+            if (part.getState() == SmsPart.STATE_QUEUED || part.getState() == SmsPart.STATE_FAILED) {
+                part.setState(SmsPart.STATE_SENT);
+                part.setResultCode(resultCode);
+                part.setUpdatedAt(System.currentTimeMillis());
+                dao.update(part);
+                partsSent.incrementAndGet();
+            }
+        } else if (attempt == part.getAttempts() && part.getState() == SmsPart.STATE_QUEUED) {
+            Log.e(TAG, "SMS part " + part.getId() + " to " + part.getName() + " not sent: " + resultCode);
+            onSendFailed(part, resultCode);
+        }
+    }
+
+    private void onDeliveryReport(SmsPart part, int attempt, int status) {
+        int delivery = SmsRetryPolicy.classifyDeliveryStatus(status);
+        if (delivery == SmsRetryPolicy.DELIVERY_COMPLETE) {
+            if (part.getState() != SmsPart.STATE_DELIVERED) {
+                part.setState(SmsPart.STATE_DELIVERED);
+                part.setResultCode(status);
+                part.setUpdatedAt(System.currentTimeMillis());
+                dao.update(part);
+                partsDelivered.incrementAndGet();
+                Log.d(TAG, "SMS part " + part.getId() + " delivered to " + part.getName());
+            }
+        } else if (delivery == SmsRetryPolicy.DELIVERY_FAILED
+                && attempt == part.getAttempts() && part.getState() == SmsPart.STATE_SENT) {
+            Log.e(TAG, "SMS part " + part.getId() + " to " + part.getName() + " not delivered: " + status);
+            onSendFailed(part, status);
+        }
+    }
+
+    // ===== Retries =====
+
+    private void onSendFailed(SmsPart part, int resultCode) {
+        partsFailed.incrementAndGet();
+        long now = System.currentTimeMillis();
+        part.setResultCode(resultCode);
+        part.setUpdatedAt(now);
+        if (SmsRetryPolicy.shouldRetry(part.getAttempts())) {
+            long delay = SmsRetryPolicy.retryDelayMillis(part.getAttempts());
+            part.setState(SmsPart.STATE_FAILED);
+            part.setNextAttemptAt(now + delay);
+            dao.update(part);
+            scheduleRetry(part.getId(), delay);
+        } else {
+            part.setState(SmsPart.STATE_ABANDONED);
+            dao.update(part);
+            partsAbandoned.incrementAndGet();
+            Log.e(TAG, "Giving up on SMS part " + part.getId() + " to " + part.getName()
+                    + " after " + part.getAttempts() + " attempts");
+        }
+    }
+
+    private void scheduleRetry(long partId, long delayMillis) {
+        WakeLockTracker wakeLockTracker = WakeLockTracker.getInstance(context);
+        WakeLockTracker.Token wakeLock = wakeLockTracker.acquire(WakeLockTracker.REASON_SMS_RETRY,
+                delayMillis + RETRY_WAKE_LOCK_SLACK_MS);
+        executor.schedule(() -> {
+            try {
+                retry(partId);
+            } catch (Exception e) {
+                Log.e(TAG, "Error retrying SMS part " + partId, e);
+            } finally {
+                wakeLockTracker.release(wakeLock);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void retry(long partId) {
+        SmsPart part = dao.getPart(partId);
+        if (part == null || part.getState() != SmsPart.STATE_FAILED) {
+            // Got through after all
+            return;
+        }
+        int attempt = part.getAttempts() + 1;
+        part.setAttempts(attempt);
+        part.setState(SmsPart.STATE_QUEUED);
+        part.setUpdatedAt(System.currentTimeMillis());
+        dao.update(part);
+        retries.incrementAndGet();
+        Log.d(TAG, "Retrying SMS part " + (part.getPartIndex() + 1) + "/" + part.getPartCount()
+                + " to " + part.getName() + ", attempt " + attempt);
+
+        try {
+            // A lone part cannot rejoin its multipart message; it goes out as a message of its own
+            getSmsManager().sendTextMessage(part.getPhone(), null, part.getText(),
+                    createStatusIntent(ACTION_SMS_SENT, partId, attempt),
+                    createStatusIntent(ACTION_SMS_DELIVERED, partId, attempt));
+            scheduleSentTimeout(partId, attempt);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error resending SMS part " + partId, e);
+            onSendFailed(part, Activity.RESULT_CANCELED);
+        }
+    }
+
+    private void scheduleSentTimeout(long partId, int attempt) {
+        scheduleSentTimeout(partId, attempt, SmsRetryPolicy.SENT_TIMEOUT_MS);
+    }
+
+    private void scheduleSentTimeout(long partId, int attempt, long delayMillis) {
+        executor.schedule(() -> {
+            try {
+                SmsPart part = dao.getPart(partId);
+                if (part != null && part.getState() == SmsPart.STATE_QUEUED && part.getAttempts() == attempt) {
+                    Log.e(TAG, "No sent result for SMS part " + partId + " to " + part.getName());
+                    onSendFailed(part, RESULT_SENT_TIMEOUT);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error checking SMS part " + partId, e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // ===== Helpers =====
+
+    private PendingIntent createStatusIntent(String action, long partId, int attempt) {
+        Intent intent = new Intent(action, Uri.parse("emerband-sms://part/" + partId + "/" + attempt),
+                context, SmsStatusReceiver.class);
+        intent.putExtra(EXTRA_PART_ID, partId);
+        intent.putExtra(EXTRA_ATTEMPT, attempt);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            // Mutable so the delivery report PDU can be filled in; the intent is explicit
+            flags |= PendingIntent.FLAG_MUTABLE;
+        }
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+
+    private static int readDeliveryStatus(Intent intent) {
+        byte[] pdu = intent.getByteArrayExtra("pdu");
+        if (pdu == null) {
+            // No report content; the broadcast itself means the recipient got it
+            return 0;
+        }
+        SmsMessage report = SmsMessage.createFromPdu(pdu, intent.getStringExtra("format"));
+        return report != null ? report.getStatus() : 0;
+    }
+
+    private SmsManager getSmsManager() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? context.getSystemService(SmsManager.class)
+                : SmsManager.getDefault();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.emerband.alert;
+
+/**
+ * Size of a text once encoded as SMS: encoding, code units and segments.
+ */
+public final class SmsLength {
+
+    private final boolean unicode;
+    private final int codeUnits;
+    private final int segments;
+    private final int unitsPerSegment;
+
+    /**
+     * @param unicode Whether the text needs UCS-2 (otherwise GSM 7-bit)
+     * @param codeUnits Septets for GSM 7-bit, UTF-16 chars for UCS-2
+     * @param segments Number of SMS the text is sent as
+     * @param unitsPerSegment Code units that fit in one segment of this message
+     */
+    public SmsLength(boolean unicode, int codeUnits, int segments, int unitsPerSegment) {
+        this.unicode = unicode;
+        this.codeUnits = codeUnits;
+        this.segments = segments;
+        this.unitsPerSegment = unitsPerSegment;
+    }
+
+    public boolean isUnicode() {
+        return unicode;
+    }
+
+    public int getCodeUnits() {
+        return codeUnits;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public int getUnitsPerSegment() {
+        return unitsPerSegment;
+    }
+
+    @Override
+    public String toString() {
+        return (unicode ? "UCS-2 " : "GSM-7 ") + codeUnits + " units in " + segments + " segment(s)";
+    }
+}
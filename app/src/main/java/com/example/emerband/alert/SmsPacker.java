@@ -0,0 +1,99 @@
+package com.example.emerband.alert;
+
+/**
+ * Picks, among wordings of the same message, the one sent in the fewest
+ * SMS segments.
+ *
+ * Each candidate has a critical prefix (who, where, when) that must arrive
+ * in the first segment, so a recipient whose later parts are lost or late
+ * still learns what happened. Candidates whose prefix does not fit are
+ * only used when none fits. Among equals the earlier (richer) candidate
+ * wins, so the emoji heading is kept whenever it costs nothing.
+ *
+ * The counter used for all packing is set once for the process; the
+ * default counts the GSM default alphabet only. Not thread-safe; use one
+ * packer per thread.
+ */
+public final class SmsPacker {
+
+    private static volatile SegmentCounter defaultCounter = new GsmAlphabet();
+
+    private SegmentCounter counter;
+    private SmsLength bestLength;
+    private boolean bestFits;
+
+    /**
+     * Set the counter used from now on, e.g. the platform's, which knows the
+     * national language tables enabled on the device
+     */
+    public static void setDefaultCounter(SegmentCounter counter) {
+        defaultCounter = counter;
+    }
+
+    public static SegmentCounter getDefaultCounter() {
+        return defaultCounter;
+    }
+
+    /**
+     * Pack a free-form text: the text as is, or folded into the GSM alphabet
+     * if that takes fewer segments
+     */
+    public static String packText(String text) {
+        SmsPacker packer = new SmsPacker();
+        packer.reset();
+        packer.offer(text, 0);
+        String folded = GsmAlphabet.fold(text);
+        if (folded != null && packer.offer(folded, 0)) {
+            return folded;
+        }
+        return text;
+    }
+
+    /**
+     * Start a new choice
+     */
+    public void reset() {
+        counter = defaultCounter;
+        bestLength = null;
+        bestFits = false;
+    }
+
+    /**
+     * Offer the next candidate
+     * @param text Candidate wording
+     * @param criticalLength Length of the prefix that must be in the first segment
+     * @return Whether it is the best so far
+     */
+    public boolean offer(CharSequence text, int criticalLength) {
+        SmsLength length = counter.measure(text);
+        boolean fits = length.getSegments() == 1
+                || criticalUnits(text, criticalLength, length) <= length.getUnitsPerSegment();
+        boolean better = bestLength == null
+                || (fits && !bestFits)
+                || (fits == bestFits && length.getSegments() < bestLength.getSegments());
+        if (better) {
+            bestLength = length;
+            bestFits = fits;
+        }
+        return better;
+    }
+
+    /**
+     * Get the size of the best candidate
+     */
+    public SmsLength getBestLength() {
+        return bestLength;
+    }
+
+    private int criticalUnits(CharSequence text, int criticalLength, SmsLength length) {
+        if (length.isUnicode()) {
+            return criticalLength;
+        }
+        int units = 0;
+        for (int i = 0; i < criticalLength; i++) {
+            // Characters from a national table count as one septet
+            units += Math.max(1, GsmAlphabet.septets(text.charAt(i)));
+        }
+        return units;
+    }
+}
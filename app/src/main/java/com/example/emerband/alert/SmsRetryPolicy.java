@@ -0,0 +1,64 @@
+package com.example.emerband.alert;
+
+/**
+ * When to send an alert SMS part again, and how to read delivery reports.
+ *
+ * A part that failed is retried after a delay that starts short (a radio
+ * that was briefly out of coverage usually recovers within seconds) and
+ * doubles per attempt up to a cap, until {@link #MAX_ATTEMPTS} sends were
+ * made. Parts that were sent or delivered are never sent again.
+ */
+public final class SmsRetryPolicy {
+
+    // Delivery report outcomes
+    public static final int DELIVERY_COMPLETE = 0;
+    public static final int DELIVERY_PENDING = 1;
+    public static final int DELIVERY_FAILED = 2;
+
+    // Sends per part, including the first
+    public static final int MAX_ATTEMPTS = 6;
+
+    public static final long INITIAL_RETRY_DELAY_MS = 3000;
+    public static final long MAX_RETRY_DELAY_MS = 60000;
+
+    // A part with no sent result after this long is treated as failed
+    public static final long SENT_TIMEOUT_MS = 30000;
+
+    // TP-Status ranges (3GPP TS 23.040 9.2.3.15)
+    private static final int TP_STATUS_TEMPORARY = 0x20;
+    private static final int TP_STATUS_PERMANENT = 0x40;
+
+    private SmsRetryPolicy() {
+    }
+
+    /**
+     * Whether a part that failed after the given number of sends gets another one
+     */
+    public static boolean shouldRetry(int attempts) {
+        return attempts < MAX_ATTEMPTS;
+    }
+
+    /**
+     * Get the delay before resending a part that failed after the given number of sends
+     */
+    public static long retryDelayMillis(int attempts) {
+        int shift = Math.max(0, Math.min(attempts - 1, 16));
+        return Math.min(MAX_RETRY_DELAY_MS, INITIAL_RETRY_DELAY_MS << shift);
+    }
+
+    /**
+     * Classify the status of a GSM delivery report
+     * @param tpStatus TP-Status from the status report PDU
+     * @return One of the DELIVERY_ constants
+     */
+    public static int classifyDeliveryStatus(int tpStatus) {
+        if (tpStatus < TP_STATUS_TEMPORARY) {
+            return DELIVERY_COMPLETE;
+        }
+        if (tpStatus < TP_STATUS_PERMANENT) {
+            // The service centre is still trying
+            return DELIVERY_PENDING;
+        }
+        return DELIVERY_FAILED;
+    }
+}
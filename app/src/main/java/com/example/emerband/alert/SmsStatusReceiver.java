@@ -0,0 +1,17 @@
+package com.example.emerband.alert;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * BroadcastReceiver for the sent and delivery results of alert SMS parts.
+ * Hands them to {@link SmsDeliveryTracker}, which stores them off the main thread.
+ */
+public class SmsStatusReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        SmsDeliveryTracker.getInstance(context).onStatus(intent, getResultCode(), goAsync());
+    }
+}
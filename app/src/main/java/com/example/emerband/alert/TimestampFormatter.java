@@ -0,0 +1,74 @@
+package com.example.emerband.alert;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Formats times as "yyyy-MM-dd HH:mm:ss" in the default time zone without
+ * allocating.
+ *
+ * The text up to the minutes is cached for the current minute; within it
+ * only the seconds are written. On a new minute the cache is rebuilt from
+ * one reused calendar, which also picks up a changed default time zone.
+ * Digits are always ASCII so they survive in any SMS encoding.
+ *
+ * Not thread-safe; use one per thread.
+ */
+public final class TimestampFormatter {
+
+    private static final long MILLIS_PER_MINUTE = 60000;
+
+    // "yyyy-MM-dd HH:mm:"
+    private final char[] minutePrefix = new char[17];
+    private long minuteStartMillis = Long.MIN_VALUE;
+    private Calendar calendar;
+
+    /**
+     * Append the time to a buffer
+     * @param timeMillis Wall clock time (System.currentTimeMillis() base)
+     */
+    public void appendTo(StringBuilder out, long timeMillis) {
+        long sinceMinute = timeMillis - minuteStartMillis;
+        if (minuteStartMillis == Long.MIN_VALUE || sinceMinute < 0 || sinceMinute >= MILLIS_PER_MINUTE) {
+            cacheMinute(timeMillis);
+            sinceMinute = timeMillis - minuteStartMillis;
+        }
+        out.append(minutePrefix);
+        appendTwoDigits(out, (int) (sinceMinute / 1000));
+    }
+
+    private void cacheMinute(long timeMillis) {
+        TimeZone zone = TimeZone.getDefault();
+        if (calendar == null || !calendar.getTimeZone().getID().equals(zone.getID())) {
+            calendar = new GregorianCalendar(zone);
+        }
+        calendar.setTimeInMillis(timeMillis);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        minuteStartMillis = calendar.getTimeInMillis();
+
+        int year = calendar.get(Calendar.YEAR);
+        writeDigits(minutePrefix, 0, year, 4);
+        minutePrefix[4] = '-';
+        writeDigits(minutePrefix, 5, calendar.get(Calendar.MONTH) + 1, 2);
+        minutePrefix[7] = '-';
+        writeDigits(minutePrefix, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+        minutePrefix[10] = ' ';
+        writeDigits(minutePrefix, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+        minutePrefix[13] = ':';
+        writeDigits(minutePrefix, 14, calendar.get(Calendar.MINUTE), 2);
+        minutePrefix[16] = ':';
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static void appendTwoDigits(StringBuilder out, int value) {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.emerband.alert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory snapshot of the user settings that go into alert messages.
+ *
+ * Reading SharedPreferences on every alert costs a map lookup under a lock
+ * (and a disk load the first time); the snapshot is read once and replaced
+ * when a preference listener sees one of its keys change.
+ */
+public class UserContextCache {
+    private static final String PREFS_NAME = "EmerbandPrefs";
+    private static final String KEY_USER_NAME = "userName";
+    private static final String DEFAULT_USER_NAME = "Unknown User";
+
+    /**
+     * Immutable settings values
+     */
+    public static final class Snapshot {
+        private final String userName;
+        private final int generation;
+
+        Snapshot(String userName, int generation) {
+            this.userName = userName;
+            this.generation = generation;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+    }
+
+    private static UserContextCache instance;
+
+    private final SharedPreferences prefs;
+    private volatile Snapshot snapshot;
+
+    // Bumped on every change, so a snapshot read during a change is not kept
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Held here: SharedPreferences keeps only a weak reference to listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener listener = (prefs, key) -> {
+        if (key == null || KEY_USER_NAME.equals(key)) {
+            // Cleared or changed; read again on next use
+            generation.incrementAndGet();
+        }
+    };
+
+    private UserContextCache(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    /**
+     * Get the singleton instance of UserContextCache
+     */
+    public static synchronized UserContextCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new UserContextCache(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the current settings
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        int currentGeneration = generation.get();
+        if (current == null || current.generation != currentGeneration) {
+            String userName = prefs.getString(KEY_USER_NAME, DEFAULT_USER_NAME);
+            current = new Snapshot(userName != null ? userName : DEFAULT_USER_NAME, currentGeneration);
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Get the user name for alert messages
+     */
+    public String getUserName() {
+        return getSnapshot().getUserName();
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.emerband.ble;
+
+import com.example.emerband.metrics.AlertLatencyTracker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receiver for alerts a watch broadcasts in its advertisements.
+ *
+ * In this mode the watch needs no connection: it puts the alert frame into
+ * the manufacturer specific data of its advertisement for a while after a
+ * button press, so any phone in range that scans for it (the user's and a
+ * guardian's) reacts at once. Layout of the manufacturer data after the
+ * company ID:
+ * - [0] {@link #MAGIC}, only present while an alert is advertised, so a
+ *   hardware scan filter on it never wakes the phone for idle watches.
+ * - [1..15] a version 3 frame as sent on the alert characteristic (signal,
+ *   location, flags, version, the rolling sequence number and the boot id).
+ *   Older watches send [1..13], a version 2 frame without the boot id.
+ *
+ * The watch repeats the same advertisement many times per second; the
+ * sequence number, tracked per watch in a {@link SequenceWindow}, turns
+ * those repeats into one alert. A new boot id means the watch restarted and
+ * resets the window. A watch not heard for longer than it advertises one
+ * alert cannot still be repeating the last one, so its window is forgotten
+ * too; this is what lets an older watch's alerts through after a reboot.
+ * Frames are decoded with the same {@link WatchFrameDecoder} as GATT
+ * notifications, without allocating.
+ *
+ * Thread-safe.
+ */
+public final class AdvertisedAlertReceiver {
+
+    /**
+     * Receives new alerts
+     */
+    public interface Listener {
+        /**
+         * Called on the scan thread; the frame is reused for the next advertisement
+         * @param address MAC address of the watch
+         */
+        void onAlert(String address, WatchFrame frame, long receivedAtNanos);
+    }
+
+    // Bluetooth SIG company ID reserved for tests and internal use; a production watch needs its own
+    public static final int COMPANY_ID = 0xFFFF;
+
+    // First byte of the manufacturer data while an alert is advertised
+    public static final byte MAGIC = (byte) 0xEB;
+
+    // The frame follows the magic byte
+    public static final int FRAME_OFFSET = 1;
+    public static final int DATA_LENGTH = FRAME_OFFSET + WatchFrameDecoder.SEQUENCE_FRAME_LENGTH;
+
+    // How long the watch advertises one alert (ALERT_ADVERTISE_MS in EmerbandWatch.ino)
+    public static final long ALERT_ADVERTISE_MILLIS = 30000;
+
+    // Silence after which a watch's sequence window is forgotten, with a margin for scan gaps
+    private static final long FORGET_AFTER_NANOS = TimeUnit.MILLISECONDS.toNanos(ALERT_ADVERTISE_MILLIS + 5000);
+
+    // Watches tracked at once; the least recently heard is forgotten first
+    private static final int MAX_WATCHES = 8;
+
+    private final Listener listener;
+    private final WatchFrameDecoder frameDecoder = new WatchFrameDecoder();
+    private final WatchFrame watchFrame = new WatchFrame();
+    private final AlertLatencyTracker latencyTracker = AlertLatencyTracker.getInstance();
+    private final Map<String, WatchState> watches =
+            new LinkedHashMap<String, WatchState>(MAX_WATCHES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, WatchState> eldest) {
+                    return size() > MAX_WATCHES;
+                }
+            };
+
+    /**
+     * Sequence numbers seen from one watch and when it was last heard
+     */
+    private static final class WatchState {
+        final SequenceWindow sequenceWindow = new SequenceWindow();
+        long lastHeardNanos;
+    }
+
+    // Counters for diagnostics
+    private long advertisements;
+    private long alerts;
+    private long repeats;
+    private long rejected;
+    private long totalDelayNanos;
+    private long maxDelayNanos;
+
+    public AdvertisedAlertReceiver(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Scan filter data matching an alert advertisement (for ScanFilter.Builder#setManufacturerData)
+     */
+    public static byte[] getFilterData() {
+        byte[] data = new byte[DATA_LENGTH];
+        data[0] = MAGIC;
+        return data;
+    }
+
+    /**
+     * Scan filter mask for {@link #getFilterData()}: only the magic byte has to match
+     */
+    public static byte[] getFilterMask() {
+        byte[] mask = new byte[DATA_LENGTH];
+        mask[0] = (byte) 0xFF;
+        return mask;
+    }
+
+    /**
+     * Handle the manufacturer data of an advertisement
+     * @param address MAC address of the advertiser
+     * @param data Manufacturer data for {@link #COMPANY_ID}, or null if the advertisement had none
+     * @param receivedAtNanos System.nanoTime() when the radio received the advertisement
+     * @param delayNanos Time from reception to this call (controller and OS delivery)
+     * @return true if the advertisement carried a new alert
+     */
+    public synchronized boolean onManufacturerData(String address, byte[] data, long receivedAtNanos,
+                                                   long delayNanos) {
+        if (address == null || data == null || data.length < FRAME_OFFSET || data[0] != MAGIC) {
+            return false;
+        }
+        advertisements++;
+
+        if (!frameDecoder.decode(data, FRAME_OFFSET, data.length - FRAME_OFFSET, watchFrame)
+                || !watchFrame.hasSequence()) {
+            // Without a sequence number every repeat would look like a new alert
+            rejected++;
+            return false;
+        }
+
+        WatchState watch = watches.get(address);
+        if (watch == null) {
+            watch = new WatchState();
+            watches.put(address, watch);
+        } else if (receivedAtNanos - watch.lastHeardNanos > FORGET_AFTER_NANOS) {
+            watch.sequenceWindow.clear();
+        }
+        watch.lastHeardNanos = receivedAtNanos;
+        if (!watch.sequenceWindow.accept(watchFrame.getBootId(), watchFrame.getSequence())) {
+            repeats++;
+            return false;
+        }
+
+        alerts++;
+        totalDelayNanos += delayNanos;
+        maxDelayNanos = Math.max(maxDelayNanos, delayNanos);
+        latencyTracker.record(watchFrame.getSignal(), AlertLatencyTracker.Stage.DECODED, receivedAtNanos);
+        listener.onAlert(address, watchFrame, receivedAtNanos);
+        return true;
+    }
+
+    public synchronized long getAlertCount() {
+        return alerts;
+    }
+
+    /**
+     * Human-readable summary of received advertisements and delivery delay
+     */
+    public synchronized String getSummary() {
+        long avgDelayMillis = alerts == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalDelayNanos / alerts);
+        return "advertisements=" + advertisements
+                + " alerts=" + alerts
+                + " repeats=" + repeats
+                + " rejected=" + rejected
+                + " watches=" + watches.size()
+                + " delivery avg=" + avgDelayMillis + "ms"
+                + " max=" + TimeUnit.NANOSECONDS.toMillis(maxDelayNanos) + "ms";
+    }
+}
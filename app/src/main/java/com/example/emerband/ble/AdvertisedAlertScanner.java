@@ -0,0 +1,133 @@
+package com.example.emerband.ble;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Continuous scan for alert advertisements (see {@link AdvertisedAlertReceiver}).
+ *
+ * The scan filter matches the company ID and the magic byte of the
+ * manufacturer data, so on controllers with filter offload the phone is
+ * only woken for watches that are advertising an alert. The scan runs in
+ * SCAN_MODE_BALANCED: a watch advertising an alert for several seconds is
+ * heard within about one scan interval (4 s), without a connection and
+ * with no connect, discover and subscribe steps in between.
+ *
+ * All methods must be called on the main thread.
+ */
+public class AdvertisedAlertScanner {
+
+    private static final String TAG = "AdvertisedAlertScanner";
+
+    private final BluetoothAdapter bluetoothAdapter;
+    private final AdvertisedAlertReceiver receiver;
+    private final List<ScanFilter> filters;
+
+    private BluetoothLeScanner activeScanner;
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            onAdvertisement(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                onAdvertisement(result);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "Alert advertisement scan failed with error: " + errorCode);
+            activeScanner = null;
+        }
+    };
+
+    /**
+     * @param bluetoothAdapter Adapter used to obtain the scanner
+     * @param receiver Decoder for the advertised alerts
+     */
+    public AdvertisedAlertScanner(BluetoothAdapter bluetoothAdapter, AdvertisedAlertReceiver receiver) {
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.receiver = receiver;
+        this.filters = Collections.singletonList(new ScanFilter.Builder()
+                .setManufacturerData(AdvertisedAlertReceiver.COMPANY_ID,
+                        AdvertisedAlertReceiver.getFilterData(),
+                        AdvertisedAlertReceiver.getFilterMask())
+                .build());
+    }
+
+    /**
+     * Start scanning, if not scanning already
+     */
+    public void start() {
+        if (activeScanner != null) {
+            return;
+        }
+        BluetoothLeScanner scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            Log.e(TAG, "Bluetooth scanner not available");
+            return;
+        }
+
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_BALANCED)
+                .build();
+        try {
+            scanner.startScan(filters, settings, scanCallback);
+            activeScanner = scanner;
+            Log.d(TAG, "Scanning for alert advertisements");
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting alert advertisement scan", e);
+        }
+    }
+
+    public void stop() {
+        if (activeScanner == null) {
+            return;
+        }
+        try {
+            activeScanner.stopScan(scanCallback);
+        } catch (Exception e) {
+            // The adapter may already be off
+            Log.e(TAG, "Error stopping alert advertisement scan", e);
+        }
+        activeScanner = null;
+    }
+
+    /**
+     * The adapter went off; the scan has to be started again once it is back on
+     */
+    public void onAdapterOff() {
+        activeScanner = null;
+    }
+
+    public boolean isScanning() {
+        return activeScanner != null;
+    }
+
+    private void onAdvertisement(ScanResult result) {
+        ScanRecord record = result.getScanRecord();
+        if (record == null) {
+            return;
+        }
+        byte[] data = record.getManufacturerSpecificData(AdvertisedAlertReceiver.COMPANY_ID);
+
+        // Time the alert from when the radio heard it, not from when the OS delivered it
+        long delayNanos = Math.max(0, SystemClock.elapsedRealtimeNanos() - result.getTimestampNanos());
+        long receivedAtNanos = System.nanoTime() - delayNanos;
+        receiver.onManufacturerData(result.getDevice().getAddress(), data, receivedAtNanos, delayNanos);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.emerband.ble;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import com.example.emerband.BLEGattUtils;
+import com.example.emerband.transport.WatchLink;
+
+import no.nordicsemi.android.ble.observer.ConnectionObserver;
+
+/**
+ * {@link WatchLink} over a {@link WatchBleManager}: one manager per link,
+ * with its connection events and notifications forwarded to the listener.
+ */
+public class BleWatchLink implements WatchLink {
+
+    private static final String TAG = "BleWatchLink";
+
+    private final BluetoothAdapter bluetoothAdapter;
+    private final WatchBleManager manager;
+    private final Listener listener;
+
+    /**
+     * @param context Context
+     * @param bluetoothAdapter Adapter used to look up the device
+     * @param handler Handler for all callbacks
+     * @param stats Stats for GATT operations
+     * @param listener Receiver for connection events and notifications
+     */
+    public BleWatchLink(Context context, BluetoothAdapter bluetoothAdapter, Handler handler,
+                        GattOperationStats stats, Listener listener) {
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.listener = listener;
+        this.manager = new WatchBleManager(context, handler, stats,
+                (m, data, receivedAtNanos) -> listener.onNotification(this, data, receivedAtNanos),
+                (m, data, receivedAtNanos) -> listener.onImuNotification(this, data, receivedAtNanos));
+        manager.setConnectionObserver(connectionObserver);
+    }
+
+    @Override
+    public void connect(String address, boolean autoConnect) {
+        BluetoothDevice device = bluetoothAdapter.getRemoteDevice(address);
+        manager.connectTo(device, autoConnect);
+    }
+
+    @Override
+    public void disconnect() {
+        manager.disconnect().enqueue();
+    }
+
+    @Override
+    public void close() {
+        manager.close();
+    }
+
+    @Override
+    public boolean isSubscribed() {
+        return manager.isSubscribed();
+    }
+
+    @Override
+    public void readGPSData(BLEGattUtils.GPSDataCallback callback) {
+        manager.readGPSData(callback);
+    }
+
+    @Override
+    public void readRssi(RssiCallback callback) {
+        manager.readRemoteRssi(callback);
+    }
+
+    @Override
+    public void onSignal(char signal, long receivedAtNanos) {
+        manager.getLinkTuner().onFrame(signal, receivedAtNanos);
+    }
+
+    @Override
+    public String getSummary() {
+        return manager.getLinkTuner().getSummary();
+    }
+
+    private final ConnectionObserver connectionObserver = new ConnectionObserver() {
+        @Override
+        public void onDeviceConnecting(BluetoothDevice device) {
+            Log.d(TAG, "Connecting to " + device.getAddress());
+        }
+
+        @Override
+        public void onDeviceConnected(BluetoothDevice device) {
+            listener.onConnected(BleWatchLink.this);
+        }
+
+        @Override
+        public void onDeviceFailedToConnect(BluetoothDevice device, int reason) {
+            listener.onFailedToConnect(BleWatchLink.this, reason);
+        }
+
+        @Override
+        public void onDeviceReady(BluetoothDevice device) {
+            listener.onReady(BleWatchLink.this);
+        }
+
+        @Override
+        public void onDeviceDisconnecting(BluetoothDevice device) {
+            // Nothing to do until the link is down
+        }
+
+        @Override
+        public void onDeviceDisconnected(BluetoothDevice device, int reason) {
+            Log.d(TAG, device.getAddress() + " link parameters: " + getSummary());
+            listener.onDisconnected(BleWatchLink.this, reason);
+        }
+    };
+}
@@ -0,0 +1,102 @@
+package com.example.emerband.ble;
+
+import android.Manifest;
+import android.app.PendingIntent;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+
+import com.example.emerband.transport.WatchLink;
+import com.example.emerband.transport.WatchScanner;
+import com.example.emerband.transport.WatchTransport;
+
+import java.util.List;
+
+/**
+ * {@link WatchTransport} over the phone's Bluetooth radio: a duty-cycled
+ * {@link ScanScheduler} for scanning and a {@link BleWatchLink} per
+ * connection attempt.
+ */
+public class BleWatchTransport implements WatchTransport {
+
+    private static final String TAG = "BleWatchTransport";
+
+    private final Context context;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final List<ScanFilter> filters;
+    private final PendingIntent scanPendingIntent;
+
+    private ScanScheduler scanScheduler;
+    private ScanPolicy scanPolicy = ScanPolicy.BALANCED;
+
+    /**
+     * @param context Context
+     * @param bluetoothAdapter Bluetooth adapter
+     * @param filters Scan filters for the scanner
+     * @param scanPendingIntent PendingIntent for low-power scan windows, or null
+     */
+    public BleWatchTransport(Context context, BluetoothAdapter bluetoothAdapter,
+                             List<ScanFilter> filters, PendingIntent scanPendingIntent) {
+        this.context = context.getApplicationContext();
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.filters = filters;
+        this.scanPendingIntent = scanPendingIntent;
+    }
+
+    @Override
+    public WatchScanner createScanner(Handler handler, WatchScanner.Listener listener) {
+        scanScheduler = new ScanScheduler(bluetoothAdapter, handler, filters, scanPendingIntent,
+                result -> onScanResult(result, listener));
+        scanScheduler.setPolicy(scanPolicy);
+        return scanScheduler;
+    }
+
+    @Override
+    public WatchLink createLink(Handler handler, GattOperationStats stats, WatchLink.Listener listener) {
+        return new BleWatchLink(context, bluetoothAdapter, handler, stats, listener);
+    }
+
+    /**
+     * Set the scan duty-cycle policy; takes effect at the next scan phase
+     */
+    public void setScanPolicy(ScanPolicy policy) {
+        scanPolicy = policy;
+        if (scanScheduler != null) {
+            scanScheduler.setPolicy(policy);
+        }
+    }
+
+    /**
+     * Deliver results from the background (PendingIntent) scan; scanner thread only
+     */
+    public void onPendingIntentResults(Intent intent) {
+        if (scanScheduler != null) {
+            scanScheduler.onPendingIntentResults(intent);
+        }
+    }
+
+    private void onScanResult(ScanResult result, WatchScanner.Listener listener) {
+        BluetoothDevice device = result.getDevice();
+
+        String deviceName = null;
+        try {
+            if (ActivityCompat.checkSelfPermission(context,
+                    Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
+                deviceName = device.getName();
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Bluetooth permission not granted", e);
+            return;
+        }
+
+        listener.onDeviceFound(device.getAddress(), deviceName);
+    }
+}
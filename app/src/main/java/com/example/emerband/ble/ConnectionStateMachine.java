@@ -0,0 +1,341 @@
+package com.example.emerband.ble;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection state machine for the link to one watch.
+ *
+ * Once a watch has been connected its address is remembered, and after a
+ * link drop the machine reconnects to that address directly instead of
+ * scanning again. The first attempt after a drop is a direct connect
+ * (fast when the watch is still in range); later attempts use autoConnect,
+ * which waits in the background until the watch shows up. Failed attempts
+ * are spaced with {@link ReconnectBackoff}, and after repeated failures the
+ * machine falls back to scanning in case the watch changed its address.
+ * When the link is seen degrading before it drops, a fast reconnect can be
+ * armed: the first failed attempts after the drop are then retried
+ * directly at once instead of backing off.
+ *
+ * The machine holds no Bluetooth objects; all side effects go through
+ * {@link Actions}. It is not thread-safe, so every event must be delivered
+ * on the same thread.
+ */
+public final class ConnectionStateMachine {
+
+    /**
+     * Connection states
+     */
+    public enum State {
+        IDLE,
+        ADAPTER_OFF,
+        SCANNING,
+        CONNECTING,
+        DISCOVERING,
+        CONNECTED,
+        WAITING_TO_RETRY
+    }
+
+    /**
+     * Side effects requested by the state machine
+     */
+    public interface Actions {
+        void startScan();
+
+        void stopScan();
+
+        void connect(String address, boolean autoConnect);
+
+        void closeConnection();
+
+        void scheduleRetry(long delayMillis);
+
+        void cancelRetry();
+
+        void saveKnownAddress(String address);
+    }
+
+    /**
+     * Observer for state changes, e.g. to update the notification
+     */
+    public interface StateListener {
+        void onStateChanged(State oldState, State newState);
+    }
+
+    // Consecutive failed direct attempts before falling back to a scan
+    private static final int MAX_DIRECT_FAILURES = 5;
+
+    // Immediate direct retries after a drop when a fast reconnect was armed
+    private static final int FAST_RECONNECT_ATTEMPTS = 3;
+    private static final long FAST_RETRY_DELAY_MS = 100;
+
+    private final Actions actions;
+    private final ReconnectBackoff backoff;
+    private StateListener stateListener;
+
+    private State state = State.IDLE;
+    private String knownAddress;
+    private boolean adapterEnabled = true;
+    private int directFailures;
+    private int fastAttemptsLeft;
+    private boolean fastRetryPending;
+
+    // Reconnect timing (System.nanoTime based)
+    private long linkLostAtNanos;
+    private long reconnectCount;
+    private long lastReconnectMillis;
+    private long totalReconnectMillis;
+    private long maxReconnectMillis;
+
+    /**
+     * @param actions Side effects
+     * @param backoff Backoff used between failed attempts
+     * @param knownAddress Address of the previously connected watch, or null
+     */
+    public ConnectionStateMachine(Actions actions, ReconnectBackoff backoff, String knownAddress) {
+        this.actions = actions;
+        this.backoff = backoff;
+        this.knownAddress = knownAddress;
+    }
+
+    public void setStateListener(StateListener stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    /**
+     * Begin connecting: directly if a watch is known, otherwise by scanning
+     */
+    public void start() {
+        if (!adapterEnabled) {
+            setState(State.ADAPTER_OFF);
+            return;
+        }
+        if (state != State.IDLE && state != State.ADAPTER_OFF) {
+            return;
+        }
+        connectOrScan(false);
+    }
+
+    /**
+     * Tear everything down and stay idle until {@link #start()}
+     */
+    public void stop() {
+        fastAttemptsLeft = 0;
+        fastRetryPending = false;
+        actions.cancelRetry();
+        actions.stopScan();
+        actions.closeConnection();
+        linkLostAtNanos = 0;
+        setState(State.IDLE);
+    }
+
+    /**
+     * The Bluetooth adapter was switched off
+     */
+    public void onAdapterOff() {
+        adapterEnabled = false;
+        if (state == State.CONNECTED || state == State.DISCOVERING) {
+            markLinkLost();
+        }
+        actions.cancelRetry();
+        actions.stopScan();
+        actions.closeConnection();
+        setState(State.ADAPTER_OFF);
+    }
+
+    /**
+     * The Bluetooth adapter was switched on; reconnect right away
+     */
+    public void onAdapterOn() {
+        adapterEnabled = true;
+        if (state == State.ADAPTER_OFF) {
+            backoff.reset();
+            directFailures = 0;
+            connectOrScan(false);
+        }
+    }
+
+    /**
+     * A scan found a watch with the expected name
+     */
+    public void onDeviceFound(String address) {
+        if (state != State.SCANNING) {
+            return;
+        }
+        actions.stopScan();
+        knownAddress = address;
+        directFailures = 0;
+        setState(State.CONNECTING);
+        actions.connect(address, false);
+    }
+
+    /**
+     * The GATT link is up; service discovery is in progress
+     */
+    public void onConnected() {
+        if (state == State.CONNECTING || state == State.WAITING_TO_RETRY) {
+            actions.cancelRetry();
+            setState(State.DISCOVERING);
+        }
+    }
+
+    /**
+     * Services were discovered and notifications enabled
+     */
+    public void onReady() {
+        if (state != State.DISCOVERING && state != State.CONNECTING) {
+            return;
+        }
+        backoff.reset();
+        directFailures = 0;
+        fastAttemptsLeft = 0;
+        if (knownAddress != null) {
+            actions.saveKnownAddress(knownAddress);
+        }
+        if (linkLostAtNanos != 0) {
+            recordReconnect(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - linkLostAtNanos));
+            linkLostAtNanos = 0;
+        }
+        setState(State.CONNECTED);
+    }
+
+    /**
+     * The GATT link dropped, or a connection attempt failed
+     */
+    public void onDisconnected() {
+        switch (state) {
+            case CONNECTED:
+            case DISCOVERING:
+                // Link drop: reconnect immediately without scanning
+                markLinkLost();
+                actions.closeConnection();
+                connectOrScan(false);
+                break;
+            case CONNECTING:
+                actions.closeConnection();
+                if (fastAttemptsLeft > 0) {
+                    // The link was degrading: retry directly while the watch may still be close
+                    fastAttemptsLeft--;
+                    fastRetryPending = true;
+                    setState(State.WAITING_TO_RETRY);
+                    actions.scheduleRetry(FAST_RETRY_DELAY_MS);
+                    break;
+                }
+                // Attempt failed: back off before the next one
+                directFailures++;
+                long delay = backoff.nextDelayMillis();
+                setState(State.WAITING_TO_RETRY);
+                actions.scheduleRetry(delay);
+                break;
+            default:
+                // Late callback from a connection that was already closed
+                break;
+        }
+    }
+
+    /**
+     * The backoff delay scheduled through {@link Actions#scheduleRetry} elapsed
+     */
+    public void onRetryTimer() {
+        if (state != State.WAITING_TO_RETRY) {
+            return;
+        }
+        if (fastRetryPending) {
+            fastRetryPending = false;
+            connectOrScan(false);
+            return;
+        }
+        if (directFailures >= MAX_DIRECT_FAILURES) {
+            // The watch may have changed its address; look for it by name
+            directFailures = 0;
+            setState(State.SCANNING);
+            actions.startScan();
+        } else {
+            connectOrScan(true);
+        }
+    }
+
+    /**
+     * The connected link is degrading; make the reconnect after a drop retry without backoff
+     */
+    public void armFastReconnect() {
+        if (state == State.CONNECTED) {
+            backoff.reset();
+            directFailures = 0;
+            fastAttemptsLeft = FAST_RECONNECT_ATTEMPTS;
+        }
+    }
+
+    /**
+     * The link recovered; reconnects after a drop back off as usual
+     */
+    public void disarmFastReconnect() {
+        if (state == State.CONNECTED) {
+            fastAttemptsLeft = 0;
+        }
+    }
+
+    public boolean isFastReconnectArmed() {
+        return fastAttemptsLeft > 0;
+    }
+
+    private void connectOrScan(boolean autoConnect) {
+        if (knownAddress != null) {
+            setState(State.CONNECTING);
+            actions.connect(knownAddress, autoConnect);
+        } else {
+            setState(State.SCANNING);
+            actions.startScan();
+        }
+    }
+
+    private void markLinkLost() {
+        if (linkLostAtNanos == 0) {
+            linkLostAtNanos = System.nanoTime();
+        }
+    }
+
+    private void recordReconnect(long millis) {
+        reconnectCount++;
+        lastReconnectMillis = millis;
+        totalReconnectMillis += millis;
+        maxReconnectMillis = Math.max(maxReconnectMillis, millis);
+    }
+
+    private void setState(State newState) {
+        State oldState = state;
+        state = newState;
+        if (oldState != newState && stateListener != null) {
+            stateListener.onStateChanged(oldState, newState);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getKnownAddress() {
+        return knownAddress;
+    }
+
+    /**
+     * Get the number of completed reconnects after a link drop
+     */
+    public long getReconnectCount() {
+        return reconnectCount;
+    }
+
+    /**
+     * Get the time from link drop to notifications re-enabled for the last reconnect
+     */
+    public long getLastReconnectMillis() {
+        return lastReconnectMillis;
+    }
+
+    public long getAverageReconnectMillis() {
+        return reconnectCount == 0 ? 0 : totalReconnectMillis / reconnectCount;
+    }
+
+    public long getMaxReconnectMillis() {
+        return maxReconnectMillis;
+    }
+}
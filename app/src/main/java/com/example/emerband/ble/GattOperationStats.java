@@ -0,0 +1,100 @@
+package com.example.emerband.ble;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and outcome counters for GATT operations, per operation type.
+ * Methods are synchronized so stats can be read from any thread.
+ */
+public final class GattOperationStats {
+
+    /**
+     * GATT operation types
+     */
+    public enum Type {
+        WRITE_DESCRIPTOR,
+        READ_CHARACTERISTIC,
+        REQUEST_MTU
+    }
+
+    private final long[] completed = new long[Type.values().length];
+    private final long[] failed = new long[Type.values().length];
+    private final long[] timedOut = new long[Type.values().length];
+    private final long[] retried = new long[Type.values().length];
+    private final long[] totalLatencyNanos = new long[Type.values().length];
+    private final long[] maxLatencyNanos = new long[Type.values().length];
+
+    /**
+     * Record a finished operation
+     * @param type Operation type
+     * @param success Whether the stack reported success
+     * @param latencyNanos Time from issuing the operation to its callback
+     */
+    public synchronized void recordCompletion(Type type, boolean success, long latencyNanos) {
+        int i = type.ordinal();
+        if (success) {
+            completed[i]++;
+            totalLatencyNanos[i] += latencyNanos;
+            maxLatencyNanos[i] = Math.max(maxLatencyNanos[i], latencyNanos);
+        } else {
+            failed[i]++;
+        }
+    }
+
+    public synchronized void recordTimeout(Type type) {
+        timedOut[type.ordinal()]++;
+    }
+
+    public synchronized void recordRetry(Type type) {
+        retried[type.ordinal()]++;
+    }
+
+    public synchronized long getCompletedCount(Type type) {
+        return completed[type.ordinal()];
+    }
+
+    public synchronized long getFailedCount(Type type) {
+        return failed[type.ordinal()];
+    }
+
+    public synchronized long getTimeoutCount(Type type) {
+        return timedOut[type.ordinal()];
+    }
+
+    public synchronized long getRetryCount(Type type) {
+        return retried[type.ordinal()];
+    }
+
+    /**
+     * Get the average latency of successful operations, in milliseconds
+     */
+    public synchronized long getAverageLatencyMillis(Type type) {
+        int i = type.ordinal();
+        return completed[i] == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos[i] / completed[i]);
+    }
+
+    public synchronized long getMaxLatencyMillis(Type type) {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos[type.ordinal()]);
+    }
+
+    /**
+     * Human-readable summary for every operation type that has been used
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Type type : Type.values()) {
+            int i = type.ordinal();
+            if (completed[i] + failed[i] + timedOut[i] == 0) {
+                continue;
+            }
+            sb.append(type)
+                    .append(": ok=").append(completed[i])
+                    .append(" failed=").append(failed[i])
+                    .append(" timeouts=").append(timedOut[i])
+                    .append(" retries=").append(retried[i])
+                    .append(" avg=").append(getAverageLatencyMillis(type)).append("ms")
+                    .append(" max=").append(getMaxLatencyMillis(type)).append("ms\n");
+        }
+        return sb.length() == 0 ? "no operations" : sb.toString().trim();
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.emerband.ble;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the quality of a connected watch link.
+ *
+ * The remote RSSI is polled at an interval that depends on the current
+ * quality: sparse while the link is strong, denser as it degrades or as
+ * single readings drop below the average, and densest after a failed read.
+ * Samples are smoothed with an exponential moving average and classified
+ * as {@link Quality#GOOD}, {@link Quality#FAIR} or {@link Quality#POOR}
+ * with a hysteresis margin, so a single weak reading does not flip the
+ * state.
+ *
+ * Every notification and RSSI reply counts as a sign of life. If neither
+ * arrives for {@link #HEARTBEAT_TIMEOUT_MILLIS} the link is reported as
+ * silent, so a link that died without a disconnect event is detected
+ * within that bound instead of the (much longer) supervision timeout.
+ *
+ * The monitor holds no Bluetooth objects; all requests go through
+ * {@link Control}. Events must be delivered on one thread; getters may be
+ * called from any thread.
+ */
+public final class LinkQualityMonitor {
+
+    /**
+     * Link quality classes
+     */
+    public enum Quality {
+        GOOD,
+        FAIR,
+        POOR
+    }
+
+    /**
+     * Requests and reports, carried out by the watch session
+     */
+    public interface Control {
+        /**
+         * Read the remote RSSI; answer with {@link #onRssi} or {@link #onRssiFailed}
+         */
+        void requestRssi();
+
+        void schedulePoll(long delayMillis);
+
+        void cancelPoll();
+
+        void onQualityChanged(Quality oldQuality, Quality newQuality, int smoothedRssi);
+
+        /**
+         * Nothing was heard from the link for the heartbeat timeout
+         * @param silentMillis Time since the last sign of life
+         */
+        void onLinkSilent(long silentMillis);
+    }
+
+    // Smoothed RSSI thresholds (dBm) and the margin needed to change class
+    public static final int GOOD_RSSI = -75;
+    public static final int POOR_RSSI = -88;
+    public static final int HYSTERESIS_DB = 3;
+
+    // Poll interval per quality, and after a failed read
+    public static final long GOOD_POLL_MILLIS = 5000;
+    public static final long FAIR_POLL_MILLIS = 2500;
+    public static final long POOR_POLL_MILLIS = 1000;
+
+    // A read without an answer within this time counts as failed
+    public static final long RSSI_TIMEOUT_MILLIS = 2000;
+
+    // A link silent for this long is treated as dead
+    public static final long HEARTBEAT_TIMEOUT_MILLIS = 8000;
+
+    // Weight of a new sample in the moving average
+    private static final double SMOOTHING = 0.3;
+
+    private static final long RSSI_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(RSSI_TIMEOUT_MILLIS);
+    private static final long HEARTBEAT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_TIMEOUT_MILLIS);
+
+    private final Control control;
+
+    private boolean running;
+    private Quality quality = Quality.GOOD;
+    private boolean hasSample;
+    private double smoothedRssi;
+    private int lastRssi;
+    private long lastHeardNanos;
+    private long nextPollNanos;
+    private boolean rssiPending;
+    private long rssiRequestedNanos;
+    private boolean lastPollFailed;
+
+    // Polling cost
+    private long startedAtNanos;
+    private long monitoredNanos;
+    private long polls;
+    private long failedPolls;
+    private final long[] qualityNanos = new long[Quality.values().length];
+    private long qualitySinceNanos;
+
+    // Detection
+    private long silentDetections;
+    private long lastSilentDetectionMillis;
+    private long maxSilentDetectionMillis;
+    private long poorWarnings;
+    private long poorSinceNanos;
+    private long linkLossesAfterWarning;
+    private long lastWarningLeadMillis;
+
+    public LinkQualityMonitor(Control control) {
+        this.control = control;
+    }
+
+    /**
+     * The link is connected and subscribed; start polling
+     * @param nowNanos System.nanoTime()
+     */
+    public synchronized void start(long nowNanos) {
+        if (running) {
+            return;
+        }
+        running = true;
+        quality = Quality.GOOD;
+        hasSample = false;
+        rssiPending = false;
+        lastPollFailed = false;
+        poorSinceNanos = 0;
+        lastHeardNanos = nowNanos;
+        startedAtNanos = nowNanos;
+        qualitySinceNanos = nowNanos;
+        nextPollNanos = nowNanos;
+        onPollTimer(nowNanos);
+    }
+
+    /**
+     * The link is gone (disconnect, close or silent); stop polling
+     * @param nowNanos System.nanoTime()
+     */
+    public synchronized void stop(long nowNanos) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        control.cancelPoll();
+        accountQualityTime(nowNanos);
+        monitoredNanos += nowNanos - startedAtNanos;
+
+        if (poorSinceNanos != 0) {
+            // The user was warned before the link went down
+            linkLossesAfterWarning++;
+            lastWarningLeadMillis = TimeUnit.NANOSECONDS.toMillis(nowNanos - poorSinceNanos);
+            poorSinceNanos = 0;
+        }
+    }
+
+    /**
+     * A notification arrived from the watch
+     */
+    public synchronized void onActivity(long nowNanos) {
+        lastHeardNanos = Math.max(lastHeardNanos, nowNanos);
+    }
+
+    /**
+     * An RSSI read requested through {@link Control#requestRssi()} returned
+     */
+    public synchronized void onRssi(int rssi, long nowNanos) {
+        if (!running || !rssiPending) {
+            return;
+        }
+        rssiPending = false;
+        lastPollFailed = false;
+        onActivity(nowNanos);
+
+        lastRssi = rssi;
+        smoothedRssi = hasSample ? smoothedRssi + SMOOTHING * (rssi - smoothedRssi) : rssi;
+        hasSample = true;
+        updateQuality(nowNanos);
+        nextPollNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis());
+        reschedule(nowNanos);
+    }
+
+    /**
+     * An RSSI read failed
+     */
+    public synchronized void onRssiFailed(long nowNanos) {
+        if (!running || !rssiPending) {
+            return;
+        }
+        recordFailedPoll(nowNanos);
+        reschedule(nowNanos);
+    }
+
+    /**
+     * The delay scheduled through {@link Control#schedulePoll} elapsed
+     */
+    public synchronized void onPollTimer(long nowNanos) {
+        if (!running) {
+            return;
+        }
+        if (rssiPending && nowNanos - rssiRequestedNanos >= RSSI_TIMEOUT_NANOS) {
+            recordFailedPoll(nowNanos);
+        }
+
+        long silentNanos = nowNanos - lastHeardNanos;
+        if (silentNanos >= HEARTBEAT_TIMEOUT_NANOS) {
+            long silentMillis = TimeUnit.NANOSECONDS.toMillis(silentNanos);
+            silentDetections++;
+            lastSilentDetectionMillis = silentMillis;
+            maxSilentDetectionMillis = Math.max(maxSilentDetectionMillis, silentMillis);
+            stop(nowNanos);
+            control.onLinkSilent(silentMillis);
+            return;
+        }
+
+        if (!rssiPending && nowNanos >= nextPollNanos) {
+            rssiPending = true;
+            rssiRequestedNanos = nowNanos;
+            polls++;
+            control.requestRssi();
+        }
+        reschedule(nowNanos);
+    }
+
+    private void recordFailedPoll(long nowNanos) {
+        rssiPending = false;
+        lastPollFailed = true;
+        failedPolls++;
+        nextPollNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(POOR_POLL_MILLIS);
+    }
+
+    /**
+     * Schedule the next tick: the next poll, the read timeout or the heartbeat deadline
+     */
+    private void reschedule(long nowNanos) {
+        long due = lastHeardNanos + HEARTBEAT_TIMEOUT_NANOS;
+        if (rssiPending) {
+            due = Math.min(due, rssiRequestedNanos + RSSI_TIMEOUT_NANOS);
+        } else {
+            due = Math.min(due, nextPollNanos);
+        }
+        control.cancelPoll();
+        control.schedulePoll(Math.max(0, TimeUnit.NANOSECONDS.toMillis(due - nowNanos)));
+    }
+
+    private long pollIntervalMillis() {
+        if (lastPollFailed) {
+            return POOR_POLL_MILLIS;
+        }
+        // A raw sample worse than the average is a hint to look again sooner
+        Quality hint = classify(lastRssi);
+        switch (hint.ordinal() > quality.ordinal() ? hint : quality) {
+            case GOOD:
+                return GOOD_POLL_MILLIS;
+            case FAIR:
+                return FAIR_POLL_MILLIS;
+            default:
+                return POOR_POLL_MILLIS;
+        }
+    }
+
+    private void updateQuality(long nowNanos) {
+        Quality target = classify(smoothedRssi);
+        if (target == quality) {
+            return;
+        }
+        // Only change class once the average is past the threshold by the margin
+        boolean better = target.ordinal() < quality.ordinal();
+        Quality withMargin = classify(better ? smoothedRssi - HYSTERESIS_DB : smoothedRssi + HYSTERESIS_DB);
+        if (withMargin == quality) {
+            return;
+        }
+
+        Quality oldQuality = quality;
+        accountQualityTime(nowNanos);
+        quality = target;
+        if (target == Quality.POOR) {
+            poorWarnings++;
+            poorSinceNanos = nowNanos;
+        } else {
+            poorSinceNanos = 0;
+        }
+        control.onQualityChanged(oldQuality, target, (int) Math.round(smoothedRssi));
+    }
+
+    private static Quality classify(double rssi) {
+        if (rssi >= GOOD_RSSI) {
+            return Quality.GOOD;
+        }
+        return rssi < POOR_RSSI ? Quality.POOR : Quality.FAIR;
+    }
+
+    private void accountQualityTime(long nowNanos) {
+        qualityNanos[quality.ordinal()] += nowNanos - qualitySinceNanos;
+        qualitySinceNanos = nowNanos;
+    }
+
+    public synchronized Quality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Get the smoothed RSSI in dBm, or 0 before the first sample
+     */
+    public synchronized int getSmoothedRssi() {
+        return hasSample ? (int) Math.round(smoothedRssi) : 0;
+    }
+
+    public synchronized long getPollCount() {
+        return polls;
+    }
+
+    /**
+     * Get the number of RSSI reads per hour of monitored link time
+     */
+    public synchronized long getPollsPerHour() {
+        long monitored = monitoredNanos + (running ? System.nanoTime() - startedAtNanos : 0);
+        return monitored <= 0 ? 0 : polls * TimeUnit.HOURS.toNanos(1) / monitored;
+    }
+
+    public synchronized long getSilentDetectionCount() {
+        return silentDetections;
+    }
+
+    /**
+     * Human-readable summary of polling cost and detection
+     */
+    public synchronized String getSummary() {
+        long good = TimeUnit.NANOSECONDS.toSeconds(qualityNanos[Quality.GOOD.ordinal()]);
+        long fair = TimeUnit.NANOSECONDS.toSeconds(qualityNanos[Quality.FAIR.ordinal()]);
+        long poor = TimeUnit.NANOSECONDS.toSeconds(qualityNanos[Quality.POOR.ordinal()]);
+        return "quality=" + quality
+                + " rssi=" + getSmoothedRssi() + "dBm (last " + lastRssi + ")"
+                + " polls=" + polls + " (" + getPollsPerHour() + "/h, failed " + failedPolls + ")"
+                + " time good/fair/poor=" + good + "/" + fair + "/" + poor + "s"
+                + " warnings=" + poorWarnings
+                + " lossesAfterWarning=" + linkLossesAfterWarning
+                + " (lead " + lastWarningLeadMillis + "ms)"
+                + " silent=" + silentDetections
+                + " (last " + lastSilentDetectionMillis + "ms, max " + maxSilentDetectionMillis + "ms)";
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.emerband.ble;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the watch link to the alert lifecycle.
+ *
+ * While idle the link runs at low-power connection priority. When an
+ * emergency ('E') or general alert ('A') arrives the tuner switches to
+ * high priority, prefers the 2M PHY and makes sure the larger MTU is in
+ * place, so the frames that follow (GPS, IMU bursts, acks) arrive with the
+ * shortest connection interval. The link relaxes back to low power once
+ * no alert has arrived for {@link #ALERT_HOLD_MILLIS}, or at once when the
+ * alert is cancelled ('X').
+ *
+ * The negotiated parameters are reported back through the on...() methods
+ * and kept for diagnostics, together with the gap between consecutive
+ * notifications in each mode as a measure of the effect on latency.
+ *
+ * The tuner holds no Bluetooth objects; all requests go through
+ * {@link LinkControl}. Events must be delivered on one thread; getters may
+ * be called from any thread.
+ */
+public final class LinkTuner {
+
+    /**
+     * Link modes
+     */
+    public enum Mode {
+        IDLE,
+        ALERT
+    }
+
+    /**
+     * Link parameter requests, carried out by the BLE connection
+     */
+    public interface LinkControl {
+        /**
+         * @param high true for high connection priority, false for low power
+         */
+        void requestConnectionPriority(boolean high);
+
+        void requestMtu(int mtu);
+
+        /**
+         * @param fast true to prefer the 2M PHY, false for 1M
+         */
+        void requestPreferredPhy(boolean fast);
+
+        void scheduleRelax(long delayMillis);
+
+        void cancelRelax();
+    }
+
+    // How long the link stays tuned for alerts after the last alert frame
+    public static final long ALERT_HOLD_MILLIS = 30000;
+
+    // MTU that fits a full frame (and IMU bursts) in one notification
+    public static final int PREFERRED_MTU = 247;
+
+    // PHY values as reported by the stack (BluetoothDevice.PHY_LE_*)
+    public static final int PHY_LE_1M = 1;
+    public static final int PHY_LE_2M = 2;
+
+    // Default ATT MTU before negotiation
+    private static final int DEFAULT_MTU = 23;
+
+    // Notification gaps above this are pauses between bursts, not link latency
+    private static final long MAX_BURST_GAP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LinkControl control;
+
+    private Mode mode = Mode.IDLE;
+    private boolean linkReady;
+    private boolean mtuRequested;
+
+    // Negotiated parameters
+    private int mtu = DEFAULT_MTU;
+    private int txPhy = PHY_LE_1M;
+    private int rxPhy = PHY_LE_1M;
+    private int connectionIntervalUnits;
+
+    // Time to apply high priority after an alert
+    private long boostRequestedAtNanos;
+    private long boostCount;
+    private long lastBoostMillis;
+    private long maxBoostMillis;
+
+    // Gaps between consecutive notifications, per mode
+    private long lastFrameAtNanos;
+    private final long[] gapCount = new long[Mode.values().length];
+    private final long[] totalGapNanos = new long[Mode.values().length];
+
+    public LinkTuner(LinkControl control) {
+        this.control = control;
+    }
+
+    /**
+     * The link is connected and subscribed; start in low-power mode
+     */
+    public synchronized void onLinkReady() {
+        linkReady = true;
+        mode = Mode.IDLE;
+        lastFrameAtNanos = 0;
+        control.requestConnectionPriority(false);
+        ensureMtu();
+    }
+
+    /**
+     * The link dropped; everything is renegotiated on the next connection
+     */
+    public synchronized void onLinkLost() {
+        linkReady = false;
+        mtuRequested = false;
+        mode = Mode.IDLE;
+        mtu = DEFAULT_MTU;
+        txPhy = PHY_LE_1M;
+        rxPhy = PHY_LE_1M;
+        connectionIntervalUnits = 0;
+        boostRequestedAtNanos = 0;
+        control.cancelRelax();
+    }
+
+    /**
+     * A frame with the given signal arrived from the watch
+     * @param signal Signal code of the frame
+     * @param receivedAtNanos System.nanoTime() when the notification arrived
+     */
+    public synchronized void onFrame(char signal, long receivedAtNanos) {
+        recordGap(receivedAtNanos);
+        if (!linkReady) {
+            return;
+        }
+
+        if (signal == 'E' || signal == 'A') {
+            if (mode != Mode.ALERT) {
+                mode = Mode.ALERT;
+                boostRequestedAtNanos = receivedAtNanos;
+                control.requestConnectionPriority(true);
+                control.requestPreferredPhy(true);
+                ensureMtu();
+            }
+            // Each alert frame extends the hold
+            control.cancelRelax();
+            control.scheduleRelax(ALERT_HOLD_MILLIS);
+        } else if (signal == 'X' && mode == Mode.ALERT) {
+            relax();
+        }
+    }
+
+    /**
+     * The alert hold scheduled through {@link LinkControl#scheduleRelax} elapsed
+     */
+    public synchronized void onRelaxTimer() {
+        if (mode == Mode.ALERT) {
+            relax();
+        }
+    }
+
+    /**
+     * The connection parameters were updated
+     * @param intervalUnits Connection interval in units of 1.25 ms
+     */
+    public synchronized void onConnectionUpdated(int intervalUnits) {
+        connectionIntervalUnits = intervalUnits;
+        if (mode == Mode.ALERT && boostRequestedAtNanos != 0) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - boostRequestedAtNanos);
+            boostCount++;
+            lastBoostMillis = millis;
+            maxBoostMillis = Math.max(maxBoostMillis, millis);
+            boostRequestedAtNanos = 0;
+        }
+    }
+
+    public synchronized void onMtuChanged(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public synchronized void onPhyChanged(int txPhy, int rxPhy) {
+        this.txPhy = txPhy;
+        this.rxPhy = rxPhy;
+    }
+
+    private void relax() {
+        mode = Mode.IDLE;
+        boostRequestedAtNanos = 0;
+        control.cancelRelax();
+        control.requestConnectionPriority(false);
+        control.requestPreferredPhy(false);
+    }
+
+    private void ensureMtu() {
+        // The MTU can only be exchanged once per connection
+        if (!mtuRequested) {
+            mtuRequested = true;
+            control.requestMtu(PREFERRED_MTU);
+        }
+    }
+
+    private void recordGap(long receivedAtNanos) {
+        if (lastFrameAtNanos != 0) {
+            long gap = receivedAtNanos - lastFrameAtNanos;
+            if (gap > 0 && gap <= MAX_BURST_GAP_NANOS) {
+                gapCount[mode.ordinal()]++;
+                totalGapNanos[mode.ordinal()] += gap;
+            }
+        }
+        lastFrameAtNanos = receivedAtNanos;
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    public synchronized int getMtu() {
+        return mtu;
+    }
+
+    public synchronized int getTxPhy() {
+        return txPhy;
+    }
+
+    public synchronized int getRxPhy() {
+        return rxPhy;
+    }
+
+    /**
+     * Get the current connection interval in milliseconds, or 0 if not reported yet
+     */
+    public synchronized double getConnectionIntervalMillis() {
+        return connectionIntervalUnits * 1.25;
+    }
+
+    /**
+     * Get the average gap between notifications within a burst in the given mode, in microseconds
+     */
+    public synchronized long getAverageFrameGapMicros(Mode mode) {
+        int i = mode.ordinal();
+        return gapCount[i] == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalGapNanos[i] / gapCount[i]);
+    }
+
+    /**
+     * Get the time from the last alert to high priority taking effect, in milliseconds
+     */
+    public synchronized long getLastBoostMillis() {
+        return lastBoostMillis;
+    }
+
+    /**
+     * Human-readable summary of the negotiated parameters and their effect
+     */
+    public synchronized String getSummary() {
+        return "mode=" + mode
+                + " interval=" + getConnectionIntervalMillis() + "ms"
+                + " mtu=" + mtu
+                + " phy=" + txPhy + "/" + rxPhy
+                + " boosts=" + boostCount
+                + " (last " + lastBoostMillis + "ms, max " + maxBoostMillis + "ms)"
+                + " gapIdle=" + getAverageFrameGapMicros(Mode.IDLE) + "us"
+                + " gapAlert=" + getAverageFrameGapMicros(Mode.ALERT) + "us";
+    }
+}
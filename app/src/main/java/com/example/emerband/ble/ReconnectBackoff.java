@@ -0,0 +1,62 @@
+package com.example.emerband.ble;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for reconnect attempts.
+ *
+ * Each delay is drawn uniformly from [cap / 2, cap] where the cap doubles
+ * per attempt up to a maximum. Keeping half the cap fixed bounds how early
+ * a retry can fire, the random half keeps several phones (or several
+ * watches) from retrying in lock step.
+ */
+public final class ReconnectBackoff {
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+    private int attempt;
+
+    public ReconnectBackoff(long initialDelayMillis, long maxDelayMillis) {
+        this(initialDelayMillis, maxDelayMillis, new Random());
+    }
+
+    public ReconnectBackoff(long initialDelayMillis, long maxDelayMillis, Random random) {
+        if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Invalid backoff range: "
+                    + initialDelayMillis + ".." + maxDelayMillis);
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    /**
+     * Get the delay before the next attempt and advance the attempt counter
+     */
+    public long nextDelayMillis() {
+        long cap = maxDelayMillis;
+        // Stop shifting once the cap is reached to avoid overflow
+        if (attempt < 31) {
+            cap = Math.min(maxDelayMillis, initialDelayMillis << attempt);
+        }
+        attempt++;
+
+        long half = cap / 2;
+        return half + (long) (random.nextDouble() * (cap - half + 1));
+    }
+
+    /**
+     * Start again from the initial delay, e.g. after a successful connection
+     */
+    public void reset() {
+        attempt = 0;
+    }
+
+    /**
+     * Get the number of delays handed out since the last reset
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.emerband.ble;
+
+/**
+ * Scan duty-cycle presets used by {@link ScanScheduler}.
+ *
+ * Each cycle is a short low-latency burst followed by a long low-power
+ * window. Shorter windows find the watch sooner and cost more battery.
+ * Android silently throttles apps that start more than 5 scans in 30
+ * seconds; every cycle starts 2 scans, so a cycle must last at least 12 s.
+ */
+public enum ScanPolicy {
+
+    RESPONSIVE(5000, 10000),
+    BALANCED(3000, 27000),
+    BATTERY_SAVER(2000, 58000);
+
+    // Minimum cycle length that stays under the platform scan-start limit
+    public static final long MIN_CYCLE_MILLIS = 12000;
+
+    private final long burstMillis;
+    private final long lowPowerWindowMillis;
+
+    ScanPolicy(long burstMillis, long lowPowerWindowMillis) {
+        if (burstMillis + lowPowerWindowMillis < MIN_CYCLE_MILLIS) {
+            throw new IllegalArgumentException("Scan cycle shorter than " + MIN_CYCLE_MILLIS + " ms");
+        }
+        this.burstMillis = burstMillis;
+        this.lowPowerWindowMillis = lowPowerWindowMillis;
+    }
+
+    /**
+     * Duration of the SCAN_MODE_LOW_LATENCY burst at the start of each cycle
+     */
+    public long getBurstMillis() {
+        return burstMillis;
+    }
+
+    /**
+     * Duration of the SCAN_MODE_LOW_POWER window that follows the burst
+     */
+    public long getLowPowerWindowMillis() {
+        return lowPowerWindowMillis;
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.emerband.ble;
+
+import android.app.PendingIntent;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.emerband.transport.WatchScanner;
+
+import java.util.List;
+
+/**
+ * Duty-cycled BLE scan scheduler.
+ *
+ * While searching it repeats a cycle of a short SCAN_MODE_LOW_LATENCY burst
+ * followed by a long SCAN_MODE_LOW_POWER window, as set by the current
+ * {@link ScanPolicy}, until {@link #stop()} is called. On Android 8.0+ the
+ * low-power window is started with a PendingIntent so the OS delivers a
+ * filter match (and wakes the service) even if the app is in the background;
+ * pass the delivered intent to {@link #onPendingIntentResults(Intent)}.
+ *
+ * Records time spent in each scan mode, an estimate of the radio duty cycle
+ * and the latency from starting a search to detecting the watch.
+ * All methods must be called on the handler's thread.
+ */
+public class ScanScheduler implements WatchScanner {
+
+    private static final String TAG = "ScanScheduler";
+
+    // Approximate fraction of time the radio listens in each mode (AOSP scan window / interval)
+    private static final double LOW_LATENCY_RADIO_DUTY = 1.0;
+    private static final double LOW_POWER_RADIO_DUTY = 512.0 / 5120.0;
+
+    /**
+     * Receives every scan result, from either the callback or the PendingIntent
+     */
+    public interface Listener {
+        void onScanResult(ScanResult result);
+    }
+
+    private enum Phase {
+        IDLE,
+        BURST,
+        LOW_POWER
+    }
+
+    private final BluetoothAdapter bluetoothAdapter;
+    private final Handler handler;
+    private final List<ScanFilter> filters;
+    private final PendingIntent scanPendingIntent;
+    private final Listener listener;
+    private ScanPolicy policy = ScanPolicy.BALANCED;
+
+    private BluetoothLeScanner activeScanner;
+    private boolean pendingIntentScanActive;
+    private Phase phase = Phase.IDLE;
+    private long phaseStartedAt;
+    private long searchStartedAt;
+
+    // Time spent per scan mode (ms)
+    private long burstMillis;
+    private long lowPowerMillis;
+
+    // Detection latency stats (ms)
+    private long detectionCount;
+    private long lastDetectionMillis;
+    private long totalDetectionMillis;
+    private long maxDetectionMillis;
+    private long burstDetections;
+
+    private final Runnable phaseRunnable = this::advancePhase;
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            listener.onScanResult(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                listener.onScanResult(result);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "Scan failed with error: " + errorCode);
+        }
+    };
+
+    /**
+     * @param bluetoothAdapter Adapter used to obtain the scanner for each phase
+     * @param handler Handler for phase timers and callbacks
+     * @param filters Scan filters (a result must match at least one)
+     * @param scanPendingIntent PendingIntent for low-power windows, or null to use a callback
+     * @param listener Receiver for scan results
+     */
+    public ScanScheduler(BluetoothAdapter bluetoothAdapter, Handler handler, List<ScanFilter> filters,
+                         PendingIntent scanPendingIntent, Listener listener) {
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.handler = handler;
+        this.filters = filters;
+        this.scanPendingIntent = scanPendingIntent;
+        this.listener = listener;
+    }
+
+    /**
+     * Change the duty-cycle policy; takes effect at the next phase
+     */
+    public void setPolicy(ScanPolicy policy) {
+        this.policy = policy;
+    }
+
+    public ScanPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Start searching; keeps cycling until {@link #stop()}
+     */
+    @Override
+    public void start() {
+        if (phase != Phase.IDLE) {
+            return;
+        }
+        searchStartedAt = SystemClock.elapsedRealtime();
+        Log.d(TAG, "Starting scan cycle with policy " + policy);
+        startBurst();
+    }
+
+    /**
+     * Stop searching and release the scanner
+     */
+    @Override
+    public void stop() {
+        handler.removeCallbacks(phaseRunnable);
+        stopActiveScan();
+        enterPhase(Phase.IDLE);
+        searchStartedAt = 0;
+    }
+
+    @Override
+    public boolean isScanning() {
+        return phase != Phase.IDLE;
+    }
+
+    /**
+     * Deliver results from the PendingIntent used for low-power windows
+     */
+    public void onPendingIntentResults(Intent intent) {
+        int errorCode = intent.getIntExtra(BluetoothLeScanner.EXTRA_ERROR_CODE, -1);
+        if (errorCode != -1) {
+            Log.e(TAG, "PendingIntent scan failed with error: " + errorCode);
+            return;
+        }
+
+        List<ScanResult> results = intent.getParcelableArrayListExtra(BluetoothLeScanner.EXTRA_LIST_SCAN_RESULT);
+        if (results != null) {
+            for (ScanResult result : results) {
+                listener.onScanResult(result);
+            }
+        }
+    }
+
+    /**
+     * Record that the search found the watch, for detection latency stats
+     */
+    @Override
+    public void recordDetection() {
+        if (searchStartedAt == 0) {
+            return;
+        }
+
+        long latency = SystemClock.elapsedRealtime() - searchStartedAt;
+        detectionCount++;
+        lastDetectionMillis = latency;
+        totalDetectionMillis += latency;
+        maxDetectionMillis = Math.max(maxDetectionMillis, latency);
+        if (phase == Phase.BURST) {
+            burstDetections++;
+        }
+        searchStartedAt = 0;
+    }
+
+    private void advancePhase() {
+        if (phase == Phase.BURST) {
+            startLowPowerWindow();
+        } else if (phase == Phase.LOW_POWER) {
+            startBurst();
+        }
+    }
+
+    private void startBurst() {
+        stopActiveScan();
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .build();
+        startCallbackScan(settings);
+
+        // Keep cycling even if the scan could not start; the next phase retries
+        enterPhase(Phase.BURST);
+        handler.postDelayed(phaseRunnable, policy.getBurstMillis());
+    }
+
+    private void startLowPowerWindow() {
+        stopActiveScan();
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_POWER)
+                .build();
+
+        if (scanPendingIntent == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O
+                || !startPendingIntentScan(settings)) {
+            startCallbackScan(settings);
+        }
+
+        enterPhase(Phase.LOW_POWER);
+        handler.postDelayed(phaseRunnable, policy.getLowPowerWindowMillis());
+    }
+
+    private boolean startCallbackScan(ScanSettings settings) {
+        BluetoothLeScanner scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            Log.e(TAG, "Bluetooth scanner not available");
+            return false;
+        }
+
+        try {
+            scanner.startScan(filters, settings, scanCallback);
+            activeScanner = scanner;
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting BLE scan", e);
+            return false;
+        }
+    }
+
+    private boolean startPendingIntentScan(ScanSettings settings) {
+        BluetoothLeScanner scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            Log.e(TAG, "Bluetooth scanner not available");
+            return false;
+        }
+
+        try {
+            int result = scanner.startScan(filters, settings, scanPendingIntent);
+            if (result != 0) {
+                Log.e(TAG, "PendingIntent scan failed to start: " + result);
+                return false;
+            }
+            activeScanner = scanner;
+            pendingIntentScanActive = true;
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error starting PendingIntent scan", e);
+            return false;
+        }
+    }
+
+    private void stopActiveScan() {
+        if (activeScanner == null) {
+            return;
+        }
+
+        try {
+            if (pendingIntentScanActive && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                activeScanner.stopScan(scanPendingIntent);
+            } else {
+                activeScanner.stopScan(scanCallback);
+            }
+        } catch (Exception e) {
+            // The adapter may already be off
+            Log.e(TAG, "Error stopping BLE scan", e);
+        }
+        activeScanner = null;
+        pendingIntentScanActive = false;
+    }
+
+    private void enterPhase(Phase newPhase) {
+        long now = SystemClock.elapsedRealtime();
+        if (phase == Phase.BURST) {
+            burstMillis += now - phaseStartedAt;
+        } else if (phase == Phase.LOW_POWER) {
+            lowPowerMillis += now - phaseStartedAt;
+        }
+        phase = newPhase;
+        phaseStartedAt = now;
+    }
+
+    private long currentPhaseMillis(Phase which) {
+        return phase == which ? SystemClock.elapsedRealtime() - phaseStartedAt : 0;
+    }
+
+    /**
+     * Get the total time spent in low-latency bursts, in milliseconds
+     */
+    public long getBurstMillis() {
+        return burstMillis + currentPhaseMillis(Phase.BURST);
+    }
+
+    /**
+     * Get the total time spent in low-power windows, in milliseconds
+     */
+    public long getLowPowerMillis() {
+        return lowPowerMillis + currentPhaseMillis(Phase.LOW_POWER);
+    }
+
+    /**
+     * Estimate the fraction of scanning time the radio was actually listening
+     */
+    public double getRadioDutyCycle() {
+        long burst = getBurstMillis();
+        long lowPower = getLowPowerMillis();
+        long total = burst + lowPower;
+        if (total == 0) {
+            return 0;
+        }
+        return (burst * LOW_LATENCY_RADIO_DUTY + lowPower * LOW_POWER_RADIO_DUTY) / total;
+    }
+
+    public long getDetectionCount() {
+        return detectionCount;
+    }
+
+    public long getLastDetectionMillis() {
+        return lastDetectionMillis;
+    }
+
+    public long getAverageDetectionMillis() {
+        return detectionCount == 0 ? 0 : totalDetectionMillis / detectionCount;
+    }
+
+    public long getMaxDetectionMillis() {
+        return maxDetectionMillis;
+    }
+
+    /**
+     * Human-readable summary of scan duty cycle and detection latency
+     */
+    @Override
+    public String getStatsSummary() {
+        return "policy=" + policy
+                + " burst=" + getBurstMillis() + "ms"
+                + " lowPower=" + getLowPowerMillis() + "ms"
+                + " radioDuty=" + Math.round(getRadioDutyCycle() * 100) + "%"
+                + " detections=" + detectionCount
+                + " (in burst " + burstDetections + ")"
+                + " avg=" + getAverageDetectionMillis() + "ms"
+                + " max=" + maxDetectionMillis + "ms";
+    }
+}
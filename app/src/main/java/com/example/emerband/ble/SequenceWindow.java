@@ -0,0 +1,143 @@
+package com.example.emerband.ble;
+
+/**
+ * Sliding window over the 16-bit frame sequence numbers of one watch.
+ *
+ * Remembers the highest sequence seen and which of the previous
+ * {@link #WINDOW_SIZE} numbers arrived, so a frame repeated by the watch or
+ * a stale characteristic value replayed after a reconnect is recognised as
+ * a duplicate. Frames slightly out of order are still accepted once.
+ * A sequence far behind the window means the watch restarted and its
+ * counter began again, so the window is reset instead of dropping frames.
+ *
+ * A watch that restarts after only a few frames begins again inside the
+ * window, so a low counter alone cannot tell a reboot from a repeat. Watches
+ * from frame version 3 send a boot id that changes on every start, and a
+ * new boot id resets the window. Older watches send none; for them
+ * {@link #onReconnect()} forgets the window, since a reboot drops the link.
+ *
+ * Not thread-safe; use one instance per watch on that watch's thread.
+ */
+public final class SequenceWindow {
+
+    // Number of sequence numbers tracked behind the highest one
+    public static final int WINDOW_SIZE = 64;
+
+    private static final int SEQUENCE_MASK = 0xFFFF;
+    private static final int HALF_RANGE = 0x8000;
+
+    private boolean empty = true;
+    private int bootId = WatchFrame.NO_BOOT_ID;
+    private int highest;
+    // Bit i set: sequence (highest - i) was seen
+    private long seen;
+
+    private long accepted;
+    private long duplicates;
+    private long restarts;
+
+    /**
+     * Record a sequence number from a watch that sends no boot id
+     * @param sequence Sequence number from the frame (0-65535)
+     * @return true if the frame is new, false if it is a duplicate
+     */
+    public boolean accept(int sequence) {
+        return accept(WatchFrame.NO_BOOT_ID, sequence);
+    }
+
+    /**
+     * Record a sequence number
+     * @param bootId Boot id from the frame (0-65535), or {@link WatchFrame#NO_BOOT_ID}
+     * @param sequence Sequence number from the frame (0-65535)
+     * @return true if the frame is new, false if it is a duplicate
+     */
+    public boolean accept(int bootId, int sequence) {
+        sequence &= SEQUENCE_MASK;
+
+        if (empty) {
+            this.bootId = bootId;
+            reset(sequence);
+            return true;
+        }
+
+        if (bootId != this.bootId) {
+            // The watch restarted (or was updated): its counter began again
+            restarts++;
+            this.bootId = bootId;
+            reset(sequence);
+            return true;
+        }
+
+        int ahead = (sequence - highest) & SEQUENCE_MASK;
+        if (ahead == 0) {
+            duplicates++;
+            return false;
+        }
+
+        if (ahead < HALF_RANGE) {
+            // Newer than anything seen so far
+            seen = ahead >= Long.SIZE ? 0 : seen << ahead;
+            seen |= 1;
+            highest = sequence;
+            accepted++;
+            return true;
+        }
+
+        int behind = (highest - sequence) & SEQUENCE_MASK;
+        if (behind >= WINDOW_SIZE) {
+            // Too old to be a repeat: the watch restarted its counter
+            restarts++;
+            reset(sequence);
+            return true;
+        }
+
+        long bit = 1L << behind;
+        if ((seen & bit) != 0) {
+            duplicates++;
+            return false;
+        }
+        seen |= bit;
+        accepted++;
+        return true;
+    }
+
+    /**
+     * The link to the watch was set up again. Without a boot id a reboot
+     * looks like a repeat, so the window is forgotten; a frame replayed by
+     * the reconnect then gets through once, which beats dropping an alert.
+     */
+    public void onReconnect() {
+        if (bootId == WatchFrame.NO_BOOT_ID) {
+            clear();
+        }
+    }
+
+    /**
+     * Forget all sequence numbers
+     */
+    public void clear() {
+        empty = true;
+        bootId = WatchFrame.NO_BOOT_ID;
+        highest = 0;
+        seen = 0;
+    }
+
+    private void reset(int sequence) {
+        empty = false;
+        highest = sequence;
+        seen = 1;
+        accepted++;
+    }
+
+    public long getAcceptedCount() {
+        return accepted;
+    }
+
+    public long getDuplicateCount() {
+        return duplicates;
+    }
+
+    public long getRestartCount() {
+        return restarts;
+    }
+}
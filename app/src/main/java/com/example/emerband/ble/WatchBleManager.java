@@ -0,0 +1,375 @@
+package com.example.emerband.ble;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.emerband.BLEGattUtils;
+import com.example.emerband.transport.WatchLink;
+
+import no.nordicsemi.android.ble.BleManager;
+import no.nordicsemi.android.ble.ConnectRequest;
+import no.nordicsemi.android.ble.ConnectionPriorityRequest;
+import no.nordicsemi.android.ble.PhyRequest;
+import no.nordicsemi.android.ble.callback.FailCallback;
+
+/**
+ * Connection to one watch, built on the Nordic {@link BleManager}.
+ *
+ * The Nordic request queue runs one GATT operation at a time. On connect
+ * the manager checks for the alert characteristic and enables
+ * notifications on it (writing the CCCD). Connection priority, MTU and PHY
+ * are then driven by the manager's {@link LinkTuner}. Notification values
+ * go to the {@link FrameListener}, on the handler's thread. Connection
+ * events go to the ConnectionObserver set by the caller.
+ *
+ * If the watch has the raw accelerometer stream, notifications on it are
+ * enabled after the tuner has asked for the larger MTU, so the stream's
+ * batches are not cut to 20 bytes. The stream is optional: a watch without
+ * it, or a failed subscription, leaves the alert link as it is.
+ *
+ * Use one instance per connection attempt and {@link #close()} it when done.
+ * Operation latency and failures are recorded in {@link GattOperationStats}.
+ */
+public class WatchBleManager extends BleManager {
+
+    private static final String TAG = "WatchBleManager";
+
+    // Direct connection attempts (autoConnect waits in the background instead)
+    private static final int CONNECT_RETRIES = 3;
+    private static final int CONNECT_RETRY_DELAY_MS = 100;
+    private static final long CONNECT_TIMEOUT_MS = 10000;
+
+    // Timeout for each GATT operation and retries for the CCCD write
+    private static final long OPERATION_TIMEOUT_MS = 5000;
+    private static final int SUBSCRIBE_RETRIES = 2;
+
+    /**
+     * Receives raw notification values from a watch characteristic
+     */
+    public interface FrameListener {
+        /**
+         * Called on the manager's handler thread; the array is only valid during the call
+         */
+        void onFrame(WatchBleManager manager, byte[] data, long receivedAtNanos);
+    }
+
+    private final GattOperationStats stats;
+    private final FrameListener frameListener;
+    private final FrameListener imuListener;
+    private final Handler handler;
+    private final LinkTuner linkTuner;
+    private final boolean le2MPhySupported;
+    private final Runnable relaxRunnable;
+
+    private BluetoothGattCharacteristic alertCharacteristic;
+    private BluetoothGattCharacteristic gpsCharacteristic;
+    private BluetoothGattCharacteristic imuCharacteristic;
+    private volatile boolean subscribed;
+    private int subscribeRetriesLeft;
+
+    /**
+     * @param context Context
+     * @param handler Handler for all callbacks (should not be the main thread's)
+     * @param stats Shared GATT operation stats
+     * @param frameListener Receiver for alert notifications
+     * @param imuListener Receiver for accelerometer stream notifications
+     */
+    public WatchBleManager(@NonNull Context context, @NonNull Handler handler,
+                           GattOperationStats stats, FrameListener frameListener,
+                           FrameListener imuListener) {
+        super(context, handler);
+        this.stats = stats;
+        this.frameListener = frameListener;
+        this.imuListener = imuListener;
+        this.handler = handler;
+        this.le2MPhySupported = isLe2MPhySupported(context);
+        this.linkTuner = new LinkTuner(linkControl);
+        this.relaxRunnable = linkTuner::onRelaxTimer;
+    }
+
+    /**
+     * Get the tuner that adapts this link to the alert lifecycle
+     */
+    public LinkTuner getLinkTuner() {
+        return linkTuner;
+    }
+
+    /**
+     * Connect to the watch
+     * @param device The watch
+     * @param autoConnect false for a fast direct attempt, true to wait in the background
+     */
+    public void connectTo(BluetoothDevice device, boolean autoConnect) {
+        ConnectRequest request = connect(device).useAutoConnect(autoConnect);
+        if (!autoConnect) {
+            // Android often reports status 133 on the first direct attempt
+            request.retry(CONNECT_RETRIES, CONNECT_RETRY_DELAY_MS).timeout(CONNECT_TIMEOUT_MS);
+        }
+        request.fail((d, status) -> Log.w(TAG, "Connection to " + d.getAddress() + " failed: " + status))
+                .enqueue();
+    }
+
+    /**
+     * Whether notifications on the alert characteristic are enabled
+     */
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * Read GPS data from the watch's GPS characteristic, if it has one
+     * @param callback Receives the GPS data (or null) on the manager's handler thread
+     */
+    public void readGPSData(BLEGattUtils.GPSDataCallback callback) {
+        if (gpsCharacteristic == null) {
+            Log.e(TAG, "GPS characteristic not found");
+            callback.onGPSData(null);
+            return;
+        }
+
+        long[] startedAt = new long[1];
+        readCharacteristic(gpsCharacteristic)
+                .before(d -> startedAt[0] = System.nanoTime())
+                .with((d, data) -> {
+                    record(GattOperationStats.Type.READ_CHARACTERISTIC, true, startedAt[0]);
+                    callback.onGPSData(BLEGattUtils.parseGPSData(data.getValue()));
+                })
+                .fail((d, status) -> {
+                    recordFailure(GattOperationStats.Type.READ_CHARACTERISTIC, status, startedAt[0]);
+                    callback.onGPSData(null);
+                })
+                .timeout(OPERATION_TIMEOUT_MS)
+                .enqueue();
+    }
+
+    /**
+     * Read the RSSI of the connection, queued behind other GATT operations
+     * @param callback Receives the RSSI (or the failure) on the manager's handler thread
+     */
+    public void readRemoteRssi(WatchLink.RssiCallback callback) {
+        readRssi()
+                .with((d, rssi) -> callback.onRssi(rssi))
+                .fail((d, status) -> callback.onRssiFailed())
+                .enqueue();
+    }
+
+    @Override
+    protected boolean isRequiredServiceSupported(@NonNull BluetoothGatt gatt) {
+        alertCharacteristic = findAlertCharacteristic(gatt);
+
+        BluetoothGattService gpsService = gatt.getService(BLEGattUtils.GPS_SERVICE_UUID);
+        gpsCharacteristic = gpsService != null
+                ? gpsService.getCharacteristic(BLEGattUtils.GPS_CHARACTERISTIC_UUID)
+                : null;
+
+        BluetoothGattService watchService = gatt.getService(BLEGattUtils.WATCH_SERVICE_UUID);
+        imuCharacteristic = watchService != null
+                ? watchService.getCharacteristic(BLEGattUtils.WATCH_IMU_CHARACTERISTIC_UUID)
+                : null;
+
+        if (alertCharacteristic == null) {
+            Log.e(TAG, "Watch alert characteristic not found");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void initialize() {
+        setNotificationCallback(alertCharacteristic)
+                .with((device, data) -> {
+                    byte[] value = data.getValue();
+                    if (value != null) {
+                        frameListener.onFrame(this, value, System.nanoTime());
+                    }
+                });
+        if (imuCharacteristic != null) {
+            setNotificationCallback(imuCharacteristic)
+                    .with((device, data) -> {
+                        byte[] value = data.getValue();
+                        if (value != null) {
+                            imuListener.onFrame(this, value, System.nanoTime());
+                        }
+                    });
+        }
+
+        subscribeRetriesLeft = SUBSCRIBE_RETRIES;
+        subscribe();
+    }
+
+    @Override
+    protected void onServicesInvalidated() {
+        alertCharacteristic = null;
+        gpsCharacteristic = null;
+        imuCharacteristic = null;
+        subscribed = false;
+        linkTuner.onLinkLost();
+    }
+
+    @Override
+    public void log(int priority, @NonNull String message) {
+        Log.println(priority, TAG, message);
+    }
+
+    /**
+     * Enable notifications on the alert characteristic (writes the CCCD)
+     */
+    private void subscribe() {
+        long[] startedAt = new long[1];
+        enableNotifications(alertCharacteristic)
+                .before(d -> startedAt[0] = System.nanoTime())
+                .done(d -> {
+                    record(GattOperationStats.Type.WRITE_DESCRIPTOR, true, startedAt[0]);
+                    subscribed = true;
+                    Log.d(TAG, "Notifications enabled for " + alertCharacteristic.getUuid());
+                    linkTuner.onLinkReady();
+                    // Queued behind the MTU request
+                    subscribeImu();
+                })
+                .fail((d, status) -> {
+                    if (subscribeRetriesLeft > 0 && alertCharacteristic != null) {
+                        subscribeRetriesLeft--;
+                        stats.recordRetry(GattOperationStats.Type.WRITE_DESCRIPTOR);
+                        subscribe();
+                        return;
+                    }
+                    recordFailure(GattOperationStats.Type.WRITE_DESCRIPTOR, status, startedAt[0]);
+                    Log.w(TAG, "Enabling notifications failed: " + status);
+                    // Without notifications the link is useless; the observer triggers a reconnect
+                    disconnect().enqueue();
+                })
+                .timeout(OPERATION_TIMEOUT_MS)
+                .enqueue();
+    }
+
+    /**
+     * Enable notifications on the accelerometer stream, if the watch has one
+     */
+    private void subscribeImu() {
+        if (imuCharacteristic == null) {
+            return;
+        }
+        long[] startedAt = new long[1];
+        enableNotifications(imuCharacteristic)
+                .before(d -> startedAt[0] = System.nanoTime())
+                .done(d -> {
+                    record(GattOperationStats.Type.WRITE_DESCRIPTOR, true, startedAt[0]);
+                    Log.d(TAG, "Accelerometer stream enabled, MTU " + linkTuner.getMtu());
+                })
+                .fail((d, status) -> {
+                    recordFailure(GattOperationStats.Type.WRITE_DESCRIPTOR, status, startedAt[0]);
+                    Log.w(TAG, "Enabling the accelerometer stream failed: " + status);
+                })
+                .timeout(OPERATION_TIMEOUT_MS)
+                .enqueue();
+    }
+
+    /**
+     * Carries out the tuner's requests with Nordic requests on this connection
+     */
+    private final LinkTuner.LinkControl linkControl = new LinkTuner.LinkControl() {
+        @Override
+        public void requestConnectionPriority(boolean high) {
+            int priority = high
+                    ? ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH
+                    : ConnectionPriorityRequest.CONNECTION_PRIORITY_LOW_POWER;
+            WatchBleManager.this.requestConnectionPriority(priority)
+                    .with((d, interval, latency, timeout) -> linkTuner.onConnectionUpdated(interval))
+                    .fail((d, status) -> Log.w(TAG, "Connection priority request failed: " + status))
+                    .enqueue();
+        }
+
+        @Override
+        public void requestMtu(int mtu) {
+            long[] startedAt = new long[1];
+            WatchBleManager.this.requestMtu(mtu)
+                    .before(d -> startedAt[0] = System.nanoTime())
+                    .with((d, negotiated) -> {
+                        record(GattOperationStats.Type.REQUEST_MTU, true, startedAt[0]);
+                        linkTuner.onMtuChanged(negotiated);
+                    })
+                    .fail((d, status) -> recordFailure(GattOperationStats.Type.REQUEST_MTU, status, startedAt[0]))
+                    .timeout(OPERATION_TIMEOUT_MS)
+                    .enqueue();
+        }
+
+        @Override
+        public void requestPreferredPhy(boolean fast) {
+            if (!le2MPhySupported) {
+                return;
+            }
+            int phyMask = fast ? PhyRequest.PHY_LE_2M_MASK : PhyRequest.PHY_LE_1M_MASK;
+            setPreferredPhy(phyMask, phyMask, PhyRequest.PHY_OPTION_NO_PREFERRED)
+                    .with((d, txPhy, rxPhy) -> linkTuner.onPhyChanged(txPhy, rxPhy))
+                    .fail((d, status) -> Log.w(TAG, "PHY request failed: " + status))
+                    .enqueue();
+        }
+
+        @Override
+        public void scheduleRelax(long delayMillis) {
+            handler.postDelayed(relaxRunnable, delayMillis);
+        }
+
+        @Override
+        public void cancelRelax() {
+            handler.removeCallbacks(relaxRunnable);
+        }
+    };
+
+    /**
+     * Whether this phone supports the LE 2M PHY (Android 8.0+)
+     */
+    private static boolean isLe2MPhySupported(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return false;
+        }
+        BluetoothManager bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+        BluetoothAdapter adapter = bluetoothManager != null ? bluetoothManager.getAdapter() : null;
+        return adapter != null && adapter.isLe2MPhySupported();
+    }
+
+    /**
+     * Find the watch alert characteristic, falling back to the first notifying
+     * characteristic for firmware that uses different UUIDs
+     */
+    private static BluetoothGattCharacteristic findAlertCharacteristic(BluetoothGatt gatt) {
+        BluetoothGattService watchService = gatt.getService(BLEGattUtils.WATCH_SERVICE_UUID);
+        if (watchService != null) {
+            BluetoothGattCharacteristic characteristic =
+                    watchService.getCharacteristic(BLEGattUtils.WATCH_ALERT_CHARACTERISTIC_UUID);
+            if (characteristic != null) {
+                return characteristic;
+            }
+        }
+
+        for (BluetoothGattService service : gatt.getServices()) {
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0) {
+                    return characteristic;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void record(GattOperationStats.Type type, boolean success, long startedAtNanos) {
+        stats.recordCompletion(type, success, System.nanoTime() - startedAtNanos);
+    }
+
+    private void recordFailure(GattOperationStats.Type type, int status, long startedAtNanos) {
+        if (status == FailCallback.REASON_TIMEOUT) {
+            stats.recordTimeout(type);
+        }
+        record(type, false, startedAtNanos);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.emerband.ble;
+
+/**
+ * Mutable holder for one decoded notification from the watch.
+ * A single instance is reused for every frame so that the notification
+ * path does not allocate; copy the values out before handing them to
+ * another thread.
+ */
+public final class WatchFrame {
+
+    // Signal value used when no frame has been decoded yet
+    public static final char NO_SIGNAL = 0;
+
+    // Sequence value for frames from firmware that does not send one
+    public static final int NO_SEQUENCE = -1;
+
+    // Boot id value for frames from firmware that does not send one
+    public static final int NO_BOOT_ID = -1;
+
+    private int version;
+    private char signal;
+    private boolean hasLocation;
+    private double latitude;
+    private double longitude;
+    private int sequence = NO_SEQUENCE;
+    private int bootId = NO_BOOT_ID;
+
+    /**
+     * Clear all fields so the instance can be reused for the next frame
+     */
+    void reset() {
+        version = 0;
+        signal = NO_SIGNAL;
+        hasLocation = false;
+        latitude = 0;
+        longitude = 0;
+        sequence = NO_SEQUENCE;
+        bootId = NO_BOOT_ID;
+    }
+
+    void setVersion(int version) {
+        this.version = version;
+    }
+
+    void setSignal(char signal) {
+        this.signal = signal;
+    }
+
+    void setLocation(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.hasLocation = true;
+    }
+
+    void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    void setBootId(int bootId) {
+        this.bootId = bootId;
+    }
+
+    /**
+     * Copy every field of another frame into this one
+     */
+    public void copyFrom(WatchFrame other) {
+        version = other.version;
+        signal = other.signal;
+        hasLocation = other.hasLocation;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        sequence = other.sequence;
+        bootId = other.bootId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public char getSignal() {
+        return signal;
+    }
+
+    public boolean hasLocation() {
+        return hasLocation;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Get the frame sequence number (0-65535), or {@link #NO_SEQUENCE} if the watch sent none
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    public boolean hasSequence() {
+        return sequence != NO_SEQUENCE;
+    }
+
+    /**
+     * Get the id the watch picked when it started (0-65535), or {@link #NO_BOOT_ID} if it sent none
+     */
+    public int getBootId() {
+        return bootId;
+    }
+
+    public boolean hasBootId() {
+        return bootId != NO_BOOT_ID;
+    }
+
+    @Override
+    public String toString() {
+        return "WatchFrame{v" + version + ", signal=" + signal
+                + (hasSequence() ? ", seq=" + sequence : "")
+                + (hasBootId() ? ", boot=" + bootId : "")
+                + (hasLocation ? ", lat=" + latitude + ", lng=" + longitude : "") + "}";
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.emerband.ble;
+
+/**
+ * Decoder for notifications on the watch alert characteristic.
+ *
+ * Frame layouts sent by EmerbandWatch.ino:
+ * - Version 0 (signal only): 1 byte, the signal code.
+ * - Version 1 (ENABLE_GPS): 20 bytes, signal code at offset 0, little-endian
+ *   float latitude at offset 1, little-endian float longitude at offset 5 and
+ *   a flags byte at offset 9 ({@link #FLAG_GPS_VALID}).
+ * - Version 2: as version 1, with {@link #FLAG_VERSIONED} set in the flags,
+ *   the frame version at offset 10 and a little-endian uint16 sequence number
+ *   at offset 11, incremented by the watch for every frame it sends.
+ * - Version 3: as version 2, with a little-endian uint16 boot id at offset
+ *   13, picked at random each time the watch starts. The sequence number
+ *   starts again from 0 after a reboot; a new boot id tells the app so.
+ *
+ * Firmware before version 2 did not clear bytes 10-19 of the GPS frame, so
+ * they may hold anything. They are only read when the watch says they are
+ * defined by setting {@link #FLAG_VERSIONED}; older firmware only ever sent 0
+ * or 1 in the flags byte.
+ *
+ * The same layout is carried in alert advertisements (see
+ * {@link AdvertisedAlertReceiver}), where the frame starts after a header.
+ *
+ * The signal code is always at offset 0, so frames with a newer version than
+ * this decoder understands still deliver their signal and only the unknown
+ * fields are ignored. Decoding never allocates; the result is written into a
+ * caller-supplied {@link WatchFrame}. An instance is not thread-safe.
+ */
+public final class WatchFrameDecoder {
+
+    // Frame versions
+    public static final int VERSION_SIGNAL_ONLY = 0;
+    public static final int VERSION_GPS = 1;
+    public static final int VERSION_SEQUENCE = 2;
+    public static final int VERSION_BOOT_ID = 3;
+    public static final int CURRENT_VERSION = VERSION_BOOT_ID;
+
+    // Field offsets within a frame
+    public static final int SIGNAL_OFFSET = 0;
+    public static final int LATITUDE_OFFSET = 1;
+    public static final int LONGITUDE_OFFSET = 5;
+    public static final int FLAGS_OFFSET = 9;
+    public static final int VERSION_OFFSET = 10;
+    public static final int SEQUENCE_OFFSET = 11;
+    public static final int BOOT_ID_OFFSET = 13;
+
+    // Bits of the flags byte
+    public static final int FLAG_GPS_VALID = 0x01;
+    public static final int FLAG_VERSIONED = 0x80;
+
+    // Frame sizes
+    public static final int SIGNAL_FRAME_LENGTH = 1;
+    public static final int GPS_FRAME_LENGTH = 20;
+    // Shortest frame carrying a sequence number (the advertised frame)
+    public static final int SEQUENCE_FRAME_LENGTH = SEQUENCE_OFFSET + 2;
+    // Shortest frame carrying a boot id (the advertised frame of version 3)
+    public static final int BOOT_ID_FRAME_LENGTH = BOOT_ID_OFFSET + 2;
+    private static final int MIN_GPS_FRAME_LENGTH = FLAGS_OFFSET + 1;
+
+    // Counters for diagnostics
+    private long decodedFrames;
+    private long rejectedFrames;
+    private long unknownVersionFrames;
+
+    /**
+     * Decode a raw notification value into the given frame
+     *
+     * @param data Raw characteristic value
+     * @param out Frame to fill; it is reset before decoding
+     * @return true if a signal was decoded, false if the data is not a valid frame
+     */
+    public boolean decode(byte[] data, WatchFrame out) {
+        return decode(data, data != null ? data.length : 0, out);
+    }
+
+    /**
+     * Decode the first {@code length} bytes of a raw notification value
+     *
+     * @param data Raw characteristic value
+     * @param length Number of valid bytes in {@code data}
+     * @param out Frame to fill; it is reset before decoding
+     * @return true if a signal was decoded, false if the data is not a valid frame
+     */
+    public boolean decode(byte[] data, int length, WatchFrame out) {
+        return decode(data, 0, length, out);
+    }
+
+    /**
+     * Decode a frame embedded in a larger buffer, e.g. advertisement manufacturer data
+     *
+     * @param data Buffer holding the frame
+     * @param offset Index of the frame's signal byte in {@code data}
+     * @param length Number of frame bytes from {@code offset}
+     * @param out Frame to fill; it is reset before decoding
+     * @return true if a signal was decoded, false if the data is not a valid frame
+     */
+    public boolean decode(byte[] data, int offset, int length, WatchFrame out) {
+        out.reset();
+
+        if (data == null || offset < 0 || length < SIGNAL_FRAME_LENGTH || length > data.length - offset) {
+            rejectedFrames++;
+            return false;
+        }
+
+        char signal = (char) (data[offset + SIGNAL_OFFSET] & 0xFF);
+        if (signal == WatchFrame.NO_SIGNAL) {
+            rejectedFrames++;
+            return false;
+        }
+        out.setSignal(signal);
+
+        if (length < MIN_GPS_FRAME_LENGTH) {
+            out.setVersion(VERSION_SIGNAL_ONLY);
+            decodedFrames++;
+            return true;
+        }
+
+        // Without the versioned flag bytes 10 and up are undefined (old firmware left them uninitialised)
+        int flags = data[offset + FLAGS_OFFSET] & 0xFF;
+        int version = VERSION_GPS;
+        if ((flags & FLAG_VERSIONED) != 0 && length > VERSION_OFFSET) {
+            version = Math.max(VERSION_GPS, data[offset + VERSION_OFFSET] & 0xFF);
+        }
+        out.setVersion(version);
+
+        if (version > CURRENT_VERSION) {
+            // Newer layout: the signal is still valid, the rest is not understood
+            unknownVersionFrames++;
+            decodedFrames++;
+            return true;
+        }
+
+        if (version >= VERSION_SEQUENCE && length >= SEQUENCE_FRAME_LENGTH) {
+            out.setSequence(readUint16LE(data, offset + SEQUENCE_OFFSET));
+        }
+
+        if (version >= VERSION_BOOT_ID && length >= BOOT_ID_FRAME_LENGTH) {
+            out.setBootId(readUint16LE(data, offset + BOOT_ID_OFFSET));
+        }
+
+        if ((flags & FLAG_GPS_VALID) != 0) {
+            float latitude = readFloatLE(data, offset + LATITUDE_OFFSET);
+            float longitude = readFloatLE(data, offset + LONGITUDE_OFFSET);
+            if (isValidCoordinate(latitude, longitude)) {
+                out.setLocation(latitude, longitude);
+            }
+        }
+
+        decodedFrames++;
+        return true;
+    }
+
+    /**
+     * Read a little-endian uint16, as written byte by byte on the watch
+     */
+    private static int readUint16LE(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    /**
+     * Read a little-endian IEEE 754 float, as written by memcpy on the watch
+     */
+    static float readFloatLE(byte[] data, int offset) {
+        int bits = (data[offset] & 0xFF)
+                | (data[offset + 1] & 0xFF) << 8
+                | (data[offset + 2] & 0xFF) << 16
+                | (data[offset + 3] & 0xFF) << 24;
+        return Float.intBitsToFloat(bits);
+    }
+
+    private static boolean isValidCoordinate(float latitude, float longitude) {
+        // NaN fails every comparison, so it is rejected here as well
+        return latitude >= -90f && latitude <= 90f
+                && longitude >= -180f && longitude <= 180f;
+    }
+
+    public long getDecodedFrames() {
+        return decodedFrames;
+    }
+
+    public long getRejectedFrames() {
+        return rejectedFrames;
+    }
+
+    public long getUnknownVersionFrames() {
+        return unknownVersionFrames;
+    }
+}
@@ -0,0 +1,552 @@
+package com.example.emerband.ble;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.emerband.BLEGattUtils;
+import com.example.emerband.health.FallFeatures;
+import com.example.emerband.health.FallVerdict;
+import com.example.emerband.health.HeartRateAnomalyDetector;
+import com.example.emerband.health.HeartRateMonitor;
+import com.example.emerband.health.HeartRateParser;
+import com.example.emerband.health.HeartRateSeries;
+import com.example.emerband.health.MotionMonitor;
+import com.example.emerband.metrics.AlertLatencyTracker;
+import com.example.emerband.trace.NotificationTraceRecorder;
+import com.example.emerband.transport.WatchLink;
+import com.example.emerband.transport.WatchTransport;
+
+/**
+ * Connection to one wearable (primary watch, pendant, guardian band).
+ *
+ * Every session runs on its own handler thread with its own connection
+ * state machine, frame decoder and metrics, so a slow or flapping device
+ * never delays frames from another one. Decoded frames are handed to the
+ * {@link FrameListener} on the session thread. Scanning is shared between
+ * sessions and goes through the {@link Host}; connections go through the
+ * {@link WatchTransport}, so a session runs the same against a real watch
+ * or a simulated one.
+ *
+ * While connected, a {@link LinkQualityMonitor} polls the link's RSSI. A
+ * weakening link arms a fast reconnect and is reported to the host so the
+ * user can be warned, and a link that went silent without a disconnect
+ * event is dropped and reconnected.
+ *
+ * Heart rate measurements on the alert characteristic go to a
+ * {@link HeartRateMonitor}; a sustained abnormal heart rate is raised as
+ * an emergency frame, as if the emergency button had been pressed.
+ *
+ * The watch's raw accelerometer stream, if it sends one, goes to a
+ * {@link MotionMonitor}. A fall found in the stream is raised as an 'F'
+ * frame, and {@link #classifyFall} checks the stream around an 'F' the
+ * watch sent.
+ *
+ * Public methods may be called from any thread.
+ */
+public class WatchSession {
+
+    private static final String TAG = "WatchSession";
+
+    // Reconnect backoff range after failed connection attempts
+    private static final long RECONNECT_INITIAL_DELAY_MS = 500;
+    private static final long RECONNECT_MAX_DELAY_MS = 30000;
+
+    // Signal raised for a sustained abnormal heart rate
+    private static final char HEART_RATE_ALERT_SIGNAL = 'E';
+
+    // Signal raised for a fall found in the accelerometer stream
+    private static final char FALL_SIGNAL = 'F';
+
+    /**
+     * Shared services provided by the registry
+     */
+    public interface Host {
+        /**
+         * The session has no address (or lost its watch) and needs a scan
+         */
+        void requestScan(WatchSession session);
+
+        void cancelScan(WatchSession session);
+
+        /**
+         * The session is connected and subscribed; its address should be remembered
+         */
+        void onSessionReady(WatchSession session);
+
+        /**
+         * The link quality of the session changed class
+         * @param smoothedRssi Smoothed RSSI in dBm
+         */
+        void onLinkQualityChanged(WatchSession session, LinkQualityMonitor.Quality quality, int smoothedRssi);
+    }
+
+    /**
+     * Receives decoded frames from a session
+     */
+    public interface FrameListener {
+        /**
+         * Called on the session thread; the frame is reused for the next notification
+         */
+        void onFrame(WatchSession session, WatchFrame frame, long receivedAtNanos);
+    }
+
+    private final int id;
+    private final WatchTransport transport;
+    private final Host host;
+    private final FrameListener frameListener;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    // Per-session decoding and metrics (session thread only, except the stats objects)
+    private final WatchFrameDecoder frameDecoder = new WatchFrameDecoder();
+    private final WatchFrame watchFrame = new WatchFrame();
+    private final SequenceWindow sequenceWindow = new SequenceWindow();
+    private final GattOperationStats gattOperationStats = new GattOperationStats();
+    private final AlertLatencyTracker latencyTracker = AlertLatencyTracker.getInstance();
+    private final NotificationTraceRecorder traceRecorder = NotificationTraceRecorder.getInstance();
+    private final ConnectionStateMachine connectionStateMachine;
+    private final LinkQualityMonitor linkQualityMonitor;
+    private final HeartRateMonitor heartRateMonitor = new HeartRateMonitor(this::onHeartRateAnomaly);
+    private final MotionMonitor motionMonitor = new MotionMonitor(this::onStreamFall);
+    private volatile WatchLink watchLink;
+
+    // Mirrors for reads from other threads
+    private volatile String address;
+    private volatile ConnectionStateMachine.State state = ConnectionStateMachine.State.IDLE;
+    private volatile String reconnectSummary = "";
+
+    private final Runnable reconnectRunnable;
+    private final Runnable linkQualityPollRunnable;
+
+    /**
+     * @param id Session number, used in thread and log names
+     * @param transport Transport used to connect to the watch
+     * @param address Address of a known watch, or null to find one by scanning
+     * @param host Shared scanning and persistence
+     * @param frameListener Receiver for decoded frames
+     */
+    public WatchSession(int id, WatchTransport transport, String address, Host host,
+                        FrameListener frameListener) {
+        this(id, transport, address, host, frameListener, null);
+    }
+
+    /**
+     * @param looper Looper to run the session on, or null for a new session thread
+     */
+    WatchSession(int id, WatchTransport transport, String address, Host host,
+                 FrameListener frameListener, Looper looper) {
+        this.id = id;
+        this.transport = transport;
+        this.address = address;
+        this.host = host;
+        this.frameListener = frameListener;
+
+        if (looper == null) {
+            thread = new HandlerThread("WatchSession-" + id);
+            thread.start();
+            looper = thread.getLooper();
+        } else {
+            thread = null;
+        }
+        handler = new Handler(looper);
+
+        connectionStateMachine = new ConnectionStateMachine(
+                connectionActions,
+                new ReconnectBackoff(RECONNECT_INITIAL_DELAY_MS, RECONNECT_MAX_DELAY_MS),
+                address);
+        connectionStateMachine.setStateListener(this::onConnectionStateChanged);
+        reconnectRunnable = connectionStateMachine::onRetryTimer;
+
+        linkQualityMonitor = new LinkQualityMonitor(linkQualityControl);
+        linkQualityPollRunnable = () -> linkQualityMonitor.onPollTimer(System.nanoTime());
+    }
+
+    /**
+     * Connect to the known watch, or scan for one
+     */
+    public void start() {
+        handler.post(connectionStateMachine::start);
+    }
+
+    /**
+     * Disconnect and stay idle until {@link #start()}
+     */
+    public void stop() {
+        handler.post(connectionStateMachine::stop);
+    }
+
+    /**
+     * Disconnect and end the session thread; the session cannot be restarted
+     */
+    public void shutdown() {
+        handler.post(() -> {
+            connectionStateMachine.stop();
+            if (thread != null) {
+                thread.quitSafely();
+            }
+        });
+    }
+
+    public void onAdapterOn() {
+        handler.post(connectionStateMachine::onAdapterOn);
+    }
+
+    public void onAdapterOff() {
+        handler.post(connectionStateMachine::onAdapterOff);
+    }
+
+    /**
+     * A shared scan found a watch for this session
+     */
+    public void onDeviceFound(String address) {
+        // Claim the address at once so the registry does not hand it to another session
+        this.address = address;
+        handler.post(() -> connectionStateMachine.onDeviceFound(address));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the address of this session's watch, or null while it has none
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public ConnectionStateMachine.State getState() {
+        return state;
+    }
+
+    public GattOperationStats getGattOperationStats() {
+        return gattOperationStats;
+    }
+
+    /**
+     * Get the heart rate readings of this session's wearable
+     */
+    public HeartRateSeries getHeartRateSeries() {
+        return heartRateMonitor.getSeries();
+    }
+
+    /**
+     * Classify the watch's accelerometer stream in the seconds before a signal
+     * @param signalAtNanos System.nanoTime() when the signal arrived
+     * @return {@link FallVerdict#NO_DATA} if the watch did not stream around the signal
+     */
+    public FallVerdict classifyFall(long signalAtNanos) {
+        return motionMonitor.classify(signalAtNanos);
+    }
+
+    public LinkQualityMonitor.Quality getLinkQuality() {
+        return linkQualityMonitor.getQuality();
+    }
+
+    /**
+     * Human-readable summary of this session's connection and decoding
+     */
+    public String getStatsSummary() {
+        WatchLink link = watchLink;
+        return "#" + id + " " + (address != null ? address : "(unbound)") + " " + state
+                + "\n  frames=" + frameDecoder.getDecodedFrames()
+                + " rejected=" + frameDecoder.getRejectedFrames()
+                + " unknownVersion=" + frameDecoder.getUnknownVersionFrames()
+                + " duplicates=" + sequenceWindow.getDuplicateCount()
+                + " watchRestarts=" + sequenceWindow.getRestartCount()
+                + "\n  " + reconnectSummary
+                + "\n  quality: " + linkQualityMonitor.getSummary()
+                + "\n  heart: " + heartRateMonitor.getSummary()
+                + "\n  motion: " + motionMonitor.getSummary()
+                + (link != null ? "\n  link: " + link.getSummary() : "")
+                + "\n  gatt: " + gattOperationStats.getSummary().replace("\n", "\n  ");
+    }
+
+    // Side effects requested by the connection state machine (session thread)
+    private final ConnectionStateMachine.Actions connectionActions = new ConnectionStateMachine.Actions() {
+        @Override
+        public void startScan() {
+            host.requestScan(WatchSession.this);
+        }
+
+        @Override
+        public void stopScan() {
+            host.cancelScan(WatchSession.this);
+        }
+
+        @Override
+        public void connect(String address, boolean autoConnect) {
+            connectToDevice(address, autoConnect);
+        }
+
+        @Override
+        public void closeConnection() {
+            closeLink();
+        }
+
+        @Override
+        public void scheduleRetry(long delayMillis) {
+            Log.d(TAG, "#" + id + " retrying connection in " + delayMillis + " ms");
+            handler.postDelayed(reconnectRunnable, delayMillis);
+        }
+
+        @Override
+        public void cancelRetry() {
+            handler.removeCallbacks(reconnectRunnable);
+        }
+
+        @Override
+        public void saveKnownAddress(String address) {
+            WatchSession.this.address = address;
+            host.onSessionReady(WatchSession.this);
+        }
+    };
+
+    // Requests and reports from the link quality monitor (session thread)
+    private final LinkQualityMonitor.Control linkQualityControl = new LinkQualityMonitor.Control() {
+        @Override
+        public void requestRssi() {
+            WatchLink link = watchLink;
+            if (link == null) {
+                linkQualityMonitor.onRssiFailed(System.nanoTime());
+                return;
+            }
+            link.readRssi(new WatchLink.RssiCallback() {
+                @Override
+                public void onRssi(int rssi) {
+                    if (link == watchLink) {
+                        linkQualityMonitor.onRssi(rssi, System.nanoTime());
+                    }
+                }
+
+                @Override
+                public void onRssiFailed() {
+                    if (link == watchLink) {
+                        linkQualityMonitor.onRssiFailed(System.nanoTime());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void schedulePoll(long delayMillis) {
+            handler.postDelayed(linkQualityPollRunnable, delayMillis);
+        }
+
+        @Override
+        public void cancelPoll() {
+            handler.removeCallbacks(linkQualityPollRunnable);
+        }
+
+        @Override
+        public void onQualityChanged(LinkQualityMonitor.Quality oldQuality,
+                                     LinkQualityMonitor.Quality newQuality, int smoothedRssi) {
+            Log.i(TAG, "#" + id + " link quality: " + oldQuality + " -> " + newQuality
+                    + " (" + smoothedRssi + " dBm)");
+            // Have the reconnect ready before the link actually drops
+            if (newQuality == LinkQualityMonitor.Quality.POOR) {
+                connectionStateMachine.armFastReconnect();
+            } else {
+                connectionStateMachine.disarmFastReconnect();
+            }
+            host.onLinkQualityChanged(WatchSession.this, newQuality, smoothedRssi);
+        }
+
+        @Override
+        public void onLinkSilent(long silentMillis) {
+            Log.w(TAG, "#" + id + " nothing heard for " + silentMillis + " ms, reconnecting");
+            connectionStateMachine.armFastReconnect();
+            connectionStateMachine.onDisconnected();
+        }
+    };
+
+    /**
+     * Connect directly to the watch by address, without scanning
+     */
+    private void connectToDevice(String address, boolean autoConnect) {
+        Log.d(TAG, "#" + id + " connecting to " + address + (autoConnect ? " (autoConnect)" : ""));
+
+        // Close any existing connection
+        closeLink();
+
+        try {
+            WatchLink link = transport.createLink(handler, gattOperationStats, linkListener);
+            watchLink = link;
+            link.connect(address, autoConnect);
+        } catch (IllegalArgumentException | SecurityException e) {
+            Log.e(TAG, "Error connecting to " + address, e);
+        }
+    }
+
+    /**
+     * Disconnect and release the current connection, if any
+     */
+    private void closeLink() {
+        WatchLink link = watchLink;
+        // Cleared first so late callbacks from this connection are ignored
+        watchLink = null;
+        if (link != null) {
+            link.close();
+        }
+    }
+
+    /**
+     * Decode a notification and pass it on (session thread)
+     */
+    private void onWatchFrame(WatchLink link, byte[] data, long receivedAtNanos) {
+        linkQualityMonitor.onActivity(receivedAtNanos);
+
+        // Raw bytes first, so invalid frames can be replayed too
+        traceRecorder.record(address, BLEGattUtils.WATCH_ALERT_CHARACTERISTIC_UUID, receivedAtNanos, data);
+
+        if (HeartRateParser.isMeasurement(data, data.length)) {
+            heartRateMonitor.onMeasurement(data, data.length, System.currentTimeMillis(), receivedAtNanos);
+            return;
+        }
+
+        if (!frameDecoder.decode(data, watchFrame)) {
+            Log.w(TAG, "#" + id + " ignoring invalid frame");
+            return;
+        }
+        latencyTracker.record(watchFrame.getSignal(), AlertLatencyTracker.Stage.DECODED, receivedAtNanos);
+
+        // Drop frames the watch repeated or a reconnect replayed
+        if (watchFrame.hasSequence() && !sequenceWindow.accept(watchFrame.getBootId(), watchFrame.getSequence())) {
+            Log.d(TAG, "#" + id + " dropping duplicate frame " + watchFrame.getSequence());
+            return;
+        }
+
+        // Raise connection priority for the frames that follow an alert
+        link.onSignal(watchFrame.getSignal(), receivedAtNanos);
+        frameListener.onFrame(this, watchFrame, receivedAtNanos);
+    }
+
+    /**
+     * Raise a sustained abnormal heart rate as an emergency (session thread)
+     */
+    private void onHeartRateAnomaly(HeartRateAnomalyDetector.Anomaly anomaly, int heartRate,
+                                    long receivedAtNanos) {
+        Log.w(TAG, "#" + id + " sustained " + anomaly + " heart rate (" + heartRate + " bpm), raising an emergency");
+
+        // Same path as the button, so the dispatcher's repeat window applies to both
+        watchFrame.reset();
+        watchFrame.setSignal(HEART_RATE_ALERT_SIGNAL);
+        latencyTracker.record(HEART_RATE_ALERT_SIGNAL, AlertLatencyTracker.Stage.DECODED, receivedAtNanos);
+        frameListener.onFrame(this, watchFrame, receivedAtNanos);
+    }
+
+    /**
+     * Handle a packet of the accelerometer stream (session thread)
+     */
+    private void onImuPacket(byte[] data, long receivedAtNanos) {
+        linkQualityMonitor.onActivity(receivedAtNanos);
+        if (motionMonitor.onPacket(data, data.length, receivedAtNanos) < 0) {
+            Log.w(TAG, "#" + id + " ignoring invalid accelerometer packet");
+        }
+    }
+
+    /**
+     * Raise a fall found in the accelerometer stream (session thread)
+     */
+    private void onStreamFall(FallFeatures features, long detectedAtNanos) {
+        Log.w(TAG, "#" + id + " fall in the accelerometer stream: " + features);
+
+        // The 'F' the watch would send, so both go through the same checks and repeat window
+        watchFrame.reset();
+        watchFrame.setSignal(FALL_SIGNAL);
+        long receivedAtNanos = System.nanoTime();
+        latencyTracker.record(FALL_SIGNAL, AlertLatencyTracker.Stage.DECODED, receivedAtNanos);
+        frameListener.onFrame(this, watchFrame, receivedAtNanos);
+    }
+
+    /**
+     * Log connection state changes and the time it took to reconnect, and
+     * monitor the link quality while connected
+     */
+    private void onConnectionStateChanged(ConnectionStateMachine.State oldState,
+                                          ConnectionStateMachine.State newState) {
+        Log.d(TAG, "#" + id + " connection state: " + oldState + " -> " + newState);
+        state = newState;
+
+        if (newState == ConnectionStateMachine.State.CONNECTED) {
+            linkQualityMonitor.start(System.nanoTime());
+        } else if (oldState == ConnectionStateMachine.State.CONNECTED) {
+            motionMonitor.onStreamStopped();
+            LinkQualityMonitor.Quality lastQuality = linkQualityMonitor.getQuality();
+            linkQualityMonitor.stop(System.nanoTime());
+            if (lastQuality != LinkQualityMonitor.Quality.GOOD) {
+                // The warning no longer applies; the connection state takes over
+                host.onLinkQualityChanged(this, LinkQualityMonitor.Quality.GOOD, 0);
+            }
+        }
+
+        if (newState == ConnectionStateMachine.State.CONNECTED
+                && connectionStateMachine.getReconnectCount() > 0) {
+            Log.i(TAG, "#" + id + " reconnected in " + connectionStateMachine.getLastReconnectMillis() + " ms");
+        }
+        reconnectSummary = "reconnects=" + connectionStateMachine.getReconnectCount()
+                + " avg=" + connectionStateMachine.getAverageReconnectMillis() + "ms"
+                + " max=" + connectionStateMachine.getMaxReconnectMillis() + "ms";
+    }
+
+    /**
+     * Forwards connection events to the state machine, ignoring events from
+     * links that were already closed (session thread)
+     */
+    private final WatchLink.Listener linkListener = new WatchLink.Listener() {
+        @Override
+        public void onConnected(WatchLink link) {
+            if (link == watchLink) {
+                Log.i(TAG, "#" + id + " connected to GATT server.");
+                connectionStateMachine.onConnected();
+            }
+        }
+
+        @Override
+        public void onFailedToConnect(WatchLink link, int reason) {
+            if (link == watchLink) {
+                Log.w(TAG, "#" + id + " failed to connect, reason " + reason);
+                connectionStateMachine.onDisconnected();
+            }
+        }
+
+        @Override
+        public void onReady(WatchLink link) {
+            if (link != watchLink) {
+                return;
+            }
+            // Only ready once the watch accepted the subscription
+            if (link.isSubscribed()) {
+                sequenceWindow.onReconnect();
+                connectionStateMachine.onReady();
+            } else {
+                link.disconnect();
+            }
+        }
+
+        @Override
+        public void onDisconnected(WatchLink link, int reason) {
+            if (link == watchLink) {
+                Log.i(TAG, "#" + id + " disconnected from GATT server, reason " + reason);
+                // The state machine reconnects to the known watch (or scans if none is known)
+                connectionStateMachine.onDisconnected();
+            }
+        }
+
+        @Override
+        public void onNotification(WatchLink link, byte[] data, long receivedAtNanos) {
+            if (link == watchLink) {
+                onWatchFrame(link, data, receivedAtNanos);
+            }
+        }
+
+        @Override
+        public void onImuNotification(WatchLink link, byte[] data, long receivedAtNanos) {
+            if (link == watchLink) {
+                onImuPacket(data, receivedAtNanos);
+            }
+        }
+    };
+}
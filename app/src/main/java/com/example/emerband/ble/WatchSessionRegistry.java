@@ -0,0 +1,289 @@
+package com.example.emerband.ble;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import com.example.emerband.transport.WatchScanner;
+import com.example.emerband.transport.WatchTransport;
+import com.example.emerband.utils.ResourceManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of concurrent watch sessions.
+ *
+ * One phone can listen to several wearables at once (a primary watch, a
+ * pendant and a guardian's band), up to the configured maximum. Every
+ * known address gets a {@link WatchSession}; while fewer than the maximum
+ * are known, one extra unbound session searches for the next wearable.
+ * All sessions share one {@link WatchScanner} from the transport: a scan result
+ * is handed to a waiting session only if no other session owns that
+ * address already.
+ *
+ * Registry state lives on the main handler; sessions run on their own
+ * threads and call back through {@link WatchSession.Host}. The session list
+ * itself may be read from any thread, e.g. by {@link #findSession} on a
+ * dispatcher thread.
+ */
+public class WatchSessionRegistry implements WatchSession.Host {
+
+    private static final String TAG = "WatchSessionRegistry";
+
+    private final Context context;
+    private final WatchTransport transport;
+    private final Handler handler;
+    private final Set<String> targetDeviceNames;
+    private final int maxSessions;
+    private final WatchSession.FrameListener frameListener;
+    private final WatchScanner scanner;
+    private LinkQualityListener linkQualityListener;
+
+    // Changed only on the main handler; copy-on-write so other threads can look sessions up
+    private final List<WatchSession> sessions = new CopyOnWriteArrayList<>();
+    private final List<WatchSession> scanWaiters = new ArrayList<>();
+    private boolean started;
+    private int nextSessionId = 1;
+
+    /**
+     * Observer for link quality changes, e.g. to warn the user about a weak watch signal
+     */
+    public interface LinkQualityListener {
+        /**
+         * Called on the main handler
+         */
+        void onLinkQualityChanged(WatchSession session, LinkQualityMonitor.Quality quality, int smoothedRssi);
+    }
+
+    /**
+     * @param context Context
+     * @param transport Transport for scanning and connections
+     * @param handler Main-thread handler for registry state and the shared scan
+     * @param targetDeviceNames Advertised names of supported wearables
+     * @param maxSessions Maximum number of concurrent watch connections
+     * @param frameListener Receiver for decoded frames from all sessions
+     */
+    public WatchSessionRegistry(Context context, WatchTransport transport, Handler handler,
+                                Set<String> targetDeviceNames, int maxSessions,
+                                WatchSession.FrameListener frameListener) {
+        this.context = context.getApplicationContext();
+        this.transport = transport;
+        this.handler = handler;
+        this.targetDeviceNames = targetDeviceNames;
+        this.maxSessions = maxSessions;
+        this.frameListener = frameListener;
+        this.scanner = transport.createScanner(handler, this::onDeviceFound);
+    }
+
+    public void setLinkQualityListener(LinkQualityListener linkQualityListener) {
+        this.linkQualityListener = linkQualityListener;
+    }
+
+    /**
+     * Start a session for every known watch (plus one to find a new one); main thread only
+     */
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        if (sessions.isEmpty()) {
+            for (String address : ResourceManager.getWatchAddresses(context)) {
+                if (sessions.size() < maxSessions) {
+                    sessions.add(createSession(address));
+                }
+            }
+        }
+        for (WatchSession session : sessions) {
+            session.start();
+        }
+        ensureSearchingSession();
+    }
+
+    /**
+     * Disconnect every session and end their threads; main thread only
+     */
+    public void shutdown() {
+        started = false;
+        scanWaiters.clear();
+        scanner.stop();
+        for (WatchSession session : sessions) {
+            session.shutdown();
+        }
+        sessions.clear();
+    }
+
+    public void onAdapterOn() {
+        for (WatchSession session : sessions) {
+            session.onAdapterOn();
+        }
+    }
+
+    public void onAdapterOff() {
+        for (WatchSession session : sessions) {
+            session.onAdapterOff();
+        }
+    }
+
+    public List<WatchSession> getSessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    /**
+     * Find the session bound to a watch; any thread
+     * @return The session, or null if no session has that address
+     */
+    public WatchSession findSession(String address) {
+        if (address == null) {
+            return null;
+        }
+        for (WatchSession session : sessions) {
+            if (address.equals(session.getAddress())) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Human-readable summary of the shared scan and every session
+     */
+    public String getStatsSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("scan: ").append(scanner.getStatsSummary());
+        for (WatchSession session : sessions) {
+            sb.append('\n').append(session.getStatsSummary());
+        }
+        return sb.toString();
+    }
+
+    // WatchSession.Host, called from session threads
+
+    @Override
+    public void requestScan(WatchSession session) {
+        handler.post(() -> {
+            if (!started || scanWaiters.contains(session)) {
+                return;
+            }
+            scanWaiters.add(session);
+            scanner.start();
+        });
+    }
+
+    @Override
+    public void cancelScan(WatchSession session) {
+        handler.post(() -> {
+            scanWaiters.remove(session);
+            if (scanWaiters.isEmpty() && scanner.isScanning()) {
+                scanner.stop();
+                Log.d(TAG, "Stopped BLE scan");
+            }
+        });
+    }
+
+    @Override
+    public void onSessionReady(WatchSession session) {
+        handler.post(() -> {
+            saveAddresses();
+            ensureSearchingSession();
+        });
+    }
+
+    @Override
+    public void onLinkQualityChanged(WatchSession session, LinkQualityMonitor.Quality quality, int smoothedRssi) {
+        handler.post(() -> {
+            if (linkQualityListener != null) {
+                linkQualityListener.onLinkQualityChanged(session, quality, smoothedRssi);
+            }
+        });
+    }
+
+    /**
+     * Add an unbound session to look for another wearable, if there is room
+     */
+    private void ensureSearchingSession() {
+        if (!started || sessions.size() >= maxSessions) {
+            return;
+        }
+        for (WatchSession session : sessions) {
+            if (session.getAddress() == null) {
+                return;
+            }
+        }
+        WatchSession session = createSession(null);
+        sessions.add(session);
+        session.start();
+    }
+
+    private WatchSession createSession(String address) {
+        return new WatchSession(nextSessionId++, transport, address, this, frameListener);
+    }
+
+    private void saveAddresses() {
+        List<String> addresses = new ArrayList<>();
+        for (WatchSession session : sessions) {
+            String address = session.getAddress();
+            if (address != null) {
+                addresses.add(address);
+            }
+        }
+        ResourceManager.saveWatchAddresses(context, addresses);
+    }
+
+    /**
+     * Handle a device found by the shared scan (main thread)
+     */
+    private void onDeviceFound(String address, String deviceName) {
+        Log.d(TAG, "Found device: " + (deviceName != null ? deviceName : "Unknown"));
+
+        if (deviceName == null || !targetDeviceNames.contains(deviceName) || scanWaiters.isEmpty()) {
+            return;
+        }
+
+        WatchSession session = pickSessionFor(address);
+        if (session == null) {
+            // Already connected through another session
+            return;
+        }
+
+        scanner.recordDetection();
+        scanWaiters.remove(session);
+        if (scanWaiters.isEmpty()) {
+            scanner.stop();
+        }
+        // The session's state machine connects to the device
+        session.onDeviceFound(address);
+    }
+
+    /**
+     * Choose the waiting session that should get a found device
+     * @return The session, or null if another session owns the address
+     */
+    private WatchSession pickSessionFor(String address) {
+        WatchSession owner = findOwner(address);
+        if (owner != null) {
+            // A session searching for its own watch gets it back; nobody else does
+            return scanWaiters.contains(owner) ? owner : null;
+        }
+        for (WatchSession session : scanWaiters) {
+            if (session.getAddress() == null) {
+                return session;
+            }
+        }
+        // A session whose watch stopped answering at its old address
+        return scanWaiters.get(0);
+    }
+
+    private WatchSession findOwner(String address) {
+        for (WatchSession session : sessions) {
+            if (address.equals(session.getAddress())) {
+                return session;
+            }
+        }
+        return null;
+    }
+}
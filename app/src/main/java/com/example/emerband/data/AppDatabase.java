@@ -2,15 +2,18 @@ package com.example.emerband.data;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 /**
  * Main database class for the application.
  * Provides a singleton instance of the database.
  */
-@Database(entities = {OfflineEvent.class}, version = 1, exportSchema = false)
+@Database(entities = {OfflineEvent.class, SmsPart.class}, version = 2, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
     
     // Singleton instance
@@ -18,6 +21,28 @@ public abstract class AppDatabase extends RoomDatabase {
     
     // DAOs
     public abstract OfflineEventDao offlineEventDao();
+    public abstract SmsPartDao smsPartDao();
+    
+    // Version 2 adds SMS delivery tracking; stored offline events are kept
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sms_parts` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`alertId` INTEGER NOT NULL, "
+                    + "`phone` TEXT, "
+                    + "`name` TEXT, "
+                    + "`partIndex` INTEGER NOT NULL, "
+                    + "`partCount` INTEGER NOT NULL, "
+                    + "`text` TEXT, "
+                    + "`state` INTEGER NOT NULL, "
+                    + "`attempts` INTEGER NOT NULL, "
+                    + "`resultCode` INTEGER NOT NULL, "
+                    + "`nextAttemptAt` INTEGER NOT NULL, "
+                    + "`updatedAt` INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_parts_alertId` ON `sms_parts` (`alertId`)");
+        }
+    };
     
     /**
      * Get the database instance
@@ -32,6 +57,7 @@ public abstract class AppDatabase extends RoomDatabase {
                             context.getApplicationContext(),
                             AppDatabase.class,
                             "emerband_database")
+                            .addMigrations(MIGRATION_1_2)
                             .build();
                 }
             }
@@ -0,0 +1,143 @@
+package com.example.emerband.data;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity class for one part of an alert SMS to one recipient.
+ * Tracks whether the part left the device and reached the recipient,
+ * so only the parts that did not are sent again.
+ */
+@Entity(tableName = "sms_parts", indices = {@Index("alertId")})
+public class SmsPart {
+
+    // Part states
+    public static final int STATE_QUEUED = 0;    // Handed to the radio, no result yet
+    public static final int STATE_SENT = 1;      // Left the device
+    public static final int STATE_DELIVERED = 2; // Delivery report received
+    public static final int STATE_FAILED = 3;    // Not sent or not delivered, retry scheduled
+    public static final int STATE_ABANDONED = 4; // Retries used up
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    private long alertId; // Groups the parts of one alert
+    private String phone;
+    private String name;
+    private int partIndex;
+    private int partCount;
+    private String text;
+    private int state;
+    private int attempts; // Number of times the part was handed to the radio
+    private int resultCode; // Last sent result code or delivery status
+    private long nextAttemptAt; // Wall time of the scheduled retry
+    private long updatedAt;
+
+    public SmsPart(long alertId, String phone, String name, int partIndex, int partCount, String text) {
+        this.alertId = alertId;
+        this.phone = phone;
+        this.name = name;
+        this.partIndex = partIndex;
+        this.partCount = partCount;
+        this.text = text;
+        this.state = STATE_QUEUED;
+    }
+
+    // Getters and setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getAlertId() {
+        return alertId;
+    }
+
+    public void setAlertId(long alertId) {
+        this.alertId = alertId;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public void setPhone(String phone) {
+        this.phone = phone;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getPartIndex() {
+        return partIndex;
+    }
+
+    public void setPartIndex(int partIndex) {
+        this.partIndex = partIndex;
+    }
+
+    public int getPartCount() {
+        return partCount;
+    }
+
+    public void setPartCount(int partCount) {
+        this.partCount = partCount;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public void setState(int state) {
+        this.state = state;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public int getResultCode() {
+        return resultCode;
+    }
+
+    public void setResultCode(int resultCode) {
+        this.resultCode = resultCode;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
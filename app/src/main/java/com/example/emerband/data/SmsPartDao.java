@@ -0,0 +1,71 @@
+package com.example.emerband.data;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+
+import java.util.List;
+
+/**
+ * Data Access Object (DAO) for SmsPart entities.
+ * Provides the per-part updates and the per-recipient delivery state.
+ */
+@Dao
+public interface SmsPartDao {
+
+    String RECIPIENT_COLUMNS = "alertId, phone, name, COUNT(*) AS parts, "
+            + "SUM(CASE WHEN state IN (" + SmsPart.STATE_SENT + ", " + SmsPart.STATE_DELIVERED
+            + ") THEN 1 ELSE 0 END) AS sentParts, "
+            + "SUM(CASE WHEN state = " + SmsPart.STATE_DELIVERED + " THEN 1 ELSE 0 END) AS deliveredParts, "
+            + "SUM(CASE WHEN state = " + SmsPart.STATE_FAILED + " THEN 1 ELSE 0 END) AS retryingParts, "
+            + "SUM(CASE WHEN state = " + SmsPart.STATE_ABANDONED + " THEN 1 ELSE 0 END) AS abandonedParts, "
+            + "MAX(attempts) AS attempts, MAX(updatedAt) AS updatedAt";
+
+    /**
+     * Insert the parts of a message, returning their ids in order
+     */
+    @Insert
+    long[] insertAll(List<SmsPart> parts);
+
+    /**
+     * Update an existing part
+     */
+    @Update
+    void update(SmsPart part);
+
+    /**
+     * Get a part by id, or null
+     */
+    @Query("SELECT * FROM sms_parts WHERE id = :id")
+    SmsPart getPart(long id);
+
+    /**
+     * Get the parts still waiting for a result or a retry
+     */
+    @Query("SELECT * FROM sms_parts WHERE state IN (" + SmsPart.STATE_QUEUED + ", " + SmsPart.STATE_FAILED
+            + ") ORDER BY id ASC")
+    List<SmsPart> getOutstandingParts();
+
+    /**
+     * Get the delivery state per recipient of an alert
+     */
+    @Query("SELECT " + RECIPIENT_COLUMNS + " FROM sms_parts WHERE alertId = :alertId "
+            + "GROUP BY phone ORDER BY MIN(id)")
+    List<SmsRecipientStatus> getRecipients(long alertId);
+
+    /**
+     * Observe the delivery state per recipient of the latest alert
+     */
+    @Query("SELECT " + RECIPIENT_COLUMNS + " FROM sms_parts "
+            + "WHERE alertId = (SELECT MAX(alertId) FROM sms_parts) "
+            + "GROUP BY phone ORDER BY MIN(id)")
+    LiveData<List<SmsRecipientStatus>> observeLatestRecipients();
+
+    /**
+     * Delete parts last updated before the given time
+     */
+    @Query("DELETE FROM sms_parts WHERE updatedAt < :before")
+    int deleteOlderThan(long before);
+}
@@ -0,0 +1,102 @@
+package com.example.emerband.data;
+
+/**
+ * Delivery state of one alert for one recipient, summed over the SMS parts.
+ * Returned by {@link SmsPartDao} queries.
+ */
+public class SmsRecipientStatus {
+
+    private final long alertId;
+    private final String phone;
+    private final String name;
+    private final int parts;
+    private final int sentParts; // Sent or delivered
+    private final int deliveredParts;
+    private final int retryingParts;
+    private final int abandonedParts;
+    private final int attempts; // Most attempts of any part
+    private final long updatedAt;
+
+    public SmsRecipientStatus(long alertId, String phone, String name, int parts, int sentParts,
+                              int deliveredParts, int retryingParts, int abandonedParts,
+                              int attempts, long updatedAt) {
+        this.alertId = alertId;
+        this.phone = phone;
+        this.name = name;
+        this.parts = parts;
+        this.sentParts = sentParts;
+        this.deliveredParts = deliveredParts;
+        this.retryingParts = retryingParts;
+        this.abandonedParts = abandonedParts;
+        this.attempts = attempts;
+        this.updatedAt = updatedAt;
+    }
+
+    public long getAlertId() {
+        return alertId;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParts() {
+        return parts;
+    }
+
+    public int getSentParts() {
+        return sentParts;
+    }
+
+    public int getDeliveredParts() {
+        return deliveredParts;
+    }
+
+    public int getRetryingParts() {
+        return retryingParts;
+    }
+
+    public int getAbandonedParts() {
+        return abandonedParts;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Whether every part was reported delivered
+     */
+    public boolean isDelivered() {
+        return deliveredParts == parts;
+    }
+
+    /**
+     * Whether every part left the device
+     */
+    public boolean isSent() {
+        return sentParts == parts;
+    }
+
+    /**
+     * Whether some part will not be sent again
+     */
+    public boolean isAbandoned() {
+        return abandonedParts > 0;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + phone + "): " + deliveredParts + "/" + parts + " delivered, "
+                + sentParts + " sent, " + retryingParts + " retrying, " + abandonedParts
+                + " abandoned, attempts=" + attempts;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.emerband.dispatch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops repeated signals of the same type from the same device within a
+ * time bucket.
+ *
+ * Each signal type has a window. The first signal of a type from a device
+ * opens a bucket of that length, and further signals of that type from
+ * that device are dropped until the bucket closes. Another device has its
+ * own buckets, so a second wearable's alert always goes through.
+ *
+ * Frames the watch repeats or replays after a reconnect are already
+ * dropped by their sequence number (see SequenceWindow). The windows only
+ * need to cover what sequence numbers cannot: the same press arriving both
+ * as a notification and as an advertisement (each path tracks its own
+ * sequence numbers), watches too old to send one, and a user pressing the
+ * button again a few times in a row. They are kept short so that a new
+ * press after them is acted on again.
+ *
+ * Thread-safe.
+ */
+public final class IdempotencyFilter {
+
+    // Windows per signal type
+    public static final long EMERGENCY_WINDOW_MILLIS = 10000;
+    public static final long ALERT_WINDOW_MILLIS = 5000;
+    public static final long FAKE_CALL_WINDOW_MILLIS = 3000;
+    public static final long CYBER_CELL_WINDOW_MILLIS = 10000;
+    public static final long DEFAULT_WINDOW_MILLIS = 1000;
+
+    // Signal types with their own bucket, indexed by slot
+    private static final char[] SIGNALS = {'E', 'A', 'F', 'C'};
+    private static final int OTHER_SLOT = SIGNALS.length;
+
+    // Devices tracked at once; the least recently heard is forgotten first
+    private static final int MAX_DEVICES = 8;
+
+    // Key for signals without a source address
+    private static final String UNKNOWN_DEVICE = "";
+
+    private final long[] windowNanos = new long[OTHER_SLOT + 1];
+    private final long[] suppressed = new long[OTHER_SLOT + 1];
+    private final Map<String, Buckets> devices =
+            new LinkedHashMap<String, Buckets>(MAX_DEVICES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Buckets> eldest) {
+                    return size() > MAX_DEVICES;
+                }
+            };
+
+    public IdempotencyFilter() {
+        windowNanos[0] = TimeUnit.MILLISECONDS.toNanos(EMERGENCY_WINDOW_MILLIS);
+        windowNanos[1] = TimeUnit.MILLISECONDS.toNanos(ALERT_WINDOW_MILLIS);
+        windowNanos[2] = TimeUnit.MILLISECONDS.toNanos(FAKE_CALL_WINDOW_MILLIS);
+        windowNanos[3] = TimeUnit.MILLISECONDS.toNanos(CYBER_CELL_WINDOW_MILLIS);
+        windowNanos[OTHER_SLOT] = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * Decide whether a signal should be acted on
+     * @param sourceAddress Address of the device that sent it, or null
+     * @param signal Signal code
+     * @param nowNanos System.nanoTime() when the signal arrived
+     * @return true for the first signal of its type from the device in the current bucket
+     */
+    public synchronized boolean tryAcquire(String sourceAddress, char signal, long nowNanos) {
+        String key = sourceAddress != null ? sourceAddress : UNKNOWN_DEVICE;
+        Buckets buckets = devices.get(key);
+        if (buckets == null) {
+            buckets = new Buckets();
+            devices.put(key, buckets);
+        }
+        int slot = slotOf(signal);
+        if (buckets.open[slot] && nowNanos - buckets.openedAtNanos[slot] < windowNanos[slot]) {
+            suppressed[slot]++;
+            return false;
+        }
+        buckets.open[slot] = true;
+        buckets.openedAtNanos[slot] = nowNanos;
+        return true;
+    }
+
+    /**
+     * Close the bucket for a signal type of one device, e.g. after the alert was cancelled
+     * @param sourceAddress Address of the device, or null
+     */
+    public synchronized void reset(String sourceAddress, char signal) {
+        Buckets buckets = devices.get(sourceAddress != null ? sourceAddress : UNKNOWN_DEVICE);
+        if (buckets != null) {
+            buckets.open[slotOf(signal)] = false;
+        }
+    }
+
+    /**
+     * Get the number of dropped repeats of the given signal type, from all devices
+     */
+    public synchronized long getSuppressedCount(char signal) {
+        return suppressed[slotOf(signal)];
+    }
+
+    private static int slotOf(char signal) {
+        for (int i = 0; i < SIGNALS.length; i++) {
+            if (SIGNALS[i] == signal) {
+                return i;
+            }
+        }
+        return OTHER_SLOT;
+    }
+
+    /**
+     * Buckets of one device, indexed by slot
+     */
+    private static final class Buckets {
+        final long[] openedAtNanos = new long[OTHER_SLOT + 1];
+        final boolean[] open = new boolean[OTHER_SLOT + 1];
+    }
+}
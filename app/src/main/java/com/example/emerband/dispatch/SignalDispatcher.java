@@ -0,0 +1,318 @@
+package com.example.emerband.dispatch;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Dispatch stage between the BLE callback thread and the signal handlers.
+ *
+ * Signals are ordered by priority ('E' before 'A' before 'F' before 'C'),
+ * FIFO within the same priority. Emergencies run on a reserved lane so they
+ * never wait behind a slow handler (Room insert, activity launch) that is
+ * already occupying the bounded worker pool. Signals from every connected
+ * device share the same dispatcher. Repeats of a signal type from the same
+ * device within its {@link IdempotencyFilter} window are dropped before
+ * they are queued, so one press acts once. The queueing delay is recorded
+ * per signal type, and the number of signals per source device.
+ */
+public final class SignalDispatcher {
+    private static final String TAG = "SignalDispatcher";
+
+    /**
+     * Callback that performs the work for one signal, on a dispatcher thread
+     */
+    public interface SignalHandler {
+        void handle(SignalEvent event);
+    }
+
+    // Priorities (lower runs first)
+    public static final int PRIORITY_EMERGENCY = 0;
+    public static final int PRIORITY_ALERT = 1;
+    public static final int PRIORITY_FAKE_CALL = 2;
+    public static final int PRIORITY_CYBER_CELL = 3;
+    public static final int PRIORITY_OTHER = 4;
+
+    // Signal types tracked in the stats, indexed by slot
+    private static final char[] TRACKED_SIGNALS = {'E', 'A', 'F', 'C', 'X'};
+    private static final int OTHER_SLOT = TRACKED_SIGNALS.length;
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    // Longest shutdown() waits for queued emergencies to be handled
+    private static final long EMERGENCY_DRAIN_MILLIS = 2000;
+
+    private final SignalHandler handler;
+    private final ThreadPoolExecutor emergencyLane;
+    private final ThreadPoolExecutor workerPool;
+    private final AtomicLong sequence = new AtomicLong();
+    private final IdempotencyFilter idempotencyFilter = new IdempotencyFilter();
+
+    // Per-signal queueing delay stats
+    private final AtomicLongArray dispatchedCount = new AtomicLongArray(OTHER_SLOT + 1);
+    private final AtomicLongArray totalDelayNanos = new AtomicLongArray(OTHER_SLOT + 1);
+    private final AtomicLongArray maxDelayNanos = new AtomicLongArray(OTHER_SLOT + 1);
+    private final AtomicLong failedCount = new AtomicLong();
+
+    // Submitted signals per source device address
+    private final Map<String, AtomicLong> sourceCounts = new ConcurrentHashMap<>();
+
+    /**
+     * @param handler Handler invoked for every submitted signal
+     * @param workerCount Number of worker threads for non-emergency signals
+     */
+    public SignalDispatcher(SignalHandler handler, int workerCount) {
+        this.handler = handler;
+        this.emergencyLane = createExecutor(1, "SignalDispatch-Emergency", Thread.MAX_PRIORITY);
+        this.workerPool = createExecutor(workerCount, "SignalDispatch-Worker", Thread.NORM_PRIORITY);
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads, String name, int threadPriority) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                WORKER_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new NamedThreadFactory(name, threadPriority));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Queue a signal for handling; returns immediately
+     * @return true if the signal was queued, false if it repeats one already being acted on
+     */
+    public boolean submit(SignalEvent event) {
+        char signal = event.getSignal();
+        String sourceAddress = event.getSourceAddress();
+        if (!idempotencyFilter.tryAcquire(sourceAddress, signal, event.getReceivedAtNanos())) {
+            return false;
+        }
+        if (signal == 'X') {
+            // After a cancel, the next alert from that device must go through again
+            idempotencyFilter.reset(sourceAddress, 'E');
+            idempotencyFilter.reset(sourceAddress, 'A');
+        }
+
+        DispatchTask task = new DispatchTask(event, sequence.getAndIncrement(), System.nanoTime());
+        if (sourceAddress != null) {
+            sourceCounts.computeIfAbsent(sourceAddress, a -> new AtomicLong()).incrementAndGet();
+        }
+        if (task.priority == PRIORITY_EMERGENCY) {
+            emergencyLane.execute(task);
+        } else {
+            workerPool.execute(task);
+        }
+        return true;
+    }
+
+    /**
+     * Stop all workers. Queued emergencies are still handled, waiting for
+     * them at most {@link #EMERGENCY_DRAIN_MILLIS}; other queued signals are
+     * dropped.
+     * @return true if every emergency was handled in time
+     */
+    public boolean shutdown() {
+        emergencyLane.shutdown();
+        List<Runnable> dropped = workerPool.shutdownNow();
+        if (!dropped.isEmpty()) {
+            Log.w(TAG, "Dropped " + dropped.size() + " queued signals on shutdown");
+        }
+        try {
+            if (emergencyLane.awaitTermination(EMERGENCY_DRAIN_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The lane keeps running the rest in the background
+        Log.w(TAG, "Emergencies still being handled after shutdown");
+        return false;
+    }
+
+    /**
+     * Stop accepting work and wait for every queued signal to be handled
+     * @return true if all signals were handled within the timeout
+     */
+    public boolean shutdownAndDrain(long timeout, TimeUnit unit) throws InterruptedException {
+        emergencyLane.shutdown();
+        workerPool.shutdown();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return emergencyLane.awaitTermination(timeout, unit)
+                && workerPool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the dispatch priority for a signal code
+     */
+    public static int priorityOf(char signal) {
+        switch (signal) {
+            case 'E':
+                return PRIORITY_EMERGENCY;
+            case 'A':
+                return PRIORITY_ALERT;
+            case 'F':
+                return PRIORITY_FAKE_CALL;
+            case 'C':
+                return PRIORITY_CYBER_CELL;
+            default:
+                return PRIORITY_OTHER;
+        }
+    }
+
+    private static int slotOf(char signal) {
+        for (int i = 0; i < TRACKED_SIGNALS.length; i++) {
+            if (TRACKED_SIGNALS[i] == signal) {
+                return i;
+            }
+        }
+        return OTHER_SLOT;
+    }
+
+    private void recordQueueDelay(char signal, long delayNanos) {
+        int slot = slotOf(signal);
+        dispatchedCount.incrementAndGet(slot);
+        totalDelayNanos.addAndGet(slot, delayNanos);
+
+        long max;
+        do {
+            max = maxDelayNanos.get(slot);
+        } while (delayNanos > max && !maxDelayNanos.compareAndSet(slot, max, delayNanos));
+    }
+
+    /**
+     * Get the number of dispatched signals of the given type
+     */
+    public long getDispatchedCount(char signal) {
+        return dispatchedCount.get(slotOf(signal));
+    }
+
+    /**
+     * Get the average time signals of the given type spent queued, in microseconds
+     */
+    public long getAverageQueueDelayMicros(char signal) {
+        int slot = slotOf(signal);
+        long count = dispatchedCount.get(slot);
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalDelayNanos.get(slot) / count);
+    }
+
+    /**
+     * Get the longest time a signal of the given type spent queued, in microseconds
+     */
+    public long getMaxQueueDelayMicros(char signal) {
+        return TimeUnit.NANOSECONDS.toMicros(maxDelayNanos.get(slotOf(signal)));
+    }
+
+    /**
+     * Get the number of signals submitted from the given device
+     */
+    public long getSubmittedCount(String sourceAddress) {
+        AtomicLong count = sourceCounts.get(sourceAddress);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Get the number of signals of the given type dropped as repeats
+     */
+    public long getSuppressedCount(char signal) {
+        return idempotencyFilter.getSuppressedCount(signal);
+    }
+
+    /**
+     * Get the number of handler invocations that threw
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Human-readable summary of the queueing delay per signal type
+     */
+    public String getStatsSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (char signal : TRACKED_SIGNALS) {
+            if (getDispatchedCount(signal) == 0) {
+                continue;
+            }
+            sb.append(signal)
+                    .append(": n=").append(getDispatchedCount(signal))
+                    .append(" repeats=").append(getSuppressedCount(signal))
+                    .append(" avg=").append(getAverageQueueDelayMicros(signal)).append("us")
+                    .append(" max=").append(getMaxQueueDelayMicros(signal)).append("us\n");
+        }
+        for (Map.Entry<String, AtomicLong> entry : sourceCounts.entrySet()) {
+            sb.append("from ").append(entry.getKey())
+                    .append(": n=").append(entry.getValue().get()).append('\n');
+        }
+        sb.append("failed=").append(getFailedCount());
+        return sb.toString();
+    }
+
+    /**
+     * Queued unit of work, ordered by priority and then submission order
+     */
+    private final class DispatchTask implements Runnable, Comparable<DispatchTask> {
+        final SignalEvent event;
+        final int priority;
+        final long sequence;
+        final long enqueuedAtNanos;
+
+        DispatchTask(SignalEvent event, long sequence, long enqueuedAtNanos) {
+            this.event = event;
+            this.priority = priorityOf(event.getSignal());
+            this.sequence = sequence;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+
+        @Override
+        public void run() {
+            recordQueueDelay(event.getSignal(), System.nanoTime() - enqueuedAtNanos);
+            try {
+                handler.handle(event);
+            } catch (RuntimeException e) {
+                // Keep the worker alive for the next signal
+                failedCount.incrementAndGet();
+                Log.e(TAG, "Handler failed for " + event.getSignal(), e);
+            }
+        }
+
+        @Override
+        public int compareTo(DispatchTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Thread factory giving dispatcher threads recognizable names
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final int threadPriority;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name, int threadPriority) {
+            this.name = name;
+            this.threadPriority = threadPriority;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setPriority(threadPriority);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.emerband.dispatch;
+
+import com.example.emerband.ble.WatchFrame;
+
+/**
+ * Immutable snapshot of a watch signal handed from the BLE callback
+ * thread to the dispatcher, tagged with the device it came from.
+ */
+public final class SignalEvent {
+
+    private final String sourceAddress;
+    private final char signal;
+    private final boolean hasLocation;
+    private final double latitude;
+    private final double longitude;
+    private final long receivedAtNanos;
+
+    public SignalEvent(String sourceAddress, char signal, boolean hasLocation, double latitude,
+                       double longitude, long receivedAtNanos) {
+        this.sourceAddress = sourceAddress;
+        this.signal = signal;
+        this.hasLocation = hasLocation;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.receivedAtNanos = receivedAtNanos;
+    }
+
+    /**
+     * Copy the values out of a (reused) decoded frame
+     * @param sourceAddress MAC address of the device that sent the frame
+     * @param frame Decoded frame
+     * @param receivedAtNanos System.nanoTime() when the notification arrived
+     */
+    public static SignalEvent from(String sourceAddress, WatchFrame frame, long receivedAtNanos) {
+        return new SignalEvent(sourceAddress, frame.getSignal(), frame.hasLocation(),
+                frame.getLatitude(), frame.getLongitude(), receivedAtNanos);
+    }
+
+    /**
+     * Get the MAC address of the device that sent the signal
+     */
+    public String getSourceAddress() {
+        return sourceAddress;
+    }
+
+    public char getSignal() {
+        return signal;
+    }
+
+    public boolean hasLocation() {
+        return hasLocation;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public long getReceivedAtNanos() {
+        return receivedAtNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SignalEvent{" + signal + " from " + sourceAddress + (hasLocation ? ", " + latitude + "," + longitude : "") + "}";
+    }
+}
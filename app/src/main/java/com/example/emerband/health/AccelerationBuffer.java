@@ -0,0 +1,118 @@
+package com.example.emerband.health;
+
+/**
+ * Ring buffer of 3-axis acceleration samples in g, on primitive arrays.
+ *
+ * Holds the last {@link #getCapacity()} samples with their timestamps.
+ * Adding a sample never allocates. Samples must be added in timestamp
+ * order; readers look samples up by time with {@link #indexAtOrAfter} and
+ * read them by position, oldest first.
+ *
+ * Thread-safe; hold the buffer's lock across a lookup and the reads that
+ * use its result.
+ */
+public final class AccelerationBuffer {
+
+    // Standard gravity, to convert m/s^2 to g
+    public static final float STANDARD_GRAVITY = 9.80665f;
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private int head;
+    private int size;
+    private long totalSamples;
+
+    /**
+     * @param capacity Number of samples kept
+     */
+    public AccelerationBuffer(int capacity) {
+        this.capacity = capacity;
+        timestamps = new long[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+    }
+
+    /**
+     * Add a sample
+     * @param timestampNanos Sample time; must not be before the previous sample
+     * @param xG Acceleration along x, in g
+     * @param yG Acceleration along y, in g
+     * @param zG Acceleration along z, in g
+     */
+    public synchronized void add(long timestampNanos, float xG, float yG, float zG) {
+        timestamps[head] = timestampNanos;
+        x[head] = xG;
+        y[head] = yG;
+        z[head] = zG;
+        head = (head + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+        totalSamples++;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getTotalSamples() {
+        return totalSamples;
+    }
+
+    /**
+     * Find the first sample at or after a time
+     * @return Position (0 = oldest), or {@link #size()} if every sample is older
+     */
+    public synchronized int indexAtOrAfter(long timestampNanos) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestampNanos(mid) < timestampNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public synchronized long getTimestampNanos(int index) {
+        return timestamps[slot(index)];
+    }
+
+    public synchronized float getX(int index) {
+        return x[slot(index)];
+    }
+
+    public synchronized float getY(int index) {
+        return y[slot(index)];
+    }
+
+    public synchronized float getZ(int index) {
+        return z[slot(index)];
+    }
+
+    /**
+     * Get the magnitude of a sample (signal magnitude vector), in g
+     */
+    public synchronized float getMagnitude(int index) {
+        int slot = slot(index);
+        return (float) Math.sqrt(x[slot] * x[slot] + y[slot] * y[slot] + z[slot] * z[slot]);
+    }
+
+    private int slot(int index) {
+        return Math.floorMod(head - size + index, capacity);
+    }
+}
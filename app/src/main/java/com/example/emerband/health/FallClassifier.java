@@ -0,0 +1,161 @@
+package com.example.emerband.health;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rule-based fall classifier over a window of acceleration samples.
+ *
+ * A fall shows up as a short drop towards 0 g (free fall), a sharp impact,
+ * and then a body lying still in a different orientation. The classifier
+ * finds the strongest impact in the window and measures:
+ * - free fall: the longest run below {@link #FREE_FALL_G} in the second before it,
+ * - stillness: the spread of the magnitude in the seconds after it,
+ * - orientation change: the angle between the gravity direction before and after it.
+ *
+ * It is a fall if the impact is at least {@link #IMPACT_G}, the body is
+ * still afterwards, and there was either a free fall or an orientation
+ * change. A hard knock on the phone is not followed by stillness, and
+ * sitting down hard has neither free fall nor a change in orientation.
+ *
+ * Extraction reads the buffer in place and does not allocate.
+ * Not thread-safe; use one instance per thread.
+ */
+public final class FallClassifier {
+
+    // Impact and free-fall thresholds on the magnitude (g)
+    public static final float IMPACT_G = 2.5f;
+    public static final float FREE_FALL_G = 0.6f;
+
+    // Shortest free fall and smallest orientation change that count
+    public static final long MIN_FREE_FALL_MILLIS = 80;
+    public static final float MIN_ORIENTATION_CHANGE_DEGREES = 45f;
+
+    // Largest spread of the magnitude (g) for lying still
+    public static final float STILLNESS_G = 0.15f;
+
+    private static final long FREE_FALL_LOOKBACK_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+    // Gravity before the fall: a second ending half a second before the impact
+    private static final long BEFORE_END_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long BEFORE_LENGTH_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+    // Stillness and gravity after the fall: skip the bounce, then up to two seconds
+    private static final long SETTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long STILL_LENGTH_NANOS = TimeUnit.MILLISECONDS.toNanos(2000);
+    private static final long MIN_STILL_LENGTH_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private final float[] mean = new float[3];
+
+    /**
+     * Extract the fall features of a window
+     * @param buffer Samples
+     * @param fromNanos Start of the window, in the buffer's time base
+     * @param toNanos End of the window
+     * @param out Features to fill; reset first
+     */
+    public void extract(AccelerationBuffer buffer, long fromNanos, long toNanos, FallFeatures out) {
+        out.reset();
+        synchronized (buffer) {
+            int first = buffer.indexAtOrAfter(fromNanos);
+            int end = buffer.indexAtOrAfter(toNanos + 1);
+            out.samples = end - first;
+            if (out.samples == 0) {
+                return;
+            }
+
+            // Impact: the strongest sample in the window
+            int impact = first;
+            for (int i = first; i < end; i++) {
+                float magnitude = buffer.getMagnitude(i);
+                if (magnitude > out.peakG) {
+                    out.peakG = magnitude;
+                    impact = i;
+                }
+            }
+            long impactNanos = buffer.getTimestampNanos(impact);
+            out.impactNanos = impactNanos;
+
+            // Free fall: longest run below the threshold in the lookback before the impact
+            long runStart = -1;
+            long longestRun = 0;
+            for (int i = buffer.indexAtOrAfter(impactNanos - FREE_FALL_LOOKBACK_NANOS); i < impact; i++) {
+                long t = buffer.getTimestampNanos(i);
+                if (buffer.getMagnitude(i) < FREE_FALL_G) {
+                    if (runStart < 0) {
+                        runStart = t;
+                    }
+                    longestRun = Math.max(longestRun, t - runStart);
+                } else {
+                    runStart = -1;
+                }
+            }
+            out.freeFallMillis = TimeUnit.NANOSECONDS.toMillis(longestRun);
+
+            // Stillness: spread of the magnitude after the bounce
+            int stillFirst = buffer.indexAtOrAfter(impactNanos + SETTLE_NANOS);
+            int stillEnd = Math.min(end, buffer.indexAtOrAfter(impactNanos + SETTLE_NANOS + STILL_LENGTH_NANOS));
+            if (stillEnd > stillFirst
+                    && buffer.getTimestampNanos(stillEnd - 1) - buffer.getTimestampNanos(stillFirst)
+                    >= MIN_STILL_LENGTH_NANOS) {
+                double sum = 0;
+                double sumSquares = 0;
+                for (int i = stillFirst; i < stillEnd; i++) {
+                    double magnitude = buffer.getMagnitude(i);
+                    sum += magnitude;
+                    sumSquares += magnitude * magnitude;
+                }
+                int n = stillEnd - stillFirst;
+                double variance = Math.max(0, sumSquares / n - (sum / n) * (sum / n));
+                out.stillnessG = (float) Math.sqrt(variance);
+
+                // Orientation: mean direction before the fall against after it
+                int beforeFirst = buffer.indexAtOrAfter(impactNanos - BEFORE_END_NANOS - BEFORE_LENGTH_NANOS);
+                int beforeEnd = buffer.indexAtOrAfter(impactNanos - BEFORE_END_NANOS);
+                if (beforeEnd > beforeFirst) {
+                    meanVector(buffer, beforeFirst, beforeEnd);
+                    float bx = mean[0];
+                    float by = mean[1];
+                    float bz = mean[2];
+                    meanVector(buffer, stillFirst, stillEnd);
+                    out.orientationChangeDegrees = angleDegrees(bx, by, bz, mean[0], mean[1], mean[2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide whether extracted features are a fall
+     */
+    public boolean isFall(FallFeatures features) {
+        if (features.peakG < IMPACT_G) {
+            return false;
+        }
+        if (features.stillnessG == FallFeatures.UNKNOWN || features.stillnessG > STILLNESS_G) {
+            return false;
+        }
+        return features.freeFallMillis >= MIN_FREE_FALL_MILLIS
+                || features.orientationChangeDegrees >= MIN_ORIENTATION_CHANGE_DEGREES;
+    }
+
+    private void meanVector(AccelerationBuffer buffer, int first, int end) {
+        float sx = 0;
+        float sy = 0;
+        float sz = 0;
+        for (int i = first; i < end; i++) {
+            sx += buffer.getX(i);
+            sy += buffer.getY(i);
+            sz += buffer.getZ(i);
+        }
+        int n = end - first;
+        mean[0] = sx / n;
+        mean[1] = sy / n;
+        mean[2] = sz / n;
+    }
+
+    static float angleDegrees(float ax, float ay, float az, float bx, float by, float bz) {
+        double lengths = Math.sqrt(ax * ax + ay * ay + az * az) * Math.sqrt(bx * bx + by * by + bz * bz);
+        if (lengths == 0) {
+            return 0;
+        }
+        double cos = (ax * bx + ay * by + az * bz) / lengths;
+        return (float) Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, cos))));
+    }
+}
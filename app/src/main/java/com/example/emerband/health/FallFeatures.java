@@ -0,0 +1,78 @@
+package com.example.emerband.health;
+
+/**
+ * Features of a possible fall extracted from an acceleration window by
+ * {@link FallClassifier}. Reused between extractions.
+ */
+public final class FallFeatures {
+
+    // Value of the stillness and orientation features when the window is too short for them
+    public static final float UNKNOWN = -1f;
+
+    int samples;
+    float peakG;
+    long impactNanos;
+    long freeFallMillis;
+    float stillnessG = UNKNOWN;
+    float orientationChangeDegrees = UNKNOWN;
+
+    void reset() {
+        samples = 0;
+        peakG = 0;
+        impactNanos = 0;
+        freeFallMillis = 0;
+        stillnessG = UNKNOWN;
+        orientationChangeDegrees = UNKNOWN;
+    }
+
+    /**
+     * Get the number of samples in the window
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Get the highest acceleration magnitude in the window, in g
+     */
+    public float getPeakG() {
+        return peakG;
+    }
+
+    /**
+     * Get the time of the peak, in the buffer's time base
+     */
+    public long getImpactNanos() {
+        return impactNanos;
+    }
+
+    /**
+     * Get the longest stretch of near-weightlessness just before the impact
+     */
+    public long getFreeFallMillis() {
+        return freeFallMillis;
+    }
+
+    /**
+     * Get the standard deviation of the magnitude after the impact, in g, or {@link #UNKNOWN}
+     */
+    public float getStillnessG() {
+        return stillnessG;
+    }
+
+    /**
+     * Get the angle between the gravity direction before and after the impact, or {@link #UNKNOWN}
+     */
+    public float getOrientationChangeDegrees() {
+        return orientationChangeDegrees;
+    }
+
+    @Override
+    public String toString() {
+        return "FallFeatures{samples=" + samples
+                + ", peak=" + peakG + "g"
+                + ", freeFall=" + freeFallMillis + "ms"
+                + ", stillness=" + stillnessG + "g"
+                + ", orientationChange=" + orientationChangeDegrees + "deg}";
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.emerband.health;
+
+/**
+ * Outcome of classifying the accelerometer data around an 'F' signal
+ */
+public enum FallVerdict {
+    FALL,
+    NOT_FALL,
+    // No accelerometer, not started or no samples around the signal
+    NO_DATA
+}
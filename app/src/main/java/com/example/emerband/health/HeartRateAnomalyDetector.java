@@ -0,0 +1,121 @@
+package com.example.emerband.health;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming detector for sustained abnormal heart rates.
+ *
+ * A reading above {@link #HIGH_BPM} or below {@link #LOW_BPM} starts an
+ * episode; the episode is reported once it has lasted
+ * {@link #SUSTAIN_MILLIS} with every reading abnormal in the same
+ * direction. A single normal reading, a reading without skin contact or a
+ * gap longer than {@link #MAX_GAP_MILLIS} ends the episode, so motion
+ * artefacts and a loose strap do not raise alerts. After a report the
+ * detector stays quiet until the rate has been normal for
+ * {@link #REARM_MILLIS}.
+ *
+ * Each reading is a few comparisons and never allocates.
+ * Not thread-safe; feed it from one thread.
+ */
+public final class HeartRateAnomalyDetector {
+
+    /**
+     * Result of a reading
+     */
+    public enum Anomaly {
+        NONE,
+        HIGH,
+        LOW
+    }
+
+    // Thresholds for an adult at rest (bpm)
+    public static final int HIGH_BPM = 150;
+    public static final int LOW_BPM = 40;
+
+    // How long an episode must last before it is reported
+    public static final long SUSTAIN_MILLIS = 60000;
+
+    // Longest gap between readings within one episode
+    public static final long MAX_GAP_MILLIS = 15000;
+
+    // Normal time needed before the next episode can be reported
+    public static final long REARM_MILLIS = 60000;
+
+    private static final long SUSTAIN_NANOS = TimeUnit.MILLISECONDS.toNanos(SUSTAIN_MILLIS);
+    private static final long MAX_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_GAP_MILLIS);
+    private static final long REARM_NANOS = TimeUnit.MILLISECONDS.toNanos(REARM_MILLIS);
+
+    private Anomaly episode = Anomaly.NONE;
+    private long episodeStartNanos;
+    private long lastReadingNanos;
+    private boolean hasReading;
+
+    private boolean armed = true;
+    private long normalSinceNanos;
+
+    private long reports;
+    private long abandonedEpisodes;
+
+    /**
+     * Feed a reading
+     * @param heartRate Beats per minute
+     * @param skinContact false if the sensor reported no skin contact
+     * @param nowNanos System.nanoTime() of the reading
+     * @return The anomaly to report now, or {@link Anomaly#NONE}
+     */
+    public Anomaly onReading(int heartRate, boolean skinContact, long nowNanos) {
+        boolean gap = hasReading && nowNanos - lastReadingNanos > MAX_GAP_NANOS;
+        hasReading = true;
+        lastReadingNanos = nowNanos;
+
+        Anomaly reading = !skinContact ? Anomaly.NONE
+                : heartRate > HIGH_BPM ? Anomaly.HIGH
+                : heartRate < LOW_BPM && heartRate > 0 ? Anomaly.LOW
+                : Anomaly.NONE;
+
+        if (reading == Anomaly.NONE) {
+            endEpisode();
+            if (skinContact) {
+                if (normalSinceNanos == 0) {
+                    normalSinceNanos = nowNanos;
+                }
+                if (!armed && nowNanos - normalSinceNanos >= REARM_NANOS) {
+                    armed = true;
+                }
+            }
+            return Anomaly.NONE;
+        }
+
+        normalSinceNanos = 0;
+        if (gap || reading != episode) {
+            endEpisode();
+            episode = reading;
+            episodeStartNanos = nowNanos;
+        }
+
+        if (armed && nowNanos - episodeStartNanos >= SUSTAIN_NANOS) {
+            armed = false;
+            reports++;
+            return reading;
+        }
+        return Anomaly.NONE;
+    }
+
+    private void endEpisode() {
+        if (episode != Anomaly.NONE && armed) {
+            abandonedEpisodes++;
+        }
+        episode = Anomaly.NONE;
+    }
+
+    public long getReportCount() {
+        return reports;
+    }
+
+    /**
+     * Get the number of abnormal episodes that ended before they were reported
+     */
+    public long getAbandonedEpisodeCount() {
+        return abandonedEpisodes;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.emerband.health;
+
+/**
+ * One decoded Heart Rate Measurement (characteristic 0x2A37).
+ *
+ * Instances are reused by {@link HeartRateParser}; copy the values out
+ * before the next measurement is decoded.
+ */
+public final class HeartRateMeasurement {
+
+    // Energy expended value when the field is absent
+    public static final int NO_ENERGY_EXPENDED = -1;
+
+    // RR intervals kept per measurement; further ones are counted but dropped
+    public static final int MAX_RR_INTERVALS = 16;
+
+    private int heartRate;
+    private boolean contactSupported;
+    private boolean contactDetected;
+    private int energyExpended = NO_ENERGY_EXPENDED;
+    private final int[] rrIntervalsMillis = new int[MAX_RR_INTERVALS];
+    private int rrCount;
+    private int droppedRrCount;
+
+    void reset() {
+        heartRate = 0;
+        contactSupported = false;
+        contactDetected = false;
+        energyExpended = NO_ENERGY_EXPENDED;
+        rrCount = 0;
+        droppedRrCount = 0;
+    }
+
+    void setHeartRate(int heartRate) {
+        this.heartRate = heartRate;
+    }
+
+    void setContact(boolean supported, boolean detected) {
+        this.contactSupported = supported;
+        this.contactDetected = detected;
+    }
+
+    void setEnergyExpended(int energyExpended) {
+        this.energyExpended = energyExpended;
+    }
+
+    void addRrIntervalMillis(int millis) {
+        if (rrCount < MAX_RR_INTERVALS) {
+            rrIntervalsMillis[rrCount++] = millis;
+        } else {
+            droppedRrCount++;
+        }
+    }
+
+    /**
+     * Get the heart rate in beats per minute
+     */
+    public int getHeartRate() {
+        return heartRate;
+    }
+
+    /**
+     * Whether the sensor touches the skin; sensors without contact detection always count as touching
+     */
+    public boolean isSkinContact() {
+        return !contactSupported || contactDetected;
+    }
+
+    public boolean isContactSupported() {
+        return contactSupported;
+    }
+
+    /**
+     * Get the energy expended in kJ, or {@link #NO_ENERGY_EXPENDED}
+     */
+    public int getEnergyExpended() {
+        return energyExpended;
+    }
+
+    public int getRrCount() {
+        return rrCount;
+    }
+
+    /**
+     * Get an RR interval in milliseconds
+     * @param index 0 to {@link #getRrCount()} - 1, oldest first
+     */
+    public int getRrIntervalMillis(int index) {
+        return rrIntervalsMillis[index];
+    }
+
+    public int getDroppedRrCount() {
+        return droppedRrCount;
+    }
+
+    @Override
+    public String toString() {
+        return "HeartRateMeasurement{" + heartRate + " bpm"
+                + (isSkinContact() ? "" : ", no contact")
+                + (energyExpended != NO_ENERGY_EXPENDED ? ", " + energyExpended + " kJ" : "")
+                + (rrCount > 0 ? ", rr=" + rrCount : "") + "}";
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.emerband.health;
+
+/**
+ * Heart rate ingest for one wearable: parses measurements, stores them in
+ * a {@link HeartRateSeries} and runs the {@link HeartRateAnomalyDetector}.
+ *
+ * Built for a stream of 1-5 measurements per second all day: the path
+ * from the raw value to the detector does not allocate.
+ *
+ * Feed it from one thread (the wearable's session thread); the series and
+ * the getters may be read from any thread.
+ */
+public final class HeartRateMonitor {
+
+    /**
+     * Receives sustained abnormal heart rates
+     */
+    public interface AnomalyListener {
+        /**
+         * Called on the feeding thread
+         * @param heartRate The reading that completed the episode
+         */
+        void onAnomaly(HeartRateAnomalyDetector.Anomaly anomaly, int heartRate, long receivedAtNanos);
+    }
+
+    private final AnomalyListener listener;
+    private final HeartRateParser parser = new HeartRateParser();
+    private final HeartRateMeasurement measurement = new HeartRateMeasurement();
+    private final HeartRateSeries series = new HeartRateSeries();
+    private final HeartRateAnomalyDetector detector = new HeartRateAnomalyDetector();
+
+    private volatile long noContactReadings;
+
+    public HeartRateMonitor(AnomalyListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Handle a heart rate measurement value
+     * @param data Raw characteristic value (see {@link HeartRateParser#isMeasurement})
+     * @param length Number of valid bytes in {@code data}
+     * @param timeMillis Wall-clock time of the notification, for the series
+     * @param receivedAtNanos System.nanoTime() of the notification, for the detector
+     * @return true if the value was a valid measurement
+     */
+    public boolean onMeasurement(byte[] data, int length, long timeMillis, long receivedAtNanos) {
+        if (!parser.parse(data, length, measurement)) {
+            return false;
+        }
+
+        int heartRate = measurement.getHeartRate();
+        boolean skinContact = measurement.isSkinContact();
+        if (skinContact) {
+            series.add(timeMillis, heartRate);
+        } else {
+            noContactReadings++;
+        }
+        for (int i = 0; i < measurement.getRrCount(); i++) {
+            series.addRrInterval(measurement.getRrIntervalMillis(i));
+        }
+
+        HeartRateAnomalyDetector.Anomaly anomaly = detector.onReading(heartRate, skinContact, receivedAtNanos);
+        if (anomaly != HeartRateAnomalyDetector.Anomaly.NONE) {
+            listener.onAnomaly(anomaly, heartRate, receivedAtNanos);
+        }
+        return true;
+    }
+
+    public HeartRateSeries getSeries() {
+        return series;
+    }
+
+    /**
+     * Human-readable summary of the stream
+     */
+    public String getSummary() {
+        return "hr=" + series.getLatestHeartRate() + "bpm"
+                + " samples=" + series.getTotalSamples()
+                + " minutes=" + series.getMinuteCount()
+                + " rmssd=" + Math.round(series.getRmssdMillis(60)) + "ms"
+                + " noContact=" + noContactReadings
+                + " rejected=" + parser.getRejectedMeasurements()
+                + " anomalies=" + detector.getReportCount()
+                + " (abandoned " + detector.getAbandonedEpisodeCount() + ")";
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.emerband.health;
+
+/**
+ * Parser for the Heart Rate Measurement characteristic (0x2A37).
+ *
+ * Layout (Bluetooth Heart Rate Service 1.0):
+ * - [0] flags: bit 0 heart rate is uint16 (else uint8), bits 1-2 sensor
+ *   contact status, bit 3 energy expended present, bit 4 RR intervals
+ *   present; bits 5-7 are reserved and zero.
+ * - heart rate, uint8 or little-endian uint16 (bpm)
+ * - energy expended, little-endian uint16 (kJ), if flagged
+ * - RR intervals, little-endian uint16 each in 1/1024 s, to the end, if flagged
+ *
+ * The watch sends its alert frames on the same characteristic. Those start
+ * with an ASCII signal code, which always has one of the reserved flag bits
+ * set, so {@link #isMeasurement} tells the two apart from the first byte.
+ * Parsing never allocates; the result is written into a caller-supplied
+ * {@link HeartRateMeasurement}. An instance is not thread-safe.
+ */
+public final class HeartRateParser {
+
+    // Flag bits
+    private static final int FLAG_HEART_RATE_UINT16 = 0x01;
+    private static final int FLAG_CONTACT_DETECTED = 0x02;
+    private static final int FLAG_CONTACT_SUPPORTED = 0x04;
+    private static final int FLAG_ENERGY_EXPENDED = 0x08;
+    private static final int FLAG_RR_INTERVALS = 0x10;
+    private static final int FLAGS_RESERVED = 0xE0;
+
+    // Shortest measurement: flags and an 8-bit heart rate
+    private static final int MIN_LENGTH = 2;
+
+    // RR intervals are sent in 1/1024 s
+    private static final int RR_UNITS_PER_SECOND = 1024;
+
+    // Counters for diagnostics
+    private long parsedMeasurements;
+    private long rejectedMeasurements;
+
+    /**
+     * Check whether a notification value is a heart rate measurement rather than an alert frame
+     * @param data Raw characteristic value
+     * @param length Number of valid bytes in {@code data}
+     */
+    public static boolean isMeasurement(byte[] data, int length) {
+        return data != null && length >= MIN_LENGTH && length <= data.length
+                && (data[0] & FLAGS_RESERVED) == 0;
+    }
+
+    /**
+     * Parse a measurement
+     *
+     * @param data Raw characteristic value
+     * @param length Number of valid bytes in {@code data}
+     * @param out Measurement to fill; it is reset before parsing
+     * @return true if a measurement was parsed, false if the data is too short for its flags
+     */
+    public boolean parse(byte[] data, int length, HeartRateMeasurement out) {
+        out.reset();
+
+        if (!isMeasurement(data, length)) {
+            rejectedMeasurements++;
+            return false;
+        }
+
+        int flags = data[0] & 0xFF;
+        int offset = 1;
+
+        if ((flags & FLAG_HEART_RATE_UINT16) != 0) {
+            if (length < offset + 2) {
+                rejectedMeasurements++;
+                return false;
+            }
+            out.setHeartRate(readUint16LE(data, offset));
+            offset += 2;
+        } else {
+            out.setHeartRate(data[offset] & 0xFF);
+            offset += 1;
+        }
+
+        out.setContact((flags & FLAG_CONTACT_SUPPORTED) != 0, (flags & FLAG_CONTACT_DETECTED) != 0);
+
+        if ((flags & FLAG_ENERGY_EXPENDED) != 0) {
+            if (length < offset + 2) {
+                rejectedMeasurements++;
+                return false;
+            }
+            out.setEnergyExpended(readUint16LE(data, offset));
+            offset += 2;
+        }
+
+        if ((flags & FLAG_RR_INTERVALS) != 0) {
+            // A trailing odd byte is not a full interval and is ignored
+            for (; offset + 2 <= length; offset += 2) {
+                int rr = readUint16LE(data, offset);
+                out.addRrIntervalMillis((rr * 1000 + RR_UNITS_PER_SECOND / 2) / RR_UNITS_PER_SECOND);
+            }
+        }
+
+        parsedMeasurements++;
+        return true;
+    }
+
+    private static int readUint16LE(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    public long getParsedMeasurements() {
+        return parsedMeasurements;
+    }
+
+    public long getRejectedMeasurements() {
+        return rejectedMeasurements;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.emerband.health;
+
+/**
+ * Heart rate time series of one wearable, in two tiers of primitive ring buffers.
+ *
+ * - Samples: every heart rate reading with its time, for the last
+ *   {@link #SAMPLE_CAPACITY} readings (about an hour at 5 Hz).
+ * - Minutes: min, max and mean per minute, downsampled as the samples
+ *   arrive, for the last {@link #MINUTE_CAPACITY} minutes (a week).
+ *
+ * RR intervals go to a third ring used for heart rate variability.
+ * Everything is preallocated, so adding a sample never allocates and the
+ * store can run all day. Readers copy into their own arrays.
+ *
+ * Thread-safe.
+ */
+public final class HeartRateSeries {
+
+    public static final int SAMPLE_CAPACITY = 18000;
+    public static final int MINUTE_CAPACITY = 7 * 24 * 60;
+    public static final int RR_CAPACITY = 4096;
+
+    private static final long MINUTE_MILLIS = 60000;
+
+    // Samples tier
+    private final long[] sampleTimes = new long[SAMPLE_CAPACITY];
+    private final short[] sampleRates = new short[SAMPLE_CAPACITY];
+    private int sampleHead;
+    private int sampleCount;
+    private long totalSamples;
+
+    // Minutes tier
+    private final long[] minuteStarts = new long[MINUTE_CAPACITY];
+    private final short[] minuteMins = new short[MINUTE_CAPACITY];
+    private final short[] minuteMaxes = new short[MINUTE_CAPACITY];
+    private final short[] minuteMeans = new short[MINUTE_CAPACITY];
+    private int minuteHead;
+    private int minuteCount;
+
+    // Minute being accumulated
+    private long openMinuteStart = -1;
+    private int openMin;
+    private int openMax;
+    private long openSum;
+    private int openCount;
+
+    // RR intervals
+    private final short[] rrIntervals = new short[RR_CAPACITY];
+    private int rrHead;
+    private int rrCount;
+
+    /**
+     * Add a heart rate reading
+     * @param timeMillis Wall-clock time of the reading (System.currentTimeMillis())
+     * @param heartRate Beats per minute
+     */
+    public synchronized void add(long timeMillis, int heartRate) {
+        int rate = Math.min(heartRate, Short.MAX_VALUE);
+
+        sampleTimes[sampleHead] = timeMillis;
+        sampleRates[sampleHead] = (short) rate;
+        sampleHead = (sampleHead + 1) % SAMPLE_CAPACITY;
+        sampleCount = Math.min(sampleCount + 1, SAMPLE_CAPACITY);
+        totalSamples++;
+
+        long minuteStart = timeMillis - Math.floorMod(timeMillis, MINUTE_MILLIS);
+        if (minuteStart != openMinuteStart) {
+            closeMinute();
+            openMinuteStart = minuteStart;
+            openMin = rate;
+            openMax = rate;
+            openSum = 0;
+            openCount = 0;
+        }
+        openMin = Math.min(openMin, rate);
+        openMax = Math.max(openMax, rate);
+        openSum += rate;
+        openCount++;
+    }
+
+    /**
+     * Add an RR interval
+     */
+    public synchronized void addRrInterval(int millis) {
+        rrIntervals[rrHead] = (short) Math.min(millis, Short.MAX_VALUE);
+        rrHead = (rrHead + 1) % RR_CAPACITY;
+        rrCount = Math.min(rrCount + 1, RR_CAPACITY);
+    }
+
+    private void closeMinute() {
+        if (openCount == 0) {
+            return;
+        }
+        minuteStarts[minuteHead] = openMinuteStart;
+        minuteMins[minuteHead] = (short) openMin;
+        minuteMaxes[minuteHead] = (short) openMax;
+        minuteMeans[minuteHead] = (short) ((openSum + openCount / 2) / openCount);
+        minuteHead = (minuteHead + 1) % MINUTE_CAPACITY;
+        minuteCount = Math.min(minuteCount + 1, MINUTE_CAPACITY);
+        openCount = 0;
+    }
+
+    /**
+     * Copy the most recent readings, oldest first
+     * @param times Receives the reading times
+     * @param rates Receives the heart rates
+     * @return Number of readings copied (at most the array length)
+     */
+    public synchronized int copyRecentSamples(long[] times, int[] rates) {
+        int count = Math.min(sampleCount, Math.min(times.length, rates.length));
+        int index = Math.floorMod(sampleHead - count, SAMPLE_CAPACITY);
+        for (int i = 0; i < count; i++) {
+            times[i] = sampleTimes[index];
+            rates[i] = sampleRates[index];
+            index = (index + 1) % SAMPLE_CAPACITY;
+        }
+        return count;
+    }
+
+    /**
+     * Copy the most recent complete minutes, oldest first
+     * @return Number of minutes copied (at most the array length)
+     */
+    public synchronized int copyRecentMinutes(long[] starts, int[] mins, int[] means, int[] maxes) {
+        int count = Math.min(minuteCount,
+                Math.min(Math.min(starts.length, mins.length), Math.min(means.length, maxes.length)));
+        int index = Math.floorMod(minuteHead - count, MINUTE_CAPACITY);
+        for (int i = 0; i < count; i++) {
+            starts[i] = minuteStarts[index];
+            mins[i] = minuteMins[index];
+            means[i] = minuteMeans[index];
+            maxes[i] = minuteMaxes[index];
+            index = (index + 1) % MINUTE_CAPACITY;
+        }
+        return count;
+    }
+
+    /**
+     * Get the latest heart rate, or 0 before the first reading
+     */
+    public synchronized int getLatestHeartRate() {
+        return sampleCount == 0 ? 0 : sampleRates[Math.floorMod(sampleHead - 1, SAMPLE_CAPACITY)];
+    }
+
+    /**
+     * Get the root mean square of successive RR differences (RMSSD) over the last intervals
+     * @param intervals Number of RR intervals to use
+     * @return RMSSD in milliseconds, or 0 with fewer than two intervals
+     */
+    public synchronized double getRmssdMillis(int intervals) {
+        int count = Math.min(intervals, rrCount);
+        if (count < 2) {
+            return 0;
+        }
+        int index = Math.floorMod(rrHead - count, RR_CAPACITY);
+        int previous = rrIntervals[index];
+        long sumSquares = 0;
+        for (int i = 1; i < count; i++) {
+            index = (index + 1) % RR_CAPACITY;
+            int diff = rrIntervals[index] - previous;
+            sumSquares += (long) diff * diff;
+            previous = rrIntervals[index];
+        }
+        return Math.sqrt((double) sumSquares / (count - 1));
+    }
+
+    public synchronized long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public synchronized int getMinuteCount() {
+        return minuteCount;
+    }
+}
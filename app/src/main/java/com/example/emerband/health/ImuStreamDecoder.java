@@ -0,0 +1,200 @@
+package com.example.emerband.health;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoder for the watch's raw accelerometer stream.
+ *
+ * The watch samples its accelerometer at a fixed rate and sends the
+ * samples in batches, one notification per batch (see EmerbandWatch.ino):
+ * - [0] packet format ({@link #FORMAT})
+ * - [1] sample period in milliseconds
+ * - [2] number of samples
+ * - [3..4] index of the first sample, uint16 LE (counts every sample taken)
+ * - then per sample x, y, z as int16 LE in milli-g
+ *
+ * The watch has no clock shared with the phone, so sample times are
+ * rebuilt from the sample index: each sample is placed at a fixed offset
+ * plus index times period. The offset follows the earliest arrival seen
+ * (the least delayed notification) and creeps forward by
+ * {@link #DRIFT_PER_MILLION} of the elapsed time so it follows the
+ * watch's clock drift. Gaps in the index are counted as lost samples and
+ * repeated samples are skipped. An index that jumps back further than one
+ * batch, or forward by more samples than the time since the last packet
+ * can hold, means the watch restarted (the 16-bit index alone cannot tell
+ * a restart from a gap).
+ *
+ * Samples go straight to a {@link SampleSink}; decoding does not allocate.
+ * Not thread-safe; feed it from one thread.
+ */
+public final class ImuStreamDecoder {
+
+    /**
+     * Receives decoded samples, oldest first
+     */
+    public interface SampleSink {
+        /**
+         * @param timestampNanos Sample time, in the System.nanoTime() base; never decreases
+         */
+        void onSample(long timestampNanos, float xG, float yG, float zG);
+    }
+
+    public static final int FORMAT = 1;
+    public static final int HEADER_LENGTH = 5;
+    public static final int BYTES_PER_SAMPLE = 6;
+
+    // Allowed drift between the watch's clock and the phone's (ppm)
+    public static final long DRIFT_PER_MILLION = 200;
+
+    private static final int FORMAT_OFFSET = 0;
+    private static final int PERIOD_OFFSET = 1;
+    private static final int COUNT_OFFSET = 2;
+    private static final int INDEX_OFFSET = 3;
+    private static final float G_PER_UNIT = 0.001f;
+
+    // Slack when checking an index gap against the time since the last packet
+    private static final long GAP_SLACK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Stream state
+    private boolean started;
+    private int periodMillis;
+    private long nextIndex;
+    private long offsetNanos;
+    private long lastReceivedAtNanos;
+    private long lastTimestampNanos = Long.MIN_VALUE;
+
+    // Counters
+    private long packets;
+    private long samples;
+    private long lostSamples;
+    private long repeatedSamples;
+    private long truncatedPackets;
+    private long rejectedPackets;
+    private long restarts;
+
+    /**
+     * Decode one notification
+     * @param data Raw characteristic value
+     * @param length Number of valid bytes in {@code data}
+     * @param receivedAtNanos System.nanoTime() when the notification arrived
+     * @param sink Receiver for the samples
+     * @return Number of new samples passed to the sink, or -1 if the packet is invalid
+     */
+    public int decode(byte[] data, int length, long receivedAtNanos, SampleSink sink) {
+        if (length < HEADER_LENGTH || data[FORMAT_OFFSET] != FORMAT) {
+            rejectedPackets++;
+            return -1;
+        }
+        int period = data[PERIOD_OFFSET] & 0xFF;
+        int count = data[COUNT_OFFSET] & 0xFF;
+        if (period == 0 || count == 0) {
+            rejectedPackets++;
+            return -1;
+        }
+        // Notifications are cut to the MTU; keep the samples that arrived whole
+        int available = (length - HEADER_LENGTH) / BYTES_PER_SAMPLE;
+        if (available < count) {
+            truncatedPackets++;
+            count = available;
+            if (count == 0) {
+                return 0;
+            }
+        }
+        packets++;
+
+        int index16 = (data[INDEX_OFFSET] & 0xFF) | (data[INDEX_OFFSET + 1] & 0xFF) << 8;
+        if (started && period != periodMillis) {
+            restarts++;
+            started = false;
+        }
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+        int skip = 0;
+        long firstIndex = index16;
+        if (started) {
+            // Signed distance to the expected index, across the uint16 wrap
+            int delta = (short) (index16 - (int) nextIndex);
+            if (delta < -count
+                    || delta * periodNanos > receivedAtNanos - lastReceivedAtNanos + GAP_SLACK_NANOS) {
+                // The watch started counting again
+                restarts++;
+                started = false;
+            } else {
+                firstIndex = nextIndex + delta;
+                if (delta < 0) {
+                    skip = -delta;
+                    repeatedSamples += skip;
+                } else {
+                    lostSamples += delta;
+                }
+            }
+        }
+
+        long lastIndex = firstIndex + count - 1;
+        // The last sample was taken just before the notification was sent
+        long candidateOffset = receivedAtNanos - lastIndex * periodNanos;
+        if (!started) {
+            started = true;
+            periodMillis = period;
+            offsetNanos = candidateOffset;
+            nextIndex = firstIndex;
+        } else {
+            long creep = (receivedAtNanos - lastReceivedAtNanos) * DRIFT_PER_MILLION / 1000000;
+            offsetNanos = Math.min(offsetNanos + Math.max(0, creep), candidateOffset);
+        }
+        lastReceivedAtNanos = receivedAtNanos;
+
+        int offset = HEADER_LENGTH + skip * BYTES_PER_SAMPLE;
+        for (int i = skip; i < count; i++) {
+            long timestamp = Math.max(offsetNanos + (firstIndex + i) * periodNanos, lastTimestampNanos + 1);
+            lastTimestampNanos = timestamp;
+            sink.onSample(timestamp,
+                    readInt16(data, offset) * G_PER_UNIT,
+                    readInt16(data, offset + 2) * G_PER_UNIT,
+                    readInt16(data, offset + 4) * G_PER_UNIT);
+            offset += BYTES_PER_SAMPLE;
+        }
+        nextIndex = Math.max(nextIndex, lastIndex + 1);
+        samples += count - skip;
+        return count - skip;
+    }
+
+    /**
+     * The stream stopped (disconnect); the next packet starts a new one
+     */
+    public void reset() {
+        started = false;
+        nextIndex = 0;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getLostSamples() {
+        return lostSamples;
+    }
+
+    public long getRepeatedSamples() {
+        return repeatedSamples;
+    }
+
+    public long getTruncatedPackets() {
+        return truncatedPackets;
+    }
+
+    public long getRejectedPackets() {
+        return rejectedPackets;
+    }
+
+    public long getRestarts() {
+        return restarts;
+    }
+
+    private static int readInt16(byte[] data, int offset) {
+        return (short) ((data[offset] & 0xFF) | data[offset + 1] << 8);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.emerband.health;
+
+import java.util.Arrays;
+
+/**
+ * Windowed motion features of an acceleration stream, updated per sample.
+ *
+ * Over the last {@code window} samples it keeps:
+ * - the signal magnitude vector (SMV): mean, peak and minimum, in g,
+ * - the peak jerk (change of acceleration), in g/s,
+ * - the orientation change: the angle between the gravity direction now
+ *   and {@code 2 * window} samples ago, with gravity taken from a low-pass
+ *   filter of the samples.
+ *
+ * Each sample costs a constant amount of work on preallocated primitive
+ * arrays, so the tracker can run on a stream for hours without allocating.
+ * Thread-safe.
+ */
+public final class MotionFeatureTracker {
+
+    // Weight of a new sample in the gravity estimate (about 0.2 s at 50 Hz)
+    private static final float GRAVITY_ALPHA = 0.1f;
+
+    private final int window;
+    private final int orientationLag;
+
+    // SMV of the window, for the mean
+    private final float[] smvRing;
+    private double smvSum;
+    private int smvHead;
+
+    private final SlidingExtremum peakSmv;
+    private final SlidingExtremum minSmv;
+    private final SlidingExtremum peakJerk;
+
+    // Gravity estimates of the last orientationLag samples
+    private final float[] gravityX;
+    private final float[] gravityY;
+    private final float[] gravityZ;
+    private int gravityHead;
+
+    private long samples;
+    private float smv;
+    private float lastX;
+    private float lastY;
+    private float lastZ;
+    private long lastTimestampNanos;
+    private float gx;
+    private float gy;
+    private float gz;
+
+    /**
+     * @param window Number of samples in the window
+     */
+    public MotionFeatureTracker(int window) {
+        this.window = window;
+        this.orientationLag = 2 * window;
+        smvRing = new float[window];
+        peakSmv = new SlidingExtremum(window, true);
+        minSmv = new SlidingExtremum(window, false);
+        peakJerk = new SlidingExtremum(window, true);
+        gravityX = new float[orientationLag];
+        gravityY = new float[orientationLag];
+        gravityZ = new float[orientationLag];
+    }
+
+    /**
+     * Add a sample
+     * @param timestampNanos Sample time; must not be before the previous sample
+     */
+    public synchronized void onSample(long timestampNanos, float xG, float yG, float zG) {
+        smv = (float) Math.sqrt(xG * xG + yG * yG + zG * zG);
+
+        // Window mean; the sum is rebuilt once per window so rounding cannot pile up
+        smvSum += smv - smvRing[smvHead];
+        smvRing[smvHead] = smv;
+        smvHead = (smvHead + 1) % window;
+        if (smvHead == 0) {
+            smvSum = 0;
+            for (float value : smvRing) {
+                smvSum += value;
+            }
+        }
+        peakSmv.add(smv);
+        minSmv.add(smv);
+
+        if (samples == 0) {
+            gx = xG;
+            gy = yG;
+            gz = zG;
+        } else {
+            long dtNanos = timestampNanos - lastTimestampNanos;
+            if (dtNanos > 0) {
+                float dx = xG - lastX;
+                float dy = yG - lastY;
+                float dz = zG - lastZ;
+                peakJerk.add((float) (Math.sqrt(dx * dx + dy * dy + dz * dz) * 1e9 / dtNanos));
+            }
+            gx += GRAVITY_ALPHA * (xG - gx);
+            gy += GRAVITY_ALPHA * (yG - gy);
+            gz += GRAVITY_ALPHA * (zG - gz);
+        }
+        gravityX[gravityHead] = gx;
+        gravityY[gravityHead] = gy;
+        gravityZ[gravityHead] = gz;
+        gravityHead = (gravityHead + 1) % orientationLag;
+
+        lastX = xG;
+        lastY = yG;
+        lastZ = zG;
+        lastTimestampNanos = timestampNanos;
+        samples++;
+    }
+
+    /**
+     * Forget the stream (after a gap in it)
+     */
+    public synchronized void reset() {
+        Arrays.fill(smvRing, 0);
+        smvSum = 0;
+        smvHead = 0;
+        peakSmv.clear();
+        minSmv.clear();
+        peakJerk.clear();
+        gravityHead = 0;
+        samples = 0;
+        smv = 0;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Get the SMV of the latest sample, in g
+     */
+    public synchronized float getSmv() {
+        return smv;
+    }
+
+    public synchronized float getMeanSmv() {
+        long n = Math.min(samples, window);
+        return n == 0 ? 0 : (float) (smvSum / n);
+    }
+
+    public synchronized float getPeakSmv() {
+        return peakSmv.get();
+    }
+
+    public synchronized float getMinSmv() {
+        return minSmv.get();
+    }
+
+    public synchronized float getPeakJerk() {
+        return peakJerk.get();
+    }
+
+    /**
+     * Get the angle between the gravity direction now and two windows ago,
+     * or 0 until two windows of samples have been seen
+     */
+    public synchronized float getOrientationChangeDegrees() {
+        if (samples < orientationLag) {
+            return 0;
+        }
+        // The next slot to be overwritten holds the oldest estimate
+        return FallClassifier.angleDegrees(gravityX[gravityHead], gravityY[gravityHead], gravityZ[gravityHead],
+                gx, gy, gz);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.emerband.health;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fall detection on a wearable's raw accelerometer stream.
+ *
+ * Stream packets are decoded by an {@link ImuStreamDecoder} straight into
+ * an {@link AccelerationBuffer}, and every sample updates a
+ * {@link MotionFeatureTracker}. A sample at or above
+ * {@link FallClassifier#IMPACT_G} starts a candidate; once the seconds
+ * after it are in the buffer, the {@link FallClassifier} decides whether
+ * it was a fall and the {@link FallListener} is told. {@link #classify}
+ * runs the same classifier over the seconds before an 'F' signal.
+ *
+ * Built for a 50 Hz stream all day: the path from the raw packet to the
+ * classifier does not allocate.
+ *
+ * Feed it from one thread (the wearable's session thread); classify() and
+ * the getters may be called from any thread.
+ */
+public final class MotionMonitor {
+
+    /**
+     * Receives falls found in the stream
+     */
+    public interface FallListener {
+        /**
+         * Called on the feeding thread; the features are reused for the next candidate
+         * @param detectedAtNanos Time of the sample that completed the decision
+         */
+        void onFall(FallFeatures features, long detectedAtNanos);
+    }
+
+    // Window classified before a signal; the watch sends 'F' about 2 s after the impact
+    public static final long WINDOW_MILLIS = 10000;
+
+    // Samples kept: 30 s at 50 Hz
+    private static final int BUFFER_CAPACITY = 1500;
+
+    // Feature window: 1 s at 50 Hz
+    private static final int FEATURE_WINDOW_SAMPLES = 50;
+
+    // A candidate is classified once the stillness after it can be measured
+    private static final long DECISION_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(2500);
+    private static final long IMPACT_LOOKBACK_NANOS = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    // A stream this far behind a signal says nothing about it
+    private static final long MAX_STREAM_LAG_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final FallListener listener;
+    private final ImuStreamDecoder decoder = new ImuStreamDecoder();
+    private final AccelerationBuffer buffer = new AccelerationBuffer(BUFFER_CAPACITY);
+    private final MotionFeatureTracker tracker = new MotionFeatureTracker(FEATURE_WINDOW_SAMPLES);
+    private final ImuStreamDecoder.SampleSink sampleSink = this::onSample;
+
+    // Candidate decisions (feeding thread)
+    private final FallClassifier streamClassifier = new FallClassifier();
+    private final FallFeatures streamFeatures = new FallFeatures();
+    private boolean impactPending;
+    private long impactNanos;
+
+    // Signal decisions (classify() is synchronized)
+    private final FallClassifier signalClassifier = new FallClassifier();
+    private final FallFeatures signalFeatures = new FallFeatures();
+
+    private volatile long lastSampleNanos;
+    private volatile long impacts;
+    private volatile long falls;
+
+    public MotionMonitor(FallListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Handle a stream notification
+     * @param data Raw characteristic value (see {@link ImuStreamDecoder})
+     * @param length Number of valid bytes in {@code data}
+     * @param receivedAtNanos System.nanoTime() of the notification
+     * @return Number of new samples, or -1 if the packet is invalid
+     */
+    public int onPacket(byte[] data, int length, long receivedAtNanos) {
+        return decoder.decode(data, length, receivedAtNanos, sampleSink);
+    }
+
+    /**
+     * The stream stopped (disconnect); samples already buffered are kept
+     */
+    public void onStreamStopped() {
+        decoder.reset();
+        tracker.reset();
+        impactPending = false;
+    }
+
+    /**
+     * Classify the seconds before a signal
+     * @param signalAtNanos System.nanoTime() when the signal arrived
+     * @return {@link FallVerdict#NO_DATA} if the stream does not cover the signal
+     */
+    public synchronized FallVerdict classify(long signalAtNanos) {
+        long last = lastSampleNanos;
+        if (last == 0 || signalAtNanos - last > MAX_STREAM_LAG_NANOS) {
+            return FallVerdict.NO_DATA;
+        }
+        signalClassifier.extract(buffer, signalAtNanos - TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS),
+                signalAtNanos, signalFeatures);
+        if (signalFeatures.getSamples() == 0) {
+            return FallVerdict.NO_DATA;
+        }
+        return signalClassifier.isFall(signalFeatures) ? FallVerdict.FALL : FallVerdict.NOT_FALL;
+    }
+
+    public AccelerationBuffer getBuffer() {
+        return buffer;
+    }
+
+    public MotionFeatureTracker getFeatures() {
+        return tracker;
+    }
+
+    /**
+     * Human-readable summary of the stream
+     */
+    public String getSummary() {
+        return "samples=" + decoder.getSamples()
+                + " packets=" + decoder.getPackets()
+                + " lost=" + decoder.getLostSamples()
+                + " repeated=" + decoder.getRepeatedSamples()
+                + " truncated=" + decoder.getTruncatedPackets()
+                + " rejected=" + decoder.getRejectedPackets()
+                + " restarts=" + decoder.getRestarts()
+                + " smv=" + tracker.getMeanSmv() + "/" + tracker.getPeakSmv() + "g"
+                + " jerk=" + tracker.getPeakJerk() + "g/s"
+                + " orientationChange=" + tracker.getOrientationChangeDegrees() + "deg"
+                + " impacts=" + impacts
+                + " falls=" + falls;
+    }
+
+    private void onSample(long timestampNanos, float xG, float yG, float zG) {
+        buffer.add(timestampNanos, xG, yG, zG);
+        tracker.onSample(timestampNanos, xG, yG, zG);
+        lastSampleNanos = timestampNanos;
+
+        if (!impactPending) {
+            if (tracker.getSmv() >= FallClassifier.IMPACT_G) {
+                impactPending = true;
+                impactNanos = timestampNanos;
+                impacts++;
+            }
+            return;
+        }
+        if (timestampNanos - impactNanos < DECISION_DELAY_NANOS) {
+            return;
+        }
+        impactPending = false;
+        streamClassifier.extract(buffer, impactNanos - IMPACT_LOOKBACK_NANOS, timestampNanos, streamFeatures);
+        if (streamClassifier.isFall(streamFeatures)) {
+            falls++;
+            listener.onFall(streamFeatures, timestampNanos);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.emerband.health;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fall detection on the phone's accelerometer, used to tell a fall from a
+ * fake call request when the watch sends 'F' (the sketch sends the same
+ * code for both).
+ *
+ * The accelerometer is sampled at 50 Hz in batch mode: the sensor hub
+ * keeps samples in its FIFO for up to {@link #MAX_REPORT_LATENCY_US}, so
+ * the application processor is not woken for every sample. It is a
+ * non-wakeup sensor, so while the phone sleeps the FIFO only keeps the
+ * latest samples and does not wake it. Sampling stays on while the service
+ * runs because the impact comes seconds before the 'F' and cannot be
+ * sampled after it. When an 'F' arrives, {@link #classify} asks for the
+ * FIFO to be flushed into an {@link AccelerationBuffer} and returns; the
+ * {@link FallClassifier} runs over the seconds before the signal once the
+ * flush completes (or {@link #FLUSH_TIMEOUT_MILLIS} passes), on the sensor
+ * thread, and the verdict is passed to a {@link Callback}.
+ *
+ * Records batches delivered (application processor wakeups for sensor
+ * data) and the CPU time spent on samples, per hour.
+ * This only sees falls while the user carries the phone.
+ */
+public class PhoneFallDetector {
+
+    private static final String TAG = "PhoneFallDetector";
+
+    // 50 Hz, below the rate that needs the high sampling rate permission
+    public static final int SAMPLING_PERIOD_US = 20000;
+
+    // Batch up to 10 s of samples in the sensor FIFO
+    public static final int MAX_REPORT_LATENCY_US = 10000000;
+
+    // Window classified before a signal; the watch sends 'F' about 2 s after the impact
+    public static final long WINDOW_MILLIS = 10000;
+
+    // Longest wait for the FIFO to be flushed
+    public static final long FLUSH_TIMEOUT_MILLIS = 1000;
+
+    // Samples kept: 30 s at 50 Hz
+    private static final int BUFFER_CAPACITY = 1500;
+
+    // Callbacks further apart than this belong to different batch deliveries
+    private static final long BATCH_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    /**
+     * Receives the verdict for one signal
+     */
+    public interface Callback {
+        /**
+         * Called once, on the sensor thread (on the calling thread if not sampling)
+         */
+        void onVerdict(FallVerdict verdict);
+    }
+
+    private final SensorManager sensorManager;
+    private final Sensor accelerometer;
+    private final AccelerationBuffer buffer = new AccelerationBuffer(BUFFER_CAPACITY);
+    private final FallClassifier classifier = new FallClassifier();
+    private final FallFeatures features = new FallFeatures();
+
+    private HandlerThread thread;
+    private Handler handler;
+
+    // Checks waiting for their flush, oldest first (sensor thread)
+    private final ArrayDeque<PendingCheck> pendingChecks = new ArrayDeque<>();
+
+    // Cost counters (sensor thread, read from others)
+    private volatile long startedAtElapsedMillis;
+    private volatile long batches;
+    private volatile long cpuNanos;
+    private long lastCallbackNanos;
+
+    // Classification counters (guarded by this)
+    private long falls;
+    private long notFalls;
+    private long noData;
+
+    private final SensorEventListener2 sensorListener = new SensorEventListener2() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            long cpuStart = Debug.threadCpuTimeNanos();
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (now - lastCallbackNanos > BATCH_GAP_NANOS) {
+                batches++;
+            }
+            lastCallbackNanos = now;
+
+            float[] values = event.values;
+            buffer.add(event.timestamp,
+                    values[0] / AccelerationBuffer.STANDARD_GRAVITY,
+                    values[1] / AccelerationBuffer.STANDARD_GRAVITY,
+                    values[2] / AccelerationBuffer.STANDARD_GRAVITY);
+            cpuNanos += Debug.threadCpuTimeNanos() - cpuStart;
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            // Accuracy does not change the rules
+        }
+
+        @Override
+        public void onFlushCompleted(Sensor sensor) {
+            // Flushes complete in the order they were requested
+            PendingCheck check = pendingChecks.poll();
+            if (check != null) {
+                check.complete();
+            }
+        }
+    };
+
+    public PhoneFallDetector(Context context) {
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        accelerometer = sensorManager != null ? sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) : null;
+    }
+
+    /**
+     * Start sampling the accelerometer
+     * @return false if the phone has no accelerometer
+     */
+    public synchronized boolean start() {
+        if (accelerometer == null) {
+            Log.w(TAG, "No accelerometer, falls cannot be confirmed on the phone");
+            return false;
+        }
+        if (thread != null) {
+            return true;
+        }
+        thread = new HandlerThread("FallSensor");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        startedAtElapsedMillis = SystemClock.elapsedRealtime();
+        boolean registered = sensorManager.registerListener(sensorListener, accelerometer,
+                SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US, handler);
+        Log.d(TAG, "Accelerometer " + (registered ? "registered" : "not registered")
+                + ", FIFO " + accelerometer.getFifoMaxEventCount() + " events");
+        return registered;
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        sensorManager.unregisterListener(sensorListener);
+        // Answer the checks still waiting with the samples already buffered
+        handler.post(() -> {
+            while (!pendingChecks.isEmpty()) {
+                pendingChecks.poll().complete();
+            }
+            buffer.clear();
+        });
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    /**
+     * Classify the seconds before a signal without blocking: the verdict is
+     * passed to the callback once the sensor FIFO has been flushed, within
+     * about {@link #FLUSH_TIMEOUT_MILLIS}
+     * @param signalAtNanos System.nanoTime() when the signal arrived
+     * @param callback Receives the verdict
+     */
+    public void classify(long signalAtNanos, Callback callback) {
+        Handler sensorHandler;
+        synchronized (this) {
+            sensorHandler = handler;
+            if (sensorHandler == null) {
+                noData++;
+            }
+        }
+        if (sensorHandler == null) {
+            callback.onVerdict(FallVerdict.NO_DATA);
+            return;
+        }
+        sensorHandler.post(() -> new PendingCheck(signalAtNanos, callback, sensorHandler).start());
+    }
+
+    /**
+     * Run the classifier over the window before a signal; sensor thread only
+     */
+    private FallVerdict classifyBuffered(long signalAtNanos) {
+        // Sensor timestamps use the elapsed realtime clock
+        long signalAtSensorNanos = signalAtNanos + SystemClock.elapsedRealtimeNanos() - System.nanoTime();
+        classifier.extract(buffer, signalAtSensorNanos - TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS),
+                signalAtSensorNanos, features);
+        Log.d(TAG, "Fall features: " + features);
+
+        FallVerdict verdict;
+        if (features.getSamples() == 0) {
+            verdict = FallVerdict.NO_DATA;
+        } else if (classifier.isFall(features)) {
+            verdict = FallVerdict.FALL;
+        } else {
+            verdict = FallVerdict.NOT_FALL;
+        }
+        synchronized (this) {
+            if (verdict == FallVerdict.FALL) {
+                falls++;
+            } else if (verdict == FallVerdict.NOT_FALL) {
+                notFalls++;
+            } else {
+                noData++;
+            }
+        }
+        return verdict;
+    }
+
+    /**
+     * Human-readable summary of classifications and sampling cost
+     */
+    public synchronized String getSummary() {
+        long hours1000 = thread == null ? 0
+                : Math.max(1, (SystemClock.elapsedRealtime() - startedAtElapsedMillis) * 1000 / 3600000);
+        return "falls=" + falls + " notFalls=" + notFalls + " noData=" + noData
+                + " samples=" + buffer.getTotalSamples()
+                + (hours1000 == 0 ? "" : " wakeups=" + batches * 1000 / hours1000 + "/h"
+                + " cpu=" + TimeUnit.NANOSECONDS.toMillis(cpuNanos) * 1000 / hours1000 + "ms/h");
+    }
+
+    /**
+     * One signal waiting for the samples still in the FIFO; sensor thread only
+     */
+    private final class PendingCheck {
+        private final long signalAtNanos;
+        private final Callback callback;
+        private final Handler sensorHandler;
+        private final Runnable timeout = this::onTimeout;
+        private boolean done;
+
+        PendingCheck(long signalAtNanos, Callback callback, Handler sensorHandler) {
+            this.signalAtNanos = signalAtNanos;
+            this.callback = callback;
+            this.sensorHandler = sensorHandler;
+        }
+
+        void start() {
+            if (!sensorManager.flush(sensorListener)) {
+                // Nothing to wait for (e.g. the listener was just unregistered)
+                complete();
+                return;
+            }
+            pendingChecks.add(this);
+            sensorHandler.postDelayed(timeout, FLUSH_TIMEOUT_MILLIS);
+        }
+
+        private void onTimeout() {
+            if (!done) {
+                Log.w(TAG, "Sensor flush timed out");
+                pendingChecks.remove(this);
+                complete();
+            }
+        }
+
+        void complete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            sensorHandler.removeCallbacks(timeout);
+            callback.onVerdict(classifyBuffered(signalAtNanos));
+        }
+    }
+}
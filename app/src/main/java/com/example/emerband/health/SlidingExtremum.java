@@ -0,0 +1,65 @@
+package com.example.emerband.health;
+
+/**
+ * Maximum (or minimum) of the last N values of a stream, in amortized
+ * constant time per value (monotonic queue on primitive arrays).
+ */
+final class SlidingExtremum {
+
+    private final int window;
+    private final boolean maximum;
+    private final long[] positions;
+    private final float[] values;
+    private int first;
+    private int size;
+    private long position;
+
+    /**
+     * @param window Number of values covered
+     * @param maximum true to track the maximum, false for the minimum
+     */
+    SlidingExtremum(int window, boolean maximum) {
+        this.window = window;
+        this.maximum = maximum;
+        positions = new long[window];
+        values = new float[window];
+    }
+
+    void add(float value) {
+        // Drop the front once it leaves the window (makes room for the new value)
+        if (size > 0 && positions[first] <= position - window) {
+            first = (first + 1) % window;
+            size--;
+        }
+        // Values the new one dominates can never be the extremum again
+        while (size > 0 && !dominates(values[slot(size - 1)], value)) {
+            size--;
+        }
+        int slot = slot(size);
+        positions[slot] = position;
+        values[slot] = value;
+        size++;
+        position++;
+    }
+
+    /**
+     * Get the extremum of the window, or 0 before the first value
+     */
+    float get() {
+        return size > 0 ? values[first] : 0;
+    }
+
+    void clear() {
+        first = 0;
+        size = 0;
+        position = 0;
+    }
+
+    private boolean dominates(float kept, float value) {
+        return maximum ? kept > value : kept < value;
+    }
+
+    private int slot(int index) {
+        return (first + index) % window;
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.emerband.location;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.example.emerband.utils.ConnectivityUtils;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a recent position fix at hand so an alert does not have to wait
+ * for one.
+ *
+ * While protection is on (the BLE service runs) the fused provider is
+ * asked for fixes at balanced power (Wi-Fi and cell, GPS only when
+ * another app already has it running) at the interval chosen by a
+ * {@link LocationUpdatePolicy}: short while the user moves, backing off
+ * while they are still. The significant motion sensor, a wake-up sensor
+ * handled in the sensor hub, brings the short interval back as soon as
+ * the user moves again.
+ *
+ * {@link #getFresh()} is a single volatile read. Other sources (the watch,
+ * one-off requests) can {@link #offer} fixes; the cache keeps whichever
+ * fix locates the user best now (see {@link LocationFix#isBetterThan}).
+ */
+public class LocationCache {
+    private static final String TAG = "LocationCache";
+
+    // Fixes other apps request are taken up to this often, at no cost to us
+    private static final long PASSIVE_MIN_INTERVAL_MS = 5000;
+
+    // A fix counts as fresh until this much past the time the next one was due
+    private static final long FRESH_GRACE_MS = 15000;
+
+    private static LocationCache instance;
+
+    private final Context context;
+    private final FusedLocationProviderClient fusedClient;
+    private final SensorManager sensorManager;
+    private final Sensor significantMotion;
+    private final LocationUpdatePolicy policy = new LocationUpdatePolicy();
+
+    private HandlerThread thread;
+    private Handler handler;
+    private boolean motionTriggerArmed;
+
+    private volatile LocationFix latest;
+    private volatile long intervalMillis = LocationUpdatePolicy.MOVING_INTERVAL_MS;
+    private volatile boolean running;
+
+    // Totals since start
+    private final AtomicLong fixes = new AtomicLong();
+    private final AtomicLong intervalChanges = new AtomicLong();
+    private final AtomicLong motionTriggers = new AtomicLong();
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong freshMisses = new AtomicLong();
+
+    private final LocationCallback fusedCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            for (Location location : result.getLocations()) {
+                onFusedFix(toFix(LocationFix.SOURCE_FUSED, location));
+            }
+        }
+    };
+
+    private final TriggerEventListener motionListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            // One-shot sensor: it is disarmed once it fires
+            Handler current = handler;
+            if (current != null) {
+                current.post(LocationCache.this::onMotion);
+            }
+        }
+    };
+
+    private LocationCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.fusedClient = LocationServices.getFusedLocationProviderClient(this.context);
+        this.sensorManager = (SensorManager) this.context.getSystemService(Context.SENSOR_SERVICE);
+        this.significantMotion = sensorManager != null
+                ? sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION) : null;
+    }
+
+    /**
+     * Get the singleton instance of LocationCache
+     */
+    public static synchronized LocationCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocationCache(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Start keeping the cache warm
+     * @return false without location permission
+     */
+    public synchronized boolean start() {
+        if (thread != null) {
+            return true;
+        }
+        if (!hasLocationPermission(context)) {
+            Log.w(TAG, "No location permission, location cache not started");
+            return false;
+        }
+        thread = new HandlerThread("LocationCache");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        running = true;
+        handler.post(() -> {
+            policy.reset();
+            motionTriggerArmed = false;
+            requestUpdates();
+            seedFromLastLocation();
+        });
+        return true;
+    }
+
+    /**
+     * Stop the updates; the last fix stays available until it ages out
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        fusedClient.removeLocationUpdates(fusedCallback);
+        if (significantMotion != null) {
+            sensorManager.cancelTriggerSensor(motionListener, significantMotion);
+        }
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    /**
+     * Get the fix that locates the user best, however old
+     * @return Fix, or null if none was ever received
+     */
+    public LocationFix getLatest() {
+        return latest;
+    }
+
+    /**
+     * Get the cached fix if it is still as recent as the update schedule
+     * promises; no provider is asked
+     * @return Fix, or null if the cache is cold or stale
+     */
+    public LocationFix getFresh() {
+        LocationFix fix = latest;
+        boolean fresh = fix != null && running
+                && fix.getAgeMillis(SystemClock.elapsedRealtimeNanos()) <= intervalMillis + FRESH_GRACE_MS;
+        (fresh ? freshHits : freshMisses).incrementAndGet();
+        return fresh ? fix : null;
+    }
+
+    /**
+     * Get the best fix as a Location: the cached one if any, otherwise the
+     * platform's last known location
+     * @return Location, or null if none is known
+     */
+    public Location getBestLocation() {
+        LocationFix fix = getBestAvailable(null);
+        return fix != null ? toLocation(fix) : null;
+    }
+
+    /**
+     * Get the best fix known right now, without asking any provider: the
+     * cached fix or the given one, whichever is better, otherwise the
+     * platform's last known location
+     * @param candidate Fix from another source (e.g. the watch), or null
+     * @return Fix, or null if none is known
+     */
+    public LocationFix getBestAvailable(LocationFix candidate) {
+        LocationFix fix = latest;
+        if (candidate != null && candidate.isBetterThan(fix, SystemClock.elapsedRealtimeNanos())) {
+            fix = candidate;
+        }
+        if (fix != null) {
+            return fix;
+        }
+        Location location = ConnectivityUtils.getLastKnownLocation(context);
+        return location != null ? toFix(location.getProvider(), location) : null;
+    }
+
+    /**
+     * Offer a fix from another source
+     * @return Whether it replaced the cached fix
+     */
+    public synchronized boolean offer(LocationFix fix) {
+        if (!fix.isBetterThan(latest, SystemClock.elapsedRealtimeNanos())) {
+            return false;
+        }
+        latest = fix;
+        return true;
+    }
+
+    /**
+     * Human-readable state and counters
+     */
+    public String getSummary() {
+        LocationFix fix = latest;
+        String age = fix != null ? fix.getAgeMillis(SystemClock.elapsedRealtimeNanos()) / 1000 + "s old" : "none";
+        return (running ? "running" : "stopped")
+                + " interval=" + intervalMillis / 1000 + "s"
+                + " fixes=" + fixes.get()
+                + " intervalChanges=" + intervalChanges.get()
+                + " motionTriggers=" + motionTriggers.get()
+                + " freshHits=" + freshHits.get()
+                + " freshMisses=" + freshMisses.get()
+                + "\nlast: " + (fix != null ? fix + ", " + age : age);
+    }
+
+    /**
+     * Convert a platform location, tagging it with its source
+     */
+    public static LocationFix toFix(String source, Location location) {
+        long elapsedNanos = location.getElapsedRealtimeNanos();
+        if (elapsedNanos == 0) {
+            // Built by hand (e.g. from watch coordinates): derive it from the wall clock time
+            long ageMillis = Math.max(0, System.currentTimeMillis() - location.getTime());
+            elapsedNanos = SystemClock.elapsedRealtimeNanos() - ageMillis * 1000000L;
+        }
+        return new LocationFix(source, location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : 0,
+                location.hasSpeed() ? location.getSpeed() : -1,
+                location.getTime(), elapsedNanos);
+    }
+
+    /**
+     * Convert a fix back to a platform location
+     */
+    public static Location toLocation(LocationFix fix) {
+        Location location = new Location(fix.getSource());
+        location.setLatitude(fix.getLatitude());
+        location.setLongitude(fix.getLongitude());
+        if (fix.hasAccuracy()) {
+            location.setAccuracy(fix.getAccuracyMeters());
+        }
+        if (fix.hasSpeed()) {
+            location.setSpeed(fix.getSpeedMetersPerSecond());
+        }
+        location.setTime(fix.getTimeMillis());
+        location.setElapsedRealtimeNanos(fix.getElapsedRealtimeNanos());
+        return location;
+    }
+
+    static boolean hasLocationPermission(Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private void onFusedFix(LocationFix fix) {
+        fixes.incrementAndGet();
+        offer(fix);
+        if (policy.onFix(fix)) {
+            onIntervalChanged();
+        }
+    }
+
+    private void onMotion() {
+        motionTriggerArmed = false;
+        motionTriggers.incrementAndGet();
+        if (policy.onMotion()) {
+            onIntervalChanged();
+        }
+    }
+
+    private void onIntervalChanged() {
+        intervalChanges.incrementAndGet();
+        if (running) {
+            Log.d(TAG, "Location interval " + policy.getIntervalMillis() / 1000 + "s");
+            requestUpdates();
+        }
+    }
+
+    /**
+     * (Re)request fused updates at the policy's interval; on the cache thread
+     */
+    private void requestUpdates() {
+        intervalMillis = policy.getIntervalMillis();
+        LocationRequest request = new LocationRequest.Builder(Priority.PRIORITY_BALANCED_POWER_ACCURACY, intervalMillis)
+                .setMinUpdateIntervalMillis(Math.min(PASSIVE_MIN_INTERVAL_MS, intervalMillis))
+                .build();
+        try {
+            // Replaces the previous request made with the same callback
+            fusedClient.requestLocationUpdates(request, fusedCallback, Looper.myLooper());
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission revoked", e);
+            return;
+        }
+
+        // While the user is still, wait for the significant motion sensor to say otherwise
+        if (!policy.isMoving() && significantMotion != null && !motionTriggerArmed) {
+            motionTriggerArmed = sensorManager.requestTriggerSensor(motionListener, significantMotion);
+        }
+    }
+
+    private void seedFromLastLocation() {
+        try {
+            fusedClient.getLastLocation().addOnSuccessListener(location -> {
+                if (location != null) {
+                    offer(toFix(LocationFix.SOURCE_FUSED, location));
+                }
+            });
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission revoked", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.emerband.location;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One position fix with where it came from, how accurate it was and when
+ * it was taken.
+ *
+ * Ages are measured on the elapsed realtime clock
+ * (SystemClock.elapsedRealtimeNanos()), which keeps counting in deep sleep
+ * and is not moved by clock changes. Fixes are compared by their
+ * effective accuracy: the reported accuracy grown by how far the user may
+ * have walked since, so a fresh coarse fix can beat an old precise one.
+ */
+public final class LocationFix {
+
+    public static final String SOURCE_FUSED = "fused";
+    public static final String SOURCE_GPS = "gps";
+    public static final String SOURCE_NETWORK = "network";
+    public static final String SOURCE_WATCH = "watch";
+    public static final String SOURCE_CACHE = "cache";
+
+    // Assumed when the source gives no accuracy (the watch sends bare coordinates)
+    public static final float UNKNOWN_ACCURACY_METERS = 100;
+
+    // Brisk walking pace; how fast the uncertainty of an old fix grows
+    public static final float DRIFT_METERS_PER_SECOND = 1.5f;
+
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private final String source;
+    private final double latitude;
+    private final double longitude;
+    private final float accuracyMeters;
+    private final float speedMetersPerSecond;
+    private final long timeMillis;
+    private final long elapsedRealtimeNanos;
+
+    /**
+     * @param accuracyMeters Horizontal accuracy (68%), or 0 if unknown
+     * @param speedMetersPerSecond Ground speed, or a negative value if unknown
+     * @param timeMillis Wall clock time of the fix
+     * @param elapsedRealtimeNanos Elapsed realtime of the fix
+     */
+    public LocationFix(String source, double latitude, double longitude, float accuracyMeters,
+                       float speedMetersPerSecond, long timeMillis, long elapsedRealtimeNanos) {
+        this.source = source;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyMeters = accuracyMeters;
+        this.speedMetersPerSecond = speedMetersPerSecond;
+        this.timeMillis = timeMillis;
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public boolean hasAccuracy() {
+        return accuracyMeters > 0;
+    }
+
+    /**
+     * Get the reported accuracy, or {@link #UNKNOWN_ACCURACY_METERS} if none
+     */
+    public float getAccuracyMeters() {
+        return hasAccuracy() ? accuracyMeters : UNKNOWN_ACCURACY_METERS;
+    }
+
+    public boolean hasSpeed() {
+        return speedMetersPerSecond >= 0;
+    }
+
+    public float getSpeedMetersPerSecond() {
+        return speedMetersPerSecond;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getElapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    /**
+     * Get the same fix credited to another source
+     */
+    public LocationFix withSource(String newSource) {
+        return new LocationFix(newSource, latitude, longitude, accuracyMeters, speedMetersPerSecond,
+                timeMillis, elapsedRealtimeNanos);
+    }
+
+    /**
+     * Get the age of the fix
+     * @param nowElapsedNanos Current elapsed realtime
+     */
+    public long getAgeMillis(long nowElapsedNanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(nowElapsedNanos - elapsedRealtimeNanos));
+    }
+
+    /**
+     * Get the accuracy grown by the distance the user may have moved since the fix
+     * @param nowElapsedNanos Current elapsed realtime
+     */
+    public float getEffectiveAccuracyMeters(long nowElapsedNanos) {
+        return getAccuracyMeters() + getAgeMillis(nowElapsedNanos) / 1000f * DRIFT_METERS_PER_SECOND;
+    }
+
+    /**
+     * Whether this fix locates the user better than another one now
+     * @param other Fix to compare with, may be null
+     */
+    public boolean isBetterThan(LocationFix other, long nowElapsedNanos) {
+        return other == null
+                || getEffectiveAccuracyMeters(nowElapsedNanos) < other.getEffectiveAccuracyMeters(nowElapsedNanos);
+    }
+
+    /**
+     * Get the great-circle distance to another fix
+     */
+    public float distanceTo(LocationFix other) {
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.toRadians(other.latitude);
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(other.longitude - longitude) / 2);
+        double h = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+        return (float) (2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h))));
+    }
+
+    @Override
+    public String toString() {
+        return source + " " + latitude + "," + longitude
+                + " +-" + (hasAccuracy() ? Math.round(accuracyMeters) + "m" : "?");
+    }
+}
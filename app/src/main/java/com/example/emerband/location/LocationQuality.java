@@ -0,0 +1,78 @@
+package com.example.emerband.location;
+
+/**
+ * How good a fix is, for the people reading an alert and for deciding
+ * whether a later fix is worth another SMS.
+ *
+ * The label says how far off the position may be and, past a minute, how
+ * old it is: " (within 15 m)", " (within 40 m, 5 min old)". It is plain
+ * ASCII so it never changes the SMS encoding.
+ */
+public final class LocationQuality {
+
+    // A later fix must at least halve the uncertainty...
+    private static final float MIN_IMPROVEMENT_RATIO = 0.5f;
+
+    // ...and narrow it by this much to be worth a follow-up
+    private static final float MIN_IMPROVEMENT_METERS = 20;
+
+    private static final long MILLIS_PER_MINUTE = 60000;
+    private static final long MINUTES_PER_HOUR = 60;
+
+    private LocationQuality() {
+    }
+
+    /**
+     * Append the label of a fix, with a leading space; nothing for a fresh
+     * fix of unknown accuracy
+     * @param accuracyMeters Reported accuracy, or 0 if unknown
+     * @param ageMillis Age of the fix
+     */
+    public static void appendLabel(StringBuilder out, float accuracyMeters, long ageMillis) {
+        boolean old = ageMillis >= MILLIS_PER_MINUTE;
+        if (accuracyMeters <= 0 && !old) {
+            return;
+        }
+        out.append(" (");
+        if (accuracyMeters > 0) {
+            out.append("within ").append(Math.max(1, Math.round(accuracyMeters))).append(" m");
+            if (old) {
+                out.append(", ");
+            }
+        }
+        if (old) {
+            long minutes = ageMillis / MILLIS_PER_MINUTE;
+            if (minutes < 2 * MINUTES_PER_HOUR) {
+                out.append(minutes).append(" min old");
+            } else {
+                out.append(minutes / MINUTES_PER_HOUR).append(" h old");
+            }
+        }
+        out.append(')');
+    }
+
+    /**
+     * Whether a new fix is enough better than the one already sent to send
+     * it too: none was sent, the uncertainty at least halved (and by
+     * {@link #MIN_IMPROVEMENT_METERS}), or the user is clearly elsewhere
+     * @param candidate New fix
+     * @param sent Fix in the alert, or null if it had none
+     */
+    public static boolean isSignificantlyBetter(LocationFix candidate, LocationFix sent, long nowElapsedNanos) {
+        if (candidate == null) {
+            return false;
+        }
+        if (sent == null) {
+            return true;
+        }
+        float candidateMeters = candidate.getEffectiveAccuracyMeters(nowElapsedNanos);
+        float sentMeters = sent.getEffectiveAccuracyMeters(nowElapsedNanos);
+        if (candidateMeters <= sentMeters * MIN_IMPROVEMENT_RATIO
+                && sentMeters - candidateMeters >= MIN_IMPROVEMENT_METERS) {
+            return true;
+        }
+        // Both fixes cannot be right about where the user is
+        return candidateMeters < sentMeters
+                && candidate.distanceTo(sent) > candidate.getAccuracyMeters() + sent.getAccuracyMeters();
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.emerband.location;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import com.google.android.gms.tasks.CancellationTokenSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets a position fix for an alert within a hard deadline.
+ *
+ * A fresh fix from the {@link LocationCache} is returned at once.
+ * Otherwise GPS, the network provider and the fused provider are asked at
+ * the same time, next to the coordinates from the watch and the cache's
+ * older fix. The race ends as soon as a fix is good enough
+ * ({@link #GOOD_ENOUGH_METERS} effective accuracy), every provider has
+ * answered, or the deadline passes; the best fix so far wins (see
+ * {@link LocationFix#isBetterThan}) and the providers still running are
+ * cancelled. Each provider gives one fix.
+ *
+ * {@link #refine} races the same way for a fix better than one already
+ * sent, so it never takes the fresh-cache shortcut.
+ *
+ * Outcomes are counted in a {@link LocationRaceStats}. Races run on one
+ * background thread.
+ */
+public class LocationRace {
+    private static final String TAG = "LocationRace";
+
+    // Longest an alert waits for its location
+    public static final long DEFAULT_DEADLINE_MS = 3000;
+
+    // A fix this accurate (age included) ends the race
+    public static final float GOOD_ENOUGH_METERS = 30;
+
+    /**
+     * Receives the outcome of a race
+     */
+    public interface Listener {
+        /**
+         * Called once, on the race thread
+         * @param fix Best fix, or null if none was found in time
+         */
+        void onResult(LocationFix fix);
+    }
+
+    private static LocationRace instance;
+
+    private final Context context;
+    private final LocationManager locationManager;
+    private final FusedLocationProviderClient fusedClient;
+    private final Handler handler;
+    private final LocationRaceStats stats = new LocationRaceStats();
+
+    private LocationRace(Context context) {
+        this.context = context.getApplicationContext();
+        this.locationManager = (LocationManager) this.context.getSystemService(Context.LOCATION_SERVICE);
+        this.fusedClient = LocationServices.getFusedLocationProviderClient(this.context);
+        HandlerThread thread = new HandlerThread("LocationRace");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Get the singleton instance of LocationRace
+     */
+    public static synchronized LocationRace getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocationRace(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Get a fix, racing the providers if the cache has no fresh one
+     * @param watchFix Coordinates sent by the watch, or null
+     * @param deadlineMillis Longest time to race
+     * @param listener Receives the result
+     */
+    public void acquire(LocationFix watchFix, long deadlineMillis, Listener listener) {
+        LocationCache cache = LocationCache.getInstance(context);
+        LocationFix fresh = cache.getFresh();
+        if (fresh != null && fresh.isBetterThan(watchFix, SystemClock.elapsedRealtimeNanos())) {
+            stats.onCacheHit();
+            handler.post(() -> listener.onResult(fresh));
+            return;
+        }
+        LocationFix cached = cache.getLatest();
+        handler.post(() -> new Race(null, deadlineMillis, listener).start(watchFix, cached));
+    }
+
+    /**
+     * Race the providers for a fix better than the given one; the cache
+     * only takes part with a fix that beats it
+     * @param sentFix Fix to improve on, or null
+     * @param deadlineMillis Longest time to race
+     * @param listener Receives the result, null unless a better fix was found
+     */
+    public void refine(LocationFix sentFix, long deadlineMillis, Listener listener) {
+        LocationFix cached = LocationCache.getInstance(context).getLatest();
+        handler.post(() -> new Race(sentFix, deadlineMillis, listener).start(null, cached));
+    }
+
+    /**
+     * Human-readable race counters
+     */
+    public String getSummary() {
+        return stats.getSummary();
+    }
+
+    /**
+     * One race; all methods run on the race thread
+     */
+    private final class Race {
+        private final LocationFix baseline;
+        private final long deadlineMillis;
+        private final Listener listener;
+        private final long startedAtNanos = SystemClock.elapsedRealtimeNanos();
+        private final List<String> raced = new ArrayList<>();
+        private final List<ProviderListener> providerListeners = new ArrayList<>();
+        private final Runnable deadline = () -> finish(false);
+        private CancellationTokenSource fusedCancellation;
+        private int pending;
+        private LocationFix best;
+        private boolean finished;
+
+        Race(LocationFix baseline, long deadlineMillis, Listener listener) {
+            this.baseline = baseline;
+            this.deadlineMillis = deadlineMillis;
+            this.listener = listener;
+            // Only fixes better than the baseline count
+            this.best = baseline;
+        }
+
+        void start(LocationFix watchFix, LocationFix cached) {
+            if (watchFix != null) {
+                raced.add(LocationFix.SOURCE_WATCH);
+                offer(watchFix);
+            }
+            if (cached != null) {
+                raced.add(LocationFix.SOURCE_CACHE);
+                offer(cached.withSource(LocationFix.SOURCE_CACHE));
+            }
+            if (!finished && LocationCache.hasLocationPermission(context)) {
+                startProvider(LocationManager.GPS_PROVIDER, LocationFix.SOURCE_GPS);
+                startProvider(LocationManager.NETWORK_PROVIDER, LocationFix.SOURCE_NETWORK);
+                startFused();
+            }
+            if (finished) {
+                return;
+            }
+            if (pending == 0) {
+                // Nothing to wait for
+                finish(true);
+                return;
+            }
+            handler.postDelayed(deadline, deadlineMillis);
+        }
+
+        private void startProvider(String provider, String source) {
+            if (locationManager == null || !locationManager.isProviderEnabled(provider)) {
+                return;
+            }
+            ProviderListener providerListener = new ProviderListener(this, source);
+            try {
+                locationManager.requestLocationUpdates(provider, 0, 0, providerListener, handler.getLooper());
+            } catch (SecurityException | IllegalArgumentException e) {
+                Log.e(TAG, "Could not start " + provider, e);
+                return;
+            }
+            providerListeners.add(providerListener);
+            raced.add(source);
+            pending++;
+        }
+
+        private void startFused() {
+            fusedCancellation = new CancellationTokenSource();
+            try {
+                fusedClient.getCurrentLocation(Priority.PRIORITY_HIGH_ACCURACY, fusedCancellation.getToken())
+                        .addOnCompleteListener(handler::post, task -> {
+                            Location location = task.isSuccessful() ? task.getResult() : null;
+                            onProviderResult(location != null
+                                    ? LocationCache.toFix(LocationFix.SOURCE_FUSED, location) : null);
+                        });
+            } catch (SecurityException e) {
+                Log.e(TAG, "Could not start the fused provider", e);
+                return;
+            }
+            raced.add(LocationFix.SOURCE_FUSED);
+            pending++;
+        }
+
+        /**
+         * A provider gave its fix, or gave up (null)
+         */
+        void onProviderResult(LocationFix fix) {
+            if (finished) {
+                return;
+            }
+            pending--;
+            if (fix != null) {
+                offer(fix);
+            }
+            if (!finished && pending == 0) {
+                finish(true);
+            }
+        }
+
+        private void offer(LocationFix fix) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (fix.isBetterThan(best, now)) {
+                best = fix;
+            }
+            if (best != baseline && best.getEffectiveAccuracyMeters(now) <= GOOD_ENOUGH_METERS) {
+                finish(true);
+            }
+        }
+
+        private void finish(boolean beforeDeadline) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            handler.removeCallbacks(deadline);
+            for (ProviderListener providerListener : providerListeners) {
+                locationManager.removeUpdates(providerListener);
+            }
+            if (fusedCancellation != null) {
+                fusedCancellation.cancel();
+            }
+
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(SystemClock.elapsedRealtimeNanos() - startedAtNanos);
+            LocationFix result = best != baseline ? best : null;
+            String winner = result != null ? result.getSource() : null;
+            stats.onRace(raced, winner, beforeDeadline, elapsedMillis);
+            Log.d(TAG, "Location race " + (beforeDeadline ? "ended" : "cut off") + " after " + elapsedMillis
+                    + "ms, " + raced + " -> " + (result != null ? result : "no fix"));
+
+            if (result != null && !LocationFix.SOURCE_CACHE.equals(winner)) {
+                LocationCache.getInstance(context).offer(result);
+            }
+            listener.onResult(result);
+        }
+    }
+
+    /**
+     * Takes the first fix of one platform provider
+     */
+    private static final class ProviderListener implements LocationListener {
+        private final Race race;
+        private final String source;
+        private boolean done;
+
+        ProviderListener(Race race, String source) {
+            this.race = race;
+            this.source = source;
+        }
+
+        @Override
+        public void onLocationChanged(Location location) {
+            if (!done) {
+                done = true;
+                race.onProviderResult(LocationCache.toFix(source, location));
+            }
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {}
+
+        @Override
+        public void onProviderEnabled(String provider) {}
+
+        @Override
+        public void onProviderDisabled(String provider) {
+            if (!done) {
+                done = true;
+                race.onProviderResult(null);
+            }
+        }
+    }
+}
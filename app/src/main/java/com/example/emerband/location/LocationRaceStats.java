@@ -0,0 +1,103 @@
+package com.example.emerband.location;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts how location races end: answered from the cache, finished with a
+ * good fix before the deadline (hit), cut off by the deadline (miss), or
+ * without any fix; and for each source how often it was raced and won.
+ *
+ * Thread-safe.
+ */
+public final class LocationRaceStats {
+
+    private long cacheHits;
+    private long races;
+    private long deadlineHits;
+    private long deadlineMisses;
+    private long noFix;
+    private long maxElapsedMillis;
+
+    // Source -> {raced, won}
+    private final Map<String, long[]> sources = new TreeMap<>();
+
+    /**
+     * A fresh cached fix answered without a race
+     */
+    public synchronized void onCacheHit() {
+        cacheHits++;
+    }
+
+    /**
+     * A race ended
+     * @param raced Sources that took part
+     * @param winner Source of the fix returned, or null if none
+     * @param beforeDeadline Whether it ended before the deadline
+     * @param elapsedMillis Time from start to end
+     */
+    public synchronized void onRace(Collection<String> raced, String winner, boolean beforeDeadline,
+                                    long elapsedMillis) {
+        races++;
+        if (beforeDeadline) {
+            deadlineHits++;
+        } else {
+            deadlineMisses++;
+        }
+        if (winner == null) {
+            noFix++;
+        }
+        maxElapsedMillis = Math.max(maxElapsedMillis, elapsedMillis);
+        for (String source : raced) {
+            counts(source)[0]++;
+        }
+        if (winner != null) {
+            counts(winner)[1]++;
+        }
+    }
+
+    /**
+     * Get the share of races a source won, out of those it took part in
+     */
+    public synchronized float getWinRate(String source) {
+        long[] counts = sources.get(source);
+        return counts == null || counts[0] == 0 ? 0 : (float) counts[1] / counts[0];
+    }
+
+    public synchronized long getDeadlineHits() {
+        return deadlineHits;
+    }
+
+    public synchronized long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    /**
+     * Human-readable counters and win rates
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("cacheHits=").append(cacheHits)
+                .append(" races=").append(races)
+                .append(" deadlineHits=").append(deadlineHits)
+                .append(" deadlineMisses=").append(deadlineMisses)
+                .append(" noFix=").append(noFix)
+                .append(" maxElapsed=").append(maxElapsedMillis).append("ms");
+        for (Map.Entry<String, long[]> entry : sources.entrySet()) {
+            long[] counts = entry.getValue();
+            sb.append("\n").append(entry.getKey()).append(": won ").append(counts[1])
+                    .append("/").append(counts[0]);
+        }
+        return sb.toString();
+    }
+
+    private long[] counts(String source) {
+        long[] counts = sources.get(source);
+        if (counts == null) {
+            counts = new long[2];
+            sources.put(source, counts);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.emerband.location;
+
+/**
+ * Chooses how often the location cache asks for a fix, from how the user
+ * is moving.
+ *
+ * While the user moves, a fix is asked for every
+ * {@link #MOVING_INTERVAL_MS}. Each fix that shows no movement doubles the
+ * interval, from {@link #STILL_INTERVAL_MS} up to
+ * {@link #MAX_STILL_INTERVAL_MS}: a user sitting still does not need
+ * fresh fixes to be found. Movement is a reported speed of at least
+ * {@link #MOVING_SPEED_MPS}, or a jump larger than both fixes' accuracy.
+ * A motion trigger (e.g. the significant motion sensor) goes straight
+ * back to the moving interval.
+ *
+ * Not thread-safe; call from the cache's thread.
+ */
+public final class LocationUpdatePolicy {
+
+    public static final long MOVING_INTERVAL_MS = 15000;
+    public static final long STILL_INTERVAL_MS = 60000;
+    public static final long MAX_STILL_INTERVAL_MS = 300000;
+
+    // Slow walking pace
+    public static final float MOVING_SPEED_MPS = 0.7f;
+
+    // Smallest jump taken as movement, whatever the accuracies claim
+    private static final float MIN_MOVE_METERS = 25;
+
+    private long intervalMillis = MOVING_INTERVAL_MS;
+    private LocationFix lastFix;
+
+    /**
+     * Get the interval to request fixes at
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public boolean isMoving() {
+        return intervalMillis == MOVING_INTERVAL_MS;
+    }
+
+    /**
+     * Take a new fix into account
+     * @return Whether the interval changed
+     */
+    public boolean onFix(LocationFix fix) {
+        LocationFix previous = lastFix;
+        lastFix = fix;
+        if (previous == null) {
+            return false;
+        }
+        long next;
+        if (hasMoved(previous, fix)) {
+            next = MOVING_INTERVAL_MS;
+        } else if (intervalMillis < STILL_INTERVAL_MS) {
+            next = STILL_INTERVAL_MS;
+        } else {
+            next = Math.min(intervalMillis * 2, MAX_STILL_INTERVAL_MS);
+        }
+        return setInterval(next);
+    }
+
+    /**
+     * The user started moving
+     * @return Whether the interval changed
+     */
+    public boolean onMotion() {
+        return setInterval(MOVING_INTERVAL_MS);
+    }
+
+    /**
+     * Start over, e.g. after the updates were stopped
+     */
+    public void reset() {
+        intervalMillis = MOVING_INTERVAL_MS;
+        lastFix = null;
+    }
+
+    private static boolean hasMoved(LocationFix previous, LocationFix fix) {
+        if (fix.hasSpeed() && fix.getSpeedMetersPerSecond() >= MOVING_SPEED_MPS) {
+            return true;
+        }
+        float noise = Math.max(MIN_MOVE_METERS, previous.getAccuracyMeters() + fix.getAccuracyMeters());
+        return previous.distanceTo(fix) > noise;
+    }
+
+    private boolean setInterval(long next) {
+        if (next == intervalMillis) {
+            return false;
+        }
+        intervalMillis = next;
+        return true;
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.emerband.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of alerts, from the BLE notification to the SMS and
+ * call leaving the phone.
+ *
+ * Every stage is measured from the moment the watch notification arrived
+ * (System.nanoTime() in the notification callback) and recorded in a
+ * {@link LatencyHistogram} per signal type and stage. All histograms are
+ * created up front.
+ *
+ * The decode stage is recorded directly by the BLE session. The later
+ * stages run on one dispatcher thread per signal, in code that does not
+ * know about the signal (offline manager, EmergencyHandler), so that
+ * thread opens a trace with {@link #begin} and the stages call
+ * {@link #mark}. Each stage is recorded once per trace, so the SMS stage
+ * measures the first message handed to the radio.
+ *
+ * The time to the first SMS for an emergency is checked against
+ * {@link #FIRST_SMS_SLO_MILLIS}; breaches are counted for the report.
+ */
+public final class AlertLatencyTracker {
+
+    /**
+     * Stages of the alert path, in order
+     */
+    public enum Stage {
+        DECODED,
+        DISPATCHED,
+        LOCATION_RESOLVED,
+        MESSAGE_BUILT,
+        SMS_SENT,
+        CALL_STARTED
+    }
+
+    // Target time from an emergency notification to the first SMS handed to the radio
+    public static final long FIRST_SMS_SLO_MILLIS = 3000;
+
+    // Signal types with their own histograms, indexed by slot
+    private static final char[] TRACKED_SIGNALS = {'E', 'A', 'F', 'C', 'X'};
+    private static final int OTHER_SLOT = TRACKED_SIGNALS.length;
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private static AlertLatencyTracker instance;
+
+    private final LatencyHistogram[][] histograms = new LatencyHistogram[OTHER_SLOT + 1][STAGES.length];
+    private final ThreadLocal<Trace> currentTrace = new ThreadLocal<Trace>() {
+        @Override
+        protected Trace initialValue() {
+            return new Trace();
+        }
+    };
+
+    private AlertLatencyTracker() {
+        for (int slot = 0; slot <= OTHER_SLOT; slot++) {
+            for (int stage = 0; stage < STAGES.length; stage++) {
+                histograms[slot][stage] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Get the singleton instance of AlertLatencyTracker
+     */
+    public static synchronized AlertLatencyTracker getInstance() {
+        if (instance == null) {
+            instance = new AlertLatencyTracker();
+        }
+        return instance;
+    }
+
+    /**
+     * Record a stage for a signal outside a trace
+     * @param signal Signal code
+     * @param stage Stage that just finished
+     * @param notifiedAtNanos System.nanoTime() when the notification arrived
+     */
+    public void record(char signal, Stage stage, long notifiedAtNanos) {
+        histograms[slotOf(signal)][stage.ordinal()].recordNanos(System.nanoTime() - notifiedAtNanos);
+    }
+
+    /**
+     * Start tracing a signal on the calling thread and record its dispatch
+     * @param signal Signal code
+     * @param notifiedAtNanos System.nanoTime() when the notification arrived
+     */
+    public void begin(char signal, long notifiedAtNanos) {
+        Trace trace = currentTrace.get();
+        trace.active = true;
+        trace.signal = signal;
+        trace.notifiedAtNanos = notifiedAtNanos;
+        trace.recordedStages = 0;
+        mark(Stage.DISPATCHED);
+    }
+
+    /**
+     * Record a stage for the signal traced on the calling thread; does
+     * nothing without a trace or if the stage was already recorded
+     */
+    public void mark(Stage stage) {
+        mark(stage, System.nanoTime());
+    }
+
+    /**
+     * Record a stage that finished at a given time, e.g. on another thread,
+     * for the signal traced on the calling thread
+     * @param stage Stage that finished
+     * @param finishedAtNanos System.nanoTime() when it finished
+     */
+    public void mark(Stage stage, long finishedAtNanos) {
+        Trace trace = currentTrace.get();
+        int bit = 1 << stage.ordinal();
+        if (!trace.active || (trace.recordedStages & bit) != 0) {
+            return;
+        }
+        trace.recordedStages |= bit;
+        histograms[slotOf(trace.signal)][stage.ordinal()].recordNanos(finishedAtNanos - trace.notifiedAtNanos);
+    }
+
+    /**
+     * Get when the notification traced on the calling thread arrived
+     * @return System.nanoTime() of the notification, or now without a trace
+     */
+    public long getTraceStartNanos() {
+        Trace trace = currentTrace.get();
+        return trace.active ? trace.notifiedAtNanos : System.nanoTime();
+    }
+
+    /**
+     * Stop tracing on the calling thread
+     */
+    public void end() {
+        currentTrace.get().active = false;
+    }
+
+    /**
+     * Get the histogram for a signal type and stage
+     */
+    public LatencyHistogram getHistogram(char signal, Stage stage) {
+        return histograms[slotOf(signal)][stage.ordinal()];
+    }
+
+    /**
+     * Get the number of emergencies whose first SMS took longer than {@link #FIRST_SMS_SLO_MILLIS}
+     */
+    public long getFirstSmsSloBreaches() {
+        return getHistogram('E', Stage.SMS_SENT)
+                .getCountAbove(TimeUnit.MILLISECONDS.toMicros(FIRST_SMS_SLO_MILLIS));
+    }
+
+    public void reset() {
+        for (LatencyHistogram[] row : histograms) {
+            for (LatencyHistogram histogram : row) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Human-readable percentiles per signal type and stage, in milliseconds
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (char signal : TRACKED_SIGNALS) {
+            if (getHistogram(signal, Stage.DECODED).getCount() == 0
+                    && getHistogram(signal, Stage.DISPATCHED).getCount() == 0) {
+                continue;
+            }
+            sb.append(signal).append('\n');
+            for (Stage stage : STAGES) {
+                LatencyHistogram histogram = getHistogram(signal, stage);
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                sb.append("  ").append(stage)
+                        .append(": n=").append(histogram.getCount())
+                        .append(" p50=").append(toMillis(histogram.getPercentileMicros(50)))
+                        .append(" p90=").append(toMillis(histogram.getPercentileMicros(90)))
+                        .append(" p99=").append(toMillis(histogram.getPercentileMicros(99)))
+                        .append(" max=").append(toMillis(histogram.getMaxMicros())).append("ms\n");
+            }
+        }
+        sb.append("first SMS over ").append(FIRST_SMS_SLO_MILLIS).append("ms: ")
+                .append(getFirstSmsSloBreaches());
+        return sb.toString();
+    }
+
+    /**
+     * Export every non-empty histogram as CSV, latencies in microseconds
+     */
+    public String exportCsv() {
+        StringBuilder sb = new StringBuilder("signal,stage,count,mean_us,p50_us,p90_us,p99_us,max_us\n");
+        for (char signal : TRACKED_SIGNALS) {
+            for (Stage stage : STAGES) {
+                LatencyHistogram histogram = getHistogram(signal, stage);
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                sb.append(signal).append(',')
+                        .append(stage).append(',')
+                        .append(histogram.getCount()).append(',')
+                        .append(histogram.getMeanMicros()).append(',')
+                        .append(histogram.getPercentileMicros(50)).append(',')
+                        .append(histogram.getPercentileMicros(90)).append(',')
+                        .append(histogram.getPercentileMicros(99)).append(',')
+                        .append(histogram.getMaxMicros()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String toMillis(long micros) {
+        return String.valueOf(micros / 1000) + "." + (micros % 1000) / 100;
+    }
+
+    private static int slotOf(char signal) {
+        for (int i = 0; i < TRACKED_SIGNALS.length; i++) {
+            if (TRACKED_SIGNALS[i] == signal) {
+                return i;
+            }
+        }
+        return OTHER_SLOT;
+    }
+
+    /**
+     * Signal being handled on one thread
+     */
+    private static final class Trace {
+        boolean active;
+        char signal;
+        long notifiedAtNanos;
+        int recordedStages;
+    }
+}
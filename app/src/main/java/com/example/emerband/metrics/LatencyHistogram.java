@@ -0,0 +1,120 @@
+package com.example.emerband.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-size log-linear latency histogram.
+ *
+ * Values are kept in microseconds. Each power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so any recorded value is reported
+ * within 12.5% of its true value, from 1 us up to {@link #MAX_TRACKABLE_MICROS}
+ * (larger values land in the last bucket). All buckets are allocated up
+ * front; recording never allocates, so it can be done on the alert path.
+ *
+ * Thread-safe.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Highest power of two tracked exactly (2^27 us is about 134 s)
+    private static final int MAX_EXPONENT = 26;
+    public static final long MAX_TRACKABLE_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long totalMicros;
+    private long maxMicros;
+
+    /**
+     * Record one latency
+     * @param nanos Latency in nanoseconds; negative values are ignored
+     */
+    public synchronized void recordNanos(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        counts[indexOf(Math.min(micros, MAX_TRACKABLE_MICROS))]++;
+        totalCount++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public synchronized long getMeanMicros() {
+        return totalCount == 0 ? 0 : totalMicros / totalCount;
+    }
+
+    /**
+     * Get the value at the given percentile, in microseconds
+     * @param percentile Percentile between 0 and 100
+     * @return Upper bound of the bucket holding that percentile, or 0 if empty
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(totalCount * Math.min(Math.max(percentile, 0), 100) / 100.0);
+        rank = Math.max(rank, 1);
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Never report more than was actually recorded
+                return Math.min(upperBoundOf(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    /**
+     * Get the number of recorded values above the given limit (to bucket precision)
+     */
+    public synchronized long getCountAbove(long limitMicros) {
+        long above = 0;
+        for (int i = indexOf(Math.min(limitMicros, MAX_TRACKABLE_MICROS)) + 1; i < BUCKET_COUNT; i++) {
+            above += counts[i];
+        }
+        return above;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
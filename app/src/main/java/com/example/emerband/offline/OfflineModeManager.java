@@ -7,21 +7,25 @@ import android.content.IntentFilter;
 import android.location.Location;
 import android.net.ConnectivityManager;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.telephony.SmsManager;
 import android.util.Log;
 import android.widget.Toast;
 
 import com.example.emerband.CyberCellHandler;
 import com.example.emerband.EmergencyHandler;
+import com.example.emerband.alert.LocationFollowUp;
 import com.example.emerband.data.AppDatabase;
 import com.example.emerband.data.OfflineEvent;
 import com.example.emerband.data.OfflineEventDao;
+import com.example.emerband.location.LocationCache;
+import com.example.emerband.location.LocationFix;
+import com.example.emerband.metrics.AlertLatencyTracker;
 import com.example.emerband.utils.ConnectivityUtils;
+import com.example.emerband.utils.WakeLockTracker;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -33,10 +37,12 @@ public class OfflineModeManager {
 
     private static final String TAG = "OfflineModeManager";
     private static final int MAX_RETRY_ATTEMPTS = 3;
+    private static final long DRAIN_WAKE_LOCK_TIMEOUT_MS = 120000;
 
     private static OfflineModeManager instance;
     private final Context context;
     private final Executor executor;
+    private final Handler mainHandler;
     private BroadcastReceiver connectivityReceiver;
     private boolean isReceiverRegistered = false;
 
@@ -44,6 +50,7 @@ public class OfflineModeManager {
     private OfflineModeManager(Context context) {
         this.context = context.getApplicationContext();
         this.executor = Executors.newSingleThreadExecutor();
+        this.mainHandler = new Handler(Looper.getMainLooper());
         this.connectivityReceiver = createConnectivityReceiver();
     }
 
@@ -85,15 +92,24 @@ public class OfflineModeManager {
      * @param additionalData Additional context for the emergency
      */
     public void handleEmergencyEvent(String additionalData) {
+        handleEmergencyEvent(additionalData, null);
+    }
+
+    /**
+     * Handle an emergency event (button 'E') with a location reported by the watch
+     * @param additionalData Additional context for the emergency
+     * @param watchLocation Location sent by the watch, or null; a better fix from the phone wins
+     */
+    public void handleEmergencyEvent(String additionalData, Location watchLocation) {
         // Check connectivity first
         if (ConnectivityUtils.isInternetAvailable(context)) {
             // Online - handle normally
             Log.d(TAG, "Online emergency event - handling normally");
-            handleOnlineEmergency();
+            handleOnlineEmergency(watchLocation);
         } else {
             // Offline - store for later processing
             Log.d(TAG, "Offline emergency event - storing for later");
-            storeOfflineEmergencyEvent(additionalData);
+            storeOfflineEmergencyEvent(additionalData, watchLocation);
             
             // Show feedback to the user
             showToast("Emergency alert stored offline. Will be sent when connectivity returns.");
@@ -122,11 +138,14 @@ public class OfflineModeManager {
     /**
      * Store an emergency event for offline processing
      */
-    private void storeOfflineEmergencyEvent(String additionalData) {
-        executor.execute(() -> {
+    private void storeOfflineEmergencyEvent(String additionalData, Location watchLocation) {
+        // Emergencies must not queue behind other database work on the shared executor
+        runOffMainThread(() -> {
             try {
-                // Get last known location (may be null)
-                Location lastLocation = ConnectivityUtils.getLastKnownLocation(context);
+                // Prefer the watch location, otherwise the cached fix (may be null)
+                Location lastLocation = watchLocation != null
+                        ? watchLocation
+                        : LocationCache.getInstance(context).getBestLocation();
                 String latitude = null;
                 String longitude = null;
                 
@@ -179,6 +198,11 @@ public class OfflineModeManager {
      * Process all stored offline events when connectivity returns
      */
     private void processOfflineEvents() {
+        // Keep the CPU awake from the connectivity broadcast until the queue is drained
+        WakeLockTracker wakeLockTracker = WakeLockTracker.getInstance(context);
+        WakeLockTracker.Token wakeLock = wakeLockTracker.acquire(WakeLockTracker.REASON_OFFLINE_DRAIN,
+                DRAIN_WAKE_LOCK_TIMEOUT_MS);
+        
         executor.execute(() -> {
             try {
                 OfflineEventDao dao = AppDatabase.getInstance(context).offlineEventDao();
@@ -217,6 +241,8 @@ public class OfflineModeManager {
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error processing offline events", e);
+            } finally {
+                wakeLockTracker.release(wakeLock);
             }
         });
     }
@@ -226,44 +252,37 @@ public class OfflineModeManager {
      */
     private boolean processOfflineEmergencyEvent(OfflineEvent event) {
         try {
-            // Format timestamp
-            String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
-                    .format(new Date(event.getTimestamp()));
+            // Location at the time of the alert, if it was known
+            Double latitude = parseCoordinate(event.getLatitude());
+            Double longitude = parseCoordinate(event.getLongitude());
             
-            // Prepare location string
-            String locationStr;
-            if (event.getLatitude() != null && event.getLongitude() != null) {
-                locationStr = event.getLatitude() + "," + event.getLongitude();
-            } else {
-                locationStr = "Location unavailable at time of alert";
-            }
-            
-            // Construct and send SMS
-            String message = "🚨 DELAYED EMERGENCY ALERT 🚨\n" +
-                    "Alert triggered at: " + timestamp + "\n" +
-                    "Location: " + locationStr + "\n" +
-                    "This alert was delayed due to connectivity issues.";
-            
-            // Use emergency handler with constructed GPS data
-            boolean handled = EmergencyHandler.handleEmergencyWithGPS(context, locationStr);
-            
-            return handled;
+            // Send the delayed alert, stamped with the time it was triggered
+            return EmergencyHandler.handleDelayedEmergency(context, latitude, longitude, event.getTimestamp());
         } catch (Exception e) {
             Log.e(TAG, "Error processing offline emergency event", e);
             return false;
         }
     }
 
+    /**
+     * Parse a stored coordinate, or null if missing or invalid
+     */
+    private static Double parseCoordinate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * Process a stored cyber cell event
      */
     private boolean processOfflineCyberCellEvent(OfflineEvent event) {
         try {
-            // Format timestamp
-            String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
-                    .format(new Date(event.getTimestamp()));
-            
-            // Add timestamp info to the cyber cell alert
             // Use CyberCellHandler
             boolean handled = CyberCellHandler.handleCyberCellAlert(context);
             
@@ -298,16 +317,20 @@ public class OfflineModeManager {
     /**
      * Handle online emergency - directly use EmergencyHandler
      */
-    private void handleOnlineEmergency() {
-        Location location = ConnectivityUtils.getLastKnownLocation(context);
-        String locationStr = null;
+    private void handleOnlineEmergency(Location watchLocation) {
+        AlertLatencyTracker latencyTracker = AlertLatencyTracker.getInstance();
+        long triggeredAtNanos = latencyTracker.getTraceStartNanos();
         
-        if (location != null) {
-            locationStr = location.getLatitude() + "," + location.getLongitude();
-        }
+        // Send at once with the best of the watch and the cached fix; a better one follows in a second SMS
+        LocationFix watchFix = watchLocation != null
+                ? LocationCache.toFix(LocationFix.SOURCE_WATCH, watchLocation)
+                : null;
+        LocationFix fix = LocationCache.getInstance(context).getBestAvailable(watchFix);
+        latencyTracker.mark(AlertLatencyTracker.Stage.LOCATION_RESOLVED);
         
-        // Use the EmergencyHandler to process the emergency with GPS data
-        EmergencyHandler.handleEmergencyWithGPS(context, locationStr);
+        EmergencyHandler.handleEmergencyWithFix(context, fix);
+        LocationFollowUp.getInstance(context).start(fix, triggeredAtNanos,
+                better -> EmergencyHandler.sendLocationUpdate(context, better));
     }
     
     /**
@@ -318,10 +341,22 @@ public class OfflineModeManager {
         CyberCellHandler.handleCyberCellAlert(context);
     }
     
+    /**
+     * Run a task on the calling thread if it is a background thread,
+     * otherwise hand it to the executor
+     */
+    private void runOffMainThread(Runnable task) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+    
     /**
      * Show a toast message on the UI thread
      */
     private void showToast(final String message) {
-        Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+        mainHandler.post(() -> Toast.makeText(context, message, Toast.LENGTH_LONG).show());
     }
 } 
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.example.emerband.trace;
+
+/**
+ * Binary format of a recorded BLE notification trace.
+ *
+ * A trace starts with a header:
+ * - magic "EMBT" (4 bytes)
+ * - format version (1 byte)
+ * - wall-clock time of the first record, milliseconds since the epoch (8 bytes, big-endian)
+ *
+ * followed by tagged records until the end of the file:
+ * - {@link #TAG_DEVICE}: device index (varint), MAC address (modified UTF-8)
+ * - {@link #TAG_CHARACTERISTIC}: characteristic index (varint), UUID as two
+ *   big-endian longs (most significant first)
+ * - {@link #TAG_NOTIFICATION}: device index (varint), characteristic index
+ *   (varint), nanoseconds since the previous notification (varint), value
+ *   length (varint), value bytes
+ *
+ * Devices and characteristics are defined once, before their first use, and
+ * referenced by index afterwards, so a typical notification costs only a few
+ * bytes on top of its value. Varints are unsigned LEB128.
+ */
+public final class NotificationTrace {
+
+    public static final byte[] MAGIC = {'E', 'M', 'B', 'T'};
+    public static final int FORMAT_VERSION = 1;
+
+    // Record tags
+    public static final int TAG_DEVICE = 1;
+    public static final int TAG_CHARACTERISTIC = 2;
+    public static final int TAG_NOTIFICATION = 3;
+
+    // Largest notification value accepted when reading (maximum ATT value length)
+    public static final int MAX_VALUE_LENGTH = 512;
+
+    private NotificationTrace() {
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.emerband.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Reads a {@link NotificationTrace} stream written by {@link NotificationTraceWriter}.
+ *
+ * Notifications are read one at a time into a caller-supplied
+ * {@link Record}, which is reused so replaying a long trace does not
+ * allocate per notification. Not thread-safe.
+ */
+public final class NotificationTraceReader implements Closeable {
+
+    /**
+     * One notification read from a trace; reused between calls to {@link #next}
+     */
+    public static final class Record {
+        String deviceAddress;
+        UUID characteristic;
+        long timestampNanos;
+        byte[] value = new byte[NotificationTrace.MAX_VALUE_LENGTH];
+        int length;
+
+        public String getDeviceAddress() {
+            return deviceAddress;
+        }
+
+        public UUID getCharacteristic() {
+            return characteristic;
+        }
+
+        /**
+         * Get the time of the notification in nanoseconds since the first one in the trace
+         */
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        /**
+         * Get the value buffer; only the first {@link #getLength()} bytes are valid
+         */
+        public byte[] getValue() {
+            return value;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private final DataInputStream in;
+    private final List<String> devices = new ArrayList<>();
+    private final List<UUID> characteristics = new ArrayList<>();
+    private final long startWallClockMillis;
+    private long timestampNanos;
+
+    /**
+     * Open a trace and read its header
+     * @param in Trace stream; closed together with the reader
+     * @throws IOException if the stream is not a supported trace
+     */
+    public NotificationTraceReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+
+        byte[] magic = new byte[NotificationTrace.MAGIC.length];
+        this.in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != NotificationTrace.MAGIC[i]) {
+                throw new IOException("Not a notification trace");
+            }
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != NotificationTrace.FORMAT_VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+        startWallClockMillis = this.in.readLong();
+    }
+
+    /**
+     * Get the wall-clock time of the first notification, milliseconds since the epoch
+     */
+    public long getStartWallClockMillis() {
+        return startWallClockMillis;
+    }
+
+    /**
+     * Read the next notification
+     * @param out Record to fill
+     * @return true if a notification was read, false at the end of the trace
+     * @throws IOException if the trace is truncated or corrupt
+     */
+    public boolean next(Record out) throws IOException {
+        while (true) {
+            int tag = in.read();
+            switch (tag) {
+                case -1:
+                    return false;
+                case NotificationTrace.TAG_DEVICE:
+                    expectIndex(readVarint(), devices.size());
+                    devices.add(in.readUTF());
+                    break;
+                case NotificationTrace.TAG_CHARACTERISTIC:
+                    expectIndex(readVarint(), characteristics.size());
+                    characteristics.add(new UUID(in.readLong(), in.readLong()));
+                    break;
+                case NotificationTrace.TAG_NOTIFICATION:
+                    readNotification(out);
+                    return true;
+                default:
+                    throw new IOException("Unknown trace record tag " + tag);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readNotification(Record out) throws IOException {
+        int device = (int) readVarint();
+        int characteristic = (int) readVarint();
+        if (device >= devices.size() || characteristic >= characteristics.size()) {
+            throw new IOException("Notification refers to an undefined device or characteristic");
+        }
+        timestampNanos += readVarint();
+        long length = readVarint();
+        if (length > NotificationTrace.MAX_VALUE_LENGTH) {
+            throw new IOException("Notification value too long: " + length);
+        }
+
+        out.deviceAddress = devices.get(device);
+        out.characteristic = characteristics.get(characteristic);
+        out.timestampNanos = timestampNanos;
+        out.length = (int) length;
+        in.readFully(out.value, 0, out.length);
+    }
+
+    private static void expectIndex(long index, int expected) throws IOException {
+        if (index != expected) {
+            throw new IOException("Out-of-order trace definition " + index);
+        }
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated trace");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+}
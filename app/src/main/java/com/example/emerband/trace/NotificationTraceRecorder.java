@@ -0,0 +1,112 @@
+package com.example.emerband.trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * App-wide switch for recording raw watch notifications to a trace file.
+ *
+ * While recording, every notification received by any watch session is
+ * appended to the current file before it is decoded, so field incidents can
+ * be replayed later with {@link TraceReplayer}. When not recording,
+ * {@link #record} returns after a single volatile read.
+ *
+ * Thread-safe.
+ */
+public final class NotificationTraceRecorder {
+
+    private static NotificationTraceRecorder instance;
+
+    private volatile NotificationTraceWriter writer;
+    private volatile File file;
+    private final AtomicLong writeErrors = new AtomicLong();
+
+    private NotificationTraceRecorder() {
+    }
+
+    /**
+     * Get the singleton instance of NotificationTraceRecorder
+     */
+    public static synchronized NotificationTraceRecorder getInstance() {
+        if (instance == null) {
+            instance = new NotificationTraceRecorder();
+        }
+        return instance;
+    }
+
+    /**
+     * Start recording to a new file, ending any current recording
+     * @param file Trace file to create (overwritten if it exists)
+     */
+    public synchronized void start(File file) throws IOException {
+        stop();
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        writer = new NotificationTraceWriter(new FileOutputStream(file), System.currentTimeMillis());
+        this.file = file;
+    }
+
+    /**
+     * Stop recording and close the file
+     */
+    public synchronized void stop() {
+        NotificationTraceWriter current = writer;
+        writer = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                writeErrors.incrementAndGet();
+            }
+        }
+    }
+
+    public boolean isRecording() {
+        return writer != null;
+    }
+
+    /**
+     * Append a notification to the trace, if recording
+     * @param deviceAddress MAC address of the sending device
+     * @param characteristic Characteristic the value was notified on
+     * @param timestampNanos System.nanoTime() when the notification arrived
+     * @param value Raw characteristic value
+     */
+    public void record(String deviceAddress, UUID characteristic, long timestampNanos, byte[] value) {
+        NotificationTraceWriter current = writer;
+        if (current == null || value == null) {
+            return;
+        }
+        try {
+            current.write(deviceAddress, characteristic, timestampNanos, value);
+        } catch (IOException e) {
+            synchronized (this) {
+                // Ignore writers already closed by stop(); otherwise stop instead of failing every frame
+                if (current == writer) {
+                    writeErrors.incrementAndGet();
+                    stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Human-readable state of the recorder
+     */
+    public String getSummary() {
+        NotificationTraceWriter current = writer;
+        File currentFile = file;
+        if (current == null) {
+            return "not recording" + (currentFile != null ? " (last: " + currentFile.getName() + ")" : "")
+                    + " errors=" + writeErrors.get();
+        }
+        return "recording to " + currentFile.getName()
+                + " notifications=" + current.getNotificationCount()
+                + " errors=" + writeErrors.get();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.emerband.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes BLE notifications to a {@link NotificationTrace} stream.
+ *
+ * Output is buffered and flushed at most once per {@link #FLUSH_INTERVAL_MILLIS}
+ * (and on close), so recording a burst costs no more than one write per
+ * interval while a killed process loses at most the last interval.
+ *
+ * Thread-safe; notifications from several devices may be written from their
+ * own threads and are stored in the order the calls are made.
+ */
+public final class NotificationTraceWriter implements Closeable {
+
+    public static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> deviceIndexes = new HashMap<>();
+    private final Map<UUID, Integer> characteristicIndexes = new HashMap<>();
+
+    private boolean headerWritten;
+    private final long startWallClockMillis;
+    private long lastTimestampNanos;
+    private long lastFlushNanos;
+    private long notificationCount;
+    private boolean closed;
+
+    /**
+     * @param out Destination stream; closed together with the writer
+     * @param startWallClockMillis Wall-clock time stored in the header
+     */
+    public NotificationTraceWriter(OutputStream out, long startWallClockMillis) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.startWallClockMillis = startWallClockMillis;
+    }
+
+    /**
+     * Append one notification
+     * @param deviceAddress MAC address of the sending device
+     * @param characteristic Characteristic the value was notified on
+     * @param timestampNanos System.nanoTime() when the notification arrived
+     * @param value Raw characteristic value
+     */
+    public synchronized void write(String deviceAddress, UUID characteristic, long timestampNanos,
+                                   byte[] value) throws IOException {
+        if (closed) {
+            throw new IOException("Trace writer is closed");
+        }
+        if (!headerWritten) {
+            out.write(NotificationTrace.MAGIC);
+            out.writeByte(NotificationTrace.FORMAT_VERSION);
+            out.writeLong(startWallClockMillis);
+            headerWritten = true;
+            lastTimestampNanos = timestampNanos;
+            lastFlushNanos = timestampNanos;
+        }
+
+        int device = deviceIndex(deviceAddress != null ? deviceAddress : "");
+        int characteristicIndex = characteristicIndex(characteristic);
+
+        // Timestamps from several threads may be slightly out of call order
+        long delta = Math.max(0, timestampNanos - lastTimestampNanos);
+        lastTimestampNanos = Math.max(lastTimestampNanos, timestampNanos);
+
+        out.writeByte(NotificationTrace.TAG_NOTIFICATION);
+        writeVarint(device);
+        writeVarint(characteristicIndex);
+        writeVarint(delta);
+        writeVarint(value.length);
+        out.write(value);
+        notificationCount++;
+
+        if (timestampNanos - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+            out.flush();
+            lastFlushNanos = timestampNanos;
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    public synchronized long getNotificationCount() {
+        return notificationCount;
+    }
+
+    private int deviceIndex(String address) throws IOException {
+        Integer index = deviceIndexes.get(address);
+        if (index == null) {
+            index = deviceIndexes.size();
+            deviceIndexes.put(address, index);
+            out.writeByte(NotificationTrace.TAG_DEVICE);
+            writeVarint(index);
+            out.writeUTF(address);
+        }
+        return index;
+    }
+
+    private int characteristicIndex(UUID uuid) throws IOException {
+        Integer index = characteristicIndexes.get(uuid);
+        if (index == null) {
+            index = characteristicIndexes.size();
+            characteristicIndexes.put(uuid, index);
+            out.writeByte(NotificationTrace.TAG_CHARACTERISTIC);
+            writeVarint(index);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+        return index;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
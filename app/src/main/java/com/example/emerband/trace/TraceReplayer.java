@@ -0,0 +1,210 @@
+package com.example.emerband.trace;
+
+import com.example.emerband.ble.SequenceWindow;
+import com.example.emerband.ble.WatchFrame;
+import com.example.emerband.ble.WatchFrameDecoder;
+import com.example.emerband.dispatch.SignalDispatcher;
+import com.example.emerband.dispatch.SignalEvent;
+import com.example.emerband.health.HeartRateMonitor;
+import com.example.emerband.health.HeartRateParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recorded notification trace through the same ingest path as
+ * the service: {@link WatchFrameDecoder}, per-device {@link SequenceWindow}
+ * duplicate filtering and {@link SignalDispatcher}. Heart rate measurements
+ * go through a per-device {@link HeartRateMonitor}, and its anomalies are
+ * dispatched as emergencies as in the watch session.
+ *
+ * Runs on the plain JVM without Android or a watch. Notifications are fed
+ * from one thread, as fast as possible or paced at a multiple of real time.
+ * Signals are stamped with their recorded spacing, so the dispatcher's
+ * repeat windows behave as they did in the field at any speed.
+ *
+ * A command line front end, TraceReplayerCli, lives with the unit tests.
+ */
+public final class TraceReplayer {
+
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    // Signal dispatched for a heart rate anomaly, as in the watch session
+    private static final char HEART_RATE_ALERT_SIGNAL = 'E';
+
+    /**
+     * Outcome of one replay
+     */
+    public static final class Result {
+        long notifications;
+        long heartRateMeasurements;
+        long heartRateAlerts;
+        long rejected;
+        long duplicates;
+        long submitted;
+        long repeats;
+        long elapsedNanos;
+        String dispatcherSummary = "";
+
+        public long getNotifications() {
+            return notifications;
+        }
+
+        public long getHeartRateMeasurements() {
+            return heartRateMeasurements;
+        }
+
+        public long getHeartRateAlerts() {
+            return heartRateAlerts;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getRepeats() {
+            return repeats;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Get the number of notifications fed through the ingest path per second
+         */
+        public double getNotificationsPerSecond() {
+            return elapsedNanos == 0 ? 0 : notifications * 1e9 / elapsedNanos;
+        }
+
+        public String getDispatcherSummary() {
+            return dispatcherSummary;
+        }
+
+        @Override
+        public String toString() {
+            return "notifications=" + notifications
+                    + " heartRate=" + heartRateMeasurements
+                    + " heartRateAlerts=" + heartRateAlerts
+                    + " rejected=" + rejected
+                    + " duplicates=" + duplicates
+                    + " submitted=" + submitted
+                    + " repeats=" + repeats
+                    + " elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+                    + " rate=" + Math.round(getNotificationsPerSecond()) + "/s"
+                    + "\n" + dispatcherSummary;
+        }
+    }
+
+    /**
+     * Decoding state of one recorded device, as in its watch session
+     */
+    private static final class DeviceState {
+        final WatchFrameDecoder decoder = new WatchFrameDecoder();
+        final WatchFrame frame = new WatchFrame();
+        final SequenceWindow sequenceWindow = new SequenceWindow();
+        HeartRateMonitor heartRateMonitor;
+    }
+
+    private final SignalDispatcher.SignalHandler handler;
+    private final int workerCount;
+
+    /**
+     * @param handler Handler for dispatched signals (the service's handler needs Android)
+     * @param workerCount Dispatcher worker threads, as in the service
+     */
+    public TraceReplayer(SignalDispatcher.SignalHandler handler, int workerCount) {
+        this.handler = handler;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Replay a trace and wait until every dispatched signal was handled
+     * @param in Trace stream; closed when done
+     * @param speed Multiple of real time, or 0 for as fast as possible
+     */
+    public Result replay(InputStream in, double speed) throws IOException, InterruptedException {
+        Result result = new Result();
+        Map<String, DeviceState> devices = new HashMap<>();
+        SignalDispatcher dispatcher = new SignalDispatcher(handler, workerCount);
+        NotificationTraceReader.Record record = new NotificationTraceReader.Record();
+
+        long startNanos = System.nanoTime();
+        try (NotificationTraceReader reader = new NotificationTraceReader(in)) {
+            while (reader.next(record)) {
+                if (speed > 0) {
+                    long dueNanos = startNanos + (long) (record.getTimestampNanos() / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                    }
+                }
+                result.notifications++;
+
+                DeviceState device = devices.get(record.getDeviceAddress());
+                if (device == null) {
+                    device = new DeviceState();
+                    devices.put(record.getDeviceAddress(), device);
+                }
+                // Recorded spacing, so repeat windows see field timing at any replay speed
+                long receivedAtNanos = startNanos + record.getTimestampNanos();
+
+                if (HeartRateParser.isMeasurement(record.getValue(), record.getLength())) {
+                    if (device.heartRateMonitor == null) {
+                        device.heartRateMonitor = createHeartRateMonitor(record.getDeviceAddress(),
+                                dispatcher, result);
+                    }
+                    result.heartRateMeasurements++;
+                    device.heartRateMonitor.onMeasurement(record.getValue(), record.getLength(),
+                            TimeUnit.NANOSECONDS.toMillis(record.getTimestampNanos()), receivedAtNanos);
+                    continue;
+                }
+                if (!device.decoder.decode(record.getValue(), record.getLength(), device.frame)) {
+                    result.rejected++;
+                    continue;
+                }
+                WatchFrame frame = device.frame;
+                if (frame.hasSequence() && !device.sequenceWindow.accept(frame.getSequence())) {
+                    result.duplicates++;
+                    continue;
+                }
+
+                if (dispatcher.submit(SignalEvent.from(record.getDeviceAddress(), frame, receivedAtNanos))) {
+                    result.submitted++;
+                } else {
+                    result.repeats++;
+                }
+            }
+        } finally {
+            dispatcher.shutdownAndDrain(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            result.elapsedNanos = System.nanoTime() - startNanos;
+            result.dispatcherSummary = dispatcher.getStatsSummary();
+        }
+        return result;
+    }
+
+    private static HeartRateMonitor createHeartRateMonitor(String address, SignalDispatcher dispatcher,
+                                                           Result result) {
+        return new HeartRateMonitor((anomaly, heartRate, receivedAtNanos) -> {
+            result.heartRateAlerts++;
+            SignalEvent event = new SignalEvent(address, HEART_RATE_ALERT_SIGNAL, false, 0, 0, receivedAtNanos);
+            if (dispatcher.submit(event)) {
+                result.submitted++;
+            } else {
+                result.repeats++;
+            }
+        });
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.emerband.transport;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.example.emerband.BLEGattUtils;
+import com.example.emerband.ble.GattOperationStats;
+
+/**
+ * {@link WatchLink} to a {@link SimulatedWatch}.
+ *
+ * Every event is posted to the link's handler after the transport's
+ * latency; events posted after {@link #close()} are dropped, as a closed
+ * Bluetooth connection stops calling back.
+ */
+class SimulatedLink implements WatchLink {
+
+    private final SimulatedWatchTransport transport;
+    private final Handler handler;
+    private final GattOperationStats stats;
+    private final Listener listener;
+
+    private volatile SimulatedWatch watch;
+    private volatile boolean connected;
+    private volatile boolean subscribed;
+    private volatile boolean closed;
+
+    // Due time of the last posted event, so events keep their order under jitter
+    private long lastDueUptimeMillis;
+
+    // Counters, updated on the handler thread
+    private volatile long notifications;
+    private volatile long alertSignals;
+
+    SimulatedLink(SimulatedWatchTransport transport, Handler handler, GattOperationStats stats,
+                  Listener listener) {
+        this.transport = transport;
+        this.handler = handler;
+        this.stats = stats;
+        this.listener = listener;
+    }
+
+    @Override
+    public void connect(String address, boolean autoConnect) {
+        if (address == null || address.isEmpty()) {
+            throw new IllegalArgumentException("Invalid address " + address);
+        }
+        transport.connect(this, address, autoConnect);
+    }
+
+    @Override
+    public void disconnect() {
+        SimulatedWatch current = watch;
+        if (current != null) {
+            current.detach(this);
+        }
+        onLinkDown(SimulatedWatchTransport.REASON_SUCCESS);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SimulatedWatch current = watch;
+        if (current != null) {
+            current.detach(this);
+        }
+    }
+
+    @Override
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    @Override
+    public void readGPSData(BLEGattUtils.GPSDataCallback callback) {
+        SimulatedWatch current = watch;
+        String gpsData = connected && current != null ? current.getGpsData() : null;
+        post(() -> callback.onGPSData(gpsData));
+    }
+
+    @Override
+    public void readRssi(RssiCallback callback) {
+        SimulatedWatch current = watch;
+        if (!connected || current == null) {
+            post(callback::onRssiFailed);
+        } else if (!current.isSilent()) {
+            int rssi = current.getRssi();
+            post(() -> callback.onRssi(rssi));
+        }
+        // A silent watch never answers, like a hung link
+    }
+
+    @Override
+    public void onSignal(char signal, long receivedAtNanos) {
+        if (signal == 'E' || signal == 'A') {
+            alertSignals++;
+        }
+    }
+
+    @Override
+    public String getSummary() {
+        return "simulated connected=" + connected
+                + " subscribed=" + subscribed
+                + " notifications=" + notifications
+                + " alerts=" + alertSignals;
+    }
+
+    // Called by the watch and the transport
+
+    /**
+     * The watch accepted the connection; subscribe next
+     * @param acceptSubscription false to make the CCCD write fail
+     */
+    void onConnectAccepted(SimulatedWatch watch, boolean acceptSubscription) {
+        this.watch = watch;
+        post(() -> {
+            connected = true;
+            listener.onConnected(this);
+        });
+
+        long startedAt = System.nanoTime();
+        post(() -> {
+            subscribed = acceptSubscription && watch.isAttached(this);
+            stats.recordCompletion(GattOperationStats.Type.WRITE_DESCRIPTOR, subscribed,
+                    System.nanoTime() - startedAt);
+            listener.onReady(this);
+        });
+    }
+
+    void onConnectFailed(int reason) {
+        post(() -> listener.onFailedToConnect(this, reason));
+    }
+
+    /**
+     * The connection ended (link loss, watch out of range or a local disconnect)
+     */
+    void onLinkDown(int reason) {
+        post(() -> {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+            subscribed = false;
+            listener.onDisconnected(this, reason);
+        });
+    }
+
+    /**
+     * Deliver a notification value; the array must not be changed afterwards
+     */
+    void deliver(byte[] value) {
+        post(() -> {
+            if (subscribed) {
+                notifications++;
+                listener.onNotification(this, value, System.nanoTime());
+            }
+        });
+    }
+
+    /**
+     * Deliver a packet of the accelerometer stream; the array must not be changed afterwards
+     */
+    void deliverImu(byte[] packet) {
+        post(() -> {
+            if (subscribed) {
+                notifications++;
+                listener.onImuNotification(this, packet, System.nanoTime());
+            }
+        });
+    }
+
+    private void post(Runnable event) {
+        long due;
+        synchronized (this) {
+            due = Math.max(lastDueUptimeMillis, SystemClock.uptimeMillis() + transport.nextLatencyMillis());
+            lastDueUptimeMillis = due;
+        }
+        handler.postAtTime(() -> {
+            if (!closed) {
+                event.run();
+            }
+        }, due);
+    }
+}
@@ -0,0 +1,357 @@
+package com.example.emerband.transport;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.example.emerband.ble.WatchFrameDecoder;
+import com.example.emerband.health.ImuStreamDecoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simulated EmerbandWatch, created by {@link SimulatedWatchTransport#addWatch}.
+ *
+ * Sends the same frames as the firmware (current frame version, with a
+ * sequence number, boot id and the GPS fix if one is set) to the phone that is
+ * connected to it. Tests and load runs drive it directly or through a
+ * {@link Script}.
+ *
+ * Thread-safe.
+ */
+public class SimulatedWatch {
+
+    // Signal strength of a watch on the wrist next to the phone
+    public static final int DEFAULT_RSSI = -60;
+
+    private final SimulatedWatchTransport transport;
+    private final String address;
+    private final String name;
+
+    private boolean inRange = true;
+    private boolean acceptSubscriptions = true;
+    private boolean silent;
+    private int rssi = DEFAULT_RSSI;
+    private SimulatedLink link;
+    private final List<SimulatedLink> waitingLinks = new ArrayList<>();
+
+    private boolean hasFix;
+    private float latitude;
+    private float longitude;
+    private int sequence;
+    // Changes on every reboot, as the firmware's random one does
+    private int bootId = 1;
+    private long sentFrames;
+
+    SimulatedWatch(SimulatedWatchTransport transport, String address, String name) {
+        this.transport = transport;
+        this.address = address;
+        this.name = name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Press a button: send a frame with the given signal
+     */
+    public synchronized void press(char signal) {
+        send(signal);
+    }
+
+    /**
+     * Get a GPS fix and press a button in one go
+     */
+    public synchronized void pressWithLocation(char signal, double latitude, double longitude) {
+        setLocation(latitude, longitude);
+        send(signal);
+    }
+
+    /**
+     * Set the GPS fix carried in every following frame
+     */
+    public synchronized void setLocation(double latitude, double longitude) {
+        this.latitude = (float) latitude;
+        this.longitude = (float) longitude;
+        this.hasFix = true;
+    }
+
+    public synchronized void clearLocation() {
+        hasFix = false;
+    }
+
+    /**
+     * Lose the connection; the watch stays in range, so the phone can reconnect
+     */
+    public synchronized void dropLink() {
+        if (link != null) {
+            link.onLinkDown(SimulatedWatchTransport.REASON_LINK_LOSS);
+            link = null;
+        }
+    }
+
+    /**
+     * Move the watch out of or back into range; out of range drops the link
+     * and back in range completes waiting background connections
+     */
+    public synchronized void setInRange(boolean inRange) {
+        this.inRange = inRange;
+        if (!inRange) {
+            dropLink();
+            return;
+        }
+        List<SimulatedLink> waiting = new ArrayList<>(waitingLinks);
+        waitingLinks.clear();
+        for (SimulatedLink waitingLink : waiting) {
+            connect(waitingLink, true);
+        }
+    }
+
+    /**
+     * Restart the firmware: the link drops, the sequence counter starts again
+     * and the boot id changes
+     */
+    public synchronized void reboot() {
+        dropLink();
+        sequence = 0;
+        bootId = (bootId + 1) & 0xFFFF;
+        hasFix = false;
+    }
+
+    /**
+     * Make enabling notifications succeed or fail on the next connections
+     */
+    public synchronized void setAcceptSubscriptions(boolean accept) {
+        acceptSubscriptions = accept;
+    }
+
+    /**
+     * Set the signal strength reported by RSSI reads (dBm)
+     */
+    public synchronized void setRssi(int rssi) {
+        this.rssi = rssi;
+    }
+
+    public synchronized int getRssi() {
+        return rssi;
+    }
+
+    /**
+     * Hang the link: the connection stays up but nothing is sent or answered,
+     * and no disconnect is reported
+     */
+    public synchronized void setSilent(boolean silent) {
+        this.silent = silent;
+    }
+
+    public synchronized boolean isSilent() {
+        return silent;
+    }
+
+    /**
+     * Send a packet of the raw accelerometer stream (see {@link ImuStreamDecoder} for the layout)
+     */
+    public synchronized void sendImuPacket(byte[] packet) {
+        if (link != null && !silent) {
+            link.deliverImu(packet);
+        }
+    }
+
+    public synchronized boolean isConnected() {
+        return link != null;
+    }
+
+    public synchronized long getSentFrames() {
+        return sentFrames;
+    }
+
+    /**
+     * Start a script of actions for this watch
+     * @param handler Handler the actions run on
+     */
+    public Script script(Handler handler) {
+        return new Script(this, handler);
+    }
+
+    // Called by the transport and links
+
+    synchronized boolean isAdvertising() {
+        return inRange && link == null;
+    }
+
+    synchronized void connect(SimulatedLink newLink, boolean autoConnect) {
+        if (!inRange) {
+            if (autoConnect) {
+                waitingLinks.add(newLink);
+            } else {
+                newLink.onConnectFailed(SimulatedWatchTransport.REASON_TIMEOUT);
+            }
+            return;
+        }
+        // The watch serves one phone connection at a time
+        dropLink();
+        silent = false;
+        link = newLink;
+        newLink.onConnectAccepted(this, acceptSubscriptions);
+    }
+
+    synchronized void detach(SimulatedLink oldLink) {
+        waitingLinks.remove(oldLink);
+        if (link == oldLink) {
+            link = null;
+        }
+    }
+
+    synchronized boolean isAttached(SimulatedLink candidate) {
+        return link == candidate;
+    }
+
+    synchronized String getGpsData() {
+        return hasFix ? latitude + "," + longitude : null;
+    }
+
+    private void send(char signal) {
+        byte[] frame = encodeFrame(signal, sequence, bootId, hasFix, latitude, longitude);
+        sequence = (sequence + 1) & 0xFFFF;
+        sentFrames++;
+        if (link != null && !silent) {
+            link.deliver(frame);
+        }
+    }
+
+    /**
+     * Encode a frame as the firmware does (see {@link WatchFrameDecoder} for the layout)
+     */
+    static byte[] encodeFrame(char signal, int sequence, int bootId, boolean hasFix,
+                              float latitude, float longitude) {
+        byte[] frame = new byte[WatchFrameDecoder.GPS_FRAME_LENGTH];
+        frame[WatchFrameDecoder.SIGNAL_OFFSET] = (byte) signal;
+        writeFloatLE(frame, WatchFrameDecoder.LATITUDE_OFFSET, hasFix ? latitude : 0f);
+        writeFloatLE(frame, WatchFrameDecoder.LONGITUDE_OFFSET, hasFix ? longitude : 0f);
+        frame[WatchFrameDecoder.FLAGS_OFFSET] = (byte) (WatchFrameDecoder.FLAG_VERSIONED
+                | (hasFix ? WatchFrameDecoder.FLAG_GPS_VALID : 0));
+        frame[WatchFrameDecoder.VERSION_OFFSET] = (byte) WatchFrameDecoder.CURRENT_VERSION;
+        frame[WatchFrameDecoder.SEQUENCE_OFFSET] = (byte) sequence;
+        frame[WatchFrameDecoder.SEQUENCE_OFFSET + 1] = (byte) (sequence >> 8);
+        frame[WatchFrameDecoder.BOOT_ID_OFFSET] = (byte) bootId;
+        frame[WatchFrameDecoder.BOOT_ID_OFFSET + 1] = (byte) (bootId >> 8);
+        return frame;
+    }
+
+    private static void writeFloatLE(byte[] data, int offset, float value) {
+        int bits = Float.floatToIntBits(value);
+        data[offset] = (byte) bits;
+        data[offset + 1] = (byte) (bits >> 8);
+        data[offset + 2] = (byte) (bits >> 16);
+        data[offset + 3] = (byte) (bits >> 24);
+    }
+
+    /**
+     * Timed sequence of watch actions, built up front and then run on a handler.
+     * Each action happens after the waits added before it.
+     */
+    public static final class Script {
+        private final SimulatedWatch watch;
+        private final Handler handler;
+        private final List<Runnable> actions = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+        private long offsetMillis;
+
+        Script(SimulatedWatch watch, Handler handler) {
+            this.watch = watch;
+            this.handler = handler;
+        }
+
+        public Script press(char signal) {
+            return add(() -> watch.press(signal));
+        }
+
+        public Script pressWithLocation(char signal, double latitude, double longitude) {
+            return add(() -> watch.pressWithLocation(signal, latitude, longitude));
+        }
+
+        /**
+         * Press the same button repeatedly, e.g. for sustained load
+         */
+        public Script repeat(char signal, int count, long intervalMillis) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    waitMillis(intervalMillis);
+                }
+                press(signal);
+            }
+            return this;
+        }
+
+        public Script dropLink() {
+            return add(watch::dropLink);
+        }
+
+        /**
+         * Go out of range for the given time, then come back
+         */
+        public Script outOfRange(long millis) {
+            add(() -> watch.setInRange(false));
+            waitMillis(millis);
+            return add(() -> watch.setInRange(true));
+        }
+
+        /**
+         * Change the signal strength, e.g. to walk away from the phone
+         */
+        public Script rssi(int rssi) {
+            return add(() -> watch.setRssi(rssi));
+        }
+
+        /**
+         * Hang the link without a disconnect
+         */
+        public Script goSilent() {
+            return add(() -> watch.setSilent(true));
+        }
+
+        public Script reboot() {
+            return add(watch::reboot);
+        }
+
+        public Script waitMillis(long millis) {
+            offsetMillis += millis;
+            return this;
+        }
+
+        /**
+         * Schedule every action, relative to now
+         */
+        public void run() {
+            long start = SystemClock.uptimeMillis();
+            for (int i = 0; i < actions.size(); i++) {
+                handler.postAtTime(actions.get(i), this, start + offsets.get(i));
+            }
+        }
+
+        /**
+         * Drop actions that have not run yet
+         */
+        public void cancel() {
+            handler.removeCallbacksAndMessages(this);
+        }
+
+        /**
+         * Get the time from {@link #run()} to the last action, in milliseconds
+         */
+        public long getDurationMillis() {
+            return offsetMillis;
+        }
+
+        private Script add(Runnable action) {
+            actions.add(action);
+            offsets.add(offsetMillis);
+            return this;
+        }
+    }
+}
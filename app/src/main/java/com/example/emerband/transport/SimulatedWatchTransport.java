@@ -0,0 +1,214 @@
+package com.example.emerband.transport;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.example.emerband.ble.GattOperationStats;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * In-memory {@link WatchTransport} with simulated watches, for exercising
+ * sessions, the registry and the dispatcher without radio hardware.
+ *
+ * Watches are added with {@link #addWatch} and driven through
+ * {@link SimulatedWatch} (button presses, GPS frames, link drops, going out
+ * of range) or a scripted {@link SimulatedWatch.Script}. Every connection
+ * step and notification is delivered after a random latency between the
+ * configured bounds; notifications on one link keep their order. The random
+ * source is seeded, so a run can be repeated.
+ *
+ * Thread-safe; callbacks run on the handlers given by the sessions and
+ * the registry, as with the real transport.
+ */
+public class SimulatedWatchTransport implements WatchTransport {
+
+    // Disconnect reasons, same values as the Nordic ConnectionObserver
+    public static final int REASON_SUCCESS = 0;
+    public static final int REASON_LINK_LOSS = 3;
+    public static final int REASON_TIMEOUT = 10;
+
+    // How often a running scan reports the watches it can see
+    private static final long SCAN_REPEAT_MILLIS = 1000;
+
+    private final Random random;
+    private final Map<String, SimulatedWatch> watches = new LinkedHashMap<>();
+    private final Map<String, List<SimulatedLink>> waitingForUnknown = new LinkedHashMap<>();
+
+    private long minLatencyMillis = 5;
+    private long maxLatencyMillis = 20;
+    private long scanLatencyMillis = 200;
+
+    /**
+     * @param seed Seed for latency jitter, so runs can be repeated
+     */
+    public SimulatedWatchTransport(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Add a watch that is in range and advertising
+     * @param address MAC address of the watch
+     * @param name Advertised name
+     */
+    public SimulatedWatch addWatch(String address, String name) {
+        SimulatedWatch watch = new SimulatedWatch(this, address, name);
+        List<SimulatedLink> waiting;
+        synchronized (this) {
+            watches.put(address, watch);
+            waiting = waitingForUnknown.remove(address);
+        }
+        if (waiting != null) {
+            // Background (autoConnect) attempts made before the watch existed
+            for (SimulatedLink link : waiting) {
+                watch.connect(link, true);
+            }
+        }
+        return watch;
+    }
+
+    public synchronized SimulatedWatch getWatch(String address) {
+        return watches.get(address);
+    }
+
+    public synchronized List<SimulatedWatch> getWatches() {
+        return new ArrayList<>(watches.values());
+    }
+
+    /**
+     * Set the range of the random delay added to every connection step and notification
+     */
+    public synchronized void setLatency(long minMillis, long maxMillis) {
+        minLatencyMillis = minMillis;
+        maxLatencyMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Set the time from starting a scan to the first results
+     */
+    public synchronized void setScanLatency(long millis) {
+        scanLatencyMillis = millis;
+    }
+
+    @Override
+    public WatchScanner createScanner(Handler handler, WatchScanner.Listener listener) {
+        return new SimulatedScanner(handler, listener);
+    }
+
+    @Override
+    public WatchLink createLink(Handler handler, GattOperationStats stats, WatchLink.Listener listener) {
+        return new SimulatedLink(this, handler, stats, listener);
+    }
+
+    synchronized long nextLatencyMillis() {
+        long range = maxLatencyMillis - minLatencyMillis;
+        return minLatencyMillis + (range == 0 ? 0 : (long) (random.nextDouble() * (range + 1)));
+    }
+
+    /**
+     * Connect a link to the watch with the given address, or park it until that watch is added
+     */
+    void connect(SimulatedLink link, String address, boolean autoConnect) {
+        SimulatedWatch watch;
+        synchronized (this) {
+            watch = watches.get(address);
+            if (watch == null && autoConnect) {
+                List<SimulatedLink> waiting = waitingForUnknown.get(address);
+                if (waiting == null) {
+                    waiting = new ArrayList<>();
+                    waitingForUnknown.put(address, waiting);
+                }
+                waiting.add(link);
+                return;
+            }
+        }
+        if (watch == null) {
+            link.onConnectFailed(REASON_TIMEOUT);
+        } else {
+            watch.connect(link, autoConnect);
+        }
+    }
+
+    /**
+     * Scanner that reports every watch in range and not connected, until stopped
+     */
+    private final class SimulatedScanner implements WatchScanner {
+        private final Handler handler;
+        private final Listener listener;
+        private final Runnable scanRound = this::reportWatches;
+
+        private boolean scanning;
+        private long searchStartedAt;
+        private long detectionCount;
+        private long totalDetectionMillis;
+        private long maxDetectionMillis;
+
+        SimulatedScanner(Handler handler, Listener listener) {
+            this.handler = handler;
+            this.listener = listener;
+        }
+
+        @Override
+        public void start() {
+            if (scanning) {
+                return;
+            }
+            scanning = true;
+            searchStartedAt = SystemClock.elapsedRealtime();
+            long delay;
+            synchronized (SimulatedWatchTransport.this) {
+                delay = scanLatencyMillis;
+            }
+            handler.postDelayed(scanRound, delay);
+        }
+
+        @Override
+        public void stop() {
+            scanning = false;
+            searchStartedAt = 0;
+            handler.removeCallbacks(scanRound);
+        }
+
+        @Override
+        public boolean isScanning() {
+            return scanning;
+        }
+
+        @Override
+        public void recordDetection() {
+            if (searchStartedAt == 0) {
+                return;
+            }
+            long latency = SystemClock.elapsedRealtime() - searchStartedAt;
+            detectionCount++;
+            totalDetectionMillis += latency;
+            maxDetectionMillis = Math.max(maxDetectionMillis, latency);
+            searchStartedAt = 0;
+        }
+
+        @Override
+        public String getStatsSummary() {
+            return "simulated detections=" + detectionCount
+                    + " avg=" + (detectionCount == 0 ? 0 : totalDetectionMillis / detectionCount) + "ms"
+                    + " max=" + maxDetectionMillis + "ms";
+        }
+
+        private void reportWatches() {
+            for (SimulatedWatch watch : getWatches()) {
+                if (!scanning) {
+                    return;
+                }
+                if (watch.isAdvertising()) {
+                    listener.onDeviceFound(watch.getAddress(), watch.getName());
+                }
+            }
+            if (scanning) {
+                handler.postDelayed(scanRound, SCAN_REPEAT_MILLIS);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.emerband.transport;
+
+import com.example.emerband.BLEGattUtils;
+
+/**
+ * One connection attempt to a watch: connect, subscribe to the alert
+ * characteristic, read and receive notifications.
+ *
+ * A link is used for a single connection and closed afterwards; a new
+ * attempt gets a new link. The link subscribes on its own once connected
+ * and reports {@link Listener#onReady} when setup has finished. All
+ * listener calls carry the link so callers can ignore events from links
+ * they already closed.
+ */
+public interface WatchLink {
+
+    /**
+     * Connection events and notifications, on the handler thread given to
+     * {@link WatchTransport#createLink}
+     */
+    interface Listener {
+        void onConnected(WatchLink link);
+
+        void onFailedToConnect(WatchLink link, int reason);
+
+        /**
+         * Setup finished; check {@link WatchLink#isSubscribed()} before relying on notifications
+         */
+        void onReady(WatchLink link);
+
+        void onDisconnected(WatchLink link, int reason);
+
+        /**
+         * A value was notified on the alert characteristic; the array is only valid during the call
+         */
+        void onNotification(WatchLink link, byte[] data, long receivedAtNanos);
+
+        /**
+         * A packet was notified on the raw accelerometer stream; the array is only valid during the call
+         */
+        void onImuNotification(WatchLink link, byte[] data, long receivedAtNanos);
+    }
+
+    /**
+     * Result of a remote RSSI read, on the link's handler thread
+     */
+    interface RssiCallback {
+        void onRssi(int rssi);
+
+        void onRssiFailed();
+    }
+
+    /**
+     * Connect to the watch
+     * @param address MAC address of the watch
+     * @param autoConnect false for a fast direct attempt, true to wait in the background
+     * @throws IllegalArgumentException if the address is not valid
+     */
+    void connect(String address, boolean autoConnect);
+
+    /**
+     * Drop the connection; {@link Listener#onDisconnected} follows
+     */
+    void disconnect();
+
+    /**
+     * Release the link; no listener calls follow
+     */
+    void close();
+
+    /**
+     * Whether notifications on the alert characteristic are enabled
+     */
+    boolean isSubscribed();
+
+    /**
+     * Read GPS data from the watch's GPS characteristic, if it has one
+     * @param callback Receives the GPS data (or null) on the link's handler thread
+     */
+    void readGPSData(BLEGattUtils.GPSDataCallback callback);
+
+    /**
+     * Read the signal strength of the connected watch
+     * @param callback Receives the RSSI in dBm; may never be called if the link hung
+     */
+    void readRssi(RssiCallback callback);
+
+    /**
+     * Let the link adapt to a decoded signal, e.g. raise connection priority for alerts
+     * @param signal Signal code of the frame
+     * @param receivedAtNanos System.nanoTime() when the notification arrived
+     */
+    void onSignal(char signal, long receivedAtNanos);
+
+    /**
+     * Human-readable summary of the link parameters
+     */
+    String getSummary();
+}
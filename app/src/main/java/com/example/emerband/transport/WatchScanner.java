@@ -0,0 +1,40 @@
+package com.example.emerband.transport;
+
+/**
+ * Search for advertising watches.
+ *
+ * All methods must be called on the handler's thread given to
+ * {@link WatchTransport#createScanner}.
+ */
+public interface WatchScanner {
+
+    /**
+     * Receives every device the scan finds, on the scanner's handler thread
+     */
+    interface Listener {
+        /**
+         * @param address MAC address of the device
+         * @param name Advertised name, or null if unknown
+         */
+        void onDeviceFound(String address, String name);
+    }
+
+    /**
+     * Start searching; keeps going until {@link #stop()}
+     */
+    void start();
+
+    void stop();
+
+    boolean isScanning();
+
+    /**
+     * Record that the search found a wanted device, for detection latency stats
+     */
+    void recordDetection();
+
+    /**
+     * Human-readable summary of the scan
+     */
+    String getStatsSummary();
+}
@@ -0,0 +1,31 @@
+package com.example.emerband.transport;
+
+import android.os.Handler;
+
+import com.example.emerband.ble.GattOperationStats;
+
+/**
+ * Radio layer below the watch sessions.
+ *
+ * Sessions and the registry only talk to a transport, so the same
+ * connection, decoding and dispatch logic runs against real Bluetooth
+ * ({@link com.example.emerband.ble.BleWatchTransport}) or against
+ * in-memory watches ({@link SimulatedWatchTransport}).
+ */
+public interface WatchTransport {
+
+    /**
+     * Create the scanner used to find watches
+     * @param handler Handler the scanner runs on and calls the listener on
+     * @param listener Receiver for found devices
+     */
+    WatchScanner createScanner(Handler handler, WatchScanner.Listener listener);
+
+    /**
+     * Create a link for one connection attempt
+     * @param handler Handler the link calls the listener on (the session's thread)
+     * @param stats Stats for the link's GATT operations
+     * @param listener Receiver for connection events and notifications
+     */
+    WatchLink createLink(Handler handler, GattOperationStats stats, WatchLink.Listener listener);
+}
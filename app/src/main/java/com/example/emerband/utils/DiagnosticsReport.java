@@ -0,0 +1,58 @@
+package com.example.emerband.utils;
+
+import android.content.Context;
+
+import com.example.emerband.alert.ContactAlertSender;
+import com.example.emerband.alert.LocationFollowUp;
+import com.example.emerband.alert.SmsDeliveryTracker;
+import com.example.emerband.location.LocationCache;
+import com.example.emerband.location.LocationRace;
+import com.example.emerband.metrics.AlertLatencyTracker;
+import com.example.emerband.trace.NotificationTraceRecorder;
+
+/**
+ * Builds the plain-text diagnostics report shown from the debug tools,
+ * so battery and latency numbers can be checked on a device.
+ */
+public class DiagnosticsReport {
+
+    /**
+     * Build the report from the app's trackers
+     * @param context Application context
+     * @return Report text
+     */
+    public static String build(Context context) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Wake locks\n");
+        sb.append(WakeLockTracker.getInstance(context).getSummary());
+
+        sb.append("\n\nAlert latency (from watch notification)\n");
+        sb.append(AlertLatencyTracker.getInstance().getSummary());
+
+        sb.append("\n\nAlert dispatch\n");
+        sb.append(ContactAlertSender.getInstance(context).getSummary());
+        sb.append("\nsms delivery: ").append(SmsDeliveryTracker.getInstance(context).getSummary());
+        sb.append("\nlocation follow-up: ").append(LocationFollowUp.getInstance(context).getSummary());
+
+        sb.append("\n\nLocation cache\n");
+        sb.append(LocationCache.getInstance(context).getSummary());
+        sb.append("\nrace: ").append(LocationRace.getInstance(context).getSummary());
+
+        sb.append("\n\nNotification trace\n");
+        sb.append(NotificationTraceRecorder.getInstance().getSummary());
+
+        return sb.toString();
+    }
+
+    /**
+     * Build the report plus the raw latency numbers as CSV, for sharing off the device
+     * @param context Application context
+     * @return Export text
+     */
+    public static String buildExport(Context context) {
+        return build(context)
+                + "\n\nAlert latency CSV\n"
+                + AlertLatencyTracker.getInstance().exportCsv();
+    }
+}
@@ -5,12 +5,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Location;
-import android.location.LocationListener;
-import android.location.LocationManager;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
-import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.telephony.SmsManager;
 import android.util.Log;
@@ -20,10 +19,12 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.example.emerband.R;
+import com.example.emerband.alert.AlertReport;
+import com.example.emerband.alert.ContactAlertSender;
+import com.example.emerband.alert.SmsPacker;
+import com.example.emerband.location.LocationCache;
 import com.example.emerband.models.Contact;
-import com.example.emerband.database.DatabaseHelper;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class EmergencyUtils {
@@ -56,57 +57,16 @@ public class EmergencyUtils {
         }
     }
 
-    public static void getCurrentLocation(Context context, LocationCallback callback) {
-        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
-        if (checkLocationPermission(context)) {
-            LocationListener locationListener = new LocationListener() {
-                @Override
-                public void onLocationChanged(Location location) {
-                    callback.onLocationReceived(location);
-                    locationManager.removeUpdates(this);
-                }
-
-                @Override
-                public void onStatusChanged(String provider, int status, Bundle extras) {}
-
-                @Override
-                public void onProviderEnabled(String provider) {}
-
-                @Override
-                public void onProviderDisabled(String provider) {}
-            };
-
-            locationManager.requestLocationUpdates(
-                LocationManager.GPS_PROVIDER,
-                0,
-                0,
-                locationListener
-            );
-        }
-    }
-
+    /**
+     * Send the emergency SMS to every stored contact without blocking the
+     * calling (main) thread; the outcome is shown in toasts once known
+     */
     public static void sendEmergencyMessage(Context context, String location) {
-        // Get contacts from database
-        DatabaseHelper databaseHelper = new DatabaseHelper(context);
-        List<Contact> contacts = databaseHelper.getAllContacts();
-        
-        if (contacts.isEmpty()) {
-            Toast.makeText(context, "No emergency contacts found. Please add contacts in settings.", Toast.LENGTH_LONG).show();
-            return;
-        }
-        
-        // Get current location if not provided
+        // Use the cached location if none was provided
         if (location.isEmpty() && checkLocationPermission(context)) {
-            LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
-            if (locationManager != null) {
-                try {
-                    Location lastLocation = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-                    if (lastLocation != null) {
-                        location = "http://maps.google.com/?q=" + lastLocation.getLatitude() + "," + lastLocation.getLongitude();
-                    }
-                } catch (SecurityException e) {
-                    Log.e(TAG, "Error getting location", e);
-                }
+            Location lastLocation = LocationCache.getInstance(context).getBestLocation();
+            if (lastLocation != null) {
+                location = "http://maps.google.com/?q=" + lastLocation.getLatitude() + "," + lastLocation.getLongitude();
             }
         }
         
@@ -116,22 +76,26 @@ public class EmergencyUtils {
             message += "\nMy current location: " + location;
         }
         
-        // Send SMS to all contacts
-        SmsManager smsManager = SmsManager.getDefault();
-        int successCount = 0;
+        // Drop the emoji if that saves SMS segments
+        message = SmsPacker.packText(message);
         
-        for (Contact contact : contacts) {
-            try {
-                // Split message if too long
-                ArrayList<String> parts = smsManager.divideMessage(message);
-                smsManager.sendMultipartTextMessage(contact.getPhone(), null, parts, null, null);
-                Log.d(TAG, "SMS sent to: " + contact.getName() + " (" + contact.getPhone() + ")");
-                successCount++;
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to send SMS to " + contact.getName(), e);
-                Toast.makeText(context, "Failed to send SMS to " + contact.getName(), Toast.LENGTH_SHORT).show();
-            }
+        // Send SMS to all contacts, in parallel, and report back on the main thread
+        Context appContext = context.getApplicationContext();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        ContactAlertSender.getInstance(context).sendAsync(message, true, false,
+                report -> mainHandler.post(() -> showSmsReport(appContext, report)));
+    }
+
+    private static void showSmsReport(Context context, AlertReport report) {
+        if (report.getOutcomes().isEmpty()) {
+            Toast.makeText(context, "No emergency contacts found. Please add contacts in settings.", Toast.LENGTH_LONG).show();
+            return;
+        }
+        for (AlertReport.Outcome failure : report.getFailures()) {
+            Log.e(TAG, "Failed to send SMS to " + failure.getName() + ": " + failure.getError());
+            Toast.makeText(context, "Failed to send SMS to " + failure.getName(), Toast.LENGTH_SHORT).show();
         }
+        int successCount = report.getCount(AlertReport.Kind.SMS, AlertReport.Status.SENT);
         
         // Show confirmation message
         Toast.makeText(context, "Emergency triggered! Message sent to " + successCount + " contact(s)", Toast.LENGTH_LONG).show();
@@ -224,8 +188,4 @@ public class EmergencyUtils {
         }
         Toast.makeText(context, "Emergency alerts sent to all contacts", Toast.LENGTH_SHORT).show();
     }
-
-    public interface LocationCallback {
-        void onLocationReceived(Location location);
-    }
 } 
\ No newline at end of file
@@ -40,6 +40,11 @@ public class ResourceManager {
     public static final String KEY_USER_NAME = "userName";
     public static final String KEY_EMERGENCY_CONTACTS = "emergencyContacts";
     public static final String KEY_SETUP_COMPLETED = "setupCompleted";
+    public static final String KEY_WATCH_ADDRESSES = "watchAddresses";
+    public static final String KEY_LOCATION_FOLLOW_UP_WINDOW = "locationFollowUpWindow";
+    
+    // Time after an alert to look for a better location
+    public static final long DEFAULT_LOCATION_FOLLOW_UP_WINDOW_MS = 60000;
     
     // MediaPlayer instances for different sounds
     private static MediaPlayer emergencySirenPlayer;
@@ -80,6 +85,62 @@ public class ResourceManager {
         prefs.edit().putBoolean(KEY_SETUP_COMPLETED, completed).apply();
     }
     
+    /**
+     * Get the addresses of the watches the service has connected to
+     * @param context Application context
+     * @return MAC addresses, empty if no watch has been connected yet
+     */
+    public static List<String> getWatchAddresses(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String addressesString = prefs.getString(KEY_WATCH_ADDRESSES, "");
+        
+        List<String> addresses = new ArrayList<>();
+        for (String address : addressesString.split(",")) {
+            if (!address.trim().isEmpty()) {
+                addresses.add(address.trim());
+            }
+        }
+        return addresses;
+    }
+    
+    /**
+     * Remember the watch addresses so the service can reconnect without scanning
+     * @param context Application context
+     * @param addresses MAC addresses of the watches
+     */
+    public static void saveWatchAddresses(Context context, List<String> addresses) {
+        StringBuilder sb = new StringBuilder();
+        for (String address : addresses) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(address);
+        }
+        
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putString(KEY_WATCH_ADDRESSES, sb.toString()).apply();
+    }
+    
+    /**
+     * Get how long after an alert a better location is looked for, to be sent in a follow-up SMS
+     * @param context Application context
+     * @return Window in milliseconds, 60 s by default; 0 means no follow-up
+     */
+    public static long getLocationFollowUpWindowMillis(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getLong(KEY_LOCATION_FOLLOW_UP_WINDOW, DEFAULT_LOCATION_FOLLOW_UP_WINDOW_MS);
+    }
+    
+    /**
+     * Set how long after an alert a better location is looked for
+     * @param context Application context
+     * @param windowMillis Window in milliseconds, or 0 to send no follow-up
+     */
+    public static void setLocationFollowUpWindowMillis(Context context, long windowMillis) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putLong(KEY_LOCATION_FOLLOW_UP_WINDOW, Math.max(0, windowMillis)).apply();
+    }
+    
     /**
      * Get emergency contacts from SharedPreferences
      * @param context Application context
@@ -0,0 +1,219 @@
+package com.example.emerband.utils;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Central owner of the app's partial wake locks.
+ *
+ * Wake locks are taken per reason around a unit of real work and always
+ * with a timeout. Acquisitions for the same reason are reference counted
+ * and share one wake lock. Each acquisition returns a {@link Token} to
+ * release it with; once the timeout has fired, tokens from before it are
+ * ignored, so work that finishes late cannot release a newer acquisition.
+ * The tracker records how long each reason held the CPU awake, how often
+ * it was taken and how often the timeout fired before the work released it.
+ */
+public class WakeLockTracker {
+    private static final String TAG = "WakeLockTracker";
+
+    // Wake lock reasons
+    public static final String REASON_SIGNAL_DISPATCH = "signalDispatch";
+    public static final String REASON_OFFLINE_DRAIN = "offlineDrain";
+    public static final String REASON_LOCATION = "location";
+    public static final String REASON_SMS_RETRY = "smsRetry";
+
+    /**
+     * One acquisition, to be released once
+     */
+    public static final class Token {
+        private final String reason;
+        private final long generation;
+        private boolean released;
+
+        private Token(String reason, long generation) {
+            this.reason = reason;
+            this.generation = generation;
+        }
+    }
+
+    private static WakeLockTracker instance;
+
+    private final PowerManager powerManager;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final long createdAt;
+
+    private WakeLockTracker(Context context) {
+        this.powerManager = (PowerManager) context.getApplicationContext()
+                .getSystemService(Context.POWER_SERVICE);
+        this.createdAt = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Get the singleton instance of WakeLockTracker
+     */
+    public static synchronized WakeLockTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new WakeLockTracker(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Keep the CPU awake for the given reason until every token is passed
+     * to {@link #release(Token)}, or until the timeout passes
+     * @param reason One of the REASON_ constants
+     * @param timeoutMillis Upper bound on how long the lock is held
+     * @return Token to release this acquisition with
+     */
+    public synchronized Token acquire(String reason, long timeoutMillis) {
+        Entry entry = entries.get(reason);
+        if (entry == null) {
+            entry = new Entry(reason);
+            entries.put(reason, entry);
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        entry.expireIfTimedOut(now);
+
+        if (entry.count == 0) {
+            entry.heldSince = now;
+            entry.generation++;
+        }
+        entry.count++;
+        entry.acquisitions++;
+        entry.deadline = Math.max(entry.deadline, now + timeoutMillis);
+
+        if (entry.wakeLock != null) {
+            // Not reference counted: the latest timeout replaces the previous one
+            entry.wakeLock.acquire(entry.deadline - now);
+        }
+        return new Token(reason, entry.generation);
+    }
+
+    /**
+     * Release one acquisition; a token released twice, or taken before the
+     * lock last timed out, is ignored
+     */
+    public synchronized void release(Token token) {
+        if (token == null || token.released) {
+            return;
+        }
+        token.released = true;
+        Entry entry = entries.get(token.reason);
+        long now = SystemClock.elapsedRealtime();
+        if (entry.expireIfTimedOut(now) || entry.count == 0 || token.generation != entry.generation) {
+            return;
+        }
+
+        entry.count--;
+        if (entry.count == 0) {
+            entry.totalHeldMillis += now - entry.heldSince;
+            entry.deadline = 0;
+            if (entry.wakeLock != null && entry.wakeLock.isHeld()) {
+                entry.wakeLock.release();
+            }
+        }
+    }
+
+    /**
+     * Get the total time the wake lock for a reason has been held, including now
+     */
+    public synchronized long getHeldMillis(String reason) {
+        Entry entry = entries.get(reason);
+        return entry == null ? 0 : entry.heldMillis(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Get how many times a wake lock was requested for a reason
+     */
+    public synchronized long getAcquireCount(String reason) {
+        Entry entry = entries.get(reason);
+        return entry == null ? 0 : entry.acquisitions;
+    }
+
+    /**
+     * Get how many times the timeout released the lock before the work did
+     */
+    public synchronized long getTimeoutCount(String reason) {
+        Entry entry = entries.get(reason);
+        return entry == null ? 0 : entry.timeouts;
+    }
+
+    /**
+     * Human-readable summary of wake lock use per reason since the process started
+     */
+    public synchronized String getSummary() {
+        long now = SystemClock.elapsedRealtime();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Tracked for ").append((now - createdAt) / 1000).append(" s\n");
+
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            long held = entry.heldMillis(now);
+            total += held;
+            sb.append(entry.reason)
+                    .append(": held=").append(held).append("ms")
+                    .append(" n=").append(entry.acquisitions)
+                    .append(" timeouts=").append(entry.timeouts)
+                    .append(entry.count > 0 ? " (held now)" : "")
+                    .append('\n');
+        }
+        sb.append("total: ").append(total).append("ms");
+        return sb.toString();
+    }
+
+    /**
+     * Per-reason wake lock and counters
+     */
+    private final class Entry {
+        final String reason;
+        final PowerManager.WakeLock wakeLock;
+        int count;
+        // Counts the periods the lock was held; tokens of an earlier one are stale
+        long generation;
+        long heldSince;
+        long deadline;
+        long totalHeldMillis;
+        long acquisitions;
+        long timeouts;
+
+        Entry(String reason) {
+            this.reason = reason;
+            if (powerManager != null) {
+                wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Emerband:" + reason);
+                wakeLock.setReferenceCounted(false);
+            } else {
+                wakeLock = null;
+            }
+        }
+
+        /**
+         * Account for a lock the system already released because its timeout passed
+         * @return true if the lock had timed out
+         */
+        boolean expireIfTimedOut(long now) {
+            if (count > 0 && now >= deadline) {
+                Log.w(TAG, "Wake lock timed out: " + reason);
+                totalHeldMillis += deadline - heldSince;
+                timeouts++;
+                count = 0;
+                deadline = 0;
+                return true;
+            }
+            return false;
+        }
+
+        long heldMillis(long now) {
+            if (count == 0) {
+                return totalHeldMillis;
+            }
+            return totalHeldMillis + Math.min(now, deadline) - heldSince;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.emerband;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the bytes the current thread allocates on the heap, for tests
+ * that check a hot path does not allocate.
+ *
+ * Uses the HotSpot extension of ThreadMXBean; on other JVMs
+ * {@link #isSupported()} is false and such checks should be skipped.
+ */
+public final class AllocationMeter {
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    public AllocationMeter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean hotspot = bean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        if (hotspot != null && hotspot.isThreadAllocatedMemorySupported()) {
+            hotspot.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            hotspot = null;
+        }
+        this.threads = hotspot;
+    }
+
+    public boolean isSupported() {
+        return threads != null;
+    }
+
+    /**
+     * Get the bytes allocated by the current thread so far
+     */
+    public long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
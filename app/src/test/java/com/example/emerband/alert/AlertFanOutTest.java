@@ -0,0 +1,105 @@
+package com.example.emerband.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.models.Contact;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class AlertFanOutTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Channel whose sends all wait until every send has started
+     */
+    private static final class BarrierChannel implements AlertFanOut.Channel {
+        final CountDownLatch started;
+
+        BarrierChannel(int sends) {
+            started = new CountDownLatch(sends);
+        }
+
+        @Override
+        public void sendSms(long alertId, Contact recipient, String message) {
+            await();
+        }
+
+        @Override
+        public void startCall(String phone) {
+            await();
+        }
+
+        private void await() {
+            started.countDown();
+            try {
+                if (!started.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("sends did not run together");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    public void callAndSmsStartTogether() {
+        BarrierChannel channel = new BarrierChannel(3);
+        AlertFanOut fanOut = new AlertFanOut(channel, executor, 10000);
+        Contact first = new Contact("A", "111");
+        AlertReport report = fanOut.dispatch(1, Arrays.asList(first, new Contact("B", "222")), "help", first);
+
+        assertEquals(3, report.getOutcomes().size());
+        assertEquals(AlertReport.Kind.CALL, report.getOutcomes().get(0).getKind());
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals(2, report.getCount(AlertReport.Kind.SMS, AlertReport.Status.SENT));
+    }
+
+    @Test
+    public void slowSendIsReportedAtTheDeadline() {
+        CountDownLatch never = new CountDownLatch(1);
+        AlertFanOut fanOut = new AlertFanOut(new AlertFanOut.Channel() {
+            @Override
+            public void sendSms(long alertId, Contact recipient, String message) {
+                if (recipient.getPhone().equals("222")) {
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void startCall(String phone) {
+                throw new SecurityException("no permission");
+            }
+        }, executor, 200);
+
+        long startedAt = System.nanoTime();
+        AlertReport report = fanOut.dispatch(2,
+                Arrays.asList(new Contact("A", "111"), new Contact("B", "222"), new Contact("C", " 111 ")),
+                "help", new Contact("A", "111"));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 2000);
+        // The repeated number is sent once
+        assertEquals(3, report.getOutcomes().size());
+        assertEquals(1, report.getCount(AlertReport.Kind.CALL, AlertReport.Status.FAILED));
+        assertEquals(1, report.getCount(AlertReport.Kind.SMS, AlertReport.Status.SENT));
+        assertEquals(1, report.getCount(AlertReport.Kind.SMS, AlertReport.Status.TIMED_OUT));
+    }
+}
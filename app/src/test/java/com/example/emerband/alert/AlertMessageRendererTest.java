@@ -0,0 +1,121 @@
+package com.example.emerband.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.AllocationMeter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+public class AlertMessageRendererTest {
+
+    // 2024-03-01 10:15:30 UTC
+    private static final long TIME_MILLIS = 1709288130000L;
+
+    private static final int WARM_UP_MESSAGES = 20000;
+    private static final int MEASURED_MESSAGES = 200000;
+
+    // Allowance per message beyond its returned String (object headers, rounding)
+    private static final long MAX_OVERHEAD_BYTES = 64;
+
+    // Far below what rendering reaches, so only a gross regression fails
+    private static final long MIN_MESSAGES_PER_SECOND = 10000;
+
+    private TimeZone defaultZone;
+
+    @Before
+    public void setUp() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private static String coordinate(double degrees) {
+        StringBuilder sb = new StringBuilder();
+        AlertMessageRenderer.appendCoordinate(sb, degrees);
+        return sb.toString();
+    }
+
+    @Test
+    public void coordinatesDropTrailingZeros() {
+        assertEquals("12.9716", coordinate(12.9716));
+        assertEquals("-0.5", coordinate(-0.5));
+        assertEquals("77.0", coordinate(77));
+        assertEquals("0.0", coordinate(-0.0000001));
+        assertEquals("-122.419416", coordinate(-122.4194155));
+    }
+
+    @Test
+    public void emergencyCarriesNameLocationAndTimeInTheFirstSegment() {
+        AlertMessageRenderer renderer = AlertMessageRenderer.forCurrentThread();
+        String message = renderer.renderEmergency("Asha", 12.9716, 77.5946, 15, 5000, TIME_MILLIS);
+
+        assertTrue(message, message.contains("Asha"));
+        assertTrue(message, message.contains("12.9716") && message.contains("77.5946"));
+        assertTrue(message, message.contains(" (within 15 m)"));
+        assertTrue(message, message.contains("2024-03-01 10:15:30"));
+        assertTrue(message, message.contains("maps.google.com/maps?q=12.9716,77.5946"));
+        assertEquals(renderer.getLastLength().getSegments(), new GsmAlphabet().measure(message).getSegments());
+    }
+
+    @Test
+    public void emojiHeadingIsDroppedWhenItCostsASegment() {
+        AlertMessageRenderer renderer = AlertMessageRenderer.forCurrentThread();
+        String message = renderer.renderEmergencyWithoutLocation("Asha", TIME_MILLIS);
+        assertTrue(message, message.startsWith("SOS Emergency Alert SOS\nName: Asha\n"));
+        assertFalse(renderer.getLastLength().isUnicode());
+        assertEquals(1, renderer.getLastLength().getSegments());
+    }
+
+    @Test
+    public void nameWithoutGsmFormKeepsUcs2() {
+        AlertMessageRenderer renderer = AlertMessageRenderer.forCurrentThread();
+        String message = renderer.renderEmergency("\u0906\u0936\u093E", 12.9716, 77.5946, TIME_MILLIS);
+        assertTrue(message, message.contains("\u0906\u0936\u093E"));
+        assertTrue(renderer.getLastLength().isUnicode());
+        assertFalse(GsmAlphabet.isEncodable(message));
+    }
+
+    @Test
+    public void renderingAllocatesOnlyTheReturnedText() {
+        AllocationMeter meter = new AllocationMeter();
+        if (!meter.isSupported()) {
+            return;
+        }
+        AlertMessageRenderer renderer = AlertMessageRenderer.forCurrentThread();
+        long chars = render(renderer, WARM_UP_MESSAGES);
+        long before = meter.allocatedBytes();
+        long startedAt = System.nanoTime();
+        chars = render(renderer, MEASURED_MESSAGES);
+        long elapsedNanos = System.nanoTime() - startedAt;
+        long allocated = meter.allocatedBytes() - before;
+
+        // A UCS-2 String takes two bytes per char
+        long budget = 2 * chars + MAX_OVERHEAD_BYTES * MEASURED_MESSAGES;
+        assertTrue("allocated " + allocated + " bytes for " + chars + " chars", allocated <= budget);
+        long messagesPerSecond = MEASURED_MESSAGES * 1000000000L / Math.max(1, elapsedNanos);
+        assertTrue(messagesPerSecond + " messages/s", messagesPerSecond >= MIN_MESSAGES_PER_SECOND);
+    }
+
+    /**
+     * Render messages seconds apart within one minute
+     * @return Total length of the messages
+     */
+    private static long render(AlertMessageRenderer renderer, int count) {
+        long chars = 0;
+        for (int i = 0; i < count; i++) {
+            chars += renderer.renderEmergency("Asha", 12.9716 + i % 7 * 0.0001, 77.5946, 12, 3000,
+                    TIME_MILLIS - 30000 + i % 60 * 1000).length();
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.emerband.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GsmAlphabetTest {
+
+    private static final String SIREN = "\uD83D\uDEA8";
+
+    private final GsmAlphabet alphabet = new GsmAlphabet();
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void gsmTextFitsOneSegmentUpTo160Septets() {
+        SmsLength length = alphabet.measure(repeat('a', 160));
+        assertFalse(length.isUnicode());
+        assertEquals(160, length.getCodeUnits());
+        assertEquals(1, length.getSegments());
+
+        length = alphabet.measure(repeat('a', 161));
+        assertEquals(2, length.getSegments());
+        assertEquals(GsmAlphabet.GSM_MULTIPART_SEGMENT, length.getUnitsPerSegment());
+    }
+
+    @Test
+    public void extensionCharactersTakeTwoSeptets() {
+        assertEquals(2, GsmAlphabet.septets('{'));
+        assertEquals(2, GsmAlphabet.septets('\u20AC'));
+        assertEquals(1, GsmAlphabet.septets('\u00E9'));
+        assertEquals(0, GsmAlphabet.septets('`'));
+        // 80 braces are 160 septets, one more spills into a second segment
+        assertEquals(1, alphabet.measure(repeat('{', 80)).getSegments());
+        assertEquals(2, alphabet.measure(repeat('{', 80) + "a").getSegments());
+    }
+
+    @Test
+    public void oneEmojiSwitchesTheMessageToUcs2() {
+        SmsLength length = alphabet.measure(SIREN + repeat('a', 68));
+        assertTrue(length.isUnicode());
+        assertEquals(70, length.getCodeUnits());
+        assertEquals(1, length.getSegments());
+
+        length = alphabet.measure(SIREN + repeat('a', 69));
+        assertEquals(2, length.getSegments());
+        assertEquals(GsmAlphabet.UCS2_MULTIPART_SEGMENT, length.getUnitsPerSegment());
+    }
+
+    @Test
+    public void foldKeepsTheMeaningInTheAlphabet() {
+        assertEquals("!! Help \"now\" - \u00E9 S...",
+                GsmAlphabet.fold(SIREN + " Help \u201Cnow\u201D \u2014 \u00E9 \u015E\u2026"));
+        assertTrue(GsmAlphabet.isEncodable(GsmAlphabet.fold("Gr\u00FC\u00DFe \u00E7a va")));
+        assertNull(GsmAlphabet.fold("\u4F60\u597D"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.emerband.alert;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MessageTemplateTest {
+
+    private static final MessageTemplate.FieldSource NAMES =
+            (field, out) -> out.append(field == 0 ? "Asha" : "12.5");
+
+    @Test
+    public void rendersLiteralsAndFields() {
+        MessageTemplate template = MessageTemplate.compile("Name: {name} at {lat}, {lat}!", "name", "lat");
+        StringBuilder out = new StringBuilder();
+        template.render(out, NAMES);
+        assertEquals("Name: Asha at 12.5, 12.5!", out.toString());
+        assertEquals("Name:  at , !".length(), template.getLiteralLength());
+    }
+
+    @Test
+    public void layoutWithoutFieldsIsCopied() {
+        StringBuilder out = new StringBuilder("> ");
+        MessageTemplate.compile("plain", "name").render(out, NAMES);
+        assertEquals("> plain", out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFieldIsRejected() {
+        MessageTemplate.compile("Hello {nmae}", "name");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unclosedFieldIsRejected() {
+        MessageTemplate.compile("Hello {name", "name");
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.emerband.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SmsPackerTest {
+
+    private static final String SIREN = "\uD83D\uDEA8";
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void emojiIsKeptWhenItCostsNoSegment() {
+        String text = SIREN + " EMERGENCY ALERT! I need help!";
+        assertEquals(text, SmsPacker.packText(text));
+    }
+
+    @Test
+    public void emojiIsDroppedWhenThatSavesSegments() {
+        String text = SIREN + " EMERGENCY ALERT! " + repeat('x', 100);
+        String packed = SmsPacker.packText(text);
+        assertEquals("!! EMERGENCY ALERT! " + repeat('x', 100), packed);
+        assertEquals(1, new GsmAlphabet().measure(packed).getSegments());
+        assertEquals(2, new GsmAlphabet().measure(text).getSegments());
+    }
+
+    @Test
+    public void candidateWithTheCriticalPrefixInTheFirstSegmentWins() {
+        SmsPacker packer = new SmsPacker();
+        packer.reset();
+        // Two segments, but the critical prefix spills past the first one
+        assertTrue(packer.offer(repeat('a', 200), 160));
+        // More segments, but the prefix fits
+        assertTrue(packer.offer(repeat('a', 400), 100));
+        assertEquals(3, packer.getBestLength().getSegments());
+        // Fewer segments that also fit win
+        assertTrue(packer.offer(repeat('a', 300), 100));
+        // Equal candidates keep the earlier one
+        assertFalse(packer.offer(repeat('b', 300), 100));
+        assertEquals(2, packer.getBestLength().getSegments());
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.emerband.alert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SmsRetryPolicyTest {
+
+    @Test
+    public void delayDoublesUpToTheCap() {
+        assertEquals(3000, SmsRetryPolicy.retryDelayMillis(1));
+        assertEquals(6000, SmsRetryPolicy.retryDelayMillis(2));
+        assertEquals(12000, SmsRetryPolicy.retryDelayMillis(3));
+        assertEquals(48000, SmsRetryPolicy.retryDelayMillis(5));
+        assertEquals(SmsRetryPolicy.MAX_RETRY_DELAY_MS, SmsRetryPolicy.retryDelayMillis(6));
+        assertEquals(SmsRetryPolicy.MAX_RETRY_DELAY_MS, SmsRetryPolicy.retryDelayMillis(1000));
+    }
+
+    @Test
+    public void retriesStopAfterMaxAttempts() {
+        assertTrue(SmsRetryPolicy.shouldRetry(1));
+        assertTrue(SmsRetryPolicy.shouldRetry(SmsRetryPolicy.MAX_ATTEMPTS - 1));
+        assertFalse(SmsRetryPolicy.shouldRetry(SmsRetryPolicy.MAX_ATTEMPTS));
+    }
+
+    @Test
+    public void deliveryStatusRanges() {
+        assertEquals(SmsRetryPolicy.DELIVERY_COMPLETE, SmsRetryPolicy.classifyDeliveryStatus(0x00));
+        assertEquals(SmsRetryPolicy.DELIVERY_COMPLETE, SmsRetryPolicy.classifyDeliveryStatus(0x1F));
+        assertEquals(SmsRetryPolicy.DELIVERY_PENDING, SmsRetryPolicy.classifyDeliveryStatus(0x20));
+        assertEquals(SmsRetryPolicy.DELIVERY_PENDING, SmsRetryPolicy.classifyDeliveryStatus(0x3F));
+        assertEquals(SmsRetryPolicy.DELIVERY_FAILED, SmsRetryPolicy.classifyDeliveryStatus(0x40));
+        assertEquals(SmsRetryPolicy.DELIVERY_FAILED, SmsRetryPolicy.classifyDeliveryStatus(0x65));
+    }
+}
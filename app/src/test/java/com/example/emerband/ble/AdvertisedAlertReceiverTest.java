@@ -0,0 +1,191 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class AdvertisedAlertReceiverTest {
+
+    private static final String WATCH = "AA:BB:CC:DD:EE:01";
+    private static final String OTHER_WATCH = "AA:BB:CC:DD:EE:02";
+    private static final long START_NANOS = TimeUnit.SECONDS.toNanos(100);
+
+    // Two frames in the same scan window
+    private static final long REPEAT_MILLIS = 100;
+
+    // Longer than the watch advertises one alert, plus the margin for scan gaps
+    private static final long FORGET_MILLIS = AdvertisedAlertReceiver.ALERT_ADVERTISE_MILLIS + 5001;
+
+    private final List<String> delivered = new ArrayList<>();
+    private AdvertisedAlertReceiver receiver;
+    private long nowNanos;
+
+    @Before
+    public void setUp() {
+        // The frame is reused, so keep what matters as text
+        receiver = new AdvertisedAlertReceiver((address, frame, receivedAtNanos) ->
+                delivered.add(address + " " + frame.getSignal() + frame.getSequence()));
+        nowNanos = START_NANOS;
+    }
+
+    @Test
+    public void filterMatchesOnlyTheMagicByte() {
+        byte[] data = AdvertisedAlertReceiver.getFilterData();
+        byte[] mask = AdvertisedAlertReceiver.getFilterMask();
+        assertEquals(AdvertisedAlertReceiver.DATA_LENGTH, data.length);
+        assertEquals(data.length, mask.length);
+        assertEquals(AdvertisedAlertReceiver.MAGIC, data[0]);
+        byte[] expectedMask = new byte[mask.length];
+        expectedMask[0] = (byte) 0xFF;
+        assertArrayEquals(expectedMask, mask);
+    }
+
+    @Test
+    public void advertisementsWithoutAnAlertAreIgnored() {
+        byte[] alert = advertised(WatchFrameDecoderTest.bootIdFrame('E', 1, 7, true));
+        assertFalse(receive(null, alert));
+        assertFalse(receive(WATCH, null));
+        assertFalse(receive(WATCH, new byte[0]));
+        byte[] idle = alert.clone();
+        idle[0] = 0;
+        assertFalse(receive(WATCH, idle));
+
+        assertTrue(delivered.isEmpty());
+        assertTrue(receiver.getSummary(), receiver.getSummary().startsWith("advertisements=0 "));
+    }
+
+    @Test
+    public void frameAfterTheMagicByteIsDecoded() {
+        final WatchFrame[] seen = new WatchFrame[1];
+        receiver = new AdvertisedAlertReceiver((address, frame, receivedAtNanos) -> {
+            seen[0] = new WatchFrame();
+            seen[0].copyFrom(frame);
+        });
+        assertTrue(receive(WATCH, advertised(WatchFrameDecoderTest.bootIdFrame('E', 42, 7, true))));
+
+        assertEquals('E', seen[0].getSignal());
+        assertEquals(42, seen[0].getSequence());
+        assertEquals(7, seen[0].getBootId());
+        assertTrue(seen[0].hasLocation());
+        assertEquals(1, receiver.getAlertCount());
+    }
+
+    @Test
+    public void olderWatchFrameIsDecoded() {
+        assertTrue(receive(WATCH, advertised(WatchFrameDecoderTest.sequenceFrame('A', 5, false))));
+        assertEquals(WATCH + " A5", delivered.get(0));
+    }
+
+    @Test
+    public void frameWithoutASequenceIsRejected() {
+        // Every repeat of it would look like a new alert
+        assertFalse(receive(WATCH, advertised(WatchFrameDecoderTest.legacyFrame('E', true))));
+        assertFalse(receive(WATCH, new byte[] {AdvertisedAlertReceiver.MAGIC}));
+        assertTrue(delivered.isEmpty());
+        assertTrue(receiver.getSummary(), receiver.getSummary().contains(" rejected=2 "));
+    }
+
+    @Test
+    public void repeatsOfOneAlertAreDeliveredOnce() {
+        byte[] alert = advertised(WatchFrameDecoderTest.bootIdFrame('E', 3, 7, true));
+        for (int i = 0; i < 300; i++) {
+            receive(WATCH, alert);
+            advance(REPEAT_MILLIS);
+        }
+        assertEquals(1, delivered.size());
+        assertTrue(receiver.getSummary(), receiver.getSummary().contains(" alerts=1 repeats=299 "));
+
+        assertTrue(receive(WATCH, advertised(WatchFrameDecoderTest.bootIdFrame('X', 4, 7, false))));
+        assertEquals(WATCH + " X4", delivered.get(1));
+    }
+
+    @Test
+    public void watchesAreDedupedSeparately() {
+        byte[] alert = advertised(WatchFrameDecoderTest.bootIdFrame('E', 3, 7, true));
+        assertTrue(receive(WATCH, alert));
+        assertTrue(receive(OTHER_WATCH, alert));
+        assertFalse(receive(WATCH, alert));
+        assertFalse(receive(OTHER_WATCH, alert));
+        assertEquals(2, delivered.size());
+    }
+
+    @Test
+    public void alertAfterARebootIsDeliveredAtOnce() {
+        for (int sequence = 0; sequence <= 10; sequence++) {
+            assertTrue(receive(WATCH, advertised(WatchFrameDecoderTest.bootIdFrame('A', sequence, 7, false))));
+            advance(REPEAT_MILLIS);
+        }
+        // The counter starts again from 0 with a new boot id, well inside the silence timeout
+        assertTrue(receive(WATCH, advertised(WatchFrameDecoderTest.bootIdFrame('E', 0, 8, true))));
+        assertEquals(WATCH + " E0", delivered.get(11));
+    }
+
+    @Test
+    public void olderWatchAlertAfterARebootIsDeliveredOnceTheOldAlertIsOver() {
+        for (int sequence = 0; sequence <= 10; sequence++) {
+            assertTrue(receive(WATCH, advertised(WatchFrameDecoderTest.sequenceFrame('A', sequence, false))));
+            advance(REPEAT_MILLIS);
+        }
+        byte[] afterReboot = advertised(WatchFrameDecoderTest.sequenceFrame('E', 0, false));
+
+        // Without a boot id this could still be a repeat of an old advertisement
+        assertFalse(receive(WATCH, afterReboot));
+
+        advance(FORGET_MILLIS);
+        assertTrue(receive(WATCH, afterReboot));
+        assertEquals(WATCH + " E0", delivered.get(11));
+    }
+
+    @Test
+    public void leastRecentlyHeardWatchIsForgottenFirst() {
+        byte[] alert = advertised(WatchFrameDecoderTest.bootIdFrame('E', 3, 7, true));
+        for (int i = 0; i < 9; i++) {
+            assertTrue(receive("AA:BB:CC:DD:EE:1" + i, alert));
+        }
+        assertTrue(receiver.getSummary(), receiver.getSummary().contains(" watches=8 "));
+
+        // The last eight are still known; the first one starts over
+        assertFalse(receive("AA:BB:CC:DD:EE:18", alert));
+        assertFalse(receive("AA:BB:CC:DD:EE:11", alert));
+        assertTrue(receive("AA:BB:CC:DD:EE:10", alert));
+    }
+
+    @Test
+    public void deliveryDelayIsSummarised() {
+        receiver.onManufacturerData(WATCH, advertised(WatchFrameDecoderTest.bootIdFrame('E', 1, 7, false)),
+                nowNanos, TimeUnit.MILLISECONDS.toNanos(40));
+        receiver.onManufacturerData(WATCH, advertised(WatchFrameDecoderTest.bootIdFrame('E', 2, 7, false)),
+                nowNanos, TimeUnit.MILLISECONDS.toNanos(20));
+        // Repeats do not count towards the delay
+        receiver.onManufacturerData(WATCH, advertised(WatchFrameDecoderTest.bootIdFrame('E', 2, 7, false)),
+                nowNanos, TimeUnit.MILLISECONDS.toNanos(900));
+        assertTrue(receiver.getSummary(), receiver.getSummary().endsWith(" delivery avg=30ms max=40ms"));
+    }
+
+    private boolean receive(String address, byte[] data) {
+        return receiver.onManufacturerData(address, data, nowNanos, 0);
+    }
+
+    private void advance(long millis) {
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Manufacturer data as the watch advertises it: the magic byte, then the frame up to the boot id
+     */
+    private static byte[] advertised(byte[] frame) {
+        int length = Math.min(frame.length, WatchFrameDecoder.BOOT_ID_FRAME_LENGTH);
+        byte[] data = new byte[AdvertisedAlertReceiver.FRAME_OFFSET + length];
+        data[0] = AdvertisedAlertReceiver.MAGIC;
+        System.arraycopy(frame, 0, data, AdvertisedAlertReceiver.FRAME_OFFSET, length);
+        return data;
+    }
+}
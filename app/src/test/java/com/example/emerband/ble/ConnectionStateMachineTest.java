@@ -0,0 +1,166 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ConnectionStateMachineTest {
+
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+
+    /**
+     * Records the requested side effects as strings
+     */
+    private static final class RecordingActions implements ConnectionStateMachine.Actions {
+        final List<String> log = new ArrayList<>();
+        long lastRetryDelay = -1;
+
+        @Override
+        public void startScan() {
+            log.add("scan");
+        }
+
+        @Override
+        public void stopScan() {
+            log.add("stopScan");
+        }
+
+        @Override
+        public void connect(String address, boolean autoConnect) {
+            log.add(autoConnect ? "autoConnect " + address : "connect " + address);
+        }
+
+        @Override
+        public void closeConnection() {
+            log.add("close");
+        }
+
+        @Override
+        public void scheduleRetry(long delayMillis) {
+            lastRetryDelay = delayMillis;
+            log.add("retry");
+        }
+
+        @Override
+        public void cancelRetry() {
+            log.add("cancelRetry");
+        }
+
+        @Override
+        public void saveKnownAddress(String address) {
+            log.add("save " + address);
+        }
+
+        String last() {
+            return log.get(log.size() - 1);
+        }
+    }
+
+    private RecordingActions actions;
+    private ConnectionStateMachine machine;
+
+    @Before
+    public void setUp() {
+        actions = new RecordingActions();
+        machine = new ConnectionStateMachine(actions, new ReconnectBackoff(1000, 30000, new Random(1)), null);
+    }
+
+    private void connectFromScan() {
+        machine.start();
+        machine.onDeviceFound(ADDRESS);
+        machine.onConnected();
+        machine.onReady();
+    }
+
+    @Test
+    public void firstConnectScansAndRemembersTheWatch() {
+        machine.start();
+        assertEquals(ConnectionStateMachine.State.SCANNING, machine.getState());
+        machine.onDeviceFound(ADDRESS);
+        assertEquals("connect " + ADDRESS, actions.last());
+        machine.onConnected();
+        machine.onReady();
+        assertEquals(ConnectionStateMachine.State.CONNECTED, machine.getState());
+        assertTrue(actions.log.contains("save " + ADDRESS));
+    }
+
+    @Test
+    public void linkDropReconnectsDirectlyWithoutScanning() {
+        connectFromScan();
+        actions.log.clear();
+        machine.onDisconnected();
+        assertEquals(ConnectionStateMachine.State.CONNECTING, machine.getState());
+        assertEquals("connect " + ADDRESS, actions.last());
+        assertFalse(actions.log.contains("scan"));
+
+        machine.onConnected();
+        machine.onReady();
+        assertEquals(1, machine.getReconnectCount());
+    }
+
+    @Test
+    public void failedAttemptsBackOffWithAutoConnectThenScan() {
+        connectFromScan();
+        machine.onDisconnected();
+        for (int failure = 1; failure <= 5; failure++) {
+            machine.onDisconnected();
+            assertEquals(ConnectionStateMachine.State.WAITING_TO_RETRY, machine.getState());
+            long cap = Math.min(30000, 1000L << (failure - 1));
+            assertTrue(actions.lastRetryDelay >= cap / 2 && actions.lastRetryDelay <= cap);
+            machine.onRetryTimer();
+            if (failure < 5) {
+                assertEquals("autoConnect " + ADDRESS, actions.last());
+            }
+        }
+        // The watch may have a new address
+        assertEquals(ConnectionStateMachine.State.SCANNING, machine.getState());
+        assertEquals("scan", actions.last());
+    }
+
+    @Test
+    public void adapterOffWaitsAndReconnectsWhenOn() {
+        connectFromScan();
+        machine.onAdapterOff();
+        assertEquals(ConnectionStateMachine.State.ADAPTER_OFF, machine.getState());
+        machine.onRetryTimer();
+        assertEquals(ConnectionStateMachine.State.ADAPTER_OFF, machine.getState());
+        machine.onAdapterOn();
+        assertEquals("connect " + ADDRESS, actions.last());
+    }
+
+    @Test
+    public void armedFastReconnectRetriesAtOnce() {
+        connectFromScan();
+        machine.armFastReconnect();
+        assertTrue(machine.isFastReconnectArmed());
+        machine.onDisconnected();
+        for (int attempt = 0; attempt < 3; attempt++) {
+            machine.onDisconnected();
+            assertEquals(100, actions.lastRetryDelay);
+            machine.onRetryTimer();
+            // Still a direct connect, not autoConnect
+            assertEquals("connect " + ADDRESS, actions.last());
+        }
+        // Then the usual backoff
+        machine.onDisconnected();
+        assertTrue(actions.lastRetryDelay >= 500);
+        assertFalse(machine.isFastReconnectArmed());
+    }
+
+    @Test
+    public void disarmedFastReconnectBacksOff() {
+        connectFromScan();
+        machine.armFastReconnect();
+        machine.disarmFastReconnect();
+        machine.onDisconnected();
+        machine.onDisconnected();
+        assertTrue(actions.lastRetryDelay >= 500);
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.ble.LinkQualityMonitor.Quality;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LinkQualityMonitorTest {
+
+    private static final int STRONG_RSSI = -60;
+    private static final int WEAK_RSSI = -95;
+
+    /**
+     * Runs the poll timer on a virtual clock and records every request and report
+     */
+    private static final class FakeControl implements LinkQualityMonitor.Control {
+        long scheduledAtMillis = -1;
+        long lastDelayMillis = -1;
+        int rssiRequests;
+        boolean rssiPending;
+        final List<Quality> qualityChanges = new ArrayList<>();
+        int lastReportedRssi;
+        long silentMillis = -1;
+
+        long nowMillis;
+
+        @Override
+        public void requestRssi() {
+            rssiRequests++;
+            rssiPending = true;
+        }
+
+        @Override
+        public void schedulePoll(long delayMillis) {
+            lastDelayMillis = delayMillis;
+            scheduledAtMillis = nowMillis + delayMillis;
+        }
+
+        @Override
+        public void cancelPoll() {
+            scheduledAtMillis = -1;
+        }
+
+        @Override
+        public void onQualityChanged(Quality oldQuality, Quality newQuality, int smoothedRssi) {
+            qualityChanges.add(newQuality);
+            lastReportedRssi = smoothedRssi;
+        }
+
+        @Override
+        public void onLinkSilent(long silentMillis) {
+            this.silentMillis = silentMillis;
+        }
+    }
+
+    private FakeControl control;
+    private LinkQualityMonitor monitor;
+
+    @Before
+    public void setUp() {
+        control = new FakeControl();
+        monitor = new LinkQualityMonitor(control);
+        monitor.start(nanos(0));
+    }
+
+    @Test
+    public void startReadsTheRssiAtOnce() {
+        assertEquals(1, control.rssiRequests);
+        assertEquals(1, monitor.getPollCount());
+        // Next tick is the read timeout
+        assertEquals(LinkQualityMonitor.RSSI_TIMEOUT_MILLIS, control.lastDelayMillis);
+    }
+
+    @Test
+    public void strongLinkIsPolledSparsely() {
+        answer(STRONG_RSSI);
+        assertEquals(Quality.GOOD, monitor.getQuality());
+        assertEquals(STRONG_RSSI, monitor.getSmoothedRssi());
+        assertEquals(LinkQualityMonitor.GOOD_POLL_MILLIS, control.lastDelayMillis);
+        assertTrue(control.qualityChanges.isEmpty());
+    }
+
+    @Test
+    public void singleWeakReadingDoesNotFlipTheState() {
+        answer(STRONG_RSSI);
+        advanceTo(control.scheduledAtMillis);
+        answer(WEAK_RSSI);
+
+        assertEquals(Quality.GOOD, monitor.getQuality());
+        assertTrue(control.qualityChanges.isEmpty());
+        // ... but the next read comes sooner
+        assertEquals(LinkQualityMonitor.POOR_POLL_MILLIS, control.lastDelayMillis);
+    }
+
+    @Test
+    public void degradingRssiIsReportedFairThenPoor() {
+        answer(-80);
+        assertEquals(Quality.FAIR, monitor.getQuality());
+        assertEquals(Quality.FAIR, control.qualityChanges.get(0));
+        assertEquals(LinkQualityMonitor.FAIR_POLL_MILLIS, control.lastDelayMillis);
+
+        int samples = 0;
+        while (monitor.getQuality() != Quality.POOR) {
+            advanceTo(control.scheduledAtMillis);
+            answer(WEAK_RSSI);
+            assertTrue("still not poor after " + samples + " samples", ++samples < 10);
+        }
+        assertEquals(2, control.qualityChanges.size());
+        assertEquals(Quality.POOR, control.qualityChanges.get(1));
+        // Reported only once past the threshold by the hysteresis margin
+        assertTrue(control.lastReportedRssi + " dBm",
+                control.lastReportedRssi <= LinkQualityMonitor.POOR_RSSI - LinkQualityMonitor.HYSTERESIS_DB);
+        assertEquals(LinkQualityMonitor.POOR_POLL_MILLIS, control.lastDelayMillis);
+    }
+
+    @Test
+    public void rssiHoveringAtTheThresholdDoesNotFlap() {
+        degradeToPoor();
+        int changes = control.qualityChanges.size();
+        for (int i = 0; i < 50; i++) {
+            advanceTo(control.scheduledAtMillis);
+            answer(i % 2 == 0 ? LinkQualityMonitor.POOR_RSSI + 2 : LinkQualityMonitor.POOR_RSSI - 2);
+        }
+        assertEquals(changes, control.qualityChanges.size());
+        assertEquals(Quality.POOR, monitor.getQuality());
+    }
+
+    @Test
+    public void recoveredLinkIsReportedGoodAgain() {
+        degradeToPoor();
+        while (monitor.getQuality() != Quality.GOOD) {
+            advanceTo(control.scheduledAtMillis);
+            answer(STRONG_RSSI);
+        }
+        assertEquals(Quality.FAIR, control.qualityChanges.get(control.qualityChanges.size() - 2));
+        assertEquals(Quality.GOOD, control.qualityChanges.get(control.qualityChanges.size() - 1));
+        assertEquals(LinkQualityMonitor.GOOD_POLL_MILLIS, control.lastDelayMillis);
+    }
+
+    @Test
+    public void failedReadIsRetriedSoon() {
+        answer(STRONG_RSSI);
+        advanceTo(control.scheduledAtMillis);
+        // Notifications keep the link alive meanwhile
+        monitor.onActivity(nanos(control.nowMillis));
+        control.rssiPending = false;
+        monitor.onRssiFailed(nanos(control.nowMillis));
+        assertEquals(LinkQualityMonitor.POOR_POLL_MILLIS, control.lastDelayMillis);
+
+        // A read that never returns fails at the timeout
+        advanceTo(control.nowMillis + LinkQualityMonitor.POOR_POLL_MILLIS);
+        int requests = control.rssiRequests;
+        control.rssiPending = false;
+        advanceTo(control.nowMillis + LinkQualityMonitor.RSSI_TIMEOUT_MILLIS);
+        assertEquals(LinkQualityMonitor.POOR_POLL_MILLIS, control.lastDelayMillis);
+        advanceTo(control.nowMillis + LinkQualityMonitor.POOR_POLL_MILLIS);
+        assertEquals(requests + 1, control.rssiRequests);
+        assertTrue(monitor.getSummary(), monitor.getSummary().contains("failed 2)"));
+        assertEquals(-1, control.silentMillis);
+    }
+
+    @Test
+    public void silentLinkIsDetectedAtTheHeartbeatTimeout() {
+        // The watch never answers
+        control.rssiPending = false;
+        advanceTo(LinkQualityMonitor.HEARTBEAT_TIMEOUT_MILLIS - 1);
+        assertEquals(-1, control.silentMillis);
+
+        advanceTo(LinkQualityMonitor.HEARTBEAT_TIMEOUT_MILLIS);
+        assertEquals(LinkQualityMonitor.HEARTBEAT_TIMEOUT_MILLIS, control.silentMillis);
+        assertEquals(1, monitor.getSilentDetectionCount());
+        assertEquals(-1, control.scheduledAtMillis);
+
+        // Stopped: nothing more is polled
+        int requests = control.rssiRequests;
+        monitor.onPollTimer(nanos(LinkQualityMonitor.HEARTBEAT_TIMEOUT_MILLIS * 2));
+        assertEquals(requests, control.rssiRequests);
+    }
+
+    @Test
+    public void notificationsKeepTheLinkAlive() {
+        control.rssiPending = false;
+        long lastActivityMillis = 0;
+        for (long at = 1000; at <= 30000; at += 1000) {
+            advanceTo(at);
+            monitor.onActivity(nanos(at));
+            lastActivityMillis = at;
+        }
+        assertEquals(-1, control.silentMillis);
+
+        advanceTo(lastActivityMillis + LinkQualityMonitor.HEARTBEAT_TIMEOUT_MILLIS);
+        assertEquals(LinkQualityMonitor.HEARTBEAT_TIMEOUT_MILLIS, control.silentMillis);
+    }
+
+    @Test
+    public void rssiRepliesKeepTheLinkAlive() {
+        for (int i = 0; i < 100; i++) {
+            answer(STRONG_RSSI);
+            advanceTo(control.scheduledAtMillis);
+        }
+        assertEquals(-1, control.silentMillis);
+        assertEquals(0, monitor.getSilentDetectionCount());
+    }
+
+    @Test
+    public void linkLostAfterAPoorWarningIsCounted() {
+        answer(STRONG_RSSI);
+        advanceTo(control.scheduledAtMillis);
+        degradeToPoor();
+        long warnedAtMillis = control.nowMillis;
+        monitor.stop(nanos(warnedAtMillis + 3000));
+        assertTrue(monitor.getSummary(), monitor.getSummary().contains("lossesAfterWarning=1 (lead 3000ms)"));
+    }
+
+    @Test
+    public void repliesAfterStopAreIgnored() {
+        monitor.stop(nanos(10));
+        monitor.onRssi(WEAK_RSSI, nanos(20));
+        assertEquals(0, monitor.getSmoothedRssi());
+        assertEquals(Quality.GOOD, monitor.getQuality());
+        assertEquals(-1, control.scheduledAtMillis);
+    }
+
+    private void degradeToPoor() {
+        answer(WEAK_RSSI);
+        while (monitor.getQuality() != Quality.POOR) {
+            advanceTo(control.scheduledAtMillis);
+            answer(WEAK_RSSI);
+        }
+    }
+
+    /**
+     * Answer the pending read at the current time
+     */
+    private void answer(int rssi) {
+        assertTrue("no read pending", control.rssiPending);
+        control.rssiPending = false;
+        monitor.onRssi(rssi, nanos(control.nowMillis));
+    }
+
+    /**
+     * Move the clock forward, firing the poll timer whenever it falls due
+     */
+    private void advanceTo(long millis) {
+        while (control.scheduledAtMillis >= 0 && control.scheduledAtMillis <= millis) {
+            control.nowMillis = control.scheduledAtMillis;
+            control.scheduledAtMillis = -1;
+            monitor.onPollTimer(nanos(control.nowMillis));
+        }
+        control.nowMillis = millis;
+    }
+
+    private static long nanos(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.ble.LinkTuner.Mode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LinkTunerTest {
+
+    /**
+     * Records every request as a short string, in order
+     */
+    private static final class RecordingControl implements LinkTuner.LinkControl {
+        final List<String> requests = new ArrayList<>();
+
+        @Override
+        public void requestConnectionPriority(boolean high) {
+            requests.add(high ? "priority high" : "priority low");
+        }
+
+        @Override
+        public void requestMtu(int mtu) {
+            requests.add("mtu " + mtu);
+        }
+
+        @Override
+        public void requestPreferredPhy(boolean fast) {
+            requests.add(fast ? "phy 2M" : "phy 1M");
+        }
+
+        @Override
+        public void scheduleRelax(long delayMillis) {
+            requests.add("relax in " + delayMillis);
+        }
+
+        @Override
+        public void cancelRelax() {
+            requests.add("cancel relax");
+        }
+
+        List<String> take() {
+            List<String> taken = new ArrayList<>(requests);
+            requests.clear();
+            return taken;
+        }
+    }
+
+    private RecordingControl control;
+    private LinkTuner tuner;
+
+    @Before
+    public void setUp() {
+        control = new RecordingControl();
+        tuner = new LinkTuner(control);
+    }
+
+    @Test
+    public void readyLinkStartsAtLowPowerWithTheLargerMtu() {
+        tuner.onLinkReady();
+        assertEquals(Arrays.asList("priority low", "mtu " + LinkTuner.PREFERRED_MTU), control.take());
+        assertEquals(Mode.IDLE, tuner.getMode());
+    }
+
+    @Test
+    public void alertSwitchesToHighPriorityAndTheFastPhy() {
+        tuner.onLinkReady();
+        control.take();
+        tuner.onFrame('E', millis(1));
+        // The MTU was already requested on this connection
+        assertEquals(Arrays.asList("priority high", "phy 2M", "cancel relax",
+                "relax in " + LinkTuner.ALERT_HOLD_MILLIS), control.take());
+        assertEquals(Mode.ALERT, tuner.getMode());
+    }
+
+    @Test
+    public void generalAlertIsTunedLikeAnEmergency() {
+        tuner.onLinkReady();
+        tuner.onFrame('A', millis(1));
+        assertEquals(Mode.ALERT, tuner.getMode());
+    }
+
+    @Test
+    public void otherSignalsLeaveTheLinkIdle() {
+        tuner.onLinkReady();
+        control.take();
+        for (char signal : new char[] {'F', 'C', 'H', 'X'}) {
+            tuner.onFrame(signal, millis(1));
+        }
+        assertTrue(control.requests.isEmpty());
+        assertEquals(Mode.IDLE, tuner.getMode());
+    }
+
+    @Test
+    public void furtherAlertsOnlyExtendTheHold() {
+        tuner.onLinkReady();
+        tuner.onFrame('E', millis(1));
+        control.take();
+        tuner.onFrame('A', millis(2));
+        tuner.onFrame('E', millis(3));
+        assertEquals(Arrays.asList("cancel relax", "relax in " + LinkTuner.ALERT_HOLD_MILLIS,
+                "cancel relax", "relax in " + LinkTuner.ALERT_HOLD_MILLIS), control.take());
+    }
+
+    @Test
+    public void holdExpiryRelaxesToLowPowerAndTheSlowPhy() {
+        tuner.onLinkReady();
+        tuner.onFrame('E', millis(1));
+        control.take();
+        tuner.onRelaxTimer();
+        assertEquals(Arrays.asList("cancel relax", "priority low", "phy 1M"), control.take());
+        assertEquals(Mode.IDLE, tuner.getMode());
+
+        // A stale timer does nothing
+        tuner.onRelaxTimer();
+        assertTrue(control.requests.isEmpty());
+    }
+
+    @Test
+    public void cancelRelaxesAtOnce() {
+        tuner.onLinkReady();
+        tuner.onFrame('E', millis(1));
+        control.take();
+        tuner.onFrame('X', millis(2));
+        assertEquals(Arrays.asList("cancel relax", "priority low", "phy 1M"), control.take());
+        assertEquals(Mode.IDLE, tuner.getMode());
+    }
+
+    @Test
+    public void alertBeforeTheLinkIsReadyRequestsNothing() {
+        tuner.onFrame('E', millis(1));
+        assertTrue(control.requests.isEmpty());
+        assertEquals(Mode.IDLE, tuner.getMode());
+    }
+
+    @Test
+    public void mtuIsRequestedOncePerConnection() {
+        tuner.onLinkReady();
+        tuner.onFrame('E', millis(1));
+        tuner.onRelaxTimer();
+        tuner.onFrame('E', millis(2));
+        assertEquals(1, count("mtu " + LinkTuner.PREFERRED_MTU));
+
+        // A new connection negotiates again
+        tuner.onLinkLost();
+        tuner.onLinkReady();
+        assertEquals(2, count("mtu " + LinkTuner.PREFERRED_MTU));
+    }
+
+    @Test
+    public void linkLossForgetsTheNegotiatedParameters() {
+        tuner.onLinkReady();
+        tuner.onFrame('E', millis(1));
+        tuner.onMtuChanged(LinkTuner.PREFERRED_MTU);
+        tuner.onPhyChanged(LinkTuner.PHY_LE_2M, LinkTuner.PHY_LE_2M);
+        tuner.onConnectionUpdated(6);
+        assertEquals(7.5, tuner.getConnectionIntervalMillis(), 1e-9);
+
+        control.take();
+        tuner.onLinkLost();
+        assertEquals(Arrays.asList("cancel relax"), control.take());
+        assertEquals(Mode.IDLE, tuner.getMode());
+        assertEquals(23, tuner.getMtu());
+        assertEquals(LinkTuner.PHY_LE_1M, tuner.getTxPhy());
+        assertEquals(LinkTuner.PHY_LE_1M, tuner.getRxPhy());
+        assertEquals(0, tuner.getConnectionIntervalMillis(), 1e-9);
+    }
+
+    @Test
+    public void frameGapsAreKeptPerMode() {
+        tuner.onLinkReady();
+        tuner.onFrame('F', millis(1000));
+        tuner.onFrame('F', millis(1100));
+        // Entering alert mode happens after the gap is counted as idle
+        tuner.onFrame('E', millis(1300));
+        tuner.onFrame('F', millis(1310));
+        tuner.onFrame('F', millis(1330));
+        // A pause between bursts is not a gap
+        tuner.onFrame('F', millis(5000));
+
+        assertEquals(150000, tuner.getAverageFrameGapMicros(Mode.IDLE));
+        assertEquals(15000, tuner.getAverageFrameGapMicros(Mode.ALERT));
+    }
+
+    @Test
+    public void boostIsTimedOnlyForAnAlert() {
+        tuner.onLinkReady();
+        tuner.onConnectionUpdated(80);
+        assertTrue(tuner.getSummary(), tuner.getSummary().contains("boosts=0 "));
+
+        tuner.onFrame('E', System.nanoTime());
+        tuner.onConnectionUpdated(6);
+        tuner.onConnectionUpdated(6);
+        assertTrue(tuner.getSummary(), tuner.getSummary().contains("boosts=1 "));
+    }
+
+    private int count(String request) {
+        int count = 0;
+        for (String r : control.requests) {
+            if (r.equals(request)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
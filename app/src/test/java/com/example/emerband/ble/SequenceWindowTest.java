@@ -0,0 +1,127 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SequenceWindowTest {
+
+    @Test
+    public void burstOfRepeatsIsAcceptedOnce() {
+        SequenceWindow window = new SequenceWindow();
+        int accepted = 0;
+        // One press, notified and re-read many times
+        for (int i = 0; i < 50; i++) {
+            if (window.accept(17)) {
+                accepted++;
+            }
+        }
+        assertEquals(1, accepted);
+        assertEquals(49, window.getDuplicateCount());
+    }
+
+    @Test
+    public void interleavedBurstsOfSeveralPressesCollapse() {
+        SequenceWindow window = new SequenceWindow();
+        int accepted = 0;
+        for (int repeat = 0; repeat < 10; repeat++) {
+            for (int sequence = 100; sequence < 105; sequence++) {
+                if (window.accept(sequence)) {
+                    accepted++;
+                }
+            }
+        }
+        assertEquals(5, accepted);
+        assertEquals(45, window.getDuplicateCount());
+    }
+
+    @Test
+    public void outOfOrderFramesAreAcceptedOnce() {
+        SequenceWindow window = new SequenceWindow();
+        assertTrue(window.accept(10));
+        assertTrue(window.accept(12));
+        assertTrue(window.accept(11));
+        assertFalse(window.accept(11));
+        assertFalse(window.accept(10));
+        assertTrue(window.accept(10 - SequenceWindow.WINDOW_SIZE + 3));
+    }
+
+    @Test
+    public void replayAfterReconnectIsDropped() {
+        SequenceWindow window = new SequenceWindow();
+        for (int sequence = 1; sequence <= 20; sequence++) {
+            assertTrue(window.accept(sequence));
+        }
+        // The stale characteristic value is read again after reconnecting
+        assertFalse(window.accept(20));
+        assertTrue(window.accept(21));
+    }
+
+    @Test
+    public void wrapsAroundSixteenBits() {
+        SequenceWindow window = new SequenceWindow();
+        assertTrue(window.accept(0xFFFF));
+        assertTrue(window.accept(0x10000));
+        assertFalse(window.accept(0));
+        assertFalse(window.accept(0xFFFF));
+        assertEquals(0, window.getRestartCount());
+    }
+
+    @Test
+    public void watchRestartResetsTheWindow() {
+        SequenceWindow window = new SequenceWindow();
+        assertTrue(window.accept(5000));
+        assertTrue(window.accept(1));
+        assertEquals(1, window.getRestartCount());
+        assertFalse(window.accept(1));
+        assertTrue(window.accept(2));
+    }
+
+    @Test
+    public void rebootAtLowCounterIsAccepted() {
+        SequenceWindow window = new SequenceWindow();
+        for (int sequence = 0; sequence <= 10; sequence++) {
+            assertTrue(window.accept(0x1111, sequence));
+        }
+        // Restarted after a few frames: the counter begins again inside the window
+        assertTrue(window.accept(0x2222, 0));
+        assertEquals(1, window.getRestartCount());
+        assertTrue(window.accept(0x2222, 1));
+        assertFalse(window.accept(0x2222, 1));
+    }
+
+    @Test
+    public void replayAfterReconnectWithBootIdIsDropped() {
+        SequenceWindow window = new SequenceWindow();
+        for (int sequence = 0; sequence <= 10; sequence++) {
+            assertTrue(window.accept(0x1111, sequence));
+        }
+        window.onReconnect();
+        // Same boot: the watch did not restart, so this is the stale value again
+        assertFalse(window.accept(0x1111, 10));
+        assertTrue(window.accept(0x1111, 11));
+    }
+
+    @Test
+    public void legacyRebootAtLowCounterIsAcceptedAfterReconnect() {
+        SequenceWindow window = new SequenceWindow();
+        for (int sequence = 0; sequence <= 10; sequence++) {
+            assertTrue(window.accept(sequence));
+        }
+        // No boot id: the reconnect that follows a reboot forgets the window
+        window.onReconnect();
+        assertTrue(window.accept(0));
+        assertTrue(window.accept(1));
+        assertFalse(window.accept(1));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        SequenceWindow window = new SequenceWindow();
+        assertTrue(window.accept(3));
+        window.clear();
+        assertTrue(window.accept(3));
+    }
+}
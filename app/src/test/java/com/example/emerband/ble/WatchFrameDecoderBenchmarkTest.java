@@ -0,0 +1,62 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.AllocationMeter;
+
+import org.junit.Test;
+
+/**
+ * Decoding runs for every notification the watch sends; it must not
+ * allocate, so a long session of alerts causes no garbage collection.
+ */
+public class WatchFrameDecoderBenchmarkTest {
+
+    private static final int WARM_UP_FRAMES = 200000;
+    private static final int MEASURED_FRAMES = 2000000;
+
+    // Allowance for the measurement itself
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    // Orders of magnitude below a warm JIT, far above any notification rate
+    private static final long MIN_FRAMES_PER_SECOND = 1000000;
+
+    @Test
+    public void decodesWithoutAllocating() {
+        AllocationMeter meter = new AllocationMeter();
+        if (!meter.isSupported()) {
+            return;
+        }
+        byte[][] frames = {
+                new byte[] {'E'},
+                WatchFrameDecoderTest.legacyFrame('F', true),
+                WatchFrameDecoderTest.sequenceFrame('E', 1, true),
+                WatchFrameDecoderTest.bootIdFrame('A', 2, 7, false),
+        };
+        WatchFrameDecoder decoder = new WatchFrameDecoder();
+        WatchFrame frame = new WatchFrame();
+
+        long checksum = run(decoder, frame, frames, WARM_UP_FRAMES);
+        long before = meter.allocatedBytes();
+        long startedAt = System.nanoTime();
+        checksum += run(decoder, frame, frames, MEASURED_FRAMES);
+        long elapsedNanos = System.nanoTime() - startedAt;
+        long allocated = meter.allocatedBytes() - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated <= MAX_ALLOCATED_BYTES);
+        assertEquals(WARM_UP_FRAMES + MEASURED_FRAMES, decoder.getDecodedFrames());
+        assertTrue(checksum > 0);
+        long framesPerSecond = MEASURED_FRAMES * 1000000000L / Math.max(1, elapsedNanos);
+        assertTrue(framesPerSecond + " frames/s", framesPerSecond >= MIN_FRAMES_PER_SECOND);
+    }
+
+    private static long run(WatchFrameDecoder decoder, WatchFrame frame, byte[][] frames, int count) {
+        long checksum = 0;
+        for (int i = 0; i < count; i++) {
+            decoder.decode(frames[i & 3], frame);
+            checksum += frame.getSignal() + frame.getSequence();
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatchFrameDecoderTest {
+
+    private static final float LATITUDE = 12.9716f;
+    private static final float LONGITUDE = 77.5946f;
+
+    private WatchFrameDecoder decoder;
+    private WatchFrame frame;
+
+    @Before
+    public void setUp() {
+        decoder = new WatchFrameDecoder();
+        frame = new WatchFrame();
+    }
+
+    @Test
+    public void decodesSignalOnlyFrame() {
+        assertTrue(decoder.decode(new byte[] {'E'}, frame));
+        assertEquals('E', frame.getSignal());
+        assertEquals(WatchFrameDecoder.VERSION_SIGNAL_ONLY, frame.getVersion());
+        assertFalse(frame.hasLocation());
+        assertFalse(frame.hasSequence());
+    }
+
+    @Test
+    public void decodesLegacyGpsFrame() {
+        byte[] data = legacyFrame('F', true);
+        assertTrue(decoder.decode(data, frame));
+        assertEquals('F', frame.getSignal());
+        assertEquals(WatchFrameDecoder.VERSION_GPS, frame.getVersion());
+        assertTrue(frame.hasLocation());
+        assertEquals(LATITUDE, frame.getLatitude(), 1e-5);
+        assertEquals(LONGITUDE, frame.getLongitude(), 1e-5);
+        assertFalse(frame.hasSequence());
+    }
+
+    @Test
+    public void legacyFrameIgnoresUninitialisedPadding() {
+        // Old firmware left bytes 10-19 uninitialised; whatever is there must not change the decoding
+        for (int garbage = 0; garbage < 256; garbage++) {
+            byte[] data = legacyFrame('E', true);
+            for (int i = WatchFrameDecoder.VERSION_OFFSET; i < data.length; i++) {
+                data[i] = (byte) (garbage + i);
+            }
+            assertTrue(decoder.decode(data, frame));
+            assertEquals(WatchFrameDecoder.VERSION_GPS, frame.getVersion());
+            assertTrue("padding " + garbage, frame.hasLocation());
+            assertFalse(frame.hasSequence());
+        }
+        assertEquals(0, decoder.getUnknownVersionFrames());
+    }
+
+    @Test
+    public void legacyFrameWithoutFix() {
+        assertTrue(decoder.decode(legacyFrame('C', false), frame));
+        assertEquals('C', frame.getSignal());
+        assertFalse(frame.hasLocation());
+    }
+
+    @Test
+    public void decodesSequenceFrame() {
+        assertTrue(decoder.decode(sequenceFrame('A', 0x1234, true), frame));
+        assertEquals('A', frame.getSignal());
+        assertEquals(WatchFrameDecoder.VERSION_SEQUENCE, frame.getVersion());
+        assertEquals(0x1234, frame.getSequence());
+        assertFalse(frame.hasBootId());
+        assertTrue(frame.hasLocation());
+        assertEquals(LATITUDE, frame.getLatitude(), 1e-5);
+    }
+
+    @Test
+    public void decodesBootIdFrame() {
+        assertTrue(decoder.decode(bootIdFrame('E', 3, 0xBEEF, true), frame));
+        assertEquals('E', frame.getSignal());
+        assertEquals(WatchFrameDecoder.VERSION_BOOT_ID, frame.getVersion());
+        assertEquals(3, frame.getSequence());
+        assertEquals(0xBEEF, frame.getBootId());
+        assertTrue(frame.hasLocation());
+    }
+
+    @Test
+    public void decodesAdvertisedBootIdFrameLength() {
+        byte[] data = bootIdFrame('A', 42, 7, false);
+        assertTrue(decoder.decode(data, WatchFrameDecoder.BOOT_ID_FRAME_LENGTH, frame));
+        assertEquals(42, frame.getSequence());
+        assertEquals(7, frame.getBootId());
+
+        // Cut to the version 2 advertisement: the sequence is still there
+        assertTrue(decoder.decode(data, WatchFrameDecoder.SEQUENCE_FRAME_LENGTH, frame));
+        assertEquals(42, frame.getSequence());
+        assertFalse(frame.hasBootId());
+    }
+
+    @Test
+    public void decodesSequenceFrameWithoutFix() {
+        assertTrue(decoder.decode(sequenceFrame('E', 7, false), frame));
+        assertEquals(7, frame.getSequence());
+        assertFalse(frame.hasLocation());
+    }
+
+    @Test
+    public void decodesAdvertisedFrameLength() {
+        byte[] data = sequenceFrame('E', 42, false);
+        assertTrue(decoder.decode(data, WatchFrameDecoder.SEQUENCE_FRAME_LENGTH, frame));
+        assertEquals(42, frame.getSequence());
+    }
+
+    @Test
+    public void decodesFrameAtOffset() {
+        byte[] inner = sequenceFrame('E', 300, true);
+        byte[] data = new byte[inner.length + 3];
+        System.arraycopy(inner, 0, data, 3, inner.length);
+        assertTrue(decoder.decode(data, 3, inner.length, frame));
+        assertEquals('E', frame.getSignal());
+        assertEquals(300, frame.getSequence());
+        assertTrue(frame.hasLocation());
+    }
+
+    @Test
+    public void sequenceWrapsAtSixteenBits() {
+        assertTrue(decoder.decode(sequenceFrame('E', 0xFFFF, false), frame));
+        assertEquals(0xFFFF, frame.getSequence());
+        assertTrue(decoder.decode(sequenceFrame('E', 0x10000, false), frame));
+        assertEquals(0, frame.getSequence());
+
+        SequenceWindow window = new SequenceWindow();
+        assertTrue(window.accept(0xFFFE));
+        assertTrue(window.accept(0xFFFF));
+        assertTrue(window.accept(0));
+        assertTrue(window.accept(1));
+        assertFalse(window.accept(0xFFFF));
+        assertEquals(0, window.getRestartCount());
+    }
+
+    @Test
+    public void versionedFrameTooShortForSequence() {
+        byte[] data = sequenceFrame('E', 5, true);
+        assertTrue(decoder.decode(data, WatchFrameDecoder.SEQUENCE_FRAME_LENGTH - 1, frame));
+        assertEquals(WatchFrameDecoder.VERSION_SEQUENCE, frame.getVersion());
+        assertFalse(frame.hasSequence());
+        assertTrue(frame.hasLocation());
+    }
+
+    @Test
+    public void shortFramesCarryOnlyTheSignal() {
+        byte[] data = sequenceFrame('E', 5, true);
+        for (int length = 1; length <= WatchFrameDecoder.FLAGS_OFFSET; length++) {
+            assertTrue(decoder.decode(data, length, frame));
+            assertEquals('E', frame.getSignal());
+            assertEquals(WatchFrameDecoder.VERSION_SIGNAL_ONLY, frame.getVersion());
+            assertFalse(frame.hasLocation());
+        }
+    }
+
+    @Test
+    public void unknownVersionKeepsOnlyTheSignal() {
+        byte[] data = sequenceFrame('E', 5, true);
+        data[WatchFrameDecoder.VERSION_OFFSET] = (byte) (WatchFrameDecoder.CURRENT_VERSION + 1);
+        assertTrue(decoder.decode(data, frame));
+        assertEquals('E', frame.getSignal());
+        assertEquals(WatchFrameDecoder.CURRENT_VERSION + 1, frame.getVersion());
+        assertFalse(frame.hasLocation());
+        assertFalse(frame.hasSequence());
+        assertFalse(frame.hasBootId());
+        assertEquals(1, decoder.getUnknownVersionFrames());
+    }
+
+    @Test
+    public void rejectsInvalidData() {
+        assertFalse(decoder.decode(null, frame));
+        assertFalse(decoder.decode(new byte[0], frame));
+        assertFalse(decoder.decode(new byte[] {0}, frame));
+        assertFalse(decoder.decode(new byte[] {'E'}, 0, 2, frame));
+        assertFalse(decoder.decode(new byte[] {'E'}, -1, 1, frame));
+        assertEquals(5, decoder.getRejectedFrames());
+        assertEquals(0, decoder.getDecodedFrames());
+        assertEquals(WatchFrame.NO_SIGNAL, frame.getSignal());
+    }
+
+    @Test
+    public void rejectsOutOfRangeCoordinates() {
+        byte[] data = sequenceFrame('E', 1, true);
+        writeFloatLE(data, WatchFrameDecoder.LATITUDE_OFFSET, 91f);
+        assertTrue(decoder.decode(data, frame));
+        assertFalse(frame.hasLocation());
+
+        writeFloatLE(data, WatchFrameDecoder.LATITUDE_OFFSET, Float.NaN);
+        assertTrue(decoder.decode(data, frame));
+        assertFalse(frame.hasLocation());
+    }
+
+    @Test
+    public void resetsFrameBetweenDecodes() {
+        assertTrue(decoder.decode(sequenceFrame('E', 9, true), frame));
+        assertTrue(decoder.decode(new byte[] {'A'}, frame));
+        assertFalse(frame.hasLocation());
+        assertFalse(frame.hasSequence());
+    }
+
+    /**
+     * GPS frame as sent by firmware before version 2: the flags byte is 0 or 1
+     */
+    static byte[] legacyFrame(char signal, boolean hasFix) {
+        byte[] data = new byte[WatchFrameDecoder.GPS_FRAME_LENGTH];
+        data[WatchFrameDecoder.SIGNAL_OFFSET] = (byte) signal;
+        if (hasFix) {
+            writeFloatLE(data, WatchFrameDecoder.LATITUDE_OFFSET, LATITUDE);
+            writeFloatLE(data, WatchFrameDecoder.LONGITUDE_OFFSET, LONGITUDE);
+            data[WatchFrameDecoder.FLAGS_OFFSET] = 1;
+        }
+        return data;
+    }
+
+    /**
+     * Version 2 frame, without the boot id
+     */
+    static byte[] sequenceFrame(char signal, int sequence, boolean hasFix) {
+        byte[] data = legacyFrame(signal, hasFix);
+        data[WatchFrameDecoder.FLAGS_OFFSET] = (byte) (WatchFrameDecoder.FLAG_VERSIONED
+                | (hasFix ? WatchFrameDecoder.FLAG_GPS_VALID : 0));
+        data[WatchFrameDecoder.VERSION_OFFSET] = (byte) WatchFrameDecoder.VERSION_SEQUENCE;
+        data[WatchFrameDecoder.SEQUENCE_OFFSET] = (byte) sequence;
+        data[WatchFrameDecoder.SEQUENCE_OFFSET + 1] = (byte) (sequence >> 8);
+        return data;
+    }
+
+    /**
+     * Version 3 frame as sent by the current firmware
+     */
+    static byte[] bootIdFrame(char signal, int sequence, int bootId, boolean hasFix) {
+        byte[] data = sequenceFrame(signal, sequence, hasFix);
+        data[WatchFrameDecoder.VERSION_OFFSET] = (byte) WatchFrameDecoder.VERSION_BOOT_ID;
+        data[WatchFrameDecoder.BOOT_ID_OFFSET] = (byte) bootId;
+        data[WatchFrameDecoder.BOOT_ID_OFFSET + 1] = (byte) (bootId >> 8);
+        return data;
+    }
+
+    private static void writeFloatLE(byte[] data, int offset, float value) {
+        int bits = Float.floatToIntBits(value);
+        data[offset] = (byte) bits;
+        data[offset + 1] = (byte) (bits >> 8);
+        data[offset + 2] = (byte) (bits >> 16);
+        data[offset + 3] = (byte) (bits >> 24);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.emerband.ble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import com.example.emerband.transport.SimulatedWatch;
+import com.example.emerband.transport.SimulatedWatchTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A watch session over the simulated transport: connect, subscribe, link
+ * drops, rejected subscriptions and reboots, as the session sees them from
+ * {@link WatchBleManager} on a real watch. The session runs on the paused
+ * main looper, so simulated time only moves when the test idles it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class WatchSessionTest {
+
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+    private static final long MAX_LATENCY_MILLIS = 20;
+    // Connect and subscribe each take one latency step
+    private static final long SETUP_MILLIS = 2 * MAX_LATENCY_MILLIS;
+
+    /**
+     * Counts the calls a session makes to the registry
+     */
+    private static final class RecordingHost implements WatchSession.Host {
+        int scans;
+        int ready;
+
+        @Override
+        public void requestScan(WatchSession session) {
+            scans++;
+        }
+
+        @Override
+        public void cancelScan(WatchSession session) {
+        }
+
+        @Override
+        public void onSessionReady(WatchSession session) {
+            ready++;
+        }
+
+        @Override
+        public void onLinkQualityChanged(WatchSession session, LinkQualityMonitor.Quality quality,
+                                         int smoothedRssi) {
+        }
+    }
+
+    private SimulatedWatch watch;
+    private RecordingHost host;
+    private List<Character> signals;
+    private WatchSession session;
+
+    @Before
+    public void setUp() {
+        SimulatedWatchTransport transport = new SimulatedWatchTransport(7);
+        transport.setLatency(5, MAX_LATENCY_MILLIS);
+        watch = transport.addWatch(ADDRESS, "EmergencyWatch");
+        host = new RecordingHost();
+        signals = new ArrayList<>();
+        session = new WatchSession(1, transport, ADDRESS, host,
+                (s, frame, receivedAtNanos) -> signals.add(frame.getSignal()), Looper.getMainLooper());
+    }
+
+    @After
+    public void tearDown() {
+        session.shutdown();
+        idle(SETUP_MILLIS);
+    }
+
+    @Test
+    public void knownWatchIsConnectedOnceSubscribed() {
+        session.start();
+        idle(SETUP_MILLIS);
+        assertEquals(ConnectionStateMachine.State.CONNECTED, session.getState());
+        assertEquals(1, host.ready);
+        assertEquals(0, host.scans);
+
+        watch.press('E');
+        idle(MAX_LATENCY_MILLIS);
+        assertEquals(1, signals.size());
+        assertEquals('E', (char) signals.get(0));
+    }
+
+    @Test
+    public void rejectedSubscriptionIsNeverReportedAsConnected() {
+        watch.setAcceptSubscriptions(false);
+        session.start();
+        for (int i = 0; i < 100; i++) {
+            idle(10);
+            assertNotEquals(ConnectionStateMachine.State.CONNECTED, session.getState());
+        }
+        assertEquals(0, host.ready);
+
+        watch.setAcceptSubscriptions(true);
+        idle(SETUP_MILLIS * 4);
+        assertEquals(ConnectionStateMachine.State.CONNECTED, session.getState());
+        watch.press('A');
+        idle(MAX_LATENCY_MILLIS);
+        assertEquals(1, signals.size());
+    }
+
+    @Test
+    public void linkDropReconnectsDirectly() {
+        session.start();
+        idle(SETUP_MILLIS);
+
+        watch.dropLink();
+        // Disconnect report, then connect and subscribe again
+        idle(MAX_LATENCY_MILLIS + SETUP_MILLIS);
+        assertEquals(ConnectionStateMachine.State.CONNECTED, session.getState());
+        assertEquals(0, host.scans);
+        assertTrue(session.getStatsSummary(), session.getStatsSummary().contains("reconnects=1 "));
+
+        watch.press('A');
+        idle(MAX_LATENCY_MILLIS);
+        assertEquals(1, signals.size());
+    }
+
+    @Test
+    public void watchBackInRangeIsReachedByTheBackgroundConnect() {
+        session.start();
+        idle(SETUP_MILLIS);
+
+        watch.setInRange(false);
+        idle(5000);
+        assertNotEquals(ConnectionStateMachine.State.CONNECTED, session.getState());
+
+        watch.setInRange(true);
+        idle(SETUP_MILLIS);
+        assertEquals(ConnectionStateMachine.State.CONNECTED, session.getState());
+    }
+
+    @Test
+    public void alertsAfterARebootAtALowCounterAreDelivered() {
+        session.start();
+        idle(SETUP_MILLIS);
+        for (int i = 0; i <= 10; i++) {
+            watch.press('A');
+            idle(MAX_LATENCY_MILLIS);
+        }
+        assertEquals(11, signals.size());
+
+        // The sequence counter starts again from 0, inside the old window
+        watch.reboot();
+        idle(MAX_LATENCY_MILLIS + SETUP_MILLIS);
+        assertEquals(ConnectionStateMachine.State.CONNECTED, session.getState());
+        watch.press('E');
+        idle(MAX_LATENCY_MILLIS);
+        assertEquals(12, signals.size());
+        assertEquals('E', (char) signals.get(11));
+    }
+
+    private static void idle(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(millis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.emerband.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.ble.SequenceWindow;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class IdempotencyFilterTest {
+
+    private static final String WATCH = "AA:BB:CC:DD:EE:01";
+    private static final String SECOND_WATCH = "AA:BB:CC:DD:EE:02";
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void repeatWithinWindowIsDropped() {
+        IdempotencyFilter filter = new IdempotencyFilter();
+        assertTrue(filter.tryAcquire(WATCH, 'E', 0));
+        assertFalse(filter.tryAcquire(WATCH, 'E', millis(500)));
+        assertFalse(filter.tryAcquire(WATCH, 'E', millis(IdempotencyFilter.EMERGENCY_WINDOW_MILLIS - 1)));
+        assertEquals(2, filter.getSuppressedCount('E'));
+    }
+
+    @Test
+    public void newPressAfterWindowGoesThrough() {
+        IdempotencyFilter filter = new IdempotencyFilter();
+        assertTrue(filter.tryAcquire(WATCH, 'A', 0));
+        assertTrue(filter.tryAcquire(WATCH, 'A', millis(IdempotencyFilter.ALERT_WINDOW_MILLIS)));
+    }
+
+    @Test
+    public void secondWearableIsNotDropped() {
+        IdempotencyFilter filter = new IdempotencyFilter();
+        assertTrue(filter.tryAcquire(WATCH, 'E', 0));
+        assertTrue(filter.tryAcquire(SECOND_WATCH, 'E', millis(1000)));
+        assertFalse(filter.tryAcquire(SECOND_WATCH, 'E', millis(2000)));
+        assertEquals(1, filter.getSuppressedCount('E'));
+    }
+
+    @Test
+    public void signalTypesHaveSeparateBuckets() {
+        IdempotencyFilter filter = new IdempotencyFilter();
+        assertTrue(filter.tryAcquire(WATCH, 'E', 0));
+        assertTrue(filter.tryAcquire(WATCH, 'A', 0));
+        assertTrue(filter.tryAcquire(WATCH, 'F', 0));
+        assertTrue(filter.tryAcquire(WATCH, 'C', 0));
+        assertTrue(filter.tryAcquire(WATCH, 'X', 0));
+        assertFalse(filter.tryAcquire(WATCH, 'X', millis(IdempotencyFilter.DEFAULT_WINDOW_MILLIS - 1)));
+    }
+
+    @Test
+    public void resetOnlyAffectsThatDevice() {
+        IdempotencyFilter filter = new IdempotencyFilter();
+        assertTrue(filter.tryAcquire(WATCH, 'E', 0));
+        assertTrue(filter.tryAcquire(SECOND_WATCH, 'E', 0));
+        filter.reset(WATCH, 'E');
+        assertTrue(filter.tryAcquire(WATCH, 'E', millis(100)));
+        assertFalse(filter.tryAcquire(SECOND_WATCH, 'E', millis(100)));
+    }
+
+    @Test
+    public void signalsWithoutAddressShareOneDevice() {
+        IdempotencyFilter filter = new IdempotencyFilter();
+        assertTrue(filter.tryAcquire(null, 'E', 0));
+        assertFalse(filter.tryAcquire(null, 'E', millis(100)));
+        filter.reset(null, 'E');
+        assertTrue(filter.tryAcquire(null, 'E', millis(200)));
+    }
+
+    @Test
+    public void duplicateBurstFromBothPathsActsOnce() {
+        // One press: notified over GATT and advertised, each path with its own sequence window
+        SequenceWindow gattWindow = new SequenceWindow();
+        SequenceWindow advertWindow = new SequenceWindow();
+        IdempotencyFilter filter = new IdempotencyFilter();
+        int actions = 0;
+        for (int i = 0; i < 40; i++) {
+            SequenceWindow window = i % 2 == 0 ? gattWindow : advertWindow;
+            if (window.accept(7) && filter.tryAcquire(WATCH, 'E', millis(i * 25))) {
+                actions++;
+            }
+        }
+        assertEquals(1, actions);
+        assertEquals(1, filter.getSuppressedCount('E'));
+        assertEquals(38, gattWindow.getDuplicateCount() + advertWindow.getDuplicateCount());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.emerband.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SignalDispatcherTest {
+
+    private static SignalEvent event(String address, char signal) {
+        return event(address, signal, System.nanoTime());
+    }
+
+    private static SignalEvent event(String address, char signal, long receivedAtNanos) {
+        return new SignalEvent(address, signal, false, 0, 0, receivedAtNanos);
+    }
+
+    @Test
+    public void failingHandlerDoesNotStopTheWorker() throws InterruptedException {
+        CountDownLatch handled = new CountDownLatch(2);
+        SignalDispatcher dispatcher = new SignalDispatcher(event -> {
+            handled.countDown();
+            if (event.getSignal() == 'F') {
+                throw new IllegalStateException("boom");
+            }
+        }, 1);
+        assertTrue(dispatcher.submit(event("watch", 'F')));
+        assertTrue(dispatcher.submit(event("watch", 'C')));
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.shutdownAndDrain(5, TimeUnit.SECONDS));
+        assertEquals(1, dispatcher.getFailedCount());
+        assertEquals(1, dispatcher.getDispatchedCount('C'));
+    }
+
+    @Test
+    public void emergencyDoesNotWaitForBusyWorkers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch emergencyHandled = new CountDownLatch(1);
+        SignalDispatcher dispatcher = new SignalDispatcher(event -> {
+            if (event.getSignal() == 'E') {
+                emergencyHandled.countDown();
+                return;
+            }
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1);
+        dispatcher.submit(event("watch", 'C'));
+        dispatcher.submit(event("watch", 'E'));
+        assertTrue(emergencyHandled.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        assertTrue(dispatcher.shutdownAndDrain(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void workersRunByPriority() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Character> order = Collections.synchronizedList(new ArrayList<>());
+        SignalDispatcher dispatcher = new SignalDispatcher(event -> {
+            if (event.getSignal() == 'X') {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            order.add(event.getSignal());
+        }, 1);
+        dispatcher.submit(event("watch", 'X'));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        dispatcher.submit(event("watch", 'C'));
+        dispatcher.submit(event("watch", 'F'));
+        dispatcher.submit(event("watch", 'A'));
+        release.countDown();
+        assertTrue(dispatcher.shutdownAndDrain(5, TimeUnit.SECONDS));
+        assertEquals(List.of('A', 'F', 'C'), order);
+    }
+
+    @Test
+    public void shutdownStillHandlesQueuedEmergencies() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        List<Character> handled = Collections.synchronizedList(new ArrayList<>());
+        SignalDispatcher dispatcher = new SignalDispatcher(event -> {
+            started.countDown();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(event.getSignal());
+        }, 1);
+        long now = System.nanoTime();
+        assertTrue(dispatcher.submit(event("watch", 'E', now)));
+        // A new press, after the repeat window
+        assertTrue(dispatcher.submit(event("watch", 'E',
+                now + TimeUnit.MILLISECONDS.toNanos(IdempotencyFilter.EMERGENCY_WINDOW_MILLIS))));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.shutdown());
+        assertEquals(List.of('E', 'E'), handled);
+    }
+}
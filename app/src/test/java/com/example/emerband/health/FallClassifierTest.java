@@ -0,0 +1,82 @@
+package com.example.emerband.health;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class FallClassifierTest {
+
+    // 50 Hz
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final AccelerationBuffer buffer = new AccelerationBuffer(1024);
+    private final FallClassifier classifier = new FallClassifier();
+    private final FallFeatures features = new FallFeatures();
+    private long now = TimeUnit.SECONDS.toNanos(100);
+    private final long start = now;
+
+    private void add(int samples, float xG, float yG, float zG) {
+        for (int i = 0; i < samples; i++) {
+            buffer.add(now, xG, yG, zG);
+            now += PERIOD_NANOS;
+        }
+    }
+
+    private boolean classify() {
+        classifier.extract(buffer, start, now, features);
+        return classifier.isFall(features);
+    }
+
+    @Test
+    public void freeFallImpactAndLyingStillIsAFall() {
+        add(100, 0, 0, 1);
+        add(10, 0, 0, 0.1f);
+        add(1, 0, 0, 3.5f);
+        add(15, 0.8f, 0, 1.4f);
+        add(150, 1, 0, 0);
+
+        assertTrue(features.toString(), classify());
+        assertEquals(3.5f, features.getPeakG(), 1e-3f);
+        assertTrue(features.getFreeFallMillis() >= FallClassifier.MIN_FREE_FALL_MILLIS);
+        assertEquals(90f, features.getOrientationChangeDegrees(), 1f);
+    }
+
+    @Test
+    public void knockWithoutStillnessIsNotAFall() {
+        add(100, 0, 0, 1);
+        add(1, 0, 0, 4f);
+        for (int i = 0; i < 75; i++) {
+            add(1, 0, 0, 0.5f);
+            add(1, 0, 0, 1.5f);
+        }
+
+        assertFalse(features.toString(), classify());
+        assertTrue(features.getStillnessG() > FallClassifier.STILLNESS_G);
+    }
+
+    @Test
+    public void sittingDownHardIsNotAFall() {
+        add(100, 0, 0, 1);
+        add(1, 0, 0, 3f);
+        add(150, 0, 0.1f, 1);
+
+        assertFalse(features.toString(), classify());
+        assertEquals(0, features.getFreeFallMillis());
+        assertTrue(features.getOrientationChangeDegrees() < FallClassifier.MIN_ORIENTATION_CHANGE_DEGREES);
+    }
+
+    @Test
+    public void windowWithoutSettledSamplesIsNotAFall() {
+        add(100, 0, 0, 1);
+        add(10, 0, 0, 0.1f);
+        add(1, 0, 0, 3.5f);
+        add(20, 1, 0, 0);
+
+        assertFalse(classify());
+        assertEquals(FallFeatures.UNKNOWN, features.getStillnessG(), 0f);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.emerband.health;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class HeartRateAnomalyDetectorTest {
+
+    private static final long STEP_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final HeartRateAnomalyDetector detector = new HeartRateAnomalyDetector();
+    private long now = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Feed readings 5 s apart for the given time
+     * @return The first anomaly reported, or NONE
+     */
+    private HeartRateAnomalyDetector.Anomaly feed(int heartRate, boolean skinContact, long millis) {
+        HeartRateAnomalyDetector.Anomaly reported = HeartRateAnomalyDetector.Anomaly.NONE;
+        for (long end = now + TimeUnit.MILLISECONDS.toNanos(millis); now <= end; now += STEP_NANOS) {
+            HeartRateAnomalyDetector.Anomaly anomaly = detector.onReading(heartRate, skinContact, now);
+            if (reported == HeartRateAnomalyDetector.Anomaly.NONE) {
+                reported = anomaly;
+            }
+        }
+        return reported;
+    }
+
+    @Test
+    public void sustainedHighRateIsReportedOnce() {
+        assertEquals(HeartRateAnomalyDetector.Anomaly.HIGH, feed(170, true, 90000));
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(170, true, 120000));
+        assertEquals(1, detector.getReportCount());
+    }
+
+    @Test
+    public void shortEpisodeIsNotReported() {
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(30, true, 40000));
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(70, true, 5000));
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(30, true, 40000));
+        feed(70, true, 5000);
+        assertEquals(2, detector.getAbandonedEpisodeCount());
+    }
+
+    @Test
+    public void readingsWithoutContactOrAfterAGapDoNotCount() {
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(200, false, 120000));
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(200, true, 40000));
+        now += TimeUnit.MILLISECONDS.toNanos(HeartRateAnomalyDetector.MAX_GAP_MILLIS);
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(200, true, 40000));
+    }
+
+    @Test
+    public void nextEpisodeIsReportedAfterNormalRate() {
+        assertEquals(HeartRateAnomalyDetector.Anomaly.LOW, feed(30, true, 60000));
+        // Too short a normal spell keeps it quiet
+        feed(70, true, 30000);
+        assertEquals(HeartRateAnomalyDetector.Anomaly.NONE, feed(30, true, 90000));
+        feed(70, true, HeartRateAnomalyDetector.REARM_MILLIS);
+        assertEquals(HeartRateAnomalyDetector.Anomaly.HIGH, feed(170, true, 60000));
+        assertEquals(2, detector.getReportCount());
+    }
+}
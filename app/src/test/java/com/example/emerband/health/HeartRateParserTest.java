@@ -0,0 +1,61 @@
+package com.example.emerband.health;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HeartRateParserTest {
+
+    private final HeartRateParser parser = new HeartRateParser();
+    private final HeartRateMeasurement out = new HeartRateMeasurement();
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    @Test
+    public void parsesUint8RateWithContact() {
+        byte[] data = bytes(0x06, 72);
+        assertTrue(parser.parse(data, data.length, out));
+        assertEquals(72, out.getHeartRate());
+        assertTrue(out.isContactSupported());
+        assertTrue(out.isSkinContact());
+        assertEquals(HeartRateMeasurement.NO_ENERGY_EXPENDED, out.getEnergyExpended());
+    }
+
+    @Test
+    public void parsesUint16RateEnergyAndRrIntervals() {
+        // 300 bpm, 1000 kJ, RR 1024 and 512 (1/1024 s), then a stray byte
+        byte[] data = bytes(0x19, 0x2C, 0x01, 0xE8, 0x03, 0x00, 0x04, 0x00, 0x02, 0x7F);
+        assertTrue(parser.parse(data, data.length, out));
+        assertEquals(300, out.getHeartRate());
+        assertEquals(1000, out.getEnergyExpended());
+        assertEquals(2, out.getRrCount());
+        assertEquals(1000, out.getRrIntervalMillis(0));
+        assertEquals(500, out.getRrIntervalMillis(1));
+    }
+
+    @Test
+    public void alertFramesAreNotMeasurements() {
+        for (char signal : new char[] {'E', 'A', 'F', 'C', 'X'}) {
+            byte[] frame = bytes(signal, 0, 0, 0, 0);
+            assertFalse(HeartRateParser.isMeasurement(frame, frame.length));
+        }
+    }
+
+    @Test
+    public void truncatedMeasurementIsRejected() {
+        byte[] data = bytes(0x01, 0x48);
+        assertFalse(parser.parse(data, data.length, out));
+        data = bytes(0x08, 72, 0x01);
+        assertFalse(parser.parse(data, data.length, out));
+        assertEquals(2, parser.getRejectedMeasurements());
+        assertEquals(0, parser.getParsedMeasurements());
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.emerband.health;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.AllocationMeter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ImuStreamDecoderTest {
+
+    private static final int PERIOD_MILLIS = 20;
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS);
+
+    private static final int WARM_UP_PACKETS = 20000;
+    private static final int MEASURED_PACKETS = 200000;
+
+    // Allowance for the measurement itself
+    private static final long MAX_ALLOCATED_BYTES = 1024;
+
+    // 50 Hz per watch; the floor is far above that and far below what decoding reaches
+    private static final long MIN_SAMPLES_PER_SECOND = 100000;
+
+    /**
+     * Build a batch of samples; sample i of the batch is (index + i) milli-g on every axis
+     */
+    static byte[] packet(int index, int count) {
+        byte[] data = new byte[ImuStreamDecoder.HEADER_LENGTH + count * ImuStreamDecoder.BYTES_PER_SAMPLE];
+        data[0] = ImuStreamDecoder.FORMAT;
+        data[1] = PERIOD_MILLIS;
+        data[2] = (byte) count;
+        data[3] = (byte) index;
+        data[4] = (byte) (index >> 8);
+        for (int i = 0; i < count; i++) {
+            int value = (short) (index + i);
+            for (int axis = 0; axis < 3; axis++) {
+                int offset = ImuStreamDecoder.HEADER_LENGTH + i * ImuStreamDecoder.BYTES_PER_SAMPLE + axis * 2;
+                data[offset] = (byte) value;
+                data[offset + 1] = (byte) (value >> 8);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Keeps the sample times and x values
+     */
+    private static final class RecordingSink implements ImuStreamDecoder.SampleSink {
+        final List<Long> times = new ArrayList<>();
+        final List<Float> xs = new ArrayList<>();
+
+        @Override
+        public void onSample(long timestampNanos, float xG, float yG, float zG) {
+            times.add(timestampNanos);
+            xs.add(xG);
+        }
+    }
+
+    private final ImuStreamDecoder decoder = new ImuStreamDecoder();
+    private final RecordingSink sink = new RecordingSink();
+
+    private int decode(byte[] data, long receivedAtNanos) {
+        return decoder.decode(data, data.length, receivedAtNanos, sink);
+    }
+
+    @Test
+    public void samplesAreSpacedByThePeriod() {
+        long t0 = TimeUnit.SECONDS.toNanos(10);
+        assertEquals(5, decode(packet(0, 5), t0));
+        // The second batch arrives late; its samples keep the watch's spacing
+        assertEquals(5, decode(packet(5, 5), t0 + 5 * PERIOD_NANOS + TimeUnit.MILLISECONDS.toNanos(40)));
+        assertEquals(10, sink.times.size());
+        // Only the drift allowance may creep in between batches
+        long creepNanos = TimeUnit.MILLISECONDS.toNanos(140) * ImuStreamDecoder.DRIFT_PER_MILLION / 1000000;
+        for (int i = 1; i < 10; i++) {
+            assertEquals(i == 5 ? PERIOD_NANOS + creepNanos : PERIOD_NANOS,
+                    sink.times.get(i) - sink.times.get(i - 1));
+        }
+        assertEquals(t0, (long) sink.times.get(4));
+        assertEquals(0.009f, sink.xs.get(9), 1e-6f);
+    }
+
+    @Test
+    public void gapsAndRepeatsAreCounted() {
+        long t0 = TimeUnit.SECONDS.toNanos(10);
+        decode(packet(0, 5), t0);
+        // Samples 5..9 lost
+        assertEquals(5, decode(packet(10, 5), t0 + 10 * PERIOD_NANOS));
+        assertEquals(5, decoder.getLostSamples());
+        // The same batch again, overlapping the next one
+        assertEquals(0, decode(packet(10, 5), t0 + 11 * PERIOD_NANOS));
+        assertEquals(2, decode(packet(13, 4), t0 + 12 * PERIOD_NANOS));
+        assertEquals(7, decoder.getRepeatedSamples());
+        assertEquals(0, decoder.getRestarts());
+    }
+
+    @Test
+    public void indexWrapIsNotARestart() {
+        long t0 = TimeUnit.SECONDS.toNanos(10);
+        decode(packet(65533, 3), t0);
+        assertEquals(3, decode(packet(0, 3), t0 + 3 * PERIOD_NANOS));
+        assertEquals(0, decoder.getRestarts());
+        assertEquals(0, decoder.getLostSamples());
+    }
+
+    @Test
+    public void watchRestartStartsANewStream() {
+        long t0 = TimeUnit.SECONDS.toNanos(10);
+        decode(packet(5000, 5), t0);
+        // Far back, and far ahead of what the elapsed time allows
+        assertEquals(5, decode(packet(0, 5), t0 + TimeUnit.SECONDS.toNanos(2)));
+        assertEquals(5, decode(packet(40000, 5), t0 + TimeUnit.SECONDS.toNanos(3)));
+        assertEquals(2, decoder.getRestarts());
+        assertEquals(0, decoder.getLostSamples());
+        for (int i = 1; i < sink.times.size(); i++) {
+            assertTrue(sink.times.get(i) > sink.times.get(i - 1));
+        }
+    }
+
+    @Test
+    public void truncatedAndInvalidPackets() {
+        byte[] data = packet(0, 5);
+        // Cut in the middle of the fourth sample
+        assertEquals(3, decoder.decode(data, ImuStreamDecoder.HEADER_LENGTH + 20, 0, sink));
+        assertEquals(1, decoder.getTruncatedPackets());
+        data[0] = 'E';
+        assertEquals(-1, decode(data, 0));
+        assertEquals(-1, decoder.decode(data, 3, 0, sink));
+        assertEquals(2, decoder.getRejectedPackets());
+    }
+
+    @Test
+    public void decodingIntoTheTrackerDoesNotAllocate() {
+        AllocationMeter meter = new AllocationMeter();
+        if (!meter.isSupported()) {
+            return;
+        }
+        byte[][] packets = new byte[16][];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = packet(i * 10, 10);
+        }
+        ImuStreamDecoder streamDecoder = new ImuStreamDecoder();
+        MotionFeatureTracker tracker = new MotionFeatureTracker(50);
+        ImuStreamDecoder.SampleSink trackerSink = tracker::onSample;
+
+        run(streamDecoder, trackerSink, packets, WARM_UP_PACKETS);
+        long before = meter.allocatedBytes();
+        long startedAt = System.nanoTime();
+        run(streamDecoder, trackerSink, packets, MEASURED_PACKETS);
+        long elapsedNanos = System.nanoTime() - startedAt;
+        long allocated = meter.allocatedBytes() - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated <= MAX_ALLOCATED_BYTES);
+        assertEquals(10L * (WARM_UP_PACKETS + MEASURED_PACKETS), tracker.getSamples());
+        long samplesPerSecond = MEASURED_PACKETS * 10 * 1000000000L / Math.max(1, elapsedNanos);
+        assertTrue(samplesPerSecond + " samples/s", samplesPerSecond >= MIN_SAMPLES_PER_SECOND);
+    }
+
+    /**
+     * Feed the packets in a loop, as a continuous 50 Hz stream
+     */
+    private static void run(ImuStreamDecoder decoder, ImuStreamDecoder.SampleSink sink, byte[][] packets, int count) {
+        for (int i = 0; i < count; i++) {
+            byte[] data = packets[i % packets.length];
+            // The indices of the 16 packets repeat every 160 samples; rewrite them to keep counting
+            int index = (i * 10) & 0xFFFF;
+            data[3] = (byte) index;
+            data[4] = (byte) (index >> 8);
+            decoder.decode(data, data.length, i * 10 * PERIOD_NANOS, sink);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.emerband.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LocationFixTest {
+
+    private static final long NOW = TimeUnit.MINUTES.toNanos(30);
+
+    private static LocationFix fix(double latitude, float accuracyMeters, long ageSeconds) {
+        return new LocationFix(LocationFix.SOURCE_NETWORK, latitude, 10.0, accuracyMeters, -1, 0,
+                NOW - TimeUnit.SECONDS.toNanos(ageSeconds));
+    }
+
+    @Test
+    public void accuracyGrowsWithAge() {
+        assertEquals(20f, fix(50, 20, 0).getEffectiveAccuracyMeters(NOW), 1e-3f);
+        assertEquals(20f + 60 * LocationFix.DRIFT_METERS_PER_SECOND,
+                fix(50, 20, 60).getEffectiveAccuracyMeters(NOW), 1e-3f);
+        // Unknown accuracy counts as poor
+        assertEquals(LocationFix.UNKNOWN_ACCURACY_METERS, fix(50, 0, 0).getEffectiveAccuracyMeters(NOW), 1e-3f);
+    }
+
+    @Test
+    public void newerCoarseFixBeatsOldPreciseOne() {
+        LocationFix oldGps = fix(50, 5, 120);
+        LocationFix freshNetwork = fix(50, 50, 0);
+        assertTrue(freshNetwork.isBetterThan(oldGps, NOW));
+        assertFalse(oldGps.isBetterThan(freshNetwork, NOW));
+        assertTrue(oldGps.isBetterThan(null, NOW));
+        assertFalse(oldGps.isBetterThan(oldGps, NOW));
+    }
+
+    @Test
+    public void distanceIsGreatCircle() {
+        // One degree of latitude is about 111.2 km
+        assertEquals(111195, fix(50, 10, 0).distanceTo(fix(51, 10, 0)), 50);
+        assertEquals(0, fix(50, 10, 0).distanceTo(fix(50, 10, 0)), 1e-3);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.emerband.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LocationQualityTest {
+
+    private static final long NOW = TimeUnit.MINUTES.toNanos(10);
+
+    private static LocationFix fix(double latitude, float accuracyMeters, long ageSeconds) {
+        return new LocationFix(LocationFix.SOURCE_GPS, latitude, 10.0, accuracyMeters, -1, 0,
+                NOW - TimeUnit.SECONDS.toNanos(ageSeconds));
+    }
+
+    private static String label(float accuracyMeters, long ageMillis) {
+        StringBuilder sb = new StringBuilder();
+        LocationQuality.appendLabel(sb, accuracyMeters, ageMillis);
+        return sb.toString();
+    }
+
+    @Test
+    public void labelGivesAccuracyAndAgeOnceOld() {
+        assertEquals(" (within 15 m)", label(14.6f, 5000));
+        assertEquals(" (within 40 m, 5 min old)", label(40, TimeUnit.MINUTES.toMillis(5)));
+        assertEquals(" (3 h old)", label(0, TimeUnit.HOURS.toMillis(3)));
+        assertEquals("", label(0, 1000));
+    }
+
+    @Test
+    public void followUpNeedsAClearImprovement() {
+        LocationFix sent = fix(50.0, 80, 0);
+        assertTrue(LocationQuality.isSignificantlyBetter(fix(50.0, 10, 0), sent, NOW));
+        // Halved, but by less than 20 m
+        assertFalse(LocationQuality.isSignificantlyBetter(fix(50.0, 15, 0), fix(50.0, 30, 0), NOW));
+        // Only a little better
+        assertFalse(LocationQuality.isSignificantlyBetter(fix(50.0, 60, 0), sent, NOW));
+        // The same fix is never worth a second SMS
+        assertFalse(LocationQuality.isSignificantlyBetter(sent, sent, NOW));
+        assertTrue(LocationQuality.isSignificantlyBetter(sent, null, NOW));
+        assertFalse(LocationQuality.isSignificantlyBetter(null, sent, NOW));
+    }
+
+    @Test
+    public void followUpWhenTheUserIsClearlyElsewhere() {
+        // 60 m against 80 m, but about 1 km away
+        assertTrue(LocationQuality.isSignificantlyBetter(fix(50.01, 60, 0), fix(50.0, 80, 0), NOW));
+    }
+}
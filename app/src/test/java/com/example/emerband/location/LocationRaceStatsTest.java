@@ -0,0 +1,34 @@
+package com.example.emerband.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class LocationRaceStatsTest {
+
+    @Test
+    public void countsOutcomesAndWinRates() {
+        LocationRaceStats stats = new LocationRaceStats();
+        stats.onCacheHit();
+        stats.onRace(Arrays.asList(LocationFix.SOURCE_CACHE, LocationFix.SOURCE_GPS, LocationFix.SOURCE_FUSED),
+                LocationFix.SOURCE_GPS, true, 800);
+        stats.onRace(Arrays.asList(LocationFix.SOURCE_GPS, LocationFix.SOURCE_FUSED),
+                LocationFix.SOURCE_FUSED, false, 3000);
+        stats.onRace(Arrays.asList(LocationFix.SOURCE_GPS), null, false, 3000);
+
+        assertEquals(1, stats.getDeadlineHits());
+        assertEquals(2, stats.getDeadlineMisses());
+        assertEquals(1f / 3, stats.getWinRate(LocationFix.SOURCE_GPS), 1e-6f);
+        assertEquals(0.5f, stats.getWinRate(LocationFix.SOURCE_FUSED), 1e-6f);
+        assertEquals(0f, stats.getWinRate(LocationFix.SOURCE_CACHE), 1e-6f);
+        assertEquals(0f, stats.getWinRate(LocationFix.SOURCE_NETWORK), 1e-6f);
+
+        String summary = stats.getSummary();
+        assertTrue(summary, summary.contains("cacheHits=1 races=3"));
+        assertTrue(summary, summary.contains("noFix=1 maxElapsed=3000ms"));
+        assertTrue(summary, summary.contains(LocationFix.SOURCE_GPS + ": won 1/3"));
+    }
+}
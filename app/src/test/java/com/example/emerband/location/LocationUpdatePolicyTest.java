@@ -0,0 +1,65 @@
+package com.example.emerband.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LocationUpdatePolicyTest {
+
+    // Roughly 11 m per 0.0001 degree of latitude
+    private static LocationFix fix(double latitude, float accuracyMeters, float speed) {
+        return new LocationFix(LocationFix.SOURCE_FUSED, latitude, 10.0, accuracyMeters, speed, 0, 0);
+    }
+
+    @Test
+    public void stillUserBacksOffToTheCap() {
+        LocationUpdatePolicy policy = new LocationUpdatePolicy();
+        assertFalse(policy.onFix(fix(50.0, 10, 0)));
+        assertTrue(policy.isMoving());
+
+        long[] expected = {60000, 120000, 240000, 300000, 300000};
+        for (long interval : expected) {
+            policy.onFix(fix(50.00001, 10, 0));
+            assertEquals(interval, policy.getIntervalMillis());
+        }
+        assertFalse(policy.isMoving());
+    }
+
+    @Test
+    public void movementGoesBackToTheShortInterval() {
+        LocationUpdatePolicy policy = new LocationUpdatePolicy();
+        policy.onFix(fix(50.0, 10, -1));
+        policy.onFix(fix(50.0, 10, -1));
+        assertEquals(LocationUpdatePolicy.STILL_INTERVAL_MS, policy.getIntervalMillis());
+
+        // A jump within both accuracies is noise
+        assertTrue(policy.onFix(fix(50.0001, 10, -1)));
+        assertEquals(120000, policy.getIntervalMillis());
+        // A jump past them is movement
+        assertTrue(policy.onFix(fix(50.001, 10, -1)));
+        assertTrue(policy.isMoving());
+
+        policy.onFix(fix(50.001, 10, -1));
+        // A reported walking speed is movement
+        assertTrue(policy.onFix(fix(50.001, 10, 1.2f)));
+        assertEquals(LocationUpdatePolicy.MOVING_INTERVAL_MS, policy.getIntervalMillis());
+    }
+
+    @Test
+    public void motionTriggerAndReset() {
+        LocationUpdatePolicy policy = new LocationUpdatePolicy();
+        policy.onFix(fix(50.0, 10, 0));
+        policy.onFix(fix(50.0, 10, 0));
+        assertTrue(policy.onMotion());
+        assertFalse(policy.onMotion());
+        assertTrue(policy.isMoving());
+
+        policy.onFix(fix(50.0, 10, 0));
+        policy.reset();
+        assertTrue(policy.isMoving());
+        // The first fix after a reset has nothing to compare with
+        assertFalse(policy.onFix(fix(60.0, 10, 0)));
+    }
+}
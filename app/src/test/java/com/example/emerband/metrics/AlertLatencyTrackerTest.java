@@ -0,0 +1,131 @@
+package com.example.emerband.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.metrics.AlertLatencyTracker.Stage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AlertLatencyTrackerTest {
+
+    private static final long NOTIFIED_AT = TimeUnit.SECONDS.toNanos(100);
+
+    private AlertLatencyTracker tracker;
+
+    private static long afterMillis(long millis) {
+        return NOTIFIED_AT + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Before
+    public void setUp() {
+        tracker = AlertLatencyTracker.getInstance();
+        tracker.end();
+        tracker.reset();
+    }
+
+    @After
+    public void tearDown() {
+        tracker.end();
+        tracker.reset();
+    }
+
+    @Test
+    public void beginRecordsTheDispatchStage() {
+        long notifiedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        tracker.begin('E', notifiedAt);
+        LatencyHistogram dispatched = tracker.getHistogram('E', Stage.DISPATCHED);
+        assertEquals(1, dispatched.getCount());
+        assertTrue(dispatched.getMaxMicros() >= 5000);
+        assertEquals(notifiedAt, tracker.getTraceStartNanos());
+    }
+
+    @Test
+    public void eachStageIsRecordedOncePerTrace() {
+        tracker.begin('E', NOTIFIED_AT);
+        tracker.mark(Stage.SMS_SENT, afterMillis(800));
+        // Later messages of the same alert do not count
+        tracker.mark(Stage.SMS_SENT, afterMillis(1900));
+        tracker.mark(Stage.CALL_STARTED, afterMillis(1200));
+
+        LatencyHistogram smsSent = tracker.getHistogram('E', Stage.SMS_SENT);
+        assertEquals(1, smsSent.getCount());
+        assertEquals(800000, smsSent.getMaxMicros());
+        assertEquals(1200000, tracker.getHistogram('E', Stage.CALL_STARTED).getMaxMicros());
+    }
+
+    @Test
+    public void newTraceRecordsTheStagesAgain() {
+        tracker.begin('A', NOTIFIED_AT);
+        tracker.mark(Stage.MESSAGE_BUILT, afterMillis(10));
+        tracker.end();
+        tracker.begin('A', NOTIFIED_AT);
+        tracker.mark(Stage.MESSAGE_BUILT, afterMillis(30));
+
+        LatencyHistogram built = tracker.getHistogram('A', Stage.MESSAGE_BUILT);
+        assertEquals(2, built.getCount());
+        assertEquals(30000, built.getMaxMicros());
+    }
+
+    @Test
+    public void markWithoutATraceDoesNothing() {
+        tracker.mark(Stage.SMS_SENT, afterMillis(100));
+        tracker.begin('E', NOTIFIED_AT);
+        tracker.end();
+        tracker.mark(Stage.CALL_STARTED, afterMillis(100));
+
+        assertEquals(0, tracker.getHistogram('E', Stage.SMS_SENT).getCount());
+        assertEquals(0, tracker.getHistogram('E', Stage.CALL_STARTED).getCount());
+    }
+
+    @Test
+    public void tracesBelongToTheirThread() throws InterruptedException {
+        tracker.begin('E', NOTIFIED_AT);
+        Thread other = new Thread(() -> tracker.mark(Stage.SMS_SENT, afterMillis(100)));
+        other.start();
+        other.join();
+        assertEquals(0, tracker.getHistogram('E', Stage.SMS_SENT).getCount());
+
+        tracker.mark(Stage.SMS_SENT, afterMillis(100));
+        assertEquals(1, tracker.getHistogram('E', Stage.SMS_SENT).getCount());
+    }
+
+    @Test
+    public void untrackedSignalsShareOneSlot() {
+        tracker.record('Z', Stage.DECODED, System.nanoTime());
+        assertEquals(1, tracker.getHistogram('Q', Stage.DECODED).getCount());
+        assertEquals(0, tracker.getHistogram('E', Stage.DECODED).getCount());
+    }
+
+    @Test
+    public void slowFirstSmsOfAnEmergencyBreachesTheTarget() {
+        long overTarget = AlertLatencyTracker.FIRST_SMS_SLO_MILLIS + 1000;
+        tracker.begin('E', NOTIFIED_AT);
+        tracker.mark(Stage.SMS_SENT, afterMillis(overTarget));
+        tracker.end();
+        tracker.begin('E', NOTIFIED_AT);
+        tracker.mark(Stage.SMS_SENT, afterMillis(500));
+        tracker.end();
+        // Only emergencies have the target
+        tracker.begin('A', NOTIFIED_AT);
+        tracker.mark(Stage.SMS_SENT, afterMillis(overTarget));
+
+        assertEquals(1, tracker.getFirstSmsSloBreaches());
+        assertTrue(tracker.getSummary(), tracker.getSummary().endsWith(": 1"));
+    }
+
+    @Test
+    public void csvHasOneRowPerRecordedStage() {
+        tracker.begin('E', NOTIFIED_AT);
+        tracker.mark(Stage.SMS_SENT, afterMillis(250));
+
+        String csv = tracker.exportCsv();
+        assertTrue(csv, csv.startsWith("signal,stage,count,mean_us,p50_us,p90_us,p99_us,max_us\n"));
+        assertTrue(csv, csv.endsWith("E,SMS_SENT,1,250000,250000,250000,250000,250000\n"));
+        assertTrue(csv, !csv.contains("CALL_STARTED"));
+    }
+}
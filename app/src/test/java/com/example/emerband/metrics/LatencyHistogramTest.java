@@ -0,0 +1,150 @@
+package com.example.emerband.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    private static long micros(long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMicros());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(0, histogram.getPercentileMicros(100));
+        assertEquals(0, histogram.getCountAbove(0));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long value = 0; value < 16; value++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.recordNanos(micros(value));
+            histogram.recordNanos(millis(1));
+            assertEquals(value, histogram.getPercentileMicros(50));
+        }
+    }
+
+    @Test
+    public void valuesAreReportedAtTheUpperEdgeOfTheirBucket() {
+        // 16..31 us is split into buckets two wide
+        assertEquals(17, medianWithOutlier(16));
+        assertEquals(23, medianWithOutlier(22));
+        assertEquals(23, medianWithOutlier(23));
+        assertEquals(25, medianWithOutlier(24));
+        assertEquals(31, medianWithOutlier(31));
+        assertEquals(35, medianWithOutlier(32));
+    }
+
+    @Test
+    public void everyValueIsReportedWithinOneEighth() {
+        for (long value = 1; value <= LatencyHistogram.MAX_TRACKABLE_MICROS; value = value * 5 / 4 + 1) {
+            long reported = medianWithOutlier(value);
+            assertTrue(value + " reported as " + reported, reported >= value);
+            assertTrue(value + " reported as " + reported, reported <= value + value / 8);
+        }
+    }
+
+    @Test
+    public void percentilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordNanos(millis(i));
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50500, histogram.getMeanMicros());
+        assertWithinBucket(50000, histogram.getPercentileMicros(50));
+        assertWithinBucket(90000, histogram.getPercentileMicros(90));
+        assertWithinBucket(99000, histogram.getPercentileMicros(99));
+        // The lowest rank is the first value; the top never exceeds the real maximum
+        assertWithinBucket(1000, histogram.getPercentileMicros(0));
+        assertEquals(100000, histogram.getPercentileMicros(100));
+        assertEquals(100000, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void outOfRangePercentilesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(millis(3));
+        histogram.recordNanos(millis(7));
+        assertEquals(histogram.getPercentileMicros(0), histogram.getPercentileMicros(-5));
+        assertEquals(histogram.getPercentileMicros(100), histogram.getPercentileMicros(250));
+    }
+
+    @Test
+    public void overflowLandsInTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long huge = LatencyHistogram.MAX_TRACKABLE_MICROS * 10;
+        histogram.recordNanos(micros(huge));
+        histogram.recordNanos(micros(LatencyHistogram.MAX_TRACKABLE_MICROS));
+
+        // The maximum and mean keep the real values; percentiles stop at the tracked range
+        assertEquals(huge, histogram.getMaxMicros());
+        assertEquals((huge + LatencyHistogram.MAX_TRACKABLE_MICROS) / 2, histogram.getMeanMicros());
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_MICROS, histogram.getPercentileMicros(100));
+        assertEquals(0, histogram.getCountAbove(huge));
+        assertEquals(2, histogram.getCountAbove(TimeUnit.SECONDS.toMicros(1)));
+    }
+
+    @Test
+    public void negativeLatenciesAreIgnored() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(-1);
+        histogram.recordNanos(Long.MIN_VALUE);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+    }
+
+    @Test
+    public void countAboveUsesBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(millis(1));
+        histogram.recordNanos(millis(2));
+        histogram.recordNanos(millis(5));
+        assertEquals(1, histogram.getCountAbove(2000));
+        assertEquals(2, histogram.getCountAbove(1500));
+        assertEquals(3, histogram.getCountAbove(0));
+        // 2001 us shares the bucket of 2 ms, so 2 ms is not counted above it
+        assertEquals(1, histogram.getCountAbove(2001));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(millis(40));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(99));
+        histogram.recordNanos(millis(2));
+        assertEquals(2000, histogram.getMaxMicros());
+    }
+
+    /**
+     * Median of a value and a larger one, so the maximum does not cap the reported bucket edge
+     */
+    private static long medianWithOutlier(long valueMicros) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(micros(valueMicros));
+        histogram.recordNanos(micros(LatencyHistogram.MAX_TRACKABLE_MICROS * 2));
+        return histogram.getPercentileMicros(50);
+    }
+
+    private static void assertWithinBucket(long expectedMicros, long reportedMicros) {
+        assertTrue(expectedMicros + " reported as " + reportedMicros,
+                reportedMicros >= expectedMicros && reportedMicros <= expectedMicros + expectedMicros / 8);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.emerband.trace;
+
+import java.io.FileInputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Replays a trace file pulled from a phone and prints what the ingest path
+ * made of it. Run it from the IDE or with the unit test classpath.
+ *
+ * Usage: {@code TraceReplayerCli <trace> [speed]} where speed 0 (the
+ * default) means as fast as possible.
+ */
+public final class TraceReplayerCli {
+
+    private TraceReplayerCli() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: TraceReplayerCli <trace> [speed]");
+            System.exit(2);
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+
+        // Count handled signals per code instead of sending SMS and placing calls
+        AtomicLongArray handled = new AtomicLongArray(Character.MAX_VALUE + 1);
+        TraceReplayer replayer = new TraceReplayer(event -> handled.incrementAndGet(event.getSignal()), 2);
+        TraceReplayer.Result result = replayer.replay(new FileInputStream(args[0]), speed);
+
+        System.out.println(result);
+        for (char signal = 0; signal < Character.MAX_VALUE; signal++) {
+            if (handled.get(signal) > 0) {
+                System.out.println("handled " + signal + ": " + handled.get(signal));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.emerband.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.emerband.ble.WatchFrameDecoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class TraceReplayerTest {
+
+    private static final UUID ALERT_CHARACTERISTIC = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final String WATCH = "AA:BB:CC:DD:EE:01";
+    private static final String SECOND_WATCH = "AA:BB:CC:DD:EE:02";
+
+    // The ingest path must keep up with thousands of notifications per second
+    private static final int BENCHMARK_NOTIFICATIONS = 200000;
+    private static final double MIN_NOTIFICATIONS_PER_SECOND = 5000;
+
+    @Test
+    public void replaysThroughTheIngestPath() throws IOException, InterruptedException {
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        try (NotificationTraceWriter writer = new NotificationTraceWriter(trace, 0)) {
+            long at = 0;
+            // One press notified five times
+            for (int i = 0; i < 5; i++) {
+                writer.write(WATCH, ALERT_CHARACTERISTIC, at += millis(20), frame('E', 1));
+            }
+            // Pressed again soon after: a repeat of the alert being acted on
+            writer.write(WATCH, ALERT_CHARACTERISTIC, at += millis(2000), frame('E', 2));
+            writer.write(WATCH, ALERT_CHARACTERISTIC, at += millis(100), frame('A', 3));
+            writer.write(SECOND_WATCH, ALERT_CHARACTERISTIC, at += millis(100), frame('E', 1));
+            writer.write(WATCH, ALERT_CHARACTERISTIC, at += millis(100), new byte[] {0});
+            // Heart rate measurements (uint8 format) on the same characteristic
+            for (int i = 0; i < 3; i++) {
+                writer.write(WATCH, ALERT_CHARACTERISTIC, at += millis(1000), new byte[] {0, 72});
+            }
+        }
+
+        AtomicLongArray handled = new AtomicLongArray(128);
+        TraceReplayer replayer = new TraceReplayer(event -> handled.incrementAndGet(event.getSignal()), 2);
+        TraceReplayer.Result result = replayer.replay(new ByteArrayInputStream(trace.toByteArray()), 0);
+
+        assertEquals(12, result.getNotifications());
+        assertEquals(3, result.getHeartRateMeasurements());
+        assertEquals(0, result.getHeartRateAlerts());
+        assertEquals(1, result.getRejected());
+        assertEquals(4, result.getDuplicates());
+        assertEquals(3, result.getSubmitted());
+        assertEquals(1, result.getRepeats());
+        assertEquals(2, handled.get('E'));
+        assertEquals(1, handled.get('A'));
+    }
+
+    @Test
+    public void replaysThousandsOfNotificationsPerSecond() throws IOException, InterruptedException {
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        try (NotificationTraceWriter writer = new NotificationTraceWriter(trace, 0)) {
+            long at = 0;
+            for (int i = 0; i < BENCHMARK_NOTIFICATIONS; i++) {
+                // Fake-call presses far enough apart to each be dispatched
+                writer.write(WATCH, ALERT_CHARACTERISTIC, at += millis(5000), frame('F', i));
+            }
+        }
+
+        TraceReplayer replayer = new TraceReplayer(event -> { }, 2);
+        TraceReplayer.Result result = replayer.replay(new ByteArrayInputStream(trace.toByteArray()), 0);
+
+        assertEquals(BENCHMARK_NOTIFICATIONS, result.getNotifications());
+        assertEquals(BENCHMARK_NOTIFICATIONS, result.getSubmitted());
+        assertTrue("rate " + result.getNotificationsPerSecond(),
+                result.getNotificationsPerSecond() >= MIN_NOTIFICATIONS_PER_SECOND);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static byte[] frame(char signal, int sequence) {
+        byte[] frame = new byte[WatchFrameDecoder.GPS_FRAME_LENGTH];
+        frame[WatchFrameDecoder.SIGNAL_OFFSET] = (byte) signal;
+        frame[WatchFrameDecoder.FLAGS_OFFSET] = (byte) WatchFrameDecoder.FLAG_VERSIONED;
+        frame[WatchFrameDecoder.VERSION_OFFSET] = (byte) WatchFrameDecoder.VERSION_SEQUENCE;
+        frame[WatchFrameDecoder.SEQUENCE_OFFSET] = (byte) sequence;
+        frame[WatchFrameDecoder.SEQUENCE_OFFSET + 1] = (byte) (sequence >> 8);
+        return frame;
+    }
+}
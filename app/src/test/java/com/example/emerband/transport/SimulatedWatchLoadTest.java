@@ -0,0 +1,219 @@
+package com.example.emerband.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.emerband.ble.GattOperationStats;
+import com.example.emerband.ble.WatchFrame;
+import com.example.emerband.ble.WatchFrameDecoder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained load on the simulated transport. Watches, links and receivers all
+ * run on the paused main looper, so simulated time only moves when the test
+ * idles it and every latency is exact.
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class SimulatedWatchLoadTest {
+
+    private static final int WATCHES = 8;
+    private static final int PRESSES = 3000;
+    private static final long PRESS_INTERVAL_MILLIS = 20;
+    private static final long MIN_LATENCY_MILLIS = 5;
+    private static final long MAX_LATENCY_MILLIS = 20;
+    private static final long DROP_INTERVAL_MILLIS = 5000;
+
+    // Far above what real watches send; the simulation must never be the bottleneck
+    private static final double MIN_NOTIFICATIONS_PER_SECOND = 2000;
+
+    private Handler handler;
+    private SimulatedWatchTransport transport;
+
+    @Before
+    public void setUp() {
+        handler = new Handler(Looper.getMainLooper());
+        transport = new SimulatedWatchTransport(42);
+        transport.setLatency(MIN_LATENCY_MILLIS, MAX_LATENCY_MILLIS);
+    }
+
+    @Test
+    public void sustainedPressesArriveInOrderWithinTheLatencyBound() {
+        List<WatchReceiver> receivers = connectWatches();
+        long startNanos = System.nanoTime();
+        long durationMillis = 0;
+        for (WatchReceiver receiver : receivers) {
+            durationMillis = receiver.startPressing().getDurationMillis();
+        }
+        idle(durationMillis + MAX_LATENCY_MILLIS);
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long delivered = 0;
+        for (WatchReceiver receiver : receivers) {
+            assertEquals(PRESSES, receiver.watch.getSentFrames());
+            assertEquals(PRESSES, receiver.frames);
+            assertEquals(0, receiver.outOfOrder);
+            assertTrue("min latency " + receiver.minLatencyMillis,
+                    receiver.minLatencyMillis >= MIN_LATENCY_MILLIS);
+            assertTrue("max latency " + receiver.maxLatencyMillis,
+                    receiver.maxLatencyMillis <= MAX_LATENCY_MILLIS);
+            delivered += receiver.frames;
+        }
+
+        // Every watch pressing at full rate for the whole run, with nothing left queued
+        double simulatedPerSecond = delivered * 1000.0 / (durationMillis + PRESS_INTERVAL_MILLIS);
+        assertEquals(WATCHES * 1000.0 / PRESS_INTERVAL_MILLIS, simulatedPerSecond, 1.0);
+
+        double perSecond = delivered * 1e9 / elapsedNanos;
+        assertTrue("only " + (long) perSecond + " notifications/s",
+                perSecond >= MIN_NOTIFICATIONS_PER_SECOND);
+    }
+
+    @Test
+    public void linkDropsUnderLoadLoseOnlyTheFramesSentWhileReconnecting() {
+        List<WatchReceiver> receivers = connectWatches();
+        long durationMillis = 0;
+        for (WatchReceiver receiver : receivers) {
+            durationMillis = receiver.startPressing().getDurationMillis();
+            SimulatedWatch.Script drops = receiver.watch.script(handler);
+            for (long at = DROP_INTERVAL_MILLIS; at < durationMillis; at += DROP_INTERVAL_MILLIS) {
+                drops.waitMillis(DROP_INTERVAL_MILLIS).dropLink();
+            }
+            drops.run();
+        }
+        idle(durationMillis + MAX_LATENCY_MILLIS);
+
+        int drops = (int) ((durationMillis - 1) / DROP_INTERVAL_MILLIS);
+        // Disconnect report, connect and subscribe each take one latency step
+        long maxGapMillis = 3 * MAX_LATENCY_MILLIS;
+        long maxLostPerDrop = maxGapMillis / PRESS_INTERVAL_MILLIS + 1;
+        for (WatchReceiver receiver : receivers) {
+            assertEquals(drops, receiver.reconnects);
+            assertEquals(0, receiver.outOfOrder);
+            assertTrue("max latency " + receiver.maxLatencyMillis,
+                    receiver.maxLatencyMillis <= MAX_LATENCY_MILLIS);
+            assertTrue("reconnect took " + receiver.maxReconnectMillis + " ms",
+                    receiver.maxReconnectMillis <= 2 * MAX_LATENCY_MILLIS);
+            long lost = PRESSES - receiver.frames;
+            assertTrue("lost " + lost + " frames", lost <= drops * maxLostPerDrop);
+        }
+    }
+
+    private List<WatchReceiver> connectWatches() {
+        List<WatchReceiver> receivers = new ArrayList<>();
+        for (int i = 0; i < WATCHES; i++) {
+            SimulatedWatch watch = transport.addWatch("00:11:22:33:44:" + (10 + i), "EmergencyWatch");
+            WatchReceiver receiver = new WatchReceiver(watch);
+            receiver.connect();
+            receivers.add(receiver);
+        }
+        idle(2 * MAX_LATENCY_MILLIS);
+        for (WatchReceiver receiver : receivers) {
+            assertTrue(receiver.link.isSubscribed());
+        }
+        return receivers;
+    }
+
+    private static void idle(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Phone side of one watch: checks every frame and reconnects when the link drops
+     */
+    private final class WatchReceiver implements WatchLink.Listener {
+        final SimulatedWatch watch;
+        final WatchFrameDecoder decoder = new WatchFrameDecoder();
+        final WatchFrame frame = new WatchFrame();
+        final GattOperationStats stats = new GattOperationStats();
+
+        WatchLink link;
+        long pressingSince;
+        long disconnectedAt;
+
+        int frames;
+        int outOfOrder;
+        int nextSequence;
+        int reconnects;
+        long minLatencyMillis = Long.MAX_VALUE;
+        long maxLatencyMillis;
+        long maxReconnectMillis;
+
+        WatchReceiver(SimulatedWatch watch) {
+            this.watch = watch;
+        }
+
+        void connect() {
+            link = transport.createLink(handler, stats, this);
+            link.connect(watch.getAddress(), false);
+        }
+
+        /**
+         * Press once every interval, starting now; press n sends sequence n
+         */
+        SimulatedWatch.Script startPressing() {
+            SimulatedWatch.Script script = watch.script(handler).repeat('A', PRESSES, PRESS_INTERVAL_MILLIS);
+            pressingSince = SystemClock.uptimeMillis();
+            script.run();
+            return script;
+        }
+
+        @Override
+        public void onConnected(WatchLink link) {
+        }
+
+        @Override
+        public void onFailedToConnect(WatchLink link, int reason) {
+            throw new AssertionError("failed to connect to " + watch.getAddress() + ", reason " + reason);
+        }
+
+        @Override
+        public void onReady(WatchLink link) {
+            if (disconnectedAt != 0) {
+                reconnects++;
+                maxReconnectMillis = Math.max(maxReconnectMillis, SystemClock.uptimeMillis() - disconnectedAt);
+                disconnectedAt = 0;
+            }
+        }
+
+        @Override
+        public void onDisconnected(WatchLink link, int reason) {
+            disconnectedAt = SystemClock.uptimeMillis();
+            link.close();
+            connect();
+        }
+
+        @Override
+        public void onNotification(WatchLink link, byte[] data, long receivedAtNanos) {
+            assertTrue(decoder.decode(data, frame));
+            int sequence = frame.getSequence();
+            if (sequence < nextSequence) {
+                outOfOrder++;
+            }
+            nextSequence = sequence + 1;
+            frames++;
+
+            long latencyMillis = SystemClock.uptimeMillis() - (pressingSince + sequence * PRESS_INTERVAL_MILLIS);
+            minLatencyMillis = Math.min(minLatencyMillis, latencyMillis);
+            maxLatencyMillis = Math.max(maxLatencyMillis, latencyMillis);
+        }
+
+        @Override
+        public void onImuNotification(WatchLink link, byte[] data, long receivedAtNanos) {
+        }
+    }
+}